@@ -0,0 +1,46 @@
+package com.jaywant.demo.Config;
+
+import java.util.function.Supplier;
+
+/**
+ * Deadline for the HTTP requests the current thread makes. The RestTemplate
+ * from {@link RestTemplateConfig} caps each request's pool wait and response
+ * timeout at the time left, so a call bounded by a deadline does not keep
+ * its connection and worker busy after the deadline has passed.
+ */
+public final class HttpDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private HttpDeadline() {
+    }
+
+    /**
+     * Run work with every request it makes ending by deadlineAt (epoch millis).
+     */
+    public static <T> T call(long deadlineAt, Supplier<T> work) {
+        Long previous = DEADLINE.get();
+        DEADLINE.set(previous != null ? Math.min(previous, deadlineAt) : deadlineAt);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                DEADLINE.set(previous);
+            } else {
+                DEADLINE.remove();
+            }
+        }
+    }
+
+    /**
+     * Milliseconds left, at least 1 (a zero timeout means none), or -1 when
+     * no deadline is set.
+     */
+    public static long remainingMs() {
+        Long deadlineAt = DEADLINE.get();
+        if (deadlineAt == null) {
+            return -1;
+        }
+        return Math.max(1, deadlineAt - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,77 @@
+package com.jaywant.demo.Config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seeds id_sequences for the entities with pooled table ids (Attendance,
+ * LocationHistory, NotificationLog, BackfillChunk).
+ *
+ * The pooled optimizer hands out the block of allocationSize ids just below
+ * next_val, so next_val must be at least MAX(id) + allocationSize or the
+ * first block would reuse ids of rows inserted while the tables were
+ * AUTO_INCREMENT. Runs after the EntityManagerFactory so ddl-auto has
+ * created the table.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdSequenceInitializer {
+
+    // Must match allocationSize of the @TableGenerator on each entity
+    public static final int ALLOCATION_SIZE = 50;
+
+    // sequence_name -> table it hands out ids for
+    private static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES.put("attendance", "attendance");
+        SEQUENCES.put("location_history", "location_history");
+        SEQUENCES.put("notification_log", "notification_log");
+        SEQUENCES.put("backfill_chunk", "backfill_chunk");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void seed() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS id_sequences ("
+                    + "sequence_name VARCHAR(255) NOT NULL PRIMARY KEY, next_val BIGINT)");
+        } catch (Exception e) {
+            System.err.println("❌ Could not create id_sequences: " + e.getMessage());
+            return;
+        }
+        for (Map.Entry<String, String> entry : SEQUENCES.entrySet()) {
+            try {
+                seed(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                System.err.println("❌ Could not seed id sequence " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void seed(String sequenceName, String table) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        long floor = (maxId != null ? maxId : 0L) + ALLOCATION_SIZE;
+
+        List<Long> current = jdbcTemplate.queryForList(
+                "SELECT next_val FROM id_sequences WHERE sequence_name = ?", Long.class, sequenceName);
+        if (current.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO id_sequences (sequence_name, next_val) VALUES (?, ?)",
+                    sequenceName, floor);
+            System.out.println("🔢 Id sequence " + sequenceName + " seeded at " + floor);
+        } else if (current.get(0) == null || current.get(0) < floor) {
+            jdbcTemplate.update("UPDATE id_sequences SET next_val = ? WHERE sequence_name = ?",
+                    floor, sequenceName);
+            System.out.println("🔢 Id sequence " + sequenceName + " moved " + current.get(0) + " -> " + floor);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.jaywant.demo.Controller;
+
+import com.jaywant.demo.Entity.BackfillJob;
+import com.jaywant.demo.Service.BackfillService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/backfill")
+@CrossOrigin(origins = "*")
+public class BackfillController {
+
+    @Autowired
+    private BackfillService backfillService;
+
+    /**
+     * Start a backfill. Body: source (ICLOCK or EASYTIME), fromDate, toDate,
+     * optional terminals, and for ICLOCK database and table.
+     */
+    @PostMapping
+    public ResponseEntity<?> startBackfill(@RequestBody Map<String, Object> request) {
+        try {
+            BackfillJob.Source source = BackfillJob.Source.valueOf(
+                    String.valueOf(request.getOrDefault("source", "ICLOCK")).toUpperCase());
+            LocalDate fromDate = LocalDate.parse(String.valueOf(request.get("fromDate")));
+            LocalDate toDate = LocalDate.parse(String.valueOf(request.get("toDate")));
+            String database = (String) request.getOrDefault("database", "easywdms");
+            String table = (String) request.getOrDefault("table", "iclock_transaction");
+
+            List<String> terminals = new ArrayList<>();
+            if (request.get("terminals") instanceof List) {
+                for (Object terminal : (List<?>) request.get("terminals")) {
+                    terminals.add(String.valueOf(terminal));
+                }
+            }
+
+            BackfillJob job = backfillService.start(source, database, table, fromDate, toDate, terminals);
+            return ResponseEntity.ok(backfillService.getProgress(job.getId()));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Recent jobs and the worker pool
+     */
+    @GetMapping
+    public ResponseEntity<?> listBackfills() {
+        return ResponseEntity.ok(Map.of(
+                "jobs", backfillService.listJobs(),
+                "stats", backfillService.getStats()));
+    }
+
+    /**
+     * Progress of one job
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getBackfill(@PathVariable Long jobId) {
+        Map<String, Object> progress = backfillService.getProgress(jobId);
+        if (progress == null) {
+            return ResponseEntity.status(404).body(Map.of(
+                    "success", false,
+                    "error", "Backfill job not found: " + jobId));
+        }
+        return ResponseEntity.ok(progress);
+    }
+
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<?> cancelBackfill(@PathVariable Long jobId) {
+        if (!backfillService.cancel(jobId)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "Backfill job " + jobId + " is not running"));
+        }
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+}
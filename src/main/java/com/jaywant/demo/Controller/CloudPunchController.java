@@ -1,18 +1,26 @@
 package com.jaywant.demo.Controller;
 
-import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.jaywant.demo.Service.DeviceLivenessTracker;
+import com.jaywant.demo.Service.PunchEngine;
+import com.jaywant.demo.Service.PunchEvent;
+import com.jaywant.demo.Service.PunchOutcome;
+import com.jaywant.demo.Service.TerminalRegistry;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -21,14 +29,25 @@ import java.util.*;
 @CrossOrigin(origins = "*")
 public class CloudPunchController {
 
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // Longer keys are hashed so "CLOUD|" + key fits the VARCHAR(191) key column
+    private static final int MAX_KEY_LENGTH = 120;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
+    private TerminalRegistry terminalRegistry;
+
+    @Autowired
+    private PunchEngine punchEngine;
 
     @Autowired
-    private AttendanceRepo attendanceRepo;
+    private DeviceLivenessTracker livenessTracker;
+
+    // Bulk uploads are resolved and written this many punches at a time
+    @Value("${biometric.bulk.chunk-size:500}")
+    private int bulkChunkSize;
 
     /**
      * Direct punch endpoint for biometric devices
@@ -36,10 +55,20 @@ public class CloudPunchController {
      * 
      * This endpoint receives data directly from biometric devices
      * and processes it into the HRM attendance system
+     *
+     * Retries are idempotent: a punch is identified by the Idempotency-Key
+     * header, else device_serial + device_sequence, else a hash of
+     * emp_code/punch_time/punch_state. A retry is acknowledged with
+     * "replayed": true without being written again.
+     *
+     * An accepted punch is answered 202 "queued": it is written by the batch
+     * writer shortly after, and its key is kept only once it is written. If
+     * the write fails, a retry with the same key is accepted again.
      */
     @PostMapping("/punch")
-    @Transactional
-    public ResponseEntity<?> receivePunchData(@RequestBody Map<String, Object> punchData) {
+    public ResponseEntity<?> receivePunchData(@RequestBody Map<String, Object> punchData,
+                                              @RequestHeader(value = "Idempotency-Key", required = false)
+                                              String idempotencyKey) {
         try {
             System.out.println("🌐 [CLOUD PUNCH] Received data from device: " + punchData);
 
@@ -58,47 +87,44 @@ public class CloudPunchController {
                 ));
             }
 
-            // Parse punch data
-            LocalDateTime punchDateTime = parseDateTime(punchTimeStr);
-            Integer punchState = safeParseInteger(punchStateStr);
+            // Resolve and queue for the batch writer (first IN / last OUT per employee and day)
+            PunchEvent event = cloudEvent(empCode, deviceSerial, punchTimeStr, punchStateStr, verifyType,
+                    punchData.toString(), idempotencyKey(idempotencyKey, deviceSerial,
+                            punchData.get("device_sequence"), empCode, punchTimeStr, punchStateStr));
+            PunchOutcome outcome = punchEngine.process(event);
 
-            if (punchDateTime == null) {
-                return ResponseEntity.badRequest().body(Map.of(
-                    "success", false,
-                    "error", "Invalid punch_time format: " + punchTimeStr
+            if (outcome.getStatus() == PunchOutcome.Status.DUPLICATE) {
+                return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Punch already received",
+                    "replayed", true,
+                    "idempotency_key", event.getDedupKey()
                 ));
             }
-
-            // Find employee
-            Employee employee = findEmployee(empCode);
-            if (employee == null) {
+            if (outcome.getStatus() != PunchOutcome.Status.QUEUED
+                    && outcome.getStatus() != PunchOutcome.Status.QUEUE_FULL) {
                 return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
-                    "error", "Employee not found for emp_code: " + empCode
+                    "error", rejectionMessage(outcome, empCode, punchTimeStr)
                 ));
             }
 
-            // Process attendance
-            boolean success = processCloudPunch(employee, punchDateTime, punchState, deviceSerial, punchData);
-
-            if (success) {
-                String punchType = (punchState != null && punchState == 0) ? "IN" : "OUT";
-                System.out.println("✅ [CLOUD PUNCH] " + employee.getFullName() + " - " + 
-                                 punchDateTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")) + 
-                                 " - " + punchType + " [Device: " + deviceSerial + "]");
-
-                return ResponseEntity.ok(Map.of(
+            if (outcome.isQueued()) {
+                String punchType = event.getCheckIn() ? "IN" : "OUT";
+                return ResponseEntity.status(202).body(Map.of(
                     "success", true,
-                    "message", "Punch recorded successfully",
-                    "employee", employee.getFullName(),
-                    "punch_time", punchDateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
+                    "status", "queued",
+                    "message", "Punch queued",
+                    "employee", outcome.getEmployee().getFullName(),
+                    "punch_time", outcome.getPunchTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
                     "punch_type", punchType,
-                    "device_serial", deviceSerial
+                    "device_serial", deviceSerial,
+                    "replayed", false
                 ));
             } else {
-                return ResponseEntity.status(500).body(Map.of(
+                return ResponseEntity.status(503).body(Map.of(
                     "success", false,
-                    "error", "Failed to process punch data"
+                    "error", "Punch queue is full, please retry"
                 ));
             }
 
@@ -114,49 +140,51 @@ public class CloudPunchController {
     /**
      * Bulk punch endpoint for multiple punches
      * URL: POST https://yourdomain.com/api/punch/bulk
+     *
+     * Devices upload their offline backlog here after a network outage. The
+     * body is read with a streaming parser and handed to
+     * PunchEngine.processAll every bulkChunkSize punches as the parser goes,
+     * so only one chunk is held at a time. A top-level device_serial applies
+     * to all punches; until it has been read, punches are held back, so
+     * devices should send it before the punches array. Only failed punches
+     * are listed in the response.
      */
     @PostMapping("/punch/bulk")
-    @Transactional
-    public ResponseEntity<?> receiveBulkPunchData(@RequestBody Map<String, Object> bulkData) {
+    public ResponseEntity<?> receiveBulkPunchData(HttpServletRequest request) {
         try {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> punches = (List<Map<String, Object>>) bulkData.get("punches");
-            String deviceSerial = (String) bulkData.get("device_serial");
+            long start = System.currentTimeMillis();
+            BulkUpload upload = new BulkUpload();
+            try {
+                parseBulkUpload(request.getInputStream(), upload);
+            } catch (JsonProcessingException e) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", "Invalid JSON: " + e.getOriginalMessage());
+                // Chunks before the error have been processed
+                response.put("processed_punches", upload.total - upload.chunk.size());
+                response.put("failures", upload.failures);
+                return ResponseEntity.badRequest().body(response);
+            }
+            processBulkChunk(upload);
 
-            if (punches == null || punches.isEmpty()) {
+            if (upload.total == 0) {
                 return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
                     "error", "No punch data provided"
                 ));
             }
-
-            List<Map<String, Object>> results = new ArrayList<>();
-            int successCount = 0;
-
-            for (Map<String, Object> punchData : punches) {
-                try {
-                    punchData.put("device_serial", deviceSerial); // Ensure device serial is set
-                    ResponseEntity<?> result = receivePunchData(punchData);
-                    
-                    if (result.getStatusCode().is2xxSuccessful()) {
-                        successCount++;
-                        results.add(Map.of("success", true, "data", punchData));
-                    } else {
-                        results.add(Map.of("success", false, "data", punchData, "error", result.getBody()));
-                    }
-                } catch (Exception e) {
-                    results.add(Map.of("success", false, "data", punchData, "error", e.getMessage()));
-                }
-            }
-
-            return ResponseEntity.ok(Map.of(
-                "success", true,
-                "total_punches", punches.size(),
-                "successful_punches", successCount,
-                "failed_punches", punches.size() - successCount,
-                "results", results,
-                "device_serial", deviceSerial
-            ));
+            upload.failures.sort(Comparator.comparing(failure -> (Integer) failure.get("index")));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("total_punches", upload.total);
+            response.put("successful_punches", upload.total - upload.failures.size());
+            response.put("failed_punches", upload.failures.size());
+            response.put("replayed_punches", upload.replayed);
+            response.put("failures", upload.failures);
+            response.put("device_serial", upload.deviceSerial);
+            response.put("elapsed_ms", System.currentTimeMillis() - start);
+            return ResponseEntity.ok(response);
 
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
@@ -166,24 +194,74 @@ public class CloudPunchController {
         }
     }
 
+    /**
+     * Resolve and write the punches parsed so far and note their failures.
+     */
+    private void processBulkChunk(BulkUpload upload) {
+        if (upload.chunk.isEmpty()) {
+            return;
+        }
+        List<PunchEvent> events = new ArrayList<>(upload.chunk.size());
+        List<BulkPunch> eventPunches = new ArrayList<>(upload.chunk.size());
+        for (BulkPunch punch : upload.chunk) {
+            if (punch.empCode == null || punch.punchTime == null || punch.punchState == null) {
+                upload.failures.add(failure(punch, "Missing required fields: emp_code, punch_time, punch_state"));
+                continue;
+            }
+            String deviceSerial = upload.deviceSerial != null ? upload.deviceSerial : punch.deviceSerial;
+            events.add(cloudEvent(punch.empCode, deviceSerial, punch.punchTime, punch.punchState,
+                    punch.verifyType, punch.toString(), idempotencyKey(punch.idempotencyKey, deviceSerial,
+                            punch.deviceSequence, punch.empCode, punch.punchTime, punch.punchState)));
+            eventPunches.add(punch);
+        }
+        upload.chunk.clear();
+
+        List<PunchOutcome> outcomes = punchEngine.processAll(events);
+        for (int i = 0; i < outcomes.size(); i++) {
+            PunchOutcome outcome = outcomes.get(i);
+            if (outcome.getStatus() == PunchOutcome.Status.DUPLICATE) {
+                upload.replayed++;
+            } else if (!outcome.isQueued()) {
+                BulkPunch punch = eventPunches.get(i);
+                upload.failures.add(failure(punch, rejectionMessage(outcome, punch.empCode, punch.punchTime)));
+            }
+        }
+    }
+
     /**
      * Device heartbeat endpoint
      * URL: POST https://yourdomain.com/api/device/heartbeat
+     *
+     * The serial is bound to the address the request came from, never to the
+     * device_ip in the body, and only for registered terminals; heartbeats
+     * of unknown serials are answered with "registered": false and ignored.
      */
     @PostMapping("/device/heartbeat")
-    public ResponseEntity<?> deviceHeartbeat(@RequestBody Map<String, Object> deviceInfo) {
+    public ResponseEntity<?> deviceHeartbeat(@RequestBody Map<String, Object> deviceInfo,
+                                             HttpServletRequest request) {
         try {
             String deviceSerial = (String) deviceInfo.get("device_serial");
             String deviceStatus = (String) deviceInfo.get("status");
-            String deviceIp = (String) deviceInfo.get("device_ip");
-
-            System.out.println("💓 [HEARTBEAT] Device: " + deviceSerial + " Status: " + deviceStatus + " IP: " + deviceIp);
+            String deviceIp = request.getRemoteAddr();
+            Object reportedIp = deviceInfo.get("device_ip");
+            Object firmware = deviceInfo.containsKey("firmware_version") ? deviceInfo.get("firmware_version")
+                    : deviceInfo.get("firmware");
+
+            System.out.println("💓 [HEARTBEAT] Device: " + deviceSerial + " Status: " + deviceStatus + " IP: " + deviceIp
+                    + (reportedIp != null && !deviceIp.equals(reportedIp) ? " (reports " + reportedIp + ")" : ""));
+
+            // Learn the device IP so TCP punches from it can be routed
+            boolean registered = terminalRegistry.learnDeviceIp(deviceSerial, deviceIp);
+            if (registered) {
+                livenessTracker.heartbeat(deviceSerial, deviceIp, firmware != null ? firmware.toString() : null);
+            }
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
                 "message", "Heartbeat received",
                 "server_time", LocalDateTime.now(),
-                "device_serial", deviceSerial
+                "device_serial", deviceSerial,
+                "registered", registered
             ));
 
         } catch (Exception e) {
@@ -195,109 +273,177 @@ public class CloudPunchController {
     }
 
     /**
-     * Process cloud punch with "First Punch In Only" logic
+     * Last-seen time, IP and firmware of every device heard from since startup
+     * URL: GET https://yourdomain.com/api/device/liveness
      */
-    @Transactional
-    private boolean processCloudPunch(Employee employee, LocalDateTime punchDateTime, 
-                                    Integer punchState, String deviceSerial, Map<String, Object> rawData) {
-        try {
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
-
-            // Find or create attendance record
-            Optional<Attendance> existingOpt = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
-            
-            Attendance attendance;
-            if (existingOpt.isPresent()) {
-                attendance = existingOpt.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
-            }
-
-            // Set biometric fields
-            attendance.setBiometricUserId(String.valueOf(employee.getEmpId()));
-            attendance.setDeviceSerial(deviceSerial);
-            attendance.setVerifyType("fingerprint");
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setRawData(rawData.toString());
-
-            // Apply "First Punch In Only" logic
-            if (punchState != null && punchState == 0) {
-                // Punch IN - Only set if no punch-in exists yet
-                if (attendance.getPunchInTime() == null) {
-                    attendance.setPunchInTime(punchTime);
-                    attendance.setPunchIn(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                    System.out.println("✅ First punch IN recorded (CLOUD): " + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                } else {
-                    System.out.println("⚠️ Duplicate punch IN ignored (CLOUD) - keeping first punch: " +
-                            attendance.getPunchInTime().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                    return true; // Don't save, but return success
-                }
-            } else {
-                // Punch OUT - Always update to latest
-                attendance.setPunchOutTime(punchTime);
-                attendance.setPunchOut(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                System.out.println("✅ Punch OUT recorded (CLOUD): " + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            }
-
-            // Calculate working hours if both times are set
-            if (attendance.getPunchInTime() != null && attendance.getPunchOutTime() != null) {
-                attendance.calculateDurations();
-                System.out.println("📊 Working hours calculated: " + attendance.getWorkingHours());
-            }
+    @GetMapping("/device/liveness")
+    public ResponseEntity<?> deviceLiveness() {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "devices", livenessTracker.getDevices(),
+            "stats", livenessTracker.getStats()
+        ));
+    }
 
-            // Save attendance
-            attendanceRepo.save(attendance);
-            return true;
+    private PunchEvent cloudEvent(String empCode, String deviceSerial, String punchTime, String punchState,
+                                  String verifyType, String rawData, String idempotencyKey) {
+        Integer state = PunchEngine.parseInteger(punchState);
+        return new PunchEvent("CLOUD")
+                .dedupKey(idempotencyKey)
+                .persistKey(true)
+                .punchTime(punchTime)
+                .checkIn(state != null && state == 0)
+                .deviceSerial(deviceSerial)
+                .empCode(empCode)
+                .verifyType(verifyType != null ? verifyType : "fingerprint")
+                .rawData(rawData);
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error processing cloud punch: " + e.getMessage());
-            return false;
+    /**
+     * Idempotency key of a pushed punch: the client's own key, the device's
+     * record sequence, or a hash of what identifies the punch.
+     */
+    private static String idempotencyKey(String clientKey, String deviceSerial, Object deviceSequence,
+                                         String empCode, String punchTime, String punchState) {
+        if (clientKey != null && !clientKey.isBlank()) {
+            return boundedKey("k:", clientKey.trim());
         }
+        if (deviceSerial != null && deviceSequence != null) {
+            return boundedKey("s:", deviceSerial + ":" + deviceSequence);
+        }
+        String identity = empCode + "|" + punchTime.trim().replace('T', ' ') + "|" + punchState;
+        return "h:" + UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * Find employee by emp_code
+     * Client-supplied parts are kept as they are up to MAX_KEY_LENGTH and
+     * hashed beyond that.
      */
-    private Employee findEmployee(String empCode) {
-        try {
-            Integer empId = Integer.parseInt(empCode);
-            Optional<Employee> empOpt = employeeRepo.findById(empId);
-            return empOpt.orElse(null);
-        } catch (NumberFormatException e) {
-            return null;
+    private static String boundedKey(String prefix, String key) {
+        return key.length() <= MAX_KEY_LENGTH ? prefix + key
+                : prefix + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String rejectionMessage(PunchOutcome outcome, String empCode, String punchTime) {
+        switch (outcome.getStatus()) {
+            case INVALID_TIME:
+                return "Invalid punch_time format: " + punchTime;
+            case QUEUE_FULL:
+                return "Punch queue is full, please retry";
+            case WRITE_FAILED:
+                return "Punch could not be saved, please retry";
+            case DUPLICATE:
+                return "Duplicate punch";
+            default:
+                return "Employee not found for emp_code: " + empCode;
         }
     }
 
+    private Map<String, Object> failure(BulkPunch punch, String error) {
+        Map<String, Object> failure = new HashMap<>();
+        failure.put("index", punch.index);
+        failure.put("emp_code", punch.empCode);
+        failure.put("punch_time", punch.punchTime);
+        failure.put("error", error);
+        return failure;
+    }
+
     /**
-     * Parse datetime from string
+     * Read {"device_serial": ..., "punches": [{...}, ...]} token by token, so a
+     * large upload is never held as a tree of maps. Full chunks are processed
+     * as soon as the device serial is settled; the last one is left to the
+     * caller.
      */
-    private LocalDateTime parseDateTime(String dateTimeStr) {
-        try {
-            // Handle different formats
-            if (dateTimeStr.contains("T")) {
-                dateTimeStr = dateTimeStr.replace("T", " ");
+    private void parseBulkUpload(InputStream body, BulkUpload upload) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("punches".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                        if (token == JsonToken.START_OBJECT) {
+                            BulkPunch punch = parseBulkPunch(parser);
+                            punch.index = upload.total++;
+                            upload.chunk.add(punch);
+                            if (upload.deviceSerialRead && upload.chunk.size() >= bulkChunkSize) {
+                                processBulkChunk(upload);
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("device_serial".equals(field)) {
+                    upload.deviceSerial = parser.getValueAsString();
+                    upload.deviceSerialRead = true;
+                } else {
+                    parser.skipChildren();
+                }
             }
-            return LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        } catch (Exception e) {
-            return null;
         }
     }
 
-    /**
-     * Safely parse integer
-     */
-    private Integer safeParseInteger(String value) {
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return null;
+    private BulkPunch parseBulkPunch(JsonParser parser) throws IOException {
+        BulkPunch punch = new BulkPunch();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "emp_code":
+                    punch.empCode = parser.getValueAsString();
+                    break;
+                case "punch_time":
+                    punch.punchTime = parser.getValueAsString();
+                    break;
+                case "punch_state":
+                    punch.punchState = parser.getValueAsString();
+                    break;
+                case "verify_type":
+                    punch.verifyType = parser.getValueAsString();
+                    break;
+                case "device_serial":
+                    punch.deviceSerial = parser.getValueAsString();
+                    break;
+                case "device_sequence":
+                    punch.deviceSequence = parser.getValueAsString();
+                    break;
+                case "idempotency_key":
+                    punch.idempotencyKey = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return punch;
+    }
+
+    private static class BulkUpload {
+        String deviceSerial;
+        boolean deviceSerialRead;
+        // Parsed punches not yet processed
+        final List<BulkPunch> chunk = new ArrayList<>();
+        final List<Map<String, Object>> failures = new ArrayList<>();
+        int total;
+        int replayed;
+    }
+
+    private static class BulkPunch {
+        int index;
+        String empCode;
+        String punchTime;
+        String punchState;
+        String verifyType;
+        String deviceSerial;
+        String deviceSequence;
+        String idempotencyKey;
+
+        @Override
+        public String toString() {
+            return "{emp_code=" + empCode + ", punch_time=" + punchTime + ", punch_state=" + punchState +
+                    ", verify_type=" + verifyType + "}";
         }
     }
 }
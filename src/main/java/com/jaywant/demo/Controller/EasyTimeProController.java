@@ -5,6 +5,7 @@ import com.jaywant.demo.Entity.SubadminTerminal;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
 import com.jaywant.demo.Service.EasyTimeProIntegrationService;
 import com.jaywant.demo.Service.EasyTimeProApiService;
+import com.jaywant.demo.Service.EasyTimeTokenCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -26,6 +27,9 @@ public class EasyTimeProController {
     @Autowired
     private EasyTimeProApiService apiService;
 
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
     @Autowired
     private SubadminTerminalRepo terminalRepo;
 
@@ -57,6 +61,7 @@ public class EasyTimeProController {
             }
 
             SubadminTerminal savedTerminal = terminalRepo.save(terminal);
+            tokenCache.put(savedTerminal, savedTerminal.getApiToken());
             return ResponseEntity.ok(savedTerminal);
 
         } catch (Exception e) {
@@ -193,9 +198,14 @@ public class EasyTimeProController {
             SubadminTerminal terminal = terminalRepo.findByTerminalSerial(terminalSerial)
                     .orElseThrow(() -> new RuntimeException("Terminal not found"));
 
-            boolean connectionTest = apiService.testConnection(
-                    terminal.getEasytimeApiUrl(),
-                    terminal.getApiToken());
+            boolean connectionTest;
+            try {
+                connectionTest = apiService.testConnection(
+                        terminal.getEasytimeApiUrl(),
+                        tokenCache.getToken(terminal));
+            } catch (Exception e) {
+                connectionTest = false;
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("terminalSerial", terminalSerial);
@@ -243,6 +253,9 @@ public class EasyTimeProController {
             }
 
             SubadminTerminal updatedTerminal = terminalRepo.save(terminal);
+            if (updateData.containsKey("easytimeApiUrl") || updateData.containsKey("apiToken")) {
+                tokenCache.invalidate(terminalSerial);
+            }
             return ResponseEntity.ok(updatedTerminal);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -271,4 +284,15 @@ public class EasyTimeProController {
                     .body("Error fetching terminal status: " + e.getMessage());
         }
     }
+
+    /**
+     * HTTP connection pool and API token cache
+     */
+    @GetMapping("/http-stats")
+    public ResponseEntity<?> getHttpStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pool", apiService.getPoolStats());
+        stats.put("tokens", tokenCache.getStats());
+        return ResponseEntity.ok(stats);
+    }
 }
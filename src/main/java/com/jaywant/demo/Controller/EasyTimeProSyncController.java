@@ -1,5 +1,7 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Entity.BackfillJob;
+import com.jaywant.demo.Service.BackfillService;
 import com.jaywant.demo.Service.EasyTimeProSyncService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +23,9 @@ public class EasyTimeProSyncController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private BackfillService backfillService;
+
     /**
      * Manual sync trigger
      */
@@ -199,40 +204,20 @@ public class EasyTimeProSyncController {
 
             String dbName = database != null ? database : "new_hrm";
 
-            String sql = String.format("""
-                SELECT 
-                    id, emp_code, punch_time, punch_state, verify_type, 
-                    terminal_sn, terminal_alias, area_alias, source, 
-                    upload_time, emp_id, terminal_id, company_id
-                FROM %s.iclock_transaction 
-                WHERE DATE(punch_time) BETWEEN ? AND ?
-                ORDER BY punch_time ASC
-                """, dbName);
-
-            List<Map<String, Object>> transactions = jdbcTemplate.queryForList(sql, startDate, endDate);
-
-            // Process each transaction (this would use the sync service logic)
-            int processedCount = 0;
-            List<String> errors = new ArrayList<>();
-
-            for (Map<String, Object> transaction : transactions) {
-                try {
-                    // Here you would call the sync service to process each transaction
-                    // For now, we'll just count them
-                    processedCount++;
-                } catch (Exception e) {
-                    errors.add("Error processing transaction " + transaction.get("id") + ": " + e.getMessage());
-                }
-            }
+            // Runs in the background, one chunk per terminal and day
+            BackfillJob job = backfillService.start(BackfillJob.Source.ICLOCK, dbName, "iclock_transaction",
+                    LocalDate.parse(startDate), LocalDate.parse(endDate), null);
 
             Map<String, Object> result = new HashMap<>();
-            result.put("success", true);
+            result.put("success", job.getStatus() != BackfillJob.JobStatus.FAILED);
             result.put("database", dbName);
             result.put("startDate", startDate);
             result.put("endDate", endDate);
-            result.put("totalTransactions", transactions.size());
-            result.put("processedCount", processedCount);
-            result.put("errors", errors);
+            result.put("backfillJobId", job.getId());
+            result.put("status", job.getStatus());
+            result.put("totalChunks", job.getTotalChunks());
+            result.put("error", job.getError());
+            result.put("progressUrl", "/api/backfill/" + job.getId());
             result.put("syncTime", LocalDateTime.now());
 
             return ResponseEntity.ok(result);
@@ -1,7 +1,9 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Service.DeviceMappingChangedEvent;
 import com.jaywant.demo.Service.EnhancedBiometricSyncService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
@@ -20,6 +22,9 @@ public class EnhancedBiometricController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Trigger manual sync with enhanced logging
      */
@@ -229,6 +234,7 @@ public class EnhancedBiometricController {
             jdbcTemplate.update(insertSql, hrmEmployeeId, subadminId, 
                               machineEmpId != null ? machineEmpId : hrmEmployeeId, 
                               terminalSerial, empCode);
+            eventPublisher.publishEvent(DeviceMappingChangedEvent.terminalChanged(terminalSerial));
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -1,7 +1,9 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Service.DeviceMappingChangedEvent;
 import com.jaywant.demo.Service.EnhancedBiometricSyncService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +23,9 @@ public class IclockDataVerificationController {
     @Autowired
     private EnhancedBiometricSyncService syncService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Verify iclock_transaction table structure and data
      */
@@ -361,6 +366,7 @@ public class IclockDataVerificationController {
             jdbcTemplate.update(insertSql, hrmEmployeeId, subadminId, 
                               machineEmpId != null ? machineEmpId : hrmEmployeeId, 
                               terminalSerial, empCode);
+            eventPublisher.publishEvent(DeviceMappingChangedEvent.terminalChanged(terminalSerial));
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
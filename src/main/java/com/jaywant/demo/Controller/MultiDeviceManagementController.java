@@ -1,10 +1,14 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Service.DeviceDailyStats;
+import com.jaywant.demo.Service.PunchBatchWriter;
+import com.jaywant.demo.Service.PunchRateMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -17,6 +21,15 @@ public class MultiDeviceManagementController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private PunchBatchWriter punchWriter;
+
+    @Autowired
+    private DeviceDailyStats dailyStats;
+
+    @Autowired
+    private PunchRateMetrics rateMetrics;
+
     /**
      * Get all registered devices and their status
      */
@@ -108,44 +121,19 @@ public class MultiDeviceManagementController {
     }
 
     /**
-     * Get today's statistics for all devices
+     * Get today's statistics for all devices, from the counters kept on ingest
      */
     @GetMapping("/stats/today")
     public ResponseEntity<?> getTodayStats() {
         try {
-            String sql = """
-                SELECT 
-                    terminal_sn,
-                    terminal_alias,
-                    COUNT(*) as punches_today,
-                    COUNT(DISTINCT emp_code) as unique_employees,
-                    MIN(punch_time) as first_punch,
-                    MAX(punch_time) as last_punch
-                FROM easywdms.iclock_transaction 
-                WHERE DATE(punch_time) = CURDATE()
-                GROUP BY terminal_sn, terminal_alias
-                ORDER BY punches_today DESC
-                """;
-
-            List<Map<String, Object>> stats = jdbcTemplate.queryForList(sql);
-
-            // Get total stats
-            String totalSql = """
-                SELECT 
-                    COUNT(*) as total_punches_today,
-                    COUNT(DISTINCT emp_code) as total_unique_employees,
-                    COUNT(DISTINCT terminal_sn) as active_devices_today
-                FROM easywdms.iclock_transaction 
-                WHERE DATE(punch_time) = CURDATE()
-                """;
-
-            Map<String, Object> totals = jdbcTemplate.queryForMap(totalSql);
+            LocalDate today = LocalDate.now();
+            Map<String, Object> stats = dailyStats.getDay(today);
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
-                "device_stats", stats,
-                "totals", totals,
-                "date", LocalDateTime.now().toLocalDate()
+                "device_stats", stats.get("device_stats"),
+                "totals", stats.get("totals"),
+                "date", today
             ));
 
         } catch (Exception e) {
@@ -220,6 +208,23 @@ public class MultiDeviceManagementController {
         }
     }
 
+    /**
+     * Punch rates per terminal and subadmin over the last hour and 24 hours,
+     * from in-memory per-minute buckets. With ?terminal=, also that terminal's
+     * punches per minute for the last ?minutes= (default 60).
+     */
+    @GetMapping("/rates")
+    public ResponseEntity<?> getPunchRates(@RequestParam(required = false) String terminal,
+                                           @RequestParam(defaultValue = "60") int minutes) {
+        Map<String, Object> response = new HashMap<>(rateMetrics.getRates());
+        response.put("success", true);
+        if (terminal != null) {
+            response.put("series", rateMetrics.getTerminalSeries(terminal, minutes));
+        }
+        response.put("checked_at", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Get device sync status and recommendations
      */
@@ -252,6 +257,7 @@ public class MultiDeviceManagementController {
                 "recent_activity", recentActivity,
                 "recommendations", recommendations,
                 "sync_service_status", "RUNNING",
+                "punch_writer", punchWriter.getStats(),
                 "last_checked", LocalDateTime.now()
             ));
 
@@ -0,0 +1,105 @@
+package com.jaywant.demo.Controller;
+
+import com.jaywant.demo.Service.PunchEngine;
+import com.jaywant.demo.Service.RawPunchJournal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/punch-journal")
+@CrossOrigin(origins = "*")
+public class PunchJournalController {
+
+    @Autowired
+    private RawPunchJournal journal;
+
+    @Autowired
+    private PunchEngine punchEngine;
+
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        return ResponseEntity.ok(journal.getStats());
+    }
+
+    /**
+     * Journaled punches with their raw payloads, e.g.
+     * ?from=2025-08-01T00:00&to=2025-08-02T00:00&terminal=CQUJ123
+     */
+    @GetMapping("/records")
+    public ResponseEntity<?> getRecords(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String terminal,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            List<Map<String, Object>> records = new ArrayList<>();
+            for (RawPunchJournal.JournalRecord record : journal.read(parse(from), parse(to), terminal,
+                    Math.max(1, Math.min(limit, 1000)))) {
+                records.add(record.toMap());
+            }
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "count", records.size(),
+                    "records", records));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        }
+    }
+
+    /**
+     * The journaled punch behind an attendance row's raw_data, e.g.
+     * ?ref=journal:12:40960
+     */
+    @GetMapping("/record")
+    public ResponseEntity<?> getRecord(@RequestParam String ref) {
+        RawPunchJournal.JournalRecord record = journal.lookup(ref);
+        if (record == null) {
+            return ResponseEntity.status(404).body(Map.of(
+                    "success", false,
+                    "error", "No journal record for " + ref));
+        }
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "record", record.toMap()));
+    }
+
+    /**
+     * Rebuild attendance from the journal. Body: from, to, optional terminal.
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<?> replay(@RequestBody Map<String, String> request) {
+        try {
+            LocalDateTime from = parse(request.get("from"));
+            LocalDateTime to = parse(request.get("to"));
+            if (from == null || to == null) {
+                return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "error", "from and to are required"));
+            }
+            Map<String, Integer> outcomes = punchEngine.replayJournal(from, to, request.get("terminal"));
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "outcomes", outcomes));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        }
+    }
+
+    private static LocalDateTime parse(String value) {
+        return value == null || value.isBlank() ? null : LocalDateTime.parse(value);
+    }
+}
@@ -7,6 +7,7 @@ import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
 import com.jaywant.demo.Repo.EmployeeRepo;
 import com.jaywant.demo.Service.EasyTimeProApiService;
+import com.jaywant.demo.Service.EasyTimeTokenCache;
 import com.jaywant.demo.Service.RealTimeAttendanceSyncService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -25,6 +26,9 @@ public class RealTimeBiometricController {
     @Autowired
     private EasyTimeProApiService easyTimeProApiService;
 
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
     @Autowired
     private RealTimeAttendanceSyncService syncService;
 
@@ -81,6 +85,7 @@ public class RealTimeBiometricController {
             terminal.setStatus(SubadminTerminal.TerminalStatus.ACTIVE);
 
             SubadminTerminal savedTerminal = terminalRepo.save(terminal);
+            tokenCache.put(savedTerminal, token);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -134,8 +139,9 @@ public class RealTimeBiometricController {
                     empCode, employee.getFirstName(), employee.getLastName(),
                     nextMachineId, 1, 1);
 
-            Map<String, Object> easytimeEmployee = easyTimeProApiService.registerEmployee(
-                    terminal.getEasytimeApiUrl(), terminal.getApiToken(), employeeData);
+            Map<String, Object> easytimeEmployee = tokenCache.withToken(terminal,
+                    token -> easyTimeProApiService.registerEmployee(terminal.getEasytimeApiUrl(), token,
+                            employeeData));
 
             if (easytimeEmployee == null) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
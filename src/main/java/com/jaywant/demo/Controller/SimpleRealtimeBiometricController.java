@@ -1,5 +1,7 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Service.AdaptiveSyncScheduler;
+import com.jaywant.demo.Service.IclockOutboxConsumer;
 import com.jaywant.demo.Service.SimpleRealtimeBiometricService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -15,6 +17,12 @@ public class SimpleRealtimeBiometricController {
     @Autowired
     private SimpleRealtimeBiometricService realtimeService;
 
+    @Autowired
+    private IclockOutboxConsumer outboxConsumer;
+
+    @Autowired
+    private AdaptiveSyncScheduler syncScheduler;
+
     /**
      * Get sync statistics
      */
@@ -72,4 +80,56 @@ public class SimpleRealtimeBiometricController {
                     "error", e.getMessage()));
         }
     }
+
+    /**
+     * Outbox consumer offsets and counters
+     */
+    @GetMapping("/outbox/stats")
+    public ResponseEntity<?> getOutboxStats() {
+        return ResponseEntity.ok(outboxConsumer.getStats());
+    }
+
+    /**
+     * Re-read the outbox of a database from the given offset
+     */
+    @PostMapping("/outbox/replay")
+    public ResponseEntity<?> replayOutbox(@RequestParam(defaultValue = "easywdms") String database,
+            @RequestParam long fromOffset) {
+        try {
+            outboxConsumer.replayFrom(database, fromOffset);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Outbox " + database + " will be replayed from offset " + fromOffset));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Wake the outbox consumer, e.g. from the device push endpoint
+     */
+    @PostMapping("/outbox/wakeup")
+    public ResponseEntity<?> wakeupOutbox() {
+        outboxConsumer.wakeup();
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+
+    /**
+     * Current poll interval of every terminal and source database
+     */
+    @GetMapping("/scheduler")
+    public ResponseEntity<?> getSchedulerStats() {
+        return ResponseEntity.ok(syncScheduler.getStats());
+    }
+
+    /**
+     * Poll one terminal or database now, e.g. key=iclock:easywdms
+     */
+    @PostMapping("/scheduler/wakeup")
+    public ResponseEntity<?> wakeupPoller(@RequestParam String key) {
+        syncScheduler.wakeup(key);
+        return ResponseEntity.ok(Map.of("success", true));
+    }
 }
@@ -1,6 +1,9 @@
 package com.jaywant.demo.Controller;
 
+import com.jaywant.demo.Service.DeviceMappingChangedEvent;
+import com.jaywant.demo.Service.TerminalChangedEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
@@ -16,6 +19,9 @@ public class TerminalSetupController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Register your F22 device in the system
      */
@@ -36,6 +42,7 @@ public class TerminalSetupController {
                         WHERE terminal_serial = ?
                         """;
                 jdbcTemplate.update(updateSql, terminalSerial);
+                eventPublisher.publishEvent(TerminalChangedEvent.reload(terminalSerial));
 
                 return ResponseEntity.ok(Map.of(
                         "success", true,
@@ -56,6 +63,7 @@ public class TerminalSetupController {
                         "F22 Biometric Device",
                         "Office Main Entrance",
                         "ACTIVE");
+                eventPublisher.publishEvent(TerminalChangedEvent.reload(terminalSerial));
 
                 return ResponseEntity.ok(Map.of(
                         "success", true,
@@ -118,6 +126,7 @@ public class TerminalSetupController {
                     hrmEmployeeId, // Use HRM employee ID as machine ID for simplicity
                     terminalSerial,
                     empCode);
+            eventPublisher.publishEvent(DeviceMappingChangedEvent.terminalChanged(terminalSerial));
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
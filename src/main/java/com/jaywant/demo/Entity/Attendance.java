@@ -17,12 +17,16 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.TableGenerator;
 
 @Entity
 public class Attendance {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Pooled ids from id_sequences so Hibernate can batch inserts (IDENTITY cannot)
+  @GeneratedValue(strategy = GenerationType.TABLE, generator = "attendance_id")
+  @TableGenerator(name = "attendance_id", table = "id_sequences", pkColumnName = "sequence_name",
+          valueColumnName = "next_val", pkColumnValue = "attendance", allocationSize = 50)
   private Long id;
 
   private String date;
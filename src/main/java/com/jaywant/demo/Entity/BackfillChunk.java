@@ -0,0 +1,149 @@
+package com.jaywant.demo.Entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One terminal's punches of one day within a {@link BackfillJob}. A chunk is
+ * marked DONE only after its punches are written, so after a restart the
+ * job picks up at the chunks that are still PENDING.
+ */
+@Entity
+@Table(name = "backfill_chunk", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_backfill_chunk", columnNames = { "job_id", "terminal_serial", "punch_day" })
+}, indexes = {
+        @Index(name = "idx_backfill_chunk_job_status", columnList = "job_id, status")
+})
+public class BackfillChunk {
+
+    public enum ChunkStatus {
+        PENDING, DONE, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "backfill_chunk_id")
+    @TableGenerator(name = "backfill_chunk_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "backfill_chunk", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "terminal_serial", nullable = false, length = 50)
+    private String terminalSerial;
+
+    @Column(name = "punch_day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private ChunkStatus status = ChunkStatus.PENDING;
+
+    // Transactions read and punches written (not duplicates, unresolved or failed)
+    @Column(name = "rows_read", nullable = false)
+    private Integer rowsRead = 0;
+
+    @Column(name = "punches", nullable = false)
+    private Integer punches = 0;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Constructors
+    public BackfillChunk() {
+    }
+
+    public BackfillChunk(Long jobId, String terminalSerial, LocalDate day) {
+        this.jobId = jobId;
+        this.terminalSerial = terminalSerial;
+        this.day = day;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getTerminalSerial() {
+        return terminalSerial;
+    }
+
+    public void setTerminalSerial(String terminalSerial) {
+        this.terminalSerial = terminalSerial;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public ChunkStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ChunkStatus status) {
+        this.status = status;
+    }
+
+    public Integer getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(Integer rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public Integer getPunches() {
+        return punches;
+    }
+
+    public void setPunches(Integer punches) {
+        this.punches = punches;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
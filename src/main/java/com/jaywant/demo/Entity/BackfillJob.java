@@ -0,0 +1,169 @@
+package com.jaywant.demo.Entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A historical re-sync of a date range, split into {@link BackfillChunk}s of
+ * one terminal and one day each.
+ */
+@Entity
+@Table(name = "backfill_job", indexes = {
+        @Index(name = "idx_backfill_job_status", columnList = "status")
+})
+public class BackfillJob {
+
+    public enum Source {
+        // iclock_transaction rows in a local database
+        ICLOCK,
+        // EasyTime Pro API of each terminal
+        EASYTIME
+    }
+
+    public enum JobStatus {
+        PLANNING, RUNNING, COMPLETED, COMPLETED_WITH_ERRORS, FAILED, CANCELLED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "source", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Source source;
+
+    // ICLOCK only: database and table holding the transactions
+    @Column(name = "source_database", length = 64)
+    private String sourceDatabase;
+
+    @Column(name = "source_table", length = 64)
+    private String sourceTable;
+
+    @Column(name = "from_date", nullable = false)
+    private LocalDate fromDate;
+
+    @Column(name = "to_date", nullable = false)
+    private LocalDate toDate;
+
+    @Column(name = "status", nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status = JobStatus.PLANNING;
+
+    @Column(name = "total_chunks", nullable = false)
+    private Integer totalChunks = 0;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Constructors
+    public BackfillJob() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public BackfillJob(Source source, LocalDate fromDate, LocalDate toDate) {
+        this();
+        this.source = source;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+    }
+
+    public boolean isFinished() {
+        return status != JobStatus.PLANNING && status != JobStatus.RUNNING;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public void setSource(Source source) {
+        this.source = source;
+    }
+
+    public String getSourceDatabase() {
+        return sourceDatabase;
+    }
+
+    public void setSourceDatabase(String sourceDatabase) {
+        this.sourceDatabase = sourceDatabase;
+    }
+
+    public String getSourceTable() {
+        return sourceTable;
+    }
+
+    public void setSourceTable(String sourceTable) {
+        this.sourceTable = sourceTable;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    public void setToDate(LocalDate toDate) {
+        this.toDate = toDate;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public Integer getTotalChunks() {
+        return totalChunks;
+    }
+
+    public void setTotalChunks(Integer totalChunks) {
+        this.totalChunks = totalChunks;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
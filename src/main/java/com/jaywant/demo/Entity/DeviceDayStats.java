@@ -0,0 +1,138 @@
+package com.jaywant.demo.Entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot of one terminal's punch counters for one day, written by
+ * DeviceDailyStats so the in-memory counters survive a restart. The distinct
+ * employees are kept as a HyperLogLog sketch, not a list.
+ */
+@Entity
+@Table(name = "device_day_stats", indexes = {
+        @Index(name = "idx_device_day_stats_day", columnList = "punch_day")
+})
+public class DeviceDayStats {
+
+    // punch_day + ":" + terminal_serial
+    @Id
+    @Column(name = "stats_key", length = 80)
+    private String statsKey;
+
+    @Column(name = "terminal_serial", nullable = false, length = 50)
+    private String terminalSerial;
+
+    @Column(name = "punch_day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "punches", nullable = false)
+    private Long punches = 0L;
+
+    @Column(name = "first_punch")
+    private LocalDateTime firstPunch;
+
+    @Column(name = "last_punch")
+    private LocalDateTime lastPunch;
+
+    @Lob
+    @Column(name = "employee_sketch")
+    private byte[] employeeSketch;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public DeviceDayStats() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public DeviceDayStats(String terminalSerial, LocalDate day) {
+        this();
+        this.statsKey = day + ":" + terminalSerial;
+        this.terminalSerial = terminalSerial;
+        this.day = day;
+    }
+
+    // Lifecycle callbacks
+    @PreUpdate
+    public void preUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getStatsKey() {
+        return statsKey;
+    }
+
+    public void setStatsKey(String statsKey) {
+        this.statsKey = statsKey;
+    }
+
+    public String getTerminalSerial() {
+        return terminalSerial;
+    }
+
+    public void setTerminalSerial(String terminalSerial) {
+        this.terminalSerial = terminalSerial;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public Long getPunches() {
+        return punches;
+    }
+
+    public void setPunches(Long punches) {
+        this.punches = punches;
+    }
+
+    public LocalDateTime getFirstPunch() {
+        return firstPunch;
+    }
+
+    public void setFirstPunch(LocalDateTime firstPunch) {
+        this.firstPunch = firstPunch;
+    }
+
+    public LocalDateTime getLastPunch() {
+        return lastPunch;
+    }
+
+    public void setLastPunch(LocalDateTime lastPunch) {
+        this.lastPunch = lastPunch;
+    }
+
+    public byte[] getEmployeeSketch() {
+        return employeeSketch;
+    }
+
+    public void setEmployeeSketch(byte[] employeeSketch) {
+        this.employeeSketch = employeeSketch;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceDayStats{" +
+                "terminalSerial='" + terminalSerial + '\'' +
+                ", day=" + day +
+                ", punches=" + punches +
+                ", firstPunch=" + firstPunch +
+                ", lastPunch=" + lastPunch +
+                '}';
+    }
+}
@@ -8,9 +8,12 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 
+import com.jaywant.demo.Service.DeviceMappingEntityListener;
+
 import jakarta.persistence.*;
 
 @Entity
+@EntityListeners(DeviceMappingEntityListener.class)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Employee {
 
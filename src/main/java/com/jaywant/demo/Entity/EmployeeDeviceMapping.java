@@ -1,10 +1,12 @@
 package com.jaywant.demo.Entity;
 
+import com.jaywant.demo.Service.DeviceMappingEntityListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "employee_device_mapping")
+@EntityListeners(DeviceMappingEntityListener.class)
 public class EmployeeDeviceMapping {
 
     @Id
@@ -8,7 +8,9 @@ import java.time.LocalDateTime;
 public class NotificationLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "notification_log_id")
+    @TableGenerator(name = "notification_log_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "notification_log", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -0,0 +1,73 @@
+package com.jaywant.demo.Entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Idempotency key of an accepted pushed punch ("source|key"), so device and
+ * app retries are still recognised after a restart. Rows are always new when
+ * saved, which lets saveAll insert them in JDBC batches without a lookup.
+ */
+@Entity
+@Table(name = "punch_idempotency_key", indexes = @Index(name = "idx_punch_idempotency_date", columnList = "punch_date"))
+public class PunchIdempotencyKey implements Persistable<String> {
+
+    @Id
+    @Column(name = "idempotency_key", length = 191)
+    private String idempotencyKey;
+
+    @Column(name = "punch_date", nullable = false)
+    private LocalDate punchDate;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public PunchIdempotencyKey() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public PunchIdempotencyKey(String idempotencyKey, LocalDate punchDate) {
+        this();
+        this.idempotencyKey = idempotencyKey;
+        this.punchDate = punchDate;
+    }
+
+    @Override
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    // Getters and Setters
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public LocalDate getPunchDate() {
+        return punchDate;
+    }
+
+    public void setPunchDate(LocalDate punchDate) {
+        this.punchDate = punchDate;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
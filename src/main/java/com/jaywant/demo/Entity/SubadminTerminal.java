@@ -1,10 +1,14 @@
 package com.jaywant.demo.Entity;
 
+import com.jaywant.demo.Service.DeviceMappingEntityListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "subadmin_terminals")
+@Table(name = "subadmin_terminals", indexes = {
+        @Index(name = "idx_subadmin_terminals_status", columnList = "status")
+})
+@EntityListeners(DeviceMappingEntityListener.class)
 public class SubadminTerminal {
 
     @Id
@@ -39,6 +43,11 @@ public class SubadminTerminal {
     @Column(name = "last_sync_at")
     private LocalDateTime lastSyncAt;
 
+    // Last IP the device was seen on. Written only by
+    // SubadminTerminalRepo.updateDeviceIp so entity saves never revert it.
+    @Column(name = "device_ip", length = 45, updatable = false)
+    private String deviceIp;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -158,6 +167,14 @@ public class SubadminTerminal {
         this.lastSyncAt = lastSyncAt;
     }
 
+    public String getDeviceIp() {
+        return deviceIp;
+    }
+
+    public void setDeviceIp(String deviceIp) {
+        this.deviceIp = deviceIp;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -200,6 +217,7 @@ public class SubadminTerminal {
                 ", terminalName='" + terminalName + '\'' +
                 ", location='" + location + '\'' +
                 ", status=" + status +
+                ", deviceIp='" + deviceIp + '\'' +
                 ", lastSyncAt=" + lastSyncAt +
                 '}';
     }
@@ -0,0 +1,74 @@
+package com.jaywant.demo.Entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Durable high-water mark for polling an external table by id, one row per
+ * source (e.g. "iclock:easywdms").
+ */
+@Entity
+@Table(name = "sync_cursor")
+public class SyncCursor {
+
+    @Id
+    @Column(name = "source_name", length = 100)
+    private String sourceName;
+
+    @Column(name = "last_id", nullable = false)
+    private Long lastId = 0L;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public SyncCursor() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public SyncCursor(String sourceName, Long lastId) {
+        this();
+        this.sourceName = sourceName;
+        this.lastId = lastId;
+    }
+
+    // Lifecycle callbacks
+    @PreUpdate
+    public void preUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Long lastId) {
+        this.lastId = lastId;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncCursor{" +
+                "sourceName='" + sourceName + '\'' +
+                ", lastId=" + lastId +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
@@ -0,0 +1,7 @@
+package com.jaywant.demo.Exception;
+
+public class PunchQueueFullException extends RuntimeException {
+  public PunchQueueFullException(String message) {
+    super(message);
+  }
+}
@@ -1,12 +1,15 @@
 package com.jaywant.demo.Repo;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.jaywant.demo.Entity.Attendance;
 import com.jaywant.demo.Entity.Employee;
@@ -58,4 +61,19 @@ public interface AttendanceRepo extends JpaRepository<Attendance, Long> {
 
     List<Attendance> findByEmployeeAndDateStartingWith(Employee employee, String month);
 
+    // Attendance rows for a batch of employees and days (callers match the pairs)
+    @Query("SELECT a FROM Attendance a WHERE a.employee.empId IN :empIds AND a.date IN :dates ORDER BY a.id")
+    List<Attendance> findByEmployeeIdsAndDates(@Param("empIds") Collection<Integer> empIds,
+            @Param("dates") Collection<String> dates);
+
+    // Ids and raw_data of rows referencing a punch journal segment, prefix e.g. "journal:12:"
+    @Query("SELECT a.id, a.rawData FROM Attendance a WHERE a.rawData LIKE CONCAT(:prefix, '%')")
+    List<Object[]> findRawDataReferences(@Param("prefix") String prefix);
+
+    // Swap a journal reference for its payload, unless the row has moved on
+    @Modifying
+    @Transactional
+    @Query("UPDATE Attendance a SET a.rawData = :rawData WHERE a.id = :id AND a.rawData = :reference")
+    int replaceRawData(@Param("id") Long id, @Param("reference") String reference, @Param("rawData") String rawData);
+
 }
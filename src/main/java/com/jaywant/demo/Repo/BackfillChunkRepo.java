@@ -0,0 +1,22 @@
+package com.jaywant.demo.Repo;
+
+import com.jaywant.demo.Entity.BackfillChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BackfillChunkRepo extends JpaRepository<BackfillChunk, Long> {
+
+    // Newest days first, so recent history is usable before the oldest
+    List<BackfillChunk> findByJobIdAndStatusOrderByDayDescTerminalSerialAsc(Long jobId,
+            BackfillChunk.ChunkStatus status);
+
+    long countByJobIdAndStatus(Long jobId, BackfillChunk.ChunkStatus status);
+
+    @Query("SELECT COALESCE(SUM(c.rowsRead), 0), COALESCE(SUM(c.punches), 0) FROM BackfillChunk c WHERE c.jobId = :jobId")
+    List<Object[]> sumRowsAndPunches(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,16 @@
+package com.jaywant.demo.Repo;
+
+import com.jaywant.demo.Entity.BackfillJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BackfillJobRepo extends JpaRepository<BackfillJob, Long> {
+
+    List<BackfillJob> findByStatusIn(Collection<BackfillJob.JobStatus> statuses);
+
+    List<BackfillJob> findTop50ByOrderByIdDesc();
+}
@@ -0,0 +1,23 @@
+package com.jaywant.demo.Repo;
+
+import com.jaywant.demo.Entity.DeviceDayStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DeviceDayStatsRepo extends JpaRepository<DeviceDayStats, String> {
+
+    List<DeviceDayStats> findByDayGreaterThanEqual(LocalDate day);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DeviceDayStats s WHERE s.day < :day")
+    int deleteOlderThan(@Param("day") LocalDate day);
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,10 @@ public interface EmployeeDeviceMappingRepo extends JpaRepository<EmployeeDeviceM
         // Find by employee code and terminal serial
         Optional<EmployeeDeviceMapping> findByEmpCodeAndTerminalSerial(String empCode, String terminalSerial);
 
+        // Find many employee codes of one terminal at once (bulk uploads)
+        List<EmployeeDeviceMapping> findByTerminalSerialAndEmpCodeIn(String terminalSerial,
+                        Collection<String> empCodes);
+
         // Find by EasyTime employee ID and terminal serial (unique combination)
         Optional<EmployeeDeviceMapping> findByEasytimeEmployeeIdAndTerminalSerial(
                         Integer easytimeEmployeeId, String terminalSerial);
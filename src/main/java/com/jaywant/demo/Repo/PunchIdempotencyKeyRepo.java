@@ -0,0 +1,21 @@
+package com.jaywant.demo.Repo;
+
+import com.jaywant.demo.Entity.PunchIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+@Repository
+public interface PunchIdempotencyKeyRepo extends JpaRepository<PunchIdempotencyKey, String> {
+
+    // Drop keys of punch days that fell out of the retention window
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PunchIdempotencyKey k WHERE k.punchDate < :before")
+    int deleteByPunchDateBefore(@Param("before") LocalDate before);
+}
@@ -2,9 +2,11 @@ package com.jaywant.demo.Repo;
 
 import com.jaywant.demo.Entity.SubadminTerminal;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -25,7 +27,7 @@ public interface SubadminTerminalRepo extends JpaRepository<SubadminTerminal, Lo
     // Find active terminals for a subadmin
     List<SubadminTerminal> findBySubadminIdAndStatus(Integer subadminId, SubadminTerminal.TerminalStatus status);
 
-    // Find all active terminals
+    // Find all active terminals (served by idx_subadmin_terminals_status)
     List<SubadminTerminal> findByStatus(SubadminTerminal.TerminalStatus status);
 
     // Check if terminal serial exists
@@ -64,4 +66,10 @@ public interface SubadminTerminalRepo extends JpaRepository<SubadminTerminal, Lo
     // Find terminals needing maintenance
     @Query("SELECT st FROM SubadminTerminal st WHERE st.status = 'ERROR' OR st.status = 'MAINTENANCE'")
     List<SubadminTerminal> findTerminalsNeedingMaintenance();
+
+    // Record the IP a device was last seen on (bulk update, no entity callbacks)
+    @Modifying
+    @Transactional
+    @Query("UPDATE SubadminTerminal st SET st.deviceIp = :deviceIp WHERE st.terminalSerial = :terminalSerial")
+    int updateDeviceIp(@Param("terminalSerial") String terminalSerial, @Param("deviceIp") String deviceIp);
 }
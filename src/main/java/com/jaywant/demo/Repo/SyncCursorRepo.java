@@ -0,0 +1,9 @@
+package com.jaywant.demo.Repo;
+
+import com.jaywant.demo.Entity.SyncCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SyncCursorRepo extends JpaRepository<SyncCursor, String> {
+}
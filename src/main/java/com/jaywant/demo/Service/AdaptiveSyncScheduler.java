@@ -0,0 +1,361 @@
+package com.jaywant.demo.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the biometric pollers (iclock databases, EasyTime terminals) on
+ * intervals that follow their traffic instead of fixed rates.
+ *
+ * After every poll the next interval is worked out from what the poll saw:
+ * a backlog polls again at the minimum interval, an empty poll doubles the
+ * interval up to the maximum, and otherwise the interval is set so that about
+ * targetPunchesPerPoll punches arrive between polls, using a moving average
+ * of the arrival rate. Inside a shift window a poller that is seeing punches
+ * is kept at or below shiftMaxIntervalMs. A failed poll backs off like an
+ * empty one.
+ */
+@Service
+public class AdaptiveSyncScheduler {
+
+    // Weight of the latest poll in the arrival-rate average
+    private static final double RATE_ALPHA = 0.3;
+
+    // Below this many punches per minute a poller counts as quiet
+    private static final double ACTIVE_RATE_PER_MINUTE = 0.05;
+
+    @Value("${biometric.scheduler.workers:4}")
+    private int workers;
+
+    @Value("${biometric.scheduler.min-interval-ms:2000}")
+    private long minIntervalMs;
+
+    @Value("${biometric.scheduler.max-interval-ms:60000}")
+    private long maxIntervalMs;
+
+    @Value("${biometric.scheduler.target-punches-per-poll:10}")
+    private int targetPunchesPerPoll;
+
+    // Local times when employees punch in bulk, e.g. 08:30-10:00,17:30-19:30
+    @Value("${biometric.scheduler.shift-windows:08:00-10:30,12:30-14:30,17:00-20:00}")
+    private String shiftWindows;
+
+    @Value("${biometric.scheduler.shift-max-interval-ms:10000}")
+    private long shiftMaxIntervalMs;
+
+    /**
+     * One poll of a terminal or source database.
+     */
+    public interface PollTask {
+        PollResult poll() throws Exception;
+    }
+
+    /**
+     * What a poll saw: how many new punches, and whether it stopped before
+     * reading everything that is waiting.
+     */
+    public static class PollResult {
+        private final int punches;
+        private final boolean backlog;
+
+        private PollResult(int punches, boolean backlog) {
+            this.punches = punches;
+            this.backlog = backlog;
+        }
+
+        public static PollResult of(int punches, boolean backlog) {
+            return new PollResult(Math.max(punches, 0), backlog);
+        }
+
+        public static PollResult idle() {
+            return new PollResult(0, false);
+        }
+
+        public int getPunches() {
+            return punches;
+        }
+
+        public boolean isBacklog() {
+            return backlog;
+        }
+    }
+
+    private final Map<String, Poller> pollers = new ConcurrentHashMap<>();
+    private final List<LocalTime[]> windows = new ArrayList<>();
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        for (String window : shiftWindows.split(",")) {
+            String[] bounds = window.trim().split("-");
+            if (bounds.length != 2) {
+                continue;
+            }
+            try {
+                windows.add(new LocalTime[] { LocalTime.parse(bounds[0].trim()), LocalTime.parse(bounds[1].trim()) });
+            } catch (Exception e) {
+                System.err.println("❌ Invalid shift window: " + window);
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(workers, runnable -> {
+            Thread thread = new Thread(runnable, "adaptive-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Start polling under this key with the global maximum interval. Does
+     * nothing if the key is already registered.
+     */
+    public void register(String key, long initialIntervalMs, PollTask task) {
+        register(key, initialIntervalMs, maxIntervalMs, task);
+    }
+
+    /**
+     * Start polling under this key, never waiting longer than maxIntervalMs
+     * between polls. The first poll runs at a random point within the initial
+     * interval so pollers registered together do not all fire at once.
+     */
+    public void register(String key, long initialIntervalMs, long maxIntervalMs, PollTask task) {
+        Poller poller = new Poller(key, task, Math.max(maxIntervalMs, minIntervalMs),
+                initialIntervalMs);
+        if (pollers.putIfAbsent(key, poller) != null) {
+            return;
+        }
+        synchronized (poller) {
+            schedule(poller, ThreadLocalRandom.current().nextLong(Math.max(poller.intervalMs, 1)));
+        }
+        System.out.println("⏱️ Scheduled " + key + " every " + poller.intervalMs + "ms (adaptive)");
+    }
+
+    public void unregister(String key) {
+        Poller poller = pollers.remove(key);
+        if (poller != null) {
+            synchronized (poller) {
+                if (poller.future != null) {
+                    poller.future.cancel(false);
+                }
+            }
+            System.out.println("⏱️ Unscheduled " + key);
+        }
+    }
+
+    /**
+     * Unregister every key with this prefix that is not in keep, e.g. terminals
+     * that are no longer active.
+     */
+    public void retain(String prefix, Set<String> keep) {
+        for (String key : new ArrayList<>(pollers.keySet())) {
+            if (key.startsWith(prefix) && !keep.contains(key)) {
+                unregister(key);
+            }
+        }
+    }
+
+    /**
+     * Poll now instead of waiting out the current interval.
+     */
+    public void wakeup(String key) {
+        Poller poller = pollers.get(key);
+        if (poller == null) {
+            return;
+        }
+        synchronized (poller) {
+            if (poller.running) {
+                poller.wakeupRequested = true;
+            } else {
+                if (poller.future != null) {
+                    poller.future.cancel(false);
+                }
+                schedule(poller, 0);
+            }
+        }
+    }
+
+    private void run(Poller poller, long generation) {
+        synchronized (poller) {
+            // Superseded by a wakeup, or unregistered
+            if (generation != poller.generation || pollers.get(poller.key) != poller) {
+                return;
+            }
+            poller.running = true;
+        }
+
+        long started = System.currentTimeMillis();
+        PollResult result = null;
+        try {
+            result = poller.task.poll();
+        } catch (Exception e) {
+            System.err.println("❌ Poll " + poller.key + " failed: " + e.getMessage());
+        }
+
+        synchronized (poller) {
+            poller.running = false;
+            poller.runs++;
+            if (result == null) {
+                poller.failures++;
+                poller.consecutiveIdle++;
+                poller.intervalMs = Math.min(poller.intervalMs * 2, poller.maxIntervalMs);
+            } else {
+                poller.intervalMs = nextInterval(poller, result, started);
+                poller.lastPunches = result.getPunches();
+                poller.lastBacklog = result.isBacklog();
+            }
+            poller.lastRunAt = started;
+
+            long delay = poller.intervalMs;
+            if (poller.wakeupRequested) {
+                poller.wakeupRequested = false;
+                delay = 0;
+            }
+            if (pollers.get(poller.key) == poller) {
+                schedule(poller, delay);
+            }
+        }
+    }
+
+    private long nextInterval(Poller poller, PollResult result, long started) {
+        long sinceLastRun = poller.lastRunAt > 0 ? started - poller.lastRunAt : poller.intervalMs;
+        double ratePerMinute = result.getPunches() * 60000.0 / Math.max(sinceLastRun, 1000);
+        poller.ratePerMinute = poller.lastRunAt > 0
+                ? RATE_ALPHA * ratePerMinute + (1 - RATE_ALPHA) * poller.ratePerMinute
+                : ratePerMinute;
+
+        long next;
+        if (result.isBacklog()) {
+            poller.consecutiveIdle = 0;
+            next = minIntervalMs;
+        } else if (result.getPunches() == 0) {
+            poller.consecutiveIdle++;
+            next = poller.intervalMs * 2;
+        } else {
+            poller.consecutiveIdle = 0;
+            next = (long) (targetPunchesPerPoll * 60000.0 / poller.ratePerMinute);
+        }
+
+        if (poller.ratePerMinute >= ACTIVE_RATE_PER_MINUTE && inShiftWindow(LocalTime.now())) {
+            next = Math.min(next, shiftMaxIntervalMs);
+        }
+        return Math.max(minIntervalMs, Math.min(next, poller.maxIntervalMs));
+    }
+
+    private void schedule(Poller poller, long delayMs) {
+        try {
+            long generation = ++poller.generation;
+            poller.future = executor.schedule(() -> run(poller, generation), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    public boolean inShiftWindow(LocalTime time) {
+        for (LocalTime[] window : windows) {
+            boolean inside = window[0].isBefore(window[1])
+                    ? !time.isBefore(window[0]) && time.isBefore(window[1])
+                    : !time.isBefore(window[0]) || time.isBefore(window[1]);
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Current interval and traffic of every poller whose key starts with prefix.
+     */
+    public Map<String, Object> getIntervals(String prefix) {
+        Map<String, Object> intervals = new TreeMap<>();
+        for (Poller poller : pollers.values()) {
+            if (!poller.key.startsWith(prefix)) {
+                continue;
+            }
+            synchronized (poller) {
+                Map<String, Object> state = new HashMap<>();
+                state.put("intervalMs", poller.intervalMs);
+                state.put("maxIntervalMs", poller.maxIntervalMs);
+                state.put("punchesPerMinute", Math.round(poller.ratePerMinute * 100) / 100.0);
+                state.put("lastPunches", poller.lastPunches);
+                state.put("backlog", poller.lastBacklog);
+                state.put("consecutiveIdlePolls", poller.consecutiveIdle);
+                state.put("runs", poller.runs);
+                state.put("failures", poller.failures);
+                state.put("running", poller.running);
+                state.put("lastRunAt", poller.lastRunAt > 0 ? LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(poller.lastRunAt), ZoneId.systemDefault()).toString() : null);
+                state.put("nextRunInMs", poller.future != null && !poller.running
+                        ? Math.max(poller.future.getDelay(TimeUnit.MILLISECONDS), 0) : null);
+                intervals.put(poller.key, state);
+            }
+        }
+        return intervals;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pollers", getIntervals(""));
+        stats.put("inShiftWindow", inShiftWindow(LocalTime.now()));
+        stats.put("shiftWindows", shiftWindows);
+        stats.put("minIntervalMs", minIntervalMs);
+        stats.put("maxIntervalMs", maxIntervalMs);
+        stats.put("shiftMaxIntervalMs", shiftMaxIntervalMs);
+        stats.put("targetPunchesPerPoll", targetPunchesPerPoll);
+        stats.put("workers", workers);
+        return stats;
+    }
+
+    private class Poller {
+        final String key;
+        final PollTask task;
+        final long maxIntervalMs;
+        long intervalMs;
+        double ratePerMinute;
+        int lastPunches;
+        boolean lastBacklog;
+        int consecutiveIdle;
+        long runs;
+        long failures;
+        long lastRunAt;
+        boolean running;
+        boolean wakeupRequested;
+        long generation;
+        ScheduledFuture<?> future;
+
+        Poller(String key, PollTask task, long maxIntervalMs, long initialIntervalMs) {
+            this.key = key;
+            this.task = task;
+            this.maxIntervalMs = maxIntervalMs;
+            this.intervalMs = Math.max(minIntervalMs, Math.min(initialIntervalMs, maxIntervalMs));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.jaywant.demo.Service;
 
+import com.jaywant.demo.Entity.BackfillJob;
 import com.jaywant.demo.Entity.SubadminTerminal;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +11,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Scheduled EasyTimePro housekeeping: the hourly catch-up of yesterday, the
+ * terminal health check and the weekly backfill. Today's punches are polled
+ * per terminal by {@link RealTimeAttendanceSyncService}.
+ */
 @Service
 public class AttendanceSyncScheduler {
 
@@ -19,11 +25,21 @@ public class AttendanceSyncScheduler {
     @Autowired
     private SubadminTerminalRepo terminalRepo;
 
+    @Autowired
+    private BackfillService backfillService;
+
+    @Autowired
+    private EasyTimeProApiService easyTimeProApiService;
+
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
+    @Autowired
+    private DeviceLivenessTracker livenessTracker;
+
     /**
-     * Sync attendance data every 5 minutes for all active terminals
-     * This ensures real-time attendance updates
+     * Sync today's attendance data for all active terminals once
      */
-    @Scheduled(fixedRate = 300000) // 5 minutes = 300,000 milliseconds
     public void syncAttendanceDataPeriodically() {
         try {
             System.out.println("🔄 Starting periodic attendance sync at " + LocalDateTime.now());
@@ -99,8 +115,10 @@ public class AttendanceSyncScheduler {
                         continue;
                     }
 
-                    // Test connection
+                    // ACTIVE means the EasyTimePro API answers; a heartbeat or punch only
+                    // shows the device itself is present
                     boolean isHealthy = testTerminalHealth(terminal);
+                    boolean devicePresent = livenessTracker.isOnline(terminal.getTerminalSerial());
 
                     if (isHealthy) {
                         if (terminal.getStatus() != SubadminTerminal.TerminalStatus.ACTIVE) {
@@ -112,7 +130,8 @@ public class AttendanceSyncScheduler {
                         if (terminal.getStatus() == SubadminTerminal.TerminalStatus.ACTIVE) {
                             terminal.setStatus(SubadminTerminal.TerminalStatus.ERROR);
                             terminalRepo.save(terminal);
-                            System.out.println("❌ Terminal " + terminal.getTerminalSerial() + " is offline");
+                            System.out.println("❌ Terminal " + terminal.getTerminalSerial() + " is offline" +
+                                    (devicePresent ? " (device still reporting, EasyTimePro API unreachable)" : ""));
                         }
                     }
 
@@ -136,23 +155,10 @@ public class AttendanceSyncScheduler {
         try {
             System.out.println("📅 Starting weekly data sync at " + LocalDateTime.now());
 
-            List<SubadminTerminal> activeTerminals = terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE);
-
-            // Sync last 7 days
-            String fromDate = LocalDate.now().minusDays(7).toString();
-            String toDate = LocalDate.now().toString();
-
-            for (SubadminTerminal terminal : activeTerminals) {
-                try {
-                    integrationService.syncAttendanceData(terminal.getTerminalSerial(), fromDate, toDate);
-                    System.out.println("✅ Weekly sync completed for terminal: " + terminal.getTerminalSerial());
-                } catch (Exception e) {
-                    System.err.println("❌ Weekly sync failed for terminal " +
-                            terminal.getTerminalSerial() + ": " + e.getMessage());
-                }
-            }
-
-            System.out.println("🏁 Weekly data sync completed");
+            // Re-sync the last 7 days as a backfill, one chunk per terminal and day
+            BackfillJob job = backfillService.start(BackfillJob.Source.EASYTIME, null, null,
+                    LocalDate.now().minusDays(7), LocalDate.now(), null);
+            System.out.println("✅ Weekly data sync running as backfill job " + job.getId());
 
         } catch (Exception e) {
             System.err.println("💥 Error in weekly data sync: " + e.getMessage());
@@ -164,9 +170,8 @@ public class AttendanceSyncScheduler {
      */
     private boolean testTerminalHealth(SubadminTerminal terminal) {
         try {
-            // Use the API service to test connection
-            EasyTimeProApiService apiService = new EasyTimeProApiService();
-            return apiService.testConnection(terminal.getEasytimeApiUrl(), terminal.getApiToken());
+            return easyTimeProApiService.testConnection(terminal.getEasytimeApiUrl(),
+                    tokenCache.getToken(terminal));
         } catch (Exception e) {
             return false;
         }
@@ -181,26 +186,11 @@ public class AttendanceSyncScheduler {
     }
 
     /**
-     * Sync specific date range for all terminals
+     * Sync specific date range for all active terminals as a backfill job
      */
-    public void syncDateRange(String fromDate, String toDate) {
-        try {
-            System.out.println("📊 Syncing date range " + fromDate + " to " + toDate + " at " + LocalDateTime.now());
-
-            List<SubadminTerminal> activeTerminals = terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE);
-
-            for (SubadminTerminal terminal : activeTerminals) {
-                try {
-                    integrationService.syncAttendanceData(terminal.getTerminalSerial(), fromDate, toDate);
-                    System.out.println("✅ Date range sync completed for terminal: " + terminal.getTerminalSerial());
-                } catch (Exception e) {
-                    System.err.println("❌ Date range sync failed for terminal " +
-                            terminal.getTerminalSerial() + ": " + e.getMessage());
-                }
-            }
-
-        } catch (Exception e) {
-            System.err.println("💥 Error in date range sync: " + e.getMessage());
-        }
+    public BackfillJob syncDateRange(String fromDate, String toDate) {
+        System.out.println("📊 Syncing date range " + fromDate + " to " + toDate + " at " + LocalDateTime.now());
+        return backfillService.start(BackfillJob.Source.EASYTIME, null, null,
+                LocalDate.parse(fromDate), LocalDate.parse(toDate), null);
     }
 }
@@ -0,0 +1,475 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.BackfillChunk;
+import com.jaywant.demo.Entity.BackfillJob;
+import com.jaywant.demo.Entity.SubadminTerminal;
+import com.jaywant.demo.Repo.BackfillChunkRepo;
+import com.jaywant.demo.Repo.BackfillJobRepo;
+import com.jaywant.demo.Repo.SubadminTerminalRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Historical re-sync of punches, e.g. a year of device history when a tenant
+ * is onboarded.
+ *
+ * A job is split into one chunk per terminal and day, stored in
+ * backfill_chunk before any work starts. Chunks run newest day first on a
+ * small pool of low-priority threads and write through
+ * {@link PunchEngine#processAll}, so they never take space in the realtime
+ * writer queue; while that queue is backed up the backfill waits. A chunk is
+ * marked DONE only when every punch it accepted was written; if some writes
+ * failed, the chunk is retried (written punches come back as duplicates) and
+ * FAILED after max-attempts. Jobs that were running when the application
+ * stopped continue with their PENDING chunks at startup.
+ */
+@Service
+public class BackfillService {
+
+    private static final DateTimeFormatter API_TIME = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    @Autowired
+    private BackfillJobRepo jobRepo;
+
+    @Autowired
+    private BackfillChunkRepo chunkRepo;
+
+    @Autowired
+    private SubadminTerminalRepo terminalRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EasyTimeFetchService fetchService;
+
+    @Autowired
+    private PunchEngine punchEngine;
+
+    @Autowired
+    private PunchBatchWriter punchWriter;
+
+    @Value("${biometric.backfill.workers:2}")
+    private int workers;
+
+    // Rows per query and punches per processAll call within a chunk
+    @Value("${biometric.backfill.page-size:1000}")
+    private int pageSize;
+
+    @Value("${biometric.backfill.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${biometric.backfill.max-days:400}")
+    private int maxDays;
+
+    private ThreadPoolExecutor executor;
+    private final Map<Long, JobProgress> activeJobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void startWorkers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "backfill-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        // Unfinished chunks stay PENDING and are picked up at the next start
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Continue the jobs that were running when the application stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJobs() {
+        try {
+            for (BackfillJob job : jobRepo.findByStatusIn(List.of(BackfillJob.JobStatus.PLANNING,
+                    BackfillJob.JobStatus.RUNNING))) {
+                if (job.getStatus() == BackfillJob.JobStatus.PLANNING) {
+                    job.setStatus(BackfillJob.JobStatus.FAILED);
+                    job.setError("Interrupted while planning, start it again");
+                    job.setFinishedAt(LocalDateTime.now());
+                    jobRepo.save(job);
+                    continue;
+                }
+                System.out.println("♻️ Resuming backfill job " + job.getId());
+                enqueue(job);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Failed to resume backfill jobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Plan a backfill and start it in the background.
+     *
+     * @param terminals terminal serials; empty means every terminal with
+     *                  transactions in the range (ICLOCK) or every active
+     *                  terminal (EASYTIME)
+     * @throws IllegalArgumentException for an invalid range or source
+     */
+    public BackfillJob start(BackfillJob.Source source, String database, String table, LocalDate fromDate,
+            LocalDate toDate, List<String> terminals) {
+        if (fromDate == null || toDate == null || toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("fromDate must not be after toDate");
+        }
+        if (toDate.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("toDate is in the future");
+        }
+        if (ChronoUnit.DAYS.between(fromDate, toDate) + 1 > maxDays) {
+            throw new IllegalArgumentException("Range is longer than " + maxDays + " days");
+        }
+        BackfillJob job = new BackfillJob(source, fromDate, toDate);
+        if (source == BackfillJob.Source.ICLOCK) {
+            if (database == null || !database.matches("[A-Za-z0-9_]+")
+                    || table == null || !table.matches("[A-Za-z0-9_]+")) {
+                throw new IllegalArgumentException("ICLOCK backfill needs a valid database and table");
+            }
+            job.setSourceDatabase(database);
+            job.setSourceTable(table);
+        }
+        job = jobRepo.save(job);
+
+        try {
+            List<String> serials = terminals != null && !terminals.isEmpty() ? terminals : findTerminals(job);
+            List<BackfillChunk> chunks = new ArrayList<>();
+            for (String serial : serials) {
+                for (LocalDate day = fromDate; !day.isAfter(toDate); day = day.plusDays(1)) {
+                    chunks.add(new BackfillChunk(job.getId(), serial, day));
+                }
+            }
+            chunkRepo.saveAll(chunks);
+            job.setTotalChunks(chunks.size());
+            job.setStatus(BackfillJob.JobStatus.RUNNING);
+            job = jobRepo.save(job);
+        } catch (Exception e) {
+            job.setStatus(BackfillJob.JobStatus.FAILED);
+            job.setError(truncate("Planning failed: " + e.getMessage()));
+            job.setFinishedAt(LocalDateTime.now());
+            System.err.println("❌ Backfill job " + job.getId() + " planning failed: " + e.getMessage());
+            return jobRepo.save(job);
+        }
+
+        System.out.println("📚 Backfill job " + job.getId() + " (" + source + ") planned: " +
+                job.getTotalChunks() + " chunks, " + fromDate + " to " + toDate);
+        enqueue(job);
+        return job;
+    }
+
+    /**
+     * A planned or running job for the same source, or null.
+     */
+    public BackfillJob findUnfinished(BackfillJob.Source source, String database, String table) {
+        for (BackfillJob job : jobRepo.findByStatusIn(List.of(BackfillJob.JobStatus.PLANNING,
+                BackfillJob.JobStatus.RUNNING))) {
+            if (job.getSource() == source && Objects.equals(job.getSourceDatabase(), database)
+                    && Objects.equals(job.getSourceTable(), table)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private List<String> findTerminals(BackfillJob job) {
+        if (job.getSource() == BackfillJob.Source.EASYTIME) {
+            List<String> serials = new ArrayList<>();
+            for (SubadminTerminal terminal : terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE)) {
+                serials.add(terminal.getTerminalSerial());
+            }
+            return serials;
+        }
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT terminal_sn FROM " + job.getSourceDatabase() + "." + job.getSourceTable() +
+                        " WHERE punch_time >= ? AND punch_time < ? AND terminal_sn IS NOT NULL",
+                String.class, job.getFromDate().atStartOfDay(), job.getToDate().plusDays(1).atStartOfDay());
+    }
+
+    private void enqueue(BackfillJob job) {
+        List<BackfillChunk> pending = chunkRepo.findByJobIdAndStatusOrderByDayDescTerminalSerialAsc(job.getId(),
+                BackfillChunk.ChunkStatus.PENDING);
+        JobProgress progress = new JobProgress(pending.size());
+        activeJobs.put(job.getId(), progress);
+        if (pending.isEmpty()) {
+            finish(job.getId());
+            return;
+        }
+        for (BackfillChunk chunk : pending) {
+            submit(job, progress, chunk);
+        }
+    }
+
+    private void submit(BackfillJob job, JobProgress progress, BackfillChunk chunk) {
+        try {
+            executor.execute(() -> runChunk(job, progress, chunk));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the chunk stays PENDING
+        }
+    }
+
+    private void runChunk(BackfillJob job, JobProgress progress, BackfillChunk chunk) {
+        if (progress.cancelled || !punchWriter.awaitCatchUpCapacity(() -> progress.cancelled)) {
+            return;
+        }
+
+        chunk.setAttempts(chunk.getAttempts() + 1);
+        try {
+            int[] counts = job.getSource() == BackfillJob.Source.ICLOCK
+                    ? backfillIclock(job, chunk)
+                    : backfillEasytime(chunk);
+            chunk.setRowsRead(counts[0]);
+            // Punches written by an earlier attempt are duplicates now
+            chunk.setPunches(chunk.getPunches() + counts[1]);
+            if (counts[2] > 0) {
+                throw new IllegalStateException(counts[2] + " punches could not be written");
+            }
+            chunk.setStatus(BackfillChunk.ChunkStatus.DONE);
+            chunk.setLastError(null);
+            chunk.setFinishedAt(LocalDateTime.now());
+        } catch (Exception e) {
+            chunk.setLastError(truncate(e.getMessage()));
+            if (chunk.getAttempts() < maxAttempts && !progress.cancelled) {
+                chunkRepo.save(chunk);
+                submit(job, progress, chunk);
+                return;
+            }
+            System.err.println("❌ Backfill chunk " + chunk.getTerminalSerial() + " " + chunk.getDay() +
+                    " failed after " + chunk.getAttempts() + " attempts: " + e.getMessage());
+            chunk.setStatus(BackfillChunk.ChunkStatus.FAILED);
+            chunk.setFinishedAt(LocalDateTime.now());
+        }
+
+        chunkRepo.save(chunk);
+        progress.finished.incrementAndGet();
+        if (progress.remaining.decrementAndGet() == 0 && !progress.cancelled) {
+            finish(job.getId());
+        }
+    }
+
+    /**
+     * One terminal's day from an iclock_transaction table, paged by id.
+     * Returns rows read, punches written and punches whose write failed.
+     */
+    private int[] backfillIclock(BackfillJob job, BackfillChunk chunk) {
+        String sql = """
+                SELECT id, emp_code, emp_id, punch_time, punch_state, verify_type, terminal_sn
+                FROM %s.%s
+                WHERE terminal_sn = ? AND punch_time >= ? AND punch_time < ? AND id > ?
+                ORDER BY id ASC
+                LIMIT ?
+                """.formatted(job.getSourceDatabase(), job.getSourceTable());
+        String dedupPrefix = SimpleRealtimeBiometricService.iclockDedupPrefix(job.getSourceDatabase(),
+                job.getSourceTable());
+
+        int rowsRead = 0;
+        int[] punches = { 0, 0 };
+        long lastId = 0;
+        while (true) {
+            List<Map<String, Object>> page = jdbcTemplate.queryForList(sql, chunk.getTerminalSerial(),
+                    chunk.getDay().atStartOfDay(), chunk.getDay().plusDays(1).atStartOfDay(), lastId, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            List<PunchEvent> events = new ArrayList<>(page.size());
+            for (Map<String, Object> row : page) {
+                events.add(SimpleRealtimeBiometricService.iclockEvent(dedupPrefix, row).historical(true));
+                lastId = ((Number) row.get("id")).longValue();
+            }
+            rowsRead += page.size();
+            count(punchEngine.processAll(events), punches);
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        return new int[] { rowsRead, punches[0], punches[1] };
+    }
+
+    /**
+     * One terminal's day from its EasyTime Pro API. Same counts as
+     * {@link #backfillIclock}.
+     */
+    private int[] backfillEasytime(BackfillChunk chunk) {
+        SubadminTerminal terminal = terminalRepo.findByTerminalSerial(chunk.getTerminalSerial())
+                .orElseThrow(() -> new IllegalStateException("Terminal not found: " + chunk.getTerminalSerial()));
+        int[] punches = { 0, 0 };
+        int rowsRead = fetchService.streamTransactionsNow(terminal,
+                chunk.getDay().atStartOfDay().format(API_TIME),
+                chunk.getDay().atTime(23, 59, 59).format(API_TIME), pageSize, page -> {
+                    List<PunchEvent> events = new ArrayList<>(page.size());
+                    for (EasyTimeTransaction transaction : page) {
+                        events.add(RealTimeAttendanceSyncService.easytimeEvent(transaction, terminal)
+                                .historical(true));
+                    }
+                    count(punchEngine.processAll(events), punches);
+                });
+        return new int[] { rowsRead, punches[0], punches[1] };
+    }
+
+    /**
+     * Add written punches to counts[0] and failed writes to counts[1].
+     */
+    private static void count(List<PunchOutcome> outcomes, int[] counts) {
+        for (PunchOutcome outcome : outcomes) {
+            if (outcome.isQueued()) {
+                counts[0]++;
+            } else if (outcome.getStatus() == PunchOutcome.Status.WRITE_FAILED) {
+                counts[1]++;
+            }
+        }
+    }
+
+    private void finish(Long jobId) {
+        activeJobs.remove(jobId);
+        BackfillJob job = jobRepo.findById(jobId).orElse(null);
+        if (job == null || job.isFinished()) {
+            return;
+        }
+        long failed = chunkRepo.countByJobIdAndStatus(jobId, BackfillChunk.ChunkStatus.FAILED);
+        job.setStatus(failed > 0 ? BackfillJob.JobStatus.COMPLETED_WITH_ERRORS : BackfillJob.JobStatus.COMPLETED);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepo.save(job);
+        System.out.println("🏁 Backfill job " + jobId + " " + job.getStatus() +
+                (failed > 0 ? " (" + failed + " chunks failed)" : ""));
+    }
+
+    /**
+     * Stop a job. Chunks already running finish; the rest stay PENDING.
+     *
+     * @return false if there is no such job or it has already finished
+     */
+    public boolean cancel(Long jobId) {
+        BackfillJob job = jobRepo.findById(jobId).orElse(null);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        JobProgress progress = activeJobs.remove(jobId);
+        if (progress != null) {
+            progress.cancelled = true;
+        }
+        job.setStatus(BackfillJob.JobStatus.CANCELLED);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepo.save(job);
+        System.out.println("🛑 Backfill job " + jobId + " cancelled");
+        return true;
+    }
+
+    /**
+     * Chunk counts, totals and an estimate of the time left. Null if the job
+     * does not exist.
+     */
+    public Map<String, Object> getProgress(Long jobId) {
+        BackfillJob job = jobRepo.findById(jobId).orElse(null);
+        if (job == null) {
+            return null;
+        }
+        long done = chunkRepo.countByJobIdAndStatus(jobId, BackfillChunk.ChunkStatus.DONE);
+        long failed = chunkRepo.countByJobIdAndStatus(jobId, BackfillChunk.ChunkStatus.FAILED);
+        long pending = chunkRepo.countByJobIdAndStatus(jobId, BackfillChunk.ChunkStatus.PENDING);
+        List<Object[]> sums = chunkRepo.sumRowsAndPunches(jobId);
+        Object[] totals = sums.isEmpty() ? new Object[] { 0L, 0L } : sums.get(0);
+
+        Map<String, Object> progress = describe(job);
+        progress.put("doneChunks", done);
+        progress.put("failedChunks", failed);
+        progress.put("pendingChunks", pending);
+        progress.put("rowsRead", totals[0]);
+        progress.put("punches", totals[1]);
+        int total = job.getTotalChunks();
+        progress.put("percent", total > 0 ? Math.round((done + failed) * 1000.0 / total) / 10.0 : 0.0);
+
+        JobProgress active = activeJobs.get(jobId);
+        if (active != null) {
+            long elapsedMs = System.currentTimeMillis() - active.startedAt;
+            int finished = active.finished.get();
+            double chunksPerMinute = elapsedMs > 0 ? finished * 60000.0 / elapsedMs : 0;
+            progress.put("chunksPerMinute", Math.round(chunksPerMinute * 10) / 10.0);
+            progress.put("etaSeconds", finished > 0 ? Math.round(pending * 60 / chunksPerMinute) : null);
+        }
+        return progress;
+    }
+
+    public List<Map<String, Object>> listJobs() {
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        for (BackfillJob job : jobRepo.findTop50ByOrderByIdDesc()) {
+            jobs.add(describe(job));
+        }
+        return jobs;
+    }
+
+    private Map<String, Object> describe(BackfillJob job) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("id", job.getId());
+        info.put("source", job.getSource());
+        if (job.getSourceDatabase() != null) {
+            info.put("database", job.getSourceDatabase());
+            info.put("table", job.getSourceTable());
+        }
+        info.put("fromDate", job.getFromDate().toString());
+        info.put("toDate", job.getToDate().toString());
+        info.put("status", job.getStatus());
+        info.put("totalChunks", job.getTotalChunks());
+        info.put("error", job.getError());
+        info.put("createdAt", job.getCreatedAt());
+        info.put("finishedAt", job.getFinishedAt());
+        return info;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeJobs", new ArrayList<>(activeJobs.keySet()));
+        stats.put("queuedChunks", executor.getQueue().size());
+        stats.put("runningChunks", executor.getActiveCount());
+        stats.put("workers", workers);
+        stats.put("maxWriterQueue", punchWriter.getCatchUpMaxQueue());
+        stats.put("writerQueueDepth", punchWriter.getQueueDepth());
+        return stats;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    private static class JobProgress {
+        final AtomicInteger remaining;
+        final AtomicInteger finished = new AtomicInteger();
+        final long startedAt = System.currentTimeMillis();
+        volatile boolean cancelled;
+
+        JobProgress(int pending) {
+            this.remaining = new AtomicInteger(pending);
+        }
+    }
+}
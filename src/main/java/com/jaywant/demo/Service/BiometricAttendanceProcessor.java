@@ -1,21 +1,12 @@
 package com.jaywant.demo.Service;
 
-import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Entity.EmployeeDeviceMapping;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
-import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -26,19 +17,11 @@ public class BiometricAttendanceProcessor {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
-
-    @Autowired
-    private AttendanceRepo attendanceRepo;
-
-    @Autowired
-    private EmployeeDeviceMappingRepo mappingRepo;
+    private PunchEngine punchEngine;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    private Set<String> processedTransactions = new HashSet<>();
-
     /**
      * Real-time sync every 30 seconds
      * DISABLED: Replaced by EnhancedBiometricSyncService
@@ -69,7 +52,6 @@ public class BiometricAttendanceProcessor {
             for (Map<String, Object> transaction : transactions) {
                 if (processTransaction(transaction)) {
                     processedCount++;
-                    markTransactionAsProcessed(transaction);
                 }
             }
 
@@ -84,263 +66,33 @@ public class BiometricAttendanceProcessor {
     }
 
     /**
-     * Process individual biometric transaction
+     * Hand one iclock_transaction row to the punch engine. The row is marked
+     * PROCESSED once its attendance has been written.
      */
-    @Transactional
     private boolean processTransaction(Map<String, Object> transaction) {
-        try {
-            // Create unique transaction ID
-            String transactionId = "BIOMETRIC_" + transaction.get("id") + "_" +
-                    transaction.get("emp_code") + "_" + transaction.get("punch_time");
-
-            if (processedTransactions.contains(transactionId)) {
-                return false; // Already processed
-            }
-
-            // Extract transaction data with safe type conversion
-            String empCode = (String) transaction.get("emp_code");
-            Object punchTimeObj = transaction.get("punch_time");
-            Integer punchState = safeParseInteger(transaction.get("punch_state"));
-            Integer verifyType = safeParseInteger(transaction.get("verify_type"));
-            String terminalSn = (String) transaction.get("terminal_sn");
-            Integer machineEmpId = safeParseInteger(transaction.get("emp_id"));
-
-            if (empCode == null && machineEmpId == null) {
-                System.out.println("⚠️ No employee identifier in transaction: " + transaction.get("id"));
-                return false;
-            }
-
-            if (punchTimeObj == null) {
-                System.out.println("⚠️ No punch time in transaction: " + transaction.get("id"));
-                return false;
-            }
-
-            // Parse punch time
-            LocalDateTime punchDateTime = parsePunchTime(punchTimeObj);
-            if (punchDateTime == null) {
-                return false;
-            }
-
-            // Find HRM employee
-            Employee employee = findHrmEmployee(empCode, machineEmpId, terminalSn);
-            if (employee == null) {
-                System.out.println(
-                        "⚠️ No HRM employee found for emp_code: " + empCode + ", machine_emp_id: " + machineEmpId);
-                return false;
-            }
-
-            // Process attendance
-            boolean success = processAttendanceRecord(employee, punchDateTime, punchState, verifyType, transaction);
-
-            if (success) {
-                processedTransactions.add(transactionId);
-                System.out.println("✅ Processed attendance for: " + employee.getFullName() +
-                        " at " + punchDateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-
-                // Send real-time notification
-                sendRealtimeNotification(employee, punchDateTime, punchState);
-            }
-
-            return success;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing transaction: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    /**
-     * Find HRM employee by various methods
-     */
-    private Employee findHrmEmployee(String empCode, Integer machineEmpId, String terminalSn) {
-        try {
-            // Method 1: Find by employee device mapping
-            if (empCode != null) {
-                Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo.findByEmpCode(empCode);
-                if (mappingOpt.isPresent()) {
-                    Employee employee = employeeRepo.findById(mappingOpt.get().getHrmEmployeeId()).orElse(null);
-                    if (employee != null) {
-                        System.out.println("✅ Found employee via mapping: " + employee.getFullName());
-                        return employee;
-                    }
-                }
-            }
-
-            // Method 2: Parse emp_code format (SA{subadmin}_EMP{empId}_{terminal})
-            if (empCode != null && empCode.contains("_EMP")) {
-                String[] parts = empCode.split("_");
-                for (String part : parts) {
-                    if (part.startsWith("EMP")) {
-                        try {
-                            Integer empId = Integer.parseInt(part.replace("EMP", ""));
-                            Employee employee = employeeRepo.findById(empId).orElse(null);
-                            if (employee != null) {
-                                System.out.println("✅ Found employee via emp_code parsing: " + employee.getFullName());
-                                return employee;
-                            }
-                        } catch (NumberFormatException e) {
-                            // Continue to next method
-                        }
-                    }
-                }
-            }
-
-            // Method 3: Use machine employee ID directly
-            if (machineEmpId != null) {
-                Employee employee = employeeRepo.findById(machineEmpId).orElse(null);
-                if (employee != null) {
-                    System.out.println("✅ Found employee via machine emp_id: " + employee.getFullName());
-                    return employee;
-                }
-            }
-
-            // Method 4: Try emp_code as direct employee ID
-            if (empCode != null) {
-                try {
-                    Integer directEmpId = Integer.parseInt(empCode);
-                    Employee employee = employeeRepo.findById(directEmpId).orElse(null);
-                    if (employee != null) {
-                        System.out.println("✅ Found employee via direct emp_code: " + employee.getFullName());
-                        return employee;
-                    }
-                } catch (NumberFormatException e) {
-                    // Not a direct ID
-                }
-            }
-
-            return null;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error finding HRM employee: " + e.getMessage());
-            return null;
-        }
-    }
-
-    /**
-     * Process attendance record
-     */
-    @Transactional
-    private boolean processAttendanceRecord(Employee employee, LocalDateTime punchDateTime,
-            Integer punchState, Integer verifyType,
-            Map<String, Object> transaction) {
-        try {
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
-
-            // Find or create attendance record
-            Optional<Attendance> existingOpt = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
-
-            Attendance attendance;
-            if (existingOpt.isPresent()) {
-                attendance = existingOpt.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
-            }
-
-            // Set biometric fields
-            attendance.setBiometricUserId(String.valueOf(transaction.get("emp_code")));
-            attendance.setDeviceSerial((String) transaction.get("terminal_sn"));
-            attendance.setVerifyType(getVerifyTypeString(verifyType));
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setRawData(transaction.toString());
-
-            // Determine punch type and set time
-            String punchType = determinePunchType(attendance, punchTime, punchState);
-
-            if ("punch_in".equals(punchType)) {
-                attendance.setPunchInTime(punchTime);
-                attendance.setPunchIn(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                System.out.println("✅ Set punch IN time: " + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            } else if ("punch_out".equals(punchType)) {
-                attendance.setPunchOutTime(punchTime);
-                attendance.setPunchOut(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                System.out
-                        .println("✅ Set punch OUT time: " + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            }
-
-            // Calculate working hours and durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            attendanceRepo.save(attendance);
-
-            return true;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing attendance record: " + e.getMessage());
-            e.printStackTrace();
+        String empCode = (String) transaction.get("emp_code");
+        Integer machineEmpId = PunchEngine.parseInteger(transaction.get("emp_id"));
+        if (empCode == null && machineEmpId == null) {
+            System.out.println("⚠️ No employee identifier in transaction: " + transaction.get("id"));
             return false;
         }
-    }
-
-    /**
-     * Parse punch time from various formats
-     */
-    private LocalDateTime parsePunchTime(Object punchTimeObj) {
-        try {
-            if (punchTimeObj instanceof java.sql.Timestamp) {
-                return ((java.sql.Timestamp) punchTimeObj).toLocalDateTime();
-            } else if (punchTimeObj instanceof java.util.Date) {
-                return LocalDateTime.ofInstant(((java.util.Date) punchTimeObj).toInstant(),
-                        java.time.ZoneId.systemDefault());
-            } else {
-                String timeStr = punchTimeObj.toString();
-                return LocalDateTime.parse(timeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Error parsing punch time: " + punchTimeObj + " - " + e.getMessage());
-            return null;
-        }
-    }
 
-    /**
-     * Determine punch type (in/out) based on existing data and punch state
-     */
-    private String determinePunchType(Attendance attendance, LocalTime punchTime, Integer punchState) {
         // Use punch_state if available (0=in, 1=out in most systems)
-        if (punchState != null) {
-            return (punchState == 0) ? "punch_in" : "punch_out";
-        }
-
-        // Smart logic based on existing punches
-        if (attendance.getPunchInTime() == null) {
-            return "punch_in";
-        } else if (attendance.getPunchOutTime() == null) {
-            return "punch_out";
-        } else {
-            // Both exist - determine based on time
-            return punchTime.isBefore(attendance.getPunchInTime()) ? "punch_in" : "punch_out";
-        }
-    }
-
-    /**
-     * Convert verify type to string
-     */
-    private String getVerifyTypeString(Integer verifyType) {
-        if (verifyType == null)
-            return "fingerprint";
-
-        switch (verifyType) {
-            case 1:
-                return "fingerprint";
-            case 2:
-                return "face";
-            case 3:
-                return "password";
-            case 4:
-                return "card";
-            case 15:
-                return "palm";
-            default:
-                return "fingerprint";
-        }
+        Integer punchState = PunchEngine.parseInteger(transaction.get("punch_state"));
+        PunchOutcome outcome = punchEngine.process(new PunchEvent("ICLOCK_PROCESSOR")
+                .dedupKey("BIOMETRIC_" + transaction.get("id") + "_" + empCode + "_" + transaction.get("punch_time"))
+                .punchTime(transaction.get("punch_time"))
+                .checkIn(punchState == null ? null : punchState == 0)
+                .deviceSerial((String) transaction.get("terminal_sn"))
+                .empCode(empCode)
+                .machineEmpId(machineEmpId)
+                .verifyType(PunchEngine.iclockVerifyType(PunchEngine.parseInteger(transaction.get("verify_type"))))
+                .rawData(transaction.toString())
+                .onWritten((record, attendance) -> {
+                    markTransactionAsProcessed(transaction);
+                    sendRealtimeNotification(record.getEmployee(), record.getPunchTime(), punchState);
+                }));
+        return outcome.isQueued();
     }
 
     /**
@@ -358,7 +110,7 @@ public class BiometricAttendanceProcessor {
     /**
      * Send real-time notification
      */
-    private void sendRealtimeNotification(Employee employee, LocalDateTime punchDateTime, Integer punchState) {
+    private void sendRealtimeNotification(EmployeeRef employee, LocalDateTime punchDateTime, Integer punchState) {
         try {
             Map<String, Object> notification = new HashMap<>();
             notification.put("type", "BIOMETRIC_ATTENDANCE");
@@ -395,34 +147,4 @@ public class BiometricAttendanceProcessor {
             return result;
         }
     }
-
-    /**
-     * Safely parse Object to Integer, handling String to Integer conversion
-     */
-    private Integer safeParseInteger(Object value) {
-        if (value == null) {
-            return null;
-        }
-
-        if (value instanceof Integer) {
-            return (Integer) value;
-        }
-
-        if (value instanceof String) {
-            try {
-                return Integer.parseInt((String) value);
-            } catch (NumberFormatException e) {
-                System.err.println("⚠️ Could not parse integer from string: " + value);
-                return null;
-            }
-        }
-
-        if (value instanceof Number) {
-            return ((Number) value).intValue();
-        }
-
-        System.err.println(
-                "⚠️ Unexpected type for integer conversion: " + value.getClass().getSimpleName() + " = " + value);
-        return null;
-    }
 }
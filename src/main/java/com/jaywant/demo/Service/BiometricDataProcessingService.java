@@ -28,6 +28,9 @@ public class BiometricDataProcessingService {
     @Autowired
     private AttendanceRepo attendanceRepo;
 
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
     /**
      * Process biometric punch data with advanced logic
      */
@@ -67,7 +70,7 @@ public class BiometricDataProcessingService {
     private EmployeeMapping findEmployeeMapping(BiometricPunchData punchData) {
         try {
             Integer easytimeEmployeeId = Integer.parseInt(punchData.getUserId());
-            String terminalSerial = findTerminalByIp(punchData.getDeviceIp());
+            String terminalSerial = terminalRegistry.findSerialByIp(punchData.getDeviceIp());
 
             if (terminalSerial == null) {
                 return null;
@@ -132,7 +135,7 @@ public class BiometricDataProcessingService {
 
         return recentAttendance.stream()
                 .anyMatch(att -> Objects.equals(att.getBiometricUserId(), punchData.getUserId()) &&
-                        Objects.equals(att.getDeviceSerial(), findTerminalByIp(punchData.getDeviceIp())));
+                        Objects.equals(att.getDeviceSerial(), terminalRegistry.findSerialByIp(punchData.getDeviceIp())));
     }
 
     /**
@@ -238,16 +241,6 @@ public class BiometricDataProcessingService {
         }
     }
 
-    /**
-     * Find terminal serial by IP address
-     */
-    private String findTerminalByIp(String deviceIp) {
-        // This should match your existing logic
-        if ("192.168.1.201".equals(deviceIp)) {
-            return "BOCK194960340";
-        }
-        return null;
-    }
 
     // Data classes
     public static class BiometricPunchData {
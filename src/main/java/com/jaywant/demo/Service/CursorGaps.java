@@ -0,0 +1,78 @@
+package com.jaywant.demo.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Ids a keyset cursor (WHERE id &gt; ?) has stepped over.
+ *
+ * Auto-increment ids are handed out at insert time but become visible at
+ * commit, so a row can appear after a higher id has been read. Each jump in
+ * the ids read is remembered here; the source looks the missing ids up again
+ * on every poll until they show up or are older than graceMillis (rolled back
+ * inserts never show up). A cursor saved at {@link #safeCursor} stays before
+ * the oldest open gap, so a restart looks again as well.
+ */
+public class CursorGaps {
+
+    // Larger jumps (e.g. an auto_increment bump) are not tracked
+    private static final int MAX_GAP = 1000;
+
+    private final long graceMillis;
+    private final TreeMap<Long, Long> open = new TreeMap<>();
+
+    public CursorGaps(long graceMillis) {
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * Note the ids between two consecutive ids read.
+     */
+    public synchronized void observe(long previousId, long id) {
+        long missing = id - previousId - 1;
+        if (missing <= 0 || missing > MAX_GAP) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (long gap = previousId + 1; gap < id; gap++) {
+            open.putIfAbsent(gap, now);
+        }
+    }
+
+    /**
+     * Open gaps to look up again, lowest first, at most limit of them.
+     */
+    public synchronized List<Long> open(int limit) {
+        expire();
+        List<Long> ids = new ArrayList<>(Math.min(limit, open.size()));
+        for (Long id : open.keySet()) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    public synchronized void filled(long id) {
+        open.remove(id);
+    }
+
+    /**
+     * The cursor, held back before the oldest open gap.
+     */
+    public synchronized long safeCursor(long cursor) {
+        expire();
+        return open.isEmpty() ? cursor : Math.min(cursor, open.firstKey() - 1);
+    }
+
+    public synchronized int size() {
+        return open.size();
+    }
+
+    private void expire() {
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        open.values().removeIf(seen -> seen <= cutoff);
+    }
+}
@@ -0,0 +1,237 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.DeviceDayStats;
+import com.jaywant.demo.Repo.DeviceDayStatsRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-terminal, per-day punch counters kept up to date as punches come in:
+ * punch count, distinct employees (HyperLogLog), first and last punch. Serves
+ * /api/multi-device/stats/today from memory instead of aggregating
+ * iclock_transaction on every dashboard refresh.
+ *
+ * Changed counters are written to device_day_stats every snapshotIntervalMs
+ * and loaded back at startup; days older than retentionDays are dropped.
+ * Punches from serials that are not registered terminals share one
+ * "unknown" counter, so a device cannot add rows by inventing serials.
+ */
+@Service
+public class DeviceDailyStats {
+
+    private static final String UNKNOWN_TERMINAL = "unknown";
+
+    @Autowired
+    private DeviceDayStatsRepo statsRepo;
+
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
+    @Value("${biometric.device-stats.retention-days:35}")
+    private int retentionDays;
+
+    private final Map<LocalDate, Map<String, Counter>> days = new ConcurrentHashMap<>();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    /**
+     * Count one new (not duplicate) punch. employeeKey is whatever identifies
+     * the person on the device, usually the emp code.
+     */
+    public void record(String terminalSerial, String employeeKey, LocalDateTime punchTime) {
+        if (terminalSerial == null || punchTime == null
+                || punchTime.toLocalDate().isBefore(LocalDate.now().minusDays(retentionDays))) {
+            return;
+        }
+        String terminal = terminalRegistry.isKnown(terminalSerial) ? terminalSerial : UNKNOWN_TERMINAL;
+        Counter counter = days.computeIfAbsent(punchTime.toLocalDate(), day -> new ConcurrentHashMap<>())
+                .computeIfAbsent(terminal, serial -> new Counter(serial, punchTime.toLocalDate()));
+        counter.add(employeeKey, punchTime);
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * One day's counters per terminal, busiest first, and fleet totals.
+     */
+    public Map<String, Object> getDay(LocalDate day) {
+        List<Map<String, Object>> devices = new ArrayList<>();
+        HyperLogLog allEmployees = new HyperLogLog();
+        long totalPunches = 0;
+        Map<String, Counter> counters = days.get(day);
+        if (counters != null) {
+            for (Counter counter : counters.values()) {
+                synchronized (counter) {
+                    devices.add(counter.describe());
+                    allEmployees.merge(counter.employees);
+                    totalPunches += counter.punches;
+                }
+            }
+        }
+        devices.sort((a, b) -> Long.compare((Long) b.get("punches_today"), (Long) a.get("punches_today")));
+
+        Map<String, Object> totals = new HashMap<>();
+        totals.put("total_punches_today", totalPunches);
+        totals.put("total_unique_employees", allEmployees.estimate());
+        totals.put("active_devices_today", devices.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("device_stats", devices);
+        result.put("totals", totals);
+        return result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            int loaded = 0;
+            for (DeviceDayStats stats : statsRepo.findByDayGreaterThanEqual(
+                    LocalDate.now().minusDays(retentionDays))) {
+                Counter counter = days.computeIfAbsent(stats.getDay(), day -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(stats.getTerminalSerial(), serial -> new Counter(serial, stats.getDay()));
+                counter.restore(stats);
+                loaded++;
+            }
+            System.out.println("✅ Device stats loaded: " + loaded + " terminal-days");
+        } catch (Exception e) {
+            System.err.println("❌ Failed to load device stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the counters that changed since the last snapshot.
+     */
+    @Scheduled(fixedDelayString = "${biometric.device-stats.snapshot-interval-ms:60000}", initialDelay = 60000)
+    @PreDestroy
+    public void snapshot() {
+        List<DeviceDayStats> changed = new ArrayList<>();
+        List<Counter> counters = new ArrayList<>();
+        for (Map<String, Counter> day : days.values()) {
+            for (Counter counter : day.values()) {
+                synchronized (counter) {
+                    if (counter.dirty) {
+                        counter.dirty = false;
+                        changed.add(counter.toEntity());
+                        counters.add(counter);
+                    }
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            statsRepo.saveAll(changed);
+            snapshots.incrementAndGet();
+        } catch (Exception e) {
+            // Try again next round
+            for (Counter counter : counters) {
+                synchronized (counter) {
+                    counter.dirty = true;
+                }
+            }
+            System.err.println("❌ Failed to snapshot device stats (" + changed.size() + " terminal-days): " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Drop days past retention, in memory and in device_day_stats.
+     */
+    @Scheduled(cron = "0 40 3 * * *")
+    public void purge() {
+        LocalDate oldest = LocalDate.now().minusDays(retentionDays);
+        days.keySet().removeIf(day -> day.isBefore(oldest));
+        try {
+            int deleted = statsRepo.deleteOlderThan(oldest);
+            if (deleted > 0) {
+                System.out.println("🧹 Purged " + deleted + " device stats rows before " + oldest);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Failed to purge device stats: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("days", days.size());
+        stats.put("recorded", recorded.get());
+        stats.put("snapshots", snapshots.get());
+        stats.put("retentionDays", retentionDays);
+        return stats;
+    }
+
+    private static class Counter {
+        final String terminalSerial;
+        final LocalDate day;
+        final HyperLogLog employees = new HyperLogLog();
+        long punches;
+        LocalDateTime firstPunch;
+        LocalDateTime lastPunch;
+        boolean dirty;
+
+        Counter(String terminalSerial, LocalDate day) {
+            this.terminalSerial = terminalSerial;
+            this.day = day;
+        }
+
+        synchronized void add(String employeeKey, LocalDateTime punchTime) {
+            punches++;
+            employees.add(employeeKey);
+            if (firstPunch == null || punchTime.isBefore(firstPunch)) {
+                firstPunch = punchTime;
+            }
+            if (lastPunch == null || punchTime.isAfter(lastPunch)) {
+                lastPunch = punchTime;
+            }
+            dirty = true;
+        }
+
+        /**
+         * Fold in a snapshot. Punches counted before the load are kept.
+         */
+        synchronized void restore(DeviceDayStats stats) {
+            punches += stats.getPunches();
+            employees.merge(new HyperLogLog(stats.getEmployeeSketch()));
+            if (stats.getFirstPunch() != null && (firstPunch == null || stats.getFirstPunch().isBefore(firstPunch))) {
+                firstPunch = stats.getFirstPunch();
+            }
+            if (stats.getLastPunch() != null && (lastPunch == null || stats.getLastPunch().isAfter(lastPunch))) {
+                lastPunch = stats.getLastPunch();
+            }
+        }
+
+        DeviceDayStats toEntity() {
+            DeviceDayStats stats = new DeviceDayStats(terminalSerial, day);
+            stats.setPunches(punches);
+            stats.setFirstPunch(firstPunch);
+            stats.setLastPunch(lastPunch);
+            stats.setEmployeeSketch(employees.toBytes());
+            return stats;
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> state = new HashMap<>();
+            state.put("terminal_sn", terminalSerial);
+            state.put("punches_today", punches);
+            state.put("unique_employees", employees.estimate());
+            state.put("first_punch", firstPunch);
+            state.put("last_punch", lastPunch);
+            return state;
+        }
+    }
+}
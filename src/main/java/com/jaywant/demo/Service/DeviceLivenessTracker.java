@@ -0,0 +1,244 @@
+package com.jaywant.demo.Service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last time each terminal was heard from, by heartbeat or punch, with the
+ * firmware and IP it last reported. Updating it is one map lookup, so it is
+ * safe on the punch path.
+ *
+ * Last-seen times are written to subadmin_terminals.last_sync_at in one
+ * batch every flushIntervalMs. A terminal silent for offlineAfterMs is marked
+ * offline; going online or offline is published on /topic/devices and
+ * /topic/devices/{subadminId} so dashboards do not have to poll.
+ */
+@Service
+public class DeviceLivenessTracker {
+
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${biometric.liveness.offline-after-ms:180000}")
+    private long offlineAfterMs;
+
+    private final Map<String, Liveness> devices = new ConcurrentHashMap<>();
+
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong punches = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+
+    /**
+     * A heartbeat from a device. ip and firmware are kept as last reported
+     * when null.
+     */
+    public void heartbeat(String terminalSerial, String ip, String firmware) {
+        if (terminalSerial == null || terminalSerial.isBlank()) {
+            return;
+        }
+        heartbeats.incrementAndGet();
+        seen(terminalSerial, System.currentTimeMillis(), ip, firmware, "HEARTBEAT");
+    }
+
+    /**
+     * A punch from a device. Punches older than offlineAfterMs (backfill,
+     * replays, late iclock rows) say nothing about the device being up now.
+     */
+    public void punch(String terminalSerial, LocalDateTime punchTime) {
+        if (terminalSerial == null || terminalSerial.isBlank() || punchTime == null) {
+            return;
+        }
+        long at = Math.min(punchTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                System.currentTimeMillis());
+        if (System.currentTimeMillis() - at > offlineAfterMs) {
+            return;
+        }
+        punches.incrementAndGet();
+        seen(terminalSerial, at, null, null, "PUNCH");
+    }
+
+    private void seen(String terminalSerial, long at, String ip, String firmware, String via) {
+        Liveness device = devices.computeIfAbsent(terminalSerial, Liveness::new);
+        boolean cameOnline;
+        synchronized (device) {
+            if (at > device.lastSeen) {
+                device.lastSeen = at;
+                device.lastVia = via;
+                device.dirty = true;
+            }
+            if (ip != null && !ip.isBlank()) {
+                device.ip = ip;
+            }
+            if (firmware != null && !firmware.isBlank()) {
+                device.firmware = firmware;
+            }
+            cameOnline = !device.online;
+            device.online = true;
+        }
+        if (cameOnline) {
+            publish(device, "ONLINE");
+        }
+    }
+
+    /**
+     * Whether the terminal has been heard from within offlineAfterMs.
+     */
+    public boolean isOnline(String terminalSerial) {
+        Liveness device = terminalSerial != null ? devices.get(terminalSerial) : null;
+        return device != null && System.currentTimeMillis() - device.lastSeen <= offlineAfterMs;
+    }
+
+    /**
+     * Write changed last-seen times to subadmin_terminals in one batch.
+     * Never moves last_sync_at backwards.
+     */
+    @Scheduled(fixedDelayString = "${biometric.liveness.flush-interval-ms:30000}", initialDelay = 30000)
+    public void flush() {
+        List<Object[]> rows = new ArrayList<>();
+        List<Liveness> flushed = new ArrayList<>();
+        for (Liveness device : devices.values()) {
+            synchronized (device) {
+                if (!device.dirty) {
+                    continue;
+                }
+                device.dirty = false;
+                Timestamp lastSeen = Timestamp.from(Instant.ofEpochMilli(device.lastSeen));
+                rows.add(new Object[] { lastSeen, device.terminalSerial, lastSeen });
+                flushed.add(device);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE subadmin_terminals SET last_sync_at = ? " +
+                    "WHERE terminal_serial = ? AND (last_sync_at IS NULL OR last_sync_at < ?)", rows);
+            flushedRows.addAndGet(rows.size());
+        } catch (Exception e) {
+            // Try again next round
+            for (Liveness device : flushed) {
+                synchronized (device) {
+                    device.dirty = true;
+                }
+            }
+            System.err.println("❌ Failed to flush device liveness (" + rows.size() + " terminals): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Mark devices silent for longer than offlineAfterMs as offline.
+     */
+    @Scheduled(fixedDelayString = "${biometric.liveness.sweep-interval-ms:15000}", initialDelay = 15000)
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - offlineAfterMs;
+        for (Liveness device : devices.values()) {
+            boolean wentOffline;
+            synchronized (device) {
+                wentOffline = device.online && device.lastSeen < cutoff;
+                if (wentOffline) {
+                    device.online = false;
+                }
+            }
+            if (wentOffline) {
+                publish(device, "OFFLINE");
+            }
+        }
+    }
+
+    private void publish(Liveness device, String state) {
+        transitions.incrementAndGet();
+        System.out.println(("ONLINE".equals(state) ? "🟢 " : "🔴 ") + "Device " + device.terminalSerial +
+                " is " + state.toLowerCase());
+        try {
+            Map<String, Object> update = device.describe();
+            update.put("type", "DEVICE_" + state);
+            messagingTemplate.convertAndSend("/topic/devices", update);
+            Integer subadminId = terminalRegistry.findSubadminId(device.terminalSerial);
+            if (subadminId != null) {
+                messagingTemplate.convertAndSend("/topic/devices/" + subadminId, update);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Failed to publish device " + state + " for " + device.terminalSerial + ": " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Every device seen since startup, by terminal serial.
+     */
+    public Map<String, Object> getDevices() {
+        Map<String, Object> table = new TreeMap<>();
+        for (Liveness device : devices.values()) {
+            table.put(device.terminalSerial, device.describe());
+        }
+        return table;
+    }
+
+    public Map<String, Object> getStats() {
+        int online = 0;
+        for (Liveness device : devices.values()) {
+            if (isOnline(device.terminalSerial)) {
+                online++;
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("devices", devices.size());
+        stats.put("online", online);
+        stats.put("heartbeats", heartbeats.get());
+        stats.put("punches", punches.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("transitions", transitions.get());
+        stats.put("offlineAfterMs", offlineAfterMs);
+        return stats;
+    }
+
+    private class Liveness {
+        final String terminalSerial;
+        long lastSeen;
+        String lastVia;
+        String ip;
+        String firmware;
+        boolean online;
+        boolean dirty;
+
+        Liveness(String terminalSerial) {
+            this.terminalSerial = terminalSerial;
+        }
+
+        synchronized Map<String, Object> describe() {
+            Map<String, Object> state = new HashMap<>();
+            state.put("terminalSerial", terminalSerial);
+            state.put("subadminId", terminalRegistry.findSubadminId(terminalSerial));
+            state.put("online", online);
+            state.put("lastSeen", LocalDateTime.ofInstant(Instant.ofEpochMilli(lastSeen),
+                    ZoneId.systemDefault()).toString());
+            state.put("lastVia", lastVia);
+            state.put("ip", ip);
+            state.put("firmware", firmware);
+            return state;
+        }
+    }
+}
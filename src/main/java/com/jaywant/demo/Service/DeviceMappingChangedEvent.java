@@ -0,0 +1,100 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Employee;
+import com.jaywant.demo.Entity.EmployeeDeviceMapping;
+
+/**
+ * Published whenever a device mapping or an employee it points to changes, so
+ * the in-memory {@link DeviceUserResolutionIndex} can follow database writes.
+ * Carries a snapshot of the mapping's keys rather than the entity itself.
+ */
+public class DeviceMappingChangedEvent {
+
+    public enum Type {
+        MAPPING_SAVED,
+        MAPPING_DELETED,
+        TERMINAL_CHANGED,
+        EMPLOYEE_CHANGED
+    }
+
+    private final Type type;
+    private final Long mappingId;
+    private final Integer hrmEmployeeId;
+    private final Integer subadminId;
+    private final Integer easytimeEmployeeId;
+    private final String terminalSerial;
+    private final String empCode;
+
+    private DeviceMappingChangedEvent(Type type, Long mappingId, Integer hrmEmployeeId, Integer subadminId,
+            Integer easytimeEmployeeId, String terminalSerial, String empCode) {
+        this.type = type;
+        this.mappingId = mappingId;
+        this.hrmEmployeeId = hrmEmployeeId;
+        this.subadminId = subadminId;
+        this.easytimeEmployeeId = easytimeEmployeeId;
+        this.terminalSerial = terminalSerial;
+        this.empCode = empCode;
+    }
+
+    public static DeviceMappingChangedEvent mappingSaved(EmployeeDeviceMapping mapping) {
+        return new DeviceMappingChangedEvent(Type.MAPPING_SAVED, mapping.getId(), mapping.getHrmEmployeeId(),
+                mapping.getSubadminId(), mapping.getEasytimeEmployeeId(), mapping.getTerminalSerial(),
+                mapping.getEmpCode());
+    }
+
+    public static DeviceMappingChangedEvent mappingDeleted(EmployeeDeviceMapping mapping) {
+        return new DeviceMappingChangedEvent(Type.MAPPING_DELETED, mapping.getId(), mapping.getHrmEmployeeId(),
+                mapping.getSubadminId(), mapping.getEasytimeEmployeeId(), mapping.getTerminalSerial(),
+                mapping.getEmpCode());
+    }
+
+    /**
+     * Mappings of a terminal were written outside JPA (plain JDBC), reload them.
+     */
+    public static DeviceMappingChangedEvent terminalChanged(String terminalSerial) {
+        return new DeviceMappingChangedEvent(Type.TERMINAL_CHANGED, null, null, null, null, terminalSerial, null);
+    }
+
+    public static DeviceMappingChangedEvent employeeChanged(Employee employee) {
+        return new DeviceMappingChangedEvent(Type.EMPLOYEE_CHANGED, null, employee.getEmpId(),
+                employee.getSubadmin() != null ? employee.getSubadmin().getId() : null, null, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getMappingId() {
+        return mappingId;
+    }
+
+    public Integer getHrmEmployeeId() {
+        return hrmEmployeeId;
+    }
+
+    public Integer getSubadminId() {
+        return subadminId;
+    }
+
+    public Integer getEasytimeEmployeeId() {
+        return easytimeEmployeeId;
+    }
+
+    public String getTerminalSerial() {
+        return terminalSerial;
+    }
+
+    public String getEmpCode() {
+        return empCode;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceMappingChangedEvent{" +
+                "type=" + type +
+                ", mappingId=" + mappingId +
+                ", hrmEmployeeId=" + hrmEmployeeId +
+                ", terminalSerial='" + terminalSerial + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,52 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Employee;
+import com.jaywant.demo.Entity.EmployeeDeviceMapping;
+import com.jaywant.demo.Entity.SubadminTerminal;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * JPA entity listener for {@link EmployeeDeviceMapping}, {@link Employee} and
+ * {@link SubadminTerminal}. Turns every persist/update/remove into a
+ * {@link DeviceMappingChangedEvent} or {@link TerminalChangedEvent}, whichever
+ * repository or service performed the write. Hibernate obtains the
+ * listener from the Spring context, so the publisher is injected.
+ */
+public class DeviceMappingEntityListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    public void afterSave(Object entity) {
+        if (entity instanceof EmployeeDeviceMapping) {
+            publish(DeviceMappingChangedEvent.mappingSaved((EmployeeDeviceMapping) entity));
+        } else if (entity instanceof Employee) {
+            publish(DeviceMappingChangedEvent.employeeChanged((Employee) entity));
+        } else if (entity instanceof SubadminTerminal) {
+            publish(TerminalChangedEvent.saved((SubadminTerminal) entity));
+        }
+    }
+
+    @PostRemove
+    public void afterRemove(Object entity) {
+        if (entity instanceof EmployeeDeviceMapping) {
+            publish(DeviceMappingChangedEvent.mappingDeleted((EmployeeDeviceMapping) entity));
+        } else if (entity instanceof Employee) {
+            publish(DeviceMappingChangedEvent.employeeChanged((Employee) entity));
+        } else if (entity instanceof SubadminTerminal) {
+            publish(TerminalChangedEvent.deleted((SubadminTerminal) entity));
+        }
+    }
+
+    private void publish(Object event) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Employee;
+import com.jaywant.demo.Entity.EmployeeDeviceMapping;
+import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
+import com.jaywant.demo.Repo.EmployeeRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index that resolves a device punch to an HRM employee without
+ * touching the database.
+ *
+ * Keys:
+ * - (terminalSerial, empCode) -> mapping
+ * - (terminalSerial, easytimeEmployeeId) -> mapping
+ * - (subadminId, empId) -> employee
+ *
+ * Employees are cached as {@link EmployeeRef}s, not entities. An employee
+ * belongs to one subadmin, so employeesById doubles as the reverse index
+ * that finds the one (subadminId, empId) key to evict when it changes.
+ *
+ * The index is loaded once the application is ready and kept coherent through
+ * {@link DeviceMappingChangedEvent}s, which are applied after the writing
+ * transaction commits. Misses fall back to the repositories and are cached
+ * (negatively too, for a short time) so unknown users on a busy terminal do
+ * not turn into a query per punch. Expired misses are swept every minute and
+ * at most maxNegativeEntries are kept; a change only forgets the misses it
+ * can answer.
+ */
+@Service
+public class DeviceUserResolutionIndex {
+
+    @Autowired
+    private EmployeeDeviceMappingRepo mappingRepo;
+
+    @Autowired
+    private EmployeeRepo employeeRepo;
+
+    @Value("${biometric.resolution.negative-cache-seconds:60}")
+    private long negativeCacheSeconds;
+
+    @Value("${biometric.resolution.max-negative-entries:100000}")
+    private int maxNegativeEntries;
+
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private final Map<String, MappingEntry> mappingsByEmpCode = new ConcurrentHashMap<>();
+    private final Map<String, MappingEntry> mappingsByEasytimeId = new ConcurrentHashMap<>();
+    private final Map<Long, MappingEntry> mappingsById = new ConcurrentHashMap<>();
+    private final Map<Long, EmployeeRef> employees = new ConcurrentHashMap<>();
+    private final Map<Integer, EmployeeRef> employeesById = new ConcurrentHashMap<>();
+    private final Map<String, Long> misses = new ConcurrentHashMap<>();
+
+    // Bumped on every change so a lazy load racing with an event is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong databaseLoads = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong negativeOverflows = new AtomicLong();
+    private volatile boolean loaded = false;
+
+    /**
+     * Load everything once. A change committed while the tables are read
+     * makes the copy stale, so it is dropped and read again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        try {
+            long start = System.currentTimeMillis();
+            for (int attempt = 1; attempt <= LOAD_ATTEMPTS && !loaded; attempt++) {
+                long gen = generation.get();
+
+                List<Employee> allEmployees = employeeRepo.findAll();
+                List<EmployeeDeviceMapping> allMappings = mappingRepo.findAll();
+
+                if (gen == generation.get()) {
+                    for (Employee employee : allEmployees) {
+                        putEmployee(EmployeeRef.of(employee));
+                    }
+                    for (EmployeeDeviceMapping mapping : allMappings) {
+                        putMapping(MappingEntry.of(mapping));
+                    }
+                    loaded = true;
+                }
+            }
+
+            if (loaded) {
+                System.out.println("✅ Device user index loaded: " + mappingsById.size() + " mappings, " +
+                        employees.size() + " employees in " + (System.currentTimeMillis() - start) + "ms");
+            } else {
+                System.err.println("⚠️ Device user index kept changing during " + LOAD_ATTEMPTS +
+                        " load attempts, falling back to lazy loading");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Failed to load device user index, falling back to lazy loading: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolve a punch from the TCP listener, where only the machine user id is
+     * known.
+     */
+    public EmployeeRef resolveByEasytimeId(String terminalSerial, Integer easytimeEmployeeId) {
+        if (terminalSerial == null || easytimeEmployeeId == null) {
+            return null;
+        }
+        MappingEntry mapping = findByEasytimeId(terminalSerial, easytimeEmployeeId);
+        return mapping != null ? findEmployee(mapping.subadminId, mapping.hrmEmployeeId) : null;
+    }
+
+    /**
+     * Resolve a punch from the EasyTime transaction table using the same
+     * strategies as before, in order: device mapping by emp_code, device mapping
+     * by machine emp_id, emp_code format SA{subadmin}_EMP{empId}_..., and the
+     * machine emp_id as HRM employee id.
+     */
+    public EmployeeRef resolve(String empCode, Integer machineEmpId, String terminalSerial, Integer subadminId) {
+        if (empCode != null && terminalSerial != null) {
+            MappingEntry mapping = findByEmpCode(terminalSerial, empCode);
+            if (mapping != null && Objects.equals(mapping.subadminId, subadminId)) {
+                EmployeeRef employee = findEmployee(mapping.subadminId, mapping.hrmEmployeeId);
+                if (employee != null) {
+                    return employee;
+                }
+            }
+        }
+
+        if (machineEmpId != null && terminalSerial != null) {
+            MappingEntry mapping = findByEasytimeId(terminalSerial, machineEmpId);
+            if (mapping != null && Objects.equals(mapping.subadminId, subadminId)) {
+                EmployeeRef employee = findEmployee(mapping.subadminId, mapping.hrmEmployeeId);
+                if (employee != null) {
+                    return employee;
+                }
+            }
+        }
+
+        if (empCode != null && empCode.contains("_EMP")) {
+            Integer parsedEmpId = parseEmployeeIdFromCode(empCode);
+            if (parsedEmpId != null) {
+                EmployeeRef employee = findEmployee(subadminId, parsedEmpId);
+                if (employee != null) {
+                    return employee;
+                }
+            }
+        }
+
+        if (machineEmpId != null) {
+            return findEmployee(subadminId, machineEmpId);
+        }
+        return null;
+    }
+
+    /**
+     * Employee by (subadminId, empId), the equivalent of
+     * {@link EmployeeRepo#findByEmpIdAndSubadminId}.
+     */
+    public EmployeeRef findEmployee(Integer subadminId, Integer empId) {
+        if (subadminId == null || empId == null) {
+            return null;
+        }
+        long key = employeeKey(subadminId, empId);
+        EmployeeRef employee = employees.get(key);
+        if (employee != null) {
+            hits.incrementAndGet();
+            return employee;
+        }
+
+        // Employee ids are global: a known employee of another subadmin is a definite miss
+        if (employeesById.containsKey(empId) || isRecentMiss("g|" + empId)) {
+            negativeHits.incrementAndGet();
+            return null;
+        }
+
+        String missKey = "e|" + key;
+        if (isRecentMiss(missKey)) {
+            return null;
+        }
+
+        long gen = generation.get();
+        databaseLoads.incrementAndGet();
+        Employee found = employeeRepo.findByEmpIdAndSubadminId(empId, subadminId);
+        employee = found != null ? EmployeeRef.of(found) : null;
+        if (gen == generation.get()) {
+            if (employee != null) {
+                putEmployee(employee);
+            } else {
+                recordMiss(missKey);
+            }
+        }
+        return employee;
+    }
+
+    /**
+     * Resolve a punch from a terminal that is not registered to any subadmin,
+     * by HRM employee id alone: emp_code format SA{subadmin}_EMP{empId}_...,
+     * numeric emp_code, then the machine emp_id.
+     */
+    public EmployeeRef resolveWithoutTerminal(String empCode, Integer machineEmpId) {
+        if (empCode != null) {
+            Integer empId = empCode.contains("_EMP") ? parseEmployeeIdFromCode(empCode) : parseInteger(empCode);
+            EmployeeRef employee = findEmployeeById(empId);
+            if (employee != null) {
+                return employee;
+            }
+        }
+        return findEmployeeById(machineEmpId);
+    }
+
+    /**
+     * Employee by HRM id in any subadmin, the equivalent of
+     * {@link EmployeeRepo#findById}.
+     */
+    public EmployeeRef findEmployeeById(Integer empId) {
+        if (empId == null) {
+            return null;
+        }
+        EmployeeRef employee = employeesById.get(empId);
+        if (employee != null) {
+            hits.incrementAndGet();
+            return employee;
+        }
+
+        String missKey = "g|" + empId;
+        if (isRecentMiss(missKey)) {
+            return null;
+        }
+
+        long gen = generation.get();
+        databaseLoads.incrementAndGet();
+        employee = employeeRepo.findById(empId).map(EmployeeRef::of).orElse(null);
+        if (gen == generation.get()) {
+            if (employee != null) {
+                putEmployee(employee);
+            } else {
+                recordMiss(missKey);
+            }
+        }
+        return employee;
+    }
+
+    /**
+     * Warm the index before a bulk upload: one query for the device mappings of
+     * all emp_codes of the terminal that are not cached yet, and one for every
+     * employee those mappings or the codes themselves point to. Codes that
+     * resolve to nothing are cached as misses.
+     */
+    public void preload(String terminalSerial, Collection<String> empCodes) {
+        long gen = generation.get();
+        Set<String> unknownCodes = new HashSet<>();
+        Set<Integer> empIds = new HashSet<>();
+        for (String empCode : empCodes) {
+            if (empCode == null) {
+                continue;
+            }
+            if (terminalSerial != null) {
+                MappingEntry entry = mappingsByEmpCode.get(terminalSerial + "|" + empCode);
+                if (entry != null) {
+                    empIds.add(entry.hrmEmployeeId);
+                } else if (!isRecentMiss("c|" + terminalSerial + "|" + empCode)) {
+                    unknownCodes.add(empCode);
+                }
+            }
+            empIds.add(empCode.contains("_EMP") ? parseEmployeeIdFromCode(empCode) : parseInteger(empCode));
+        }
+
+        if (!unknownCodes.isEmpty()) {
+            databaseLoads.incrementAndGet();
+            List<EmployeeDeviceMapping> found = mappingRepo.findByTerminalSerialAndEmpCodeIn(terminalSerial,
+                    unknownCodes);
+            if (gen != generation.get()) {
+                return;
+            }
+            for (EmployeeDeviceMapping mapping : found) {
+                MappingEntry entry = MappingEntry.of(mapping);
+                putMapping(entry);
+                unknownCodes.remove(entry.empCode);
+                empIds.add(entry.hrmEmployeeId);
+            }
+            for (String empCode : unknownCodes) {
+                recordMiss("c|" + terminalSerial + "|" + empCode);
+            }
+        }
+
+        empIds.removeIf(empId -> empId == null || employeesById.containsKey(empId) || isRecentMiss("g|" + empId));
+        if (!empIds.isEmpty()) {
+            databaseLoads.incrementAndGet();
+            List<Employee> found = employeeRepo.findAllById(empIds);
+            if (gen != generation.get()) {
+                return;
+            }
+            for (Employee employee : found) {
+                putEmployee(EmployeeRef.of(employee));
+                empIds.remove(employee.getEmpId());
+            }
+            for (Integer empId : empIds) {
+                recordMiss("g|" + empId);
+            }
+        }
+    }
+
+    private MappingEntry findByEmpCode(String terminalSerial, String empCode) {
+        String key = terminalSerial + "|" + empCode;
+        MappingEntry entry = mappingsByEmpCode.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        String missKey = "c|" + key;
+        if (isRecentMiss(missKey)) {
+            return null;
+        }
+
+        long gen = generation.get();
+        databaseLoads.incrementAndGet();
+        entry = mappingRepo.findByEmpCodeAndTerminalSerial(empCode, terminalSerial).map(MappingEntry::of)
+                .orElse(null);
+        cacheLoadedMapping(gen, entry, missKey);
+        return entry;
+    }
+
+    private MappingEntry findByEasytimeId(String terminalSerial, Integer easytimeEmployeeId) {
+        String key = terminalSerial + "|" + easytimeEmployeeId;
+        MappingEntry entry = mappingsByEasytimeId.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        String missKey = "m|" + key;
+        if (isRecentMiss(missKey)) {
+            return null;
+        }
+
+        long gen = generation.get();
+        databaseLoads.incrementAndGet();
+        entry = mappingRepo.findByEasytimeEmployeeIdAndTerminalSerial(easytimeEmployeeId, terminalSerial)
+                .map(MappingEntry::of).orElse(null);
+        cacheLoadedMapping(gen, entry, missKey);
+        return entry;
+    }
+
+    private void cacheLoadedMapping(long gen, MappingEntry entry, String missKey) {
+        if (gen != generation.get()) {
+            return;
+        }
+        if (entry != null) {
+            putMapping(entry);
+        } else {
+            recordMiss(missKey);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDeviceMappingChanged(DeviceMappingChangedEvent event) {
+        generation.incrementAndGet();
+        switch (event.getType()) {
+            case MAPPING_SAVED:
+                removeMapping(event.getMappingId());
+                putMapping(new MappingEntry(event.getMappingId(), event.getHrmEmployeeId(), event.getSubadminId(),
+                        event.getEasytimeEmployeeId(), event.getTerminalSerial(), event.getEmpCode()));
+                misses.remove("c|" + event.getTerminalSerial() + "|" + event.getEmpCode());
+                misses.remove("m|" + event.getTerminalSerial() + "|" + event.getEasytimeEmployeeId());
+                break;
+            case MAPPING_DELETED:
+                removeMapping(event.getMappingId());
+                break;
+            case TERMINAL_CHANGED:
+                reloadTerminal(event.getTerminalSerial());
+                forgetTerminalMisses(event.getTerminalSerial());
+                break;
+            case EMPLOYEE_CHANGED:
+                // Drop the cached copy, the next punch loads the committed state
+                evictEmployee(event.getHrmEmployeeId());
+                forgetEmployeeMisses(event.getHrmEmployeeId(), event.getSubadminId());
+                break;
+        }
+    }
+
+    private void reloadTerminal(String terminalSerial) {
+        if (terminalSerial == null) {
+            return;
+        }
+        mappingsById.values().stream()
+                .filter(entry -> terminalSerial.equals(entry.terminalSerial))
+                .map(entry -> entry.id)
+                .forEach(this::removeMapping);
+        for (EmployeeDeviceMapping mapping : mappingRepo.findByTerminalSerial(terminalSerial)) {
+            putMapping(MappingEntry.of(mapping));
+        }
+    }
+
+    private void putMapping(MappingEntry entry) {
+        if (entry.id != null) {
+            mappingsById.put(entry.id, entry);
+        }
+        if (entry.terminalSerial != null) {
+            if (entry.empCode != null) {
+                mappingsByEmpCode.put(entry.terminalSerial + "|" + entry.empCode, entry);
+            }
+            if (entry.easytimeEmployeeId != null) {
+                mappingsByEasytimeId.put(entry.terminalSerial + "|" + entry.easytimeEmployeeId, entry);
+            }
+        }
+    }
+
+    private void removeMapping(Long mappingId) {
+        if (mappingId == null) {
+            return;
+        }
+        MappingEntry old = mappingsById.remove(mappingId);
+        if (old != null && old.terminalSerial != null) {
+            mappingsByEmpCode.remove(old.terminalSerial + "|" + old.empCode, old);
+            mappingsByEasytimeId.remove(old.terminalSerial + "|" + old.easytimeEmployeeId, old);
+        }
+    }
+
+    private void putEmployee(EmployeeRef employee) {
+        EmployeeRef previous = employeesById.put(employee.getEmpId(), employee);
+        if (previous != null && previous.getSubadminId() != null
+                && !previous.getSubadminId().equals(employee.getSubadminId())) {
+            employees.remove(employeeKey(previous.getSubadminId(), previous.getEmpId()));
+        }
+        if (employee.getSubadminId() != null) {
+            employees.put(employeeKey(employee.getSubadminId(), employee.getEmpId()), employee);
+        }
+    }
+
+    private void evictEmployee(Integer empId) {
+        if (empId == null) {
+            return;
+        }
+        EmployeeRef previous = employeesById.remove(empId);
+        if (previous != null && previous.getSubadminId() != null) {
+            employees.remove(employeeKey(previous.getSubadminId(), empId));
+        }
+    }
+
+    private void forgetTerminalMisses(String terminalSerial) {
+        String codeKey = "c|" + terminalSerial + "|";
+        String easytimeKey = "m|" + terminalSerial + "|";
+        misses.keySet().removeIf(key -> key.startsWith(codeKey) || key.startsWith(easytimeKey));
+    }
+
+    private void forgetEmployeeMisses(Integer empId, Integer subadminId) {
+        if (empId == null) {
+            return;
+        }
+        misses.remove("g|" + empId);
+        if (subadminId != null) {
+            misses.remove("e|" + employeeKey(subadminId, empId));
+        }
+    }
+
+    /**
+     * Drop expired misses; a miss that is never looked up again is
+     * otherwise kept forever.
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void sweepMisses() {
+        long now = System.currentTimeMillis();
+        misses.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    private boolean isRecentMiss(String missKey) {
+        Long expiresAt = misses.get(missKey);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt > System.currentTimeMillis()) {
+            negativeHits.incrementAndGet();
+            return true;
+        }
+        misses.remove(missKey, expiresAt);
+        return false;
+    }
+
+    private void recordMiss(String missKey) {
+        if (misses.size() >= maxNegativeEntries) {
+            sweepMisses();
+            if (misses.size() >= maxNegativeEntries) {
+                // Still full of live misses: this lookup is simply not cached
+                negativeOverflows.incrementAndGet();
+                return;
+            }
+        }
+        misses.put(missKey, System.currentTimeMillis() + negativeCacheSeconds * 1000);
+    }
+
+    private static long employeeKey(int subadminId, int empId) {
+        return ((long) subadminId << 32) | (empId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Parse employee ID from emp_code format
+     */
+    private static Integer parseEmployeeIdFromCode(String empCode) {
+        try {
+            for (String part : empCode.split("_")) {
+                if (part.startsWith("EMP")) {
+                    return Integer.parseInt(part.substring(3));
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Ignore parsing errors
+        }
+        return null;
+    }
+
+    private static Integer parseInteger(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loaded", loaded);
+        stats.put("mappings", mappingsById.size());
+        stats.put("employees", employees.size());
+        stats.put("negativeEntries", misses.size());
+        stats.put("hits", hits.get());
+        stats.put("databaseLoads", databaseLoads.get());
+        stats.put("negativeHits", negativeHits.get());
+        stats.put("negativeOverflows", negativeOverflows.get());
+        return stats;
+    }
+
+    /**
+     * Immutable copy of the mapping columns the index needs.
+     */
+    private static final class MappingEntry {
+        final Long id;
+        final Integer hrmEmployeeId;
+        final Integer subadminId;
+        final Integer easytimeEmployeeId;
+        final String terminalSerial;
+        final String empCode;
+
+        MappingEntry(Long id, Integer hrmEmployeeId, Integer subadminId, Integer easytimeEmployeeId,
+                String terminalSerial, String empCode) {
+            this.id = id;
+            this.hrmEmployeeId = hrmEmployeeId;
+            this.subadminId = subadminId;
+            this.easytimeEmployeeId = easytimeEmployeeId;
+            this.terminalSerial = terminalSerial;
+            this.empCode = empCode;
+        }
+
+        static MappingEntry of(EmployeeDeviceMapping mapping) {
+            return new MappingEntry(mapping.getId(), mapping.getHrmEmployeeId(), mapping.getSubadminId(),
+                    mapping.getEasytimeEmployeeId(), mapping.getTerminalSerial(), mapping.getEmpCode());
+        }
+    }
+}
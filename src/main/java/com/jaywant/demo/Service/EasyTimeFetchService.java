@@ -0,0 +1,339 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Config.HttpDeadline;
+import com.jaywant.demo.Entity.SubadminTerminal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fetches from EasyTimePro servers concurrently, each call bounded by a
+ * deadline and guarded by a circuit breaker per easytimeApiUrl. The
+ * deadline starts when a worker picks the call up, so time queued behind
+ * other servers is not charged to this one. It caps the HTTP timeouts of
+ * the call's requests, and a call still running when it expires is
+ * cancelled, so its worker is freed as well.
+ *
+ * After failureThreshold consecutive failures a breaker opens and calls to
+ * that server fail at once with {@link CircuitOpenException}. Once openMs has
+ * passed, one trial call is let through (half-open): success closes the
+ * breaker, failure opens it again for twice as long, up to maxOpenMs.
+ */
+@Service
+public class EasyTimeFetchService {
+
+    @Autowired
+    private EasyTimeProApiService easyTimeProApiService;
+
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
+    @Value("${easytime.fetch.workers:8}")
+    private int workers;
+
+    // Whole call including a token refresh, so a dead server cannot hold a poller
+    @Value("${easytime.fetch.deadline-ms:15000}")
+    private long deadlineMs;
+
+    @Value("${easytime.circuit.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${easytime.circuit.open-ms:60000}")
+    private long openMs;
+
+    @Value("${easytime.circuit.max-open-ms:600000}")
+    private long maxOpenMs;
+
+    /**
+     * A call skipped because the server's breaker is open.
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String apiUrl, long retryInMs) {
+            super("Circuit open for " + apiUrl + ", next try in " + retryInMs / 1000 + "s");
+        }
+    }
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "easytime-fetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Transactions of one terminal between fromDate and toDate. Completes
+     * exceptionally with {@link CircuitOpenException} without calling the
+     * server if its breaker is open, or with a TimeoutException after the
+     * deadline.
+     */
+    public CompletableFuture<List<Map<String, Object>>> fetchTransactions(SubadminTerminal terminal,
+            String fromDate, String toDate) {
+        return call(terminal, new AtomicBoolean(), deadlineMs,
+                token -> easyTimeProApiService.getAttendanceTransactions(terminal.getEasytimeApiUrl(), token,
+                        fromDate, toDate));
+    }
+
+    /**
+     * Stream a terminal's transactions page by page into pageConsumer, behind
+     * the server's breaker and bounded by the deadline, for polls of a short
+     * recent window. A failing consumer does not count against the server.
+     *
+     * @return future of the number of transactions read
+     */
+    public CompletableFuture<Integer> streamTransactions(SubadminTerminal terminal, String fromDate, String toDate,
+            int pageSize, Consumer<List<EasyTimeTransaction>> pageConsumer) {
+        return stream(terminal, fromDate, toDate, pageSize, pageConsumer, deadlineMs);
+    }
+
+    /**
+     * @param timeoutMs deadline for the whole stream, 0 for none
+     */
+    private CompletableFuture<Integer> stream(SubadminTerminal terminal, String fromDate, String toDate,
+            int pageSize, Consumer<List<EasyTimeTransaction>> pageConsumer, long timeoutMs) {
+        AtomicBoolean consumerFailed = new AtomicBoolean();
+        Consumer<List<EasyTimeTransaction>> guarded = page -> {
+            try {
+                pageConsumer.accept(page);
+            } catch (RuntimeException e) {
+                consumerFailed.set(true);
+                throw e;
+            }
+        };
+        return call(terminal, consumerFailed, timeoutMs,
+                token -> easyTimeProApiService.streamAttendanceTransactions(terminal.getEasytimeApiUrl(), token,
+                        fromDate, toDate, pageSize, guarded));
+    }
+
+    /**
+     * @param timeoutMs deadline from the moment a worker starts the call, 0
+     *                  for none
+     */
+    private <T> CompletableFuture<T> call(SubadminTerminal terminal, AtomicBoolean callerFault, long timeoutMs,
+            Function<String, T> request) {
+        String apiUrl = terminal.getEasytimeApiUrl();
+        if (apiUrl == null || apiUrl.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "No EasyTimePro URL for terminal " + terminal.getTerminalSerial()));
+        }
+        CircuitBreaker breaker = breakers.computeIfAbsent(apiUrl, CircuitBreaker::new);
+        long retryInMs = breaker.tryAcquire();
+        if (retryInMs > 0) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(apiUrl, retryInMs));
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<Future<?>> task = new AtomicReference<>();
+        task.set(executor.submit(() -> {
+            try {
+                T result;
+                if (timeoutMs > 0) {
+                    // The deadline starts now, not when the call was queued
+                    long deadlineAt = System.currentTimeMillis() + timeoutMs;
+                    CompletableFuture.delayedExecutor(timeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+                        if (future.completeExceptionally(new TimeoutException(
+                                "No answer from " + apiUrl + " within " + timeoutMs + "ms"))) {
+                            Future<?> running = task.get();
+                            if (running != null) {
+                                running.cancel(true);
+                            }
+                        }
+                    });
+                    result = HttpDeadline.call(deadlineAt, () -> tokenCache.withToken(terminal, request));
+                } else {
+                    result = tokenCache.withToken(terminal, request);
+                }
+                future.complete(result);
+            } catch (Throwable e) {
+                future.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+            }
+        }));
+        return future.whenComplete((result, error) -> breaker.record(error == null || callerFault.get(), error));
+    }
+
+    /**
+     * {@link #fetchTransactions} for callers that want to wait for the result.
+     */
+    public List<Map<String, Object>> fetchTransactionsNow(SubadminTerminal terminal, String fromDate,
+            String toDate) {
+        return await(terminal, fetchTransactions(terminal, fromDate, toDate));
+    }
+
+    /**
+     * Wait for a fetch, rethrowing its failure unwrapped.
+     */
+    public static <T> T await(SubadminTerminal terminal, CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted fetching from " + terminal.getTerminalSerial());
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Stream a long range and wait for the end. A range can take many pages,
+     * so there is no deadline; each page is bounded by the HTTP client's read
+     * timeout.
+     */
+    public int streamTransactionsNow(SubadminTerminal terminal, String fromDate, String toDate, int pageSize,
+            Consumer<List<EasyTimeTransaction>> pageConsumer) {
+        return await(terminal, stream(terminal, fromDate, toDate, pageSize, pageConsumer, 0));
+    }
+
+    /**
+     * Whether calls to this server are currently being skipped.
+     */
+    public boolean isOpen(String apiUrl) {
+        CircuitBreaker breaker = breakers.get(apiUrl);
+        return breaker != null && breaker.isOpen();
+    }
+
+    private static RuntimeException unwrap(Exception e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            return new IllegalStateException("EasyTimePro fetch timed out", cause);
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause
+                : new IllegalStateException(cause.getMessage(), cause);
+    }
+
+    public Map<String, Object> getBreakerStates() {
+        Map<String, Object> states = new TreeMap<>();
+        for (CircuitBreaker breaker : breakers.values()) {
+            states.put(breaker.apiUrl, breaker.describe());
+        }
+        return states;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("breakers", getBreakerStates());
+        stats.put("activeFetches", executor.getActiveCount());
+        stats.put("queuedFetches", executor.getQueue().size());
+        stats.put("deadlineMs", deadlineMs);
+        stats.put("failureThreshold", failureThreshold);
+        return stats;
+    }
+
+    private class CircuitBreaker {
+        final String apiUrl;
+        String state = "CLOSED";
+        int consecutiveFailures;
+        long openUntil;
+        long currentOpenMs = openMs;
+        long calls;
+        long failures;
+        long skipped;
+        String lastError;
+
+        CircuitBreaker(String apiUrl) {
+            this.apiUrl = apiUrl;
+        }
+
+        /**
+         * 0 if the call may go ahead, else how long until the next trial.
+         */
+        synchronized long tryAcquire() {
+            long now = System.currentTimeMillis();
+            if ("OPEN".equals(state) && now >= openUntil) {
+                state = "HALF_OPEN";
+                calls++;
+                return 0;
+            }
+            if (!"CLOSED".equals(state)) {
+                // Open, or half-open with its one trial still running
+                skipped++;
+                return Math.max(openUntil - now, 1000);
+            }
+            calls++;
+            return 0;
+        }
+
+        synchronized void record(boolean success, Throwable error) {
+            if (success) {
+                if (!"CLOSED".equals(state)) {
+                    System.out.println("🟢 EasyTimePro " + apiUrl + " is back, circuit closed");
+                }
+                state = "CLOSED";
+                consecutiveFailures = 0;
+                currentOpenMs = openMs;
+                return;
+            }
+            failures++;
+            consecutiveFailures++;
+            lastError = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause().toString() : String.valueOf(error);
+            if ("HALF_OPEN".equals(state)) {
+                currentOpenMs = Math.min(currentOpenMs * 2, maxOpenMs);
+                open();
+            } else if (consecutiveFailures >= failureThreshold) {
+                open();
+            }
+        }
+
+        private void open() {
+            state = "OPEN";
+            openUntil = System.currentTimeMillis() + currentOpenMs;
+            System.err.println("🔴 EasyTimePro " + apiUrl + " failed " + consecutiveFailures +
+                    " times, skipping it for " + currentOpenMs / 1000 + "s: " + lastError);
+        }
+
+        synchronized boolean isOpen() {
+            return "OPEN".equals(state) && System.currentTimeMillis() < openUntil;
+        }
+
+        synchronized Map<String, Object> describe() {
+            Map<String, Object> state = new HashMap<>();
+            state.put("state", this.state);
+            state.put("consecutiveFailures", consecutiveFailures);
+            state.put("calls", calls);
+            state.put("failures", failures);
+            state.put("skipped", skipped);
+            state.put("lastError", lastError);
+            state.put("openUntil", "OPEN".equals(this.state) ? LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(openUntil), ZoneId.systemDefault()).toString() : null);
+            return state;
+        }
+    }
+}
@@ -1,22 +1,44 @@
 package com.jaywant.demo.Service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Calls to the EasyTimePro REST API. All of them go through the shared pooled
+ * RestTemplate from RestTemplateConfig; tokens come from
+ * {@link EasyTimeTokenCache}.
+ */
 @Service
 public class EasyTimeProApiService {
 
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private PoolingHttpClientConnectionManager connectionManager;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
@@ -128,6 +150,132 @@ public class EasyTimeProApiService {
         }
     }
 
+    /**
+     * Read attendance transactions page by page without buffering the
+     * response. Each page is parsed from the response stream straight into
+     * {@link EasyTimeTransaction}s and handed to pageConsumer before the next
+     * page is requested, so memory stays at one page whatever the date range.
+     *
+     * @return number of transactions read
+     */
+    public int streamAttendanceTransactions(String apiUrl, String token, String fromDate, String toDate,
+            int pageSize, Consumer<List<EasyTimeTransaction>> pageConsumer) {
+        String query = "page_size=" + pageSize;
+        if (fromDate != null && toDate != null) {
+            query += "&punch_time__gte=" + URLEncoder.encode(fromDate, StandardCharsets.UTF_8) +
+                    "&punch_time__lte=" + URLEncoder.encode(toDate, StandardCharsets.UTF_8);
+        }
+        HttpHeaders headers = createAuthHeaders(token);
+        String endpoint = apiUrl + "/iclock/api/transactions/";
+        String pageUrl = endpoint + "?" + query;
+        int total = 0;
+
+        while (true) {
+            TransactionPage page;
+            try {
+                page = restTemplate.execute(URI.create(pageUrl), HttpMethod.GET,
+                        request -> request.getHeaders().putAll(headers),
+                        response -> readTransactionPage(response.getBody(), pageSize));
+            } catch (Exception e) {
+                throw new RuntimeException("EasyTimePro transaction fetch error: " + e.getMessage(), e);
+            }
+            if (page == null) {
+                break;
+            }
+            total += page.transactions.size();
+            if (!page.transactions.isEmpty()) {
+                pageConsumer.accept(page.transactions);
+            }
+            if (page.next == null) {
+                break;
+            }
+            // Keep to the configured server and endpoint, whatever host or path
+            // prefix the API put in the link; only its query moves the page on
+            String nextQuery = URI.create(page.next).getRawQuery();
+            if (nextQuery == null || nextQuery.isEmpty()) {
+                break;
+            }
+            pageUrl = endpoint + "?" + nextQuery;
+        }
+        return total;
+    }
+
+    private TransactionPage readTransactionPage(InputStream body, int pageSize) throws IOException {
+        TransactionPage page = new TransactionPage(pageSize);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("next".equals(field)) {
+                    page.next = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                } else if ("results".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        page.transactions.add(readTransaction(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return page;
+    }
+
+    private static EasyTimeTransaction readTransaction(JsonParser parser) throws IOException {
+        EasyTimeTransaction transaction = new EasyTimeTransaction();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    transaction.setId(parser.getValueAsLong());
+                    break;
+                case "emp_code":
+                    transaction.setEmpCode(parser.getText());
+                    break;
+                case "employee_id":
+                    transaction.setEmployeeId(PunchEngine.parseInteger(parser.getText()));
+                    break;
+                case "punch_time":
+                    transaction.setPunchTime(parser.getText());
+                    break;
+                case "punch_state":
+                    transaction.setPunchState(PunchEngine.parseInteger(parser.getText()));
+                    break;
+                case "verify_type":
+                    transaction.setVerifyType(PunchEngine.parseInteger(parser.getText()));
+                    break;
+                case "terminal_sn":
+                    transaction.setTerminalSn(parser.getText());
+                    break;
+                case "upload_time":
+                    transaction.setUploadTime(parser.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return transaction;
+    }
+
+    private static class TransactionPage {
+        final List<EasyTimeTransaction> transactions;
+        String next;
+
+        TransactionPage(int pageSize) {
+            this.transactions = new ArrayList<>(pageSize);
+        }
+    }
+
     /**
      * Get terminal/device information
      */
@@ -219,6 +367,43 @@ public class EasyTimeProApiService {
         }
     }
 
+    /**
+     * Whether a failed call was rejected for its token (HTTP 401)
+     */
+    public static boolean isUnauthorized(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpClientErrorException.Unauthorized) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Connection pool usage, overall and per terminal
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("total", poolStats(connectionManager.getTotalStats()));
+        Map<String, Object> routes = new TreeMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), poolStats(connectionManager.getStats(route)));
+        }
+        stats.put("routes", routes);
+        stats.put("maxTotal", connectionManager.getMaxTotal());
+        stats.put("maxPerRoute", connectionManager.getDefaultMaxPerRoute());
+        return stats;
+    }
+
+    private static Map<String, Object> poolStats(PoolStats poolStats) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("leased", poolStats.getLeased());
+        stats.put("available", poolStats.getAvailable());
+        stats.put("pending", poolStats.getPending());
+        stats.put("max", poolStats.getMax());
+        return stats;
+    }
+
     /**
      * Create HTTP headers with authorization token
      */
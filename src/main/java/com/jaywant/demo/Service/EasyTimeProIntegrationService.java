@@ -6,17 +6,13 @@ import com.jaywant.demo.Entity.EmployeeDeviceMapping;
 import com.jaywant.demo.Entity.SubadminTerminal;
 import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
-import com.jaywant.demo.Repo.AttendanceRepo;
 import com.jaywant.demo.Repo.EmployeeRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +24,12 @@ public class EasyTimeProIntegrationService {
     @Autowired
     private EasyTimeProApiService easyTimeProApiService;
 
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
+    @Autowired
+    private EasyTimeFetchService fetchService;
+
     @Autowired
     private EmployeeDeviceMappingRepo mappingRepo;
 
@@ -38,10 +40,10 @@ public class EasyTimeProIntegrationService {
     private EmployeeRepo employeeRepo;
 
     @Autowired
-    private AttendanceRepo attendanceRepo;
+    private SimpMessagingTemplate messagingTemplate;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private PunchEngine punchEngine;
 
     /**
      * Register employee on EasyTimePro terminal with ID verification
@@ -79,10 +81,11 @@ public class EasyTimeProIntegrationService {
             );
 
             // Register in EasyTimePro
-            Map<String, Object> response = easyTimeProApiService.registerEmployee(
-                    terminal.getEasytimeApiUrl(),
-                    terminal.getApiToken(),
-                    employeeData);
+            Map<String, Object> response = tokenCache.withToken(terminal,
+                    token -> easyTimeProApiService.registerEmployee(
+                            terminal.getEasytimeApiUrl(),
+                            token,
+                            employeeData));
 
             // Create mapping record
             EmployeeDeviceMapping mapping = new EmployeeDeviceMapping(
@@ -106,104 +109,67 @@ public class EasyTimeProIntegrationService {
     }
 
     /**
-     * Process attendance transaction from EasyTimePro
+     * Process attendance transaction from EasyTimePro through the punch
+     * engine, under the same source and key as the EasyTime API pollers.
+     * Returns false if it was not queued (duplicate, no mapping, bad time).
      */
-    @Transactional
-    public void processAttendanceTransaction(Map<String, Object> transaction) {
+    public boolean processAttendanceTransaction(Map<String, Object> transaction) {
         try {
-            // Extract transaction data
-            Integer employeeId = (Integer) transaction.get("employee_id");
-            String terminalSn = (String) transaction.get("terminal_sn");
-            String punchTimeStr = (String) transaction.get("punch_time");
-            String punchType = (String) transaction.get("punch_type");
-
-            // Find employee mapping
-            EmployeeDeviceMapping mapping = mappingRepo
-                    .findByEasytimeEmployeeIdAndTerminalSerial(employeeId, terminalSn)
-                    .orElse(null);
-
-            if (mapping == null) {
-                System.out.println("No mapping found for employee " + employeeId + " on terminal " + terminalSn);
-                return;
-            }
-
-            // Get HRM employee
-            Employee employee = employeeRepo.findById(mapping.getHrmEmployeeId()).orElse(null);
-            if (employee == null) {
-                System.out.println("HRM employee not found: " + mapping.getHrmEmployeeId());
-                return;
-            }
-
-            // Parse punch time
-            LocalDateTime punchDateTime = LocalDateTime.parse(punchTimeStr,
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-
-            // Find or create attendance record
-            String dateStr = punchDate.toString();
-            Optional<Attendance> existingAttendance = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
-
-            Attendance attendance;
-            if (existingAttendance.isPresent()) {
-                attendance = existingAttendance.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-            }
-
-            // Update punch times based on type
-            if ("check_in".equals(punchType) || "0".equals(punchType)) {
-                attendance.setPunchInTime(punchTime);
-            } else if ("check_out".equals(punchType) || "1".equals(punchType)) {
-                attendance.setPunchOutTime(punchTime);
-            }
-
-            // Recalculate durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            Attendance savedAttendance = attendanceRepo.save(attendance);
-
-            // Broadcast real-time update
-            broadcastAttendanceUpdate(employee.getSubadmin().getId(), savedAttendance);
-
-            System.out.println("Processed attendance: " + employee.getFullName() +
-                    " - " + punchType + " at " + punchTime);
+            Object id = transaction.get("id");
+            Object punchType = transaction.get("punch_type");
+            String type = punchType != null ? String.valueOf(punchType) : null;
+            Boolean checkIn = "check_in".equals(type) || "0".equals(type) ? Boolean.TRUE
+                    : "check_out".equals(type) || "1".equals(type) ? Boolean.FALSE : null;
+
+            PunchEvent event = new PunchEvent("EASYTIME_API")
+                    .dedupKey(id != null ? String.valueOf(id) : null)
+                    .punchTime(transaction.get("punch_time"))
+                    .checkIn(checkIn)
+                    .deviceSerial((String) transaction.get("terminal_sn"))
+                    .deviceUserId(PunchEngine.parseInteger(transaction.get("employee_id")))
+                    .rawData(transaction.toString())
+                    .onWritten((record, attendance) -> broadcastAttendanceUpdate(
+                            record.getEmployee().getSubadminId(), attendance));
+            return punchEngine.process(event).isQueued();
 
         } catch (Exception e) {
             System.err.println("Error processing attendance transaction: " + e.getMessage());
-            e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * Sync attendance data from EasyTimePro for a specific date range
+     * Sync attendance data from EasyTimePro for a specific date range.
+     * Transactions already processed are dropped by the punch engine, so
+     * syncing a range again only writes the new ones. Returns the number of
+     * transactions the terminal reported.
      */
-    public void syncAttendanceData(String terminalSerial, String fromDate, String toDate) {
+    public int syncAttendanceData(String terminalSerial, String fromDate, String toDate) {
         try {
             SubadminTerminal terminal = terminalRepo.findByTerminalSerial(terminalSerial)
                     .orElseThrow(() -> new RuntimeException("Terminal not found: " + terminalSerial));
 
             // Get transactions from EasyTimePro
-            List<Map<String, Object>> transactions = easyTimeProApiService.getAttendanceTransactions(
-                    terminal.getEasytimeApiUrl(),
-                    terminal.getApiToken(),
-                    fromDate,
-                    toDate);
+            List<Map<String, Object>> transactions = fetchService.fetchTransactionsNow(terminal, fromDate, toDate);
 
-            // Process each transaction
+            int queued = 0;
             for (Map<String, Object> transaction : transactions) {
-                processAttendanceTransaction(transaction);
+                // The terminal asked for is the one the transactions came from
+                transaction.putIfAbsent("terminal_sn", terminalSerial);
+                if (processAttendanceTransaction(transaction)) {
+                    queued++;
+                }
             }
 
             // Update last sync time
             terminal.setLastSyncAt(LocalDateTime.now());
             terminalRepo.save(terminal);
 
-            System.out.println("Synced " + transactions.size() + " transactions from terminal " + terminalSerial);
+            if (queued > 0) {
+                System.out.println("Synced " + queued + " new of " + transactions.size() +
+                        " transactions from terminal " + terminalSerial);
+            }
+            return transactions.size();
 
         } catch (Exception e) {
             System.err.println("Error syncing attendance data: " + e.getMessage());
@@ -285,9 +251,10 @@ public class EasyTimeProIntegrationService {
                     .orElseThrow(() -> new RuntimeException("Terminal not found"));
 
             // Get all employees from EasyTimePro to find actual assigned ID
-            List<Map<String, Object>> employees = easyTimeProApiService.getEmployees(
-                    terminal.getEasytimeApiUrl(),
-                    terminal.getApiToken());
+            List<Map<String, Object>> employees = tokenCache.withToken(terminal,
+                    token -> easyTimeProApiService.getEmployees(
+                            terminal.getEasytimeApiUrl(),
+                            token));
 
             // Find employee by emp_code
             String empCode = mapping.getEmpCode();
@@ -326,9 +293,10 @@ public class EasyTimeProIntegrationService {
             SubadminTerminal terminal = terminalRepo.findByTerminalSerial(terminalSerial)
                     .orElseThrow(() -> new RuntimeException("Terminal not found"));
 
-            return easyTimeProApiService.getEmployees(
-                    terminal.getEasytimeApiUrl(),
-                    terminal.getApiToken());
+            return tokenCache.withToken(terminal,
+                    token -> easyTimeProApiService.getEmployees(
+                            terminal.getEasytimeApiUrl(),
+                            token));
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to get employees from machine: " + e.getMessage(), e);
@@ -352,10 +320,11 @@ public class EasyTimeProIntegrationService {
             // Remove from EasyTimePro
             SubadminTerminal terminal = terminalRepo.findByTerminalSerial(terminalSerial).orElse(null);
             if (terminal != null) {
-                easyTimeProApiService.deleteEmployee(
-                        terminal.getEasytimeApiUrl(),
-                        terminal.getApiToken(),
-                        mapping.getEasytimeEmployeeId());
+                tokenCache.withToken(terminal,
+                        token -> easyTimeProApiService.deleteEmployee(
+                                terminal.getEasytimeApiUrl(),
+                                token,
+                                mapping.getEasytimeEmployeeId()));
             }
 
             // Remove mapping
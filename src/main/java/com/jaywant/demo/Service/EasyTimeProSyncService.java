@@ -1,29 +1,38 @@
 package com.jaywant.demo.Service;
 
 import com.jaywant.demo.Config.EasyTimeProConfig;
-import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Entity.EmployeeDeviceMapping;
-import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.Arrays;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-sync of the configured iclock databases. Each database is read on its
+ * own thread and pooled connection, in punch-time order, and the streams are
+ * merged by punch time so the punch engine sees one chronological sequence.
+ * A bounded page buffer per database keeps a fast reader from racing ahead.
+ */
 @Service
 public class EasyTimeProSyncService {
 
+    private static final List<Map<String, Object>> END_OF_STREAM = Collections.emptyList();
+
     @Autowired
     private EasyTimeProConfig easyTimeProConfig;
 
@@ -31,18 +40,30 @@ public class EasyTimeProSyncService {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private EmployeeDeviceMappingRepo mappingRepo;
+    private ProcessedTransactionDedup processedTransactions;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
+    private PunchEngine punchEngine;
 
     @Autowired
-    private AttendanceRepo attendanceRepo;
+    private PunchBatchWriter punchWriter;
 
-    @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    @Value("${easytime.sync.page-size:1000}")
+    private int pageSize;
+
+    // Pages read ahead per database before its reader waits for the merge
+    @Value("${easytime.sync.buffered-pages:2}")
+    private int bufferedPages;
+
+    private volatile MergeRun currentRun;
+    private volatile MergeRun lastRun;
+
+    // How long a database.table found (or not found) in INFORMATION_SCHEMA is trusted
+    @Value("${easytime.sync.schema-cache-ttl-ms:600000}")
+    private long schemaCacheTtlMs;
 
-    private Set<String> processedTransactions = new HashSet<>();
+    // database.table -> result of the last INFORMATION_SCHEMA lookup
+    private final Map<String, SchemaCheck> schemaChecks = new ConcurrentHashMap<>();
 
     /**
      * Sync data from EasyTimePro iclock_transaction table (configurable interval)
@@ -58,12 +79,8 @@ public class EasyTimeProSyncService {
             System.out.println("🔄 Starting EasyTimePro data sync...");
 
             // Sync from configured databases
-            String[] databases = easyTimeProConfig.getSync().getDatabases().split(",");
-            for (String database : databases) {
-                syncFromDatabase(database.trim(), easyTimeProConfig.getMiddleware().getTransactionTable());
-            }
-
-            System.out.println("✅ EasyTimePro data sync completed");
+            startMergedSync(easyTimeProConfig.getSync().getDatabases().split(","),
+                    easyTimeProConfig.getMiddleware().getTransactionTable());
 
         } catch (Exception e) {
             System.err.println("❌ Error in EasyTimePro sync: " + e.getMessage());
@@ -71,25 +88,26 @@ public class EasyTimeProSyncService {
     }
 
     /**
-     * Manual sync trigger
+     * Manual sync trigger. Re-reads the last 7 days of every configured
+     * database concurrently and merges them by punch time; while a run is in
+     * progress, returns that run instead of starting another.
      */
     public Map<String, Object> manualSync() {
         try {
             System.out.println("🔄 Manual sync triggered...");
-            int newRecords = 0;
 
             // Use configured databases
             String[] databases = easyTimeProConfig.getSync().getDatabases().split(",");
             String table = easyTimeProConfig.getMiddleware().getTransactionTable();
 
-            for (String database : databases) {
-                newRecords += syncFromDatabase(database.trim(), table);
-            }
+            MergeRun running = currentRun;
+            MergeRun run = startMergedSync(databases, table);
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
-            result.put("message", "Manual sync completed");
-            result.put("newRecords", newRecords);
+            result.put("message", run == null ? "No accessible database to sync"
+                    : run == running ? "Manual sync already running" : "Manual sync started");
+            result.put("mergedSync", run != null ? run.describe() : null);
             result.put("syncTime", LocalDateTime.now());
             result.put("processedDatabases", Arrays.asList(databases));
 
@@ -105,343 +123,104 @@ public class EasyTimeProSyncService {
     }
 
     /**
-     * Sync from specific database and table
+     * Start a merged read of the last 7 days of the accessible databases,
+     * unless one is still running. Null if no database is accessible.
      */
-    private int syncFromDatabase(String database, String table) {
-        try {
+    private synchronized MergeRun startMergedSync(String[] databases, String table) {
+        if (currentRun != null) {
+            return currentRun;
+        }
+        LocalDateTime from = LocalDate.now().minusDays(7).atStartOfDay();
+        List<DatabaseStream> streams = new ArrayList<>();
+        for (String database : databases) {
             // First check if database and table exist
-            if (!checkDatabaseAccess(database, table)) {
-                System.out.println("⚠️ Skipping " + database + "." + table + " - not accessible");
-                return 0;
-            }
-
-            String sql = String.format("""
-                    SELECT
-                        id, emp_code, punch_time, punch_state, verify_type,
-                        terminal_sn, terminal_alias, area_alias, source,
-                        upload_time, emp_id, terminal_id, company_id
-                    FROM %s.%s
-                    WHERE punch_time >= CURDATE() - INTERVAL 7 DAYS
-                    ORDER BY punch_time DESC
-                    LIMIT 1000
-                    """, database, table);
-
-            List<Map<String, Object>> transactions = jdbcTemplate.queryForList(sql);
-
-            int processedCount = 0;
-
-            for (Map<String, Object> transaction : transactions) {
-                if (processTransaction(transaction, database)) {
-                    processedCount++;
-                }
+            if (!checkDatabaseAccess(database.trim(), table)) {
+                System.out.println("⚠️ Skipping " + database.trim() + "." + table + " - not accessible");
+                continue;
             }
-
-            System.out.println("📊 Processed " + processedCount + " records from " + database + "." + table);
-            return processedCount;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error syncing from " + database + ": " + e.getMessage());
-            e.printStackTrace();
-            return 0;
+            streams.add(new DatabaseStream(database.trim(), table, from));
         }
-    }
-
-    /**
-     * Check if database and table are accessible
-     */
-    private boolean checkDatabaseAccess(String database, String table) {
-        try {
-            // Check if database exists
-            String checkDbSql = "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?";
-            List<Map<String, Object>> dbResult = jdbcTemplate.queryForList(checkDbSql, database);
-
-            if (dbResult.isEmpty()) {
-                System.out.println("⚠️ Database '" + database + "' does not exist");
-                return false;
-            }
-
-            // Check if table exists
-            String checkTableSql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
-            List<Map<String, Object>> tableResult = jdbcTemplate.queryForList(checkTableSql, database, table);
-
-            if (tableResult.isEmpty()) {
-                System.out.println("⚠️ Table '" + database + "." + table + "' does not exist");
-                return false;
-            }
-
-            // Test basic access with minimal query
-            String testSql = String.format("SELECT COUNT(*) FROM %s.%s LIMIT 1", database, table);
-            jdbcTemplate.queryForObject(testSql, Integer.class);
-
-            System.out.println("✅ Database access verified for " + database + "." + table);
-            return true;
-
-        } catch (Exception e) {
-            System.err.println("❌ Cannot access " + database + "." + table + ": " + e.getMessage());
-            return false;
+        if (streams.isEmpty()) {
+            return null;
         }
+        currentRun = new MergeRun(streams);
+        currentRun.start();
+        return currentRun;
     }
 
-    /**
-     * Process individual transaction record
-     */
-    @Transactional
-    private boolean processTransaction(Map<String, Object> transaction, String sourceDb) {
-        try {
-            // Create unique transaction ID to avoid duplicates
-            String transactionId = sourceDb + "_" + transaction.get("id") + "_" +
-                    transaction.get("emp_code") + "_" + transaction.get("punch_time");
-
-            if (processedTransactions.contains(transactionId)) {
-                return false; // Already processed
-            }
-
-            // Extract transaction data
-            String empCode = (String) transaction.get("emp_code");
-            Object punchTimeObj = transaction.get("punch_time");
-            Integer punchState = (Integer) transaction.get("punch_state");
-            Integer verifyType = (Integer) transaction.get("verify_type");
-            String terminalSn = (String) transaction.get("terminal_sn");
-
-            if (empCode == null || punchTimeObj == null || terminalSn == null) {
-                return false;
-            }
-
-            // Parse punch time
-            LocalDateTime punchDateTime;
-            if (punchTimeObj instanceof java.sql.Timestamp) {
-                punchDateTime = ((java.sql.Timestamp) punchTimeObj).toLocalDateTime();
-            } else {
-                punchDateTime = LocalDateTime.parse(punchTimeObj.toString(),
-                        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            }
-
-            // Find employee mapping
-            EmployeeMapping mapping = findEmployeeByCode(empCode, terminalSn);
-            if (mapping == null) {
-                System.out.println(
-                        "⚠️ No employee mapping found for emp_code: " + empCode + " on terminal: " + terminalSn);
-                return false;
-            }
-
-            // Process attendance
-            boolean success = processAttendanceFromTransaction(mapping, punchDateTime, punchState, verifyType,
-                    transaction);
-
-            if (success) {
-                processedTransactions.add(transactionId);
-
-                // Send real-time notification
-                broadcastAttendanceUpdate(mapping.employee, punchDateTime, punchState);
-            }
-
-            return success;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing transaction: " + e.getMessage());
-            return false;
+    private synchronized void finished(MergeRun run) {
+        if (currentRun == run) {
+            currentRun = null;
         }
+        lastRun = run;
     }
 
-    /**
-     * Find employee by emp_code and terminal
-     */
-    private EmployeeMapping findEmployeeByCode(String empCode, String terminalSn) {
-        try {
-            System.out.println("🔍 Looking for employee with emp_code: " + empCode + " on terminal: " + terminalSn);
-
-            // Method 1: Find by emp_code in mapping table
-            Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo.findByEmpCode(empCode);
-            if (mappingOpt.isPresent()) {
-                EmployeeDeviceMapping mapping = mappingOpt.get();
-                Employee employee = employeeRepo.findById(mapping.getHrmEmployeeId()).orElse(null);
-                if (employee != null) {
-                    System.out.println("✅ Found employee via mapping: " + employee.getFullName() + " (ID: "
-                            + employee.getEmpId() + ")");
-                    return new EmployeeMapping(employee, mapping);
-                }
-            }
-
-            // Method 2: Parse emp_code format (SA{subadmin}_EMP{empId}_{terminal})
-            if (empCode.contains("_EMP") && empCode.contains("_")) {
-                String[] parts = empCode.split("_");
-                if (parts.length >= 2) {
-                    String empIdStr = parts[1].replace("EMP", "");
-                    try {
-                        Integer empId = Integer.parseInt(empIdStr);
-                        Employee employee = employeeRepo.findById(empId).orElse(null);
-                        if (employee != null) {
-                            System.out.println("✅ Found employee via parsing: " + employee.getFullName() + " (ID: "
-                                    + employee.getEmpId() + ")");
-
-                            // Find existing mapping or create temporary one
-                            EmployeeDeviceMapping mapping = mappingRepo
-                                    .findByHrmEmployeeIdAndTerminalSerial(empId, terminalSn)
-                                    .orElse(null);
-
-                            return new EmployeeMapping(employee, mapping);
-                        } else {
-                            System.out.println("⚠️ Employee ID " + empId + " not found in database");
-                        }
-                    } catch (NumberFormatException e) {
-                        System.out.println("⚠️ Could not parse employee ID from: " + empIdStr);
-                    }
-                }
-            }
-
-            // Method 3: Try to find by emp_code directly (if it's just the employee ID)
-            try {
-                Integer directEmpId = Integer.parseInt(empCode);
-                Employee employee = employeeRepo.findById(directEmpId).orElse(null);
-                if (employee != null) {
-                    System.out.println("✅ Found employee via direct ID: " + employee.getFullName() + " (ID: "
-                            + employee.getEmpId() + ")");
-                    return new EmployeeMapping(employee, null);
-                }
-            } catch (NumberFormatException e) {
-                // Not a direct ID, continue
-            }
-
-            System.out.println("❌ No employee found for emp_code: " + empCode);
-            return null;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error finding employee by code: " + e.getMessage());
-            e.printStackTrace();
-            return null;
+    @PreDestroy
+    public synchronized void stopMergedSync() {
+        if (currentRun != null) {
+            currentRun.executor.shutdownNow();
         }
     }
 
     /**
-     * Process attendance from transaction data
+     * Check if database and table are accessible. Whether they exist comes
+     * from the schema cache; only a constant-cost SELECT 1 runs every time,
+     * and a failing one drops the cached entry.
      */
-    private boolean processAttendanceFromTransaction(EmployeeMapping mapping, LocalDateTime punchDateTime,
-            Integer punchState, Integer verifyType,
-            Map<String, Object> transaction) {
+    private boolean checkDatabaseAccess(String database, String table) {
+        String key = database + "." + table;
         try {
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
-
-            // Find or create attendance record
-            Optional<Attendance> existingAttendance = attendanceRepo.findByEmployeeAndDate(mapping.employee, dateStr);
-
-            Attendance attendance;
-            if (existingAttendance.isPresent()) {
-                attendance = existingAttendance.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(mapping.employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
+            SchemaCheck check = schemaChecks.get(key);
+            if (check == null || System.currentTimeMillis() - check.checkedAt > schemaCacheTtlMs) {
+                check = new SchemaCheck(lookupSchema(database, table));
+                schemaChecks.put(key, check);
             }
-
-            // Set biometric fields
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setBiometricUserId(String.valueOf(transaction.get("emp_code")));
-            attendance.setDeviceSerial((String) transaction.get("terminal_sn"));
-            attendance.setVerifyType(getVerifyTypeString(verifyType));
-            attendance.setRawData(transaction.toString());
-
-            // Determine punch type and set time
-            String punchType = determinePunchType(attendance, punchTime, punchState);
-
-            if ("check_in".equals(punchType)) {
-                attendance.setPunchInTime(punchTime);
-            } else if ("check_out".equals(punchType)) {
-                attendance.setPunchOutTime(punchTime);
+            if (check.missing != null) {
+                System.out.println("⚠️ " + check.missing);
+                return false;
             }
 
-            // Calculate durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            attendanceRepo.save(attendance);
-
-            System.out.println("✅ EasyTimePro attendance processed: " + mapping.employee.getFullName() +
-                    " " + punchType + " at " + punchTime);
-
+            // Liveness only; must not scan the table
+            jdbcTemplate.queryForList(String.format("SELECT 1 FROM %s.%s LIMIT 1", database, table));
             return true;
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing attendance: " + e.getMessage());
+            schemaChecks.remove(key);
+            System.err.println("❌ Cannot access " + key + ": " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Determine punch type based on existing data and punch state
+     * Null if the database and table exist, else why not.
      */
-    private String determinePunchType(Attendance attendance, LocalTime punchTime, Integer punchState) {
-        // If punch_state is provided, use it (0=in, 1=out in some systems, varies by
-        // configuration)
-        if (punchState != null) {
-            if (punchState == 0) {
-                return "check_in";
-            } else if (punchState == 1) {
-                return "check_out";
-            }
-        }
+    private String lookupSchema(String database, String table) {
+        // Check if database exists
+        String checkDbSql = "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?";
+        List<Map<String, Object>> dbResult = jdbcTemplate.queryForList(checkDbSql, database);
 
-        // Smart logic based on existing punches
-        if (attendance.getPunchInTime() == null) {
-            return "check_in";
-        } else if (attendance.getPunchOutTime() == null) {
-            return "check_out";
-        } else {
-            // Both punches exist - determine based on time
-            if (punchTime.isBefore(attendance.getPunchInTime())) {
-                return "check_in"; // Earlier time, update check-in
-            } else {
-                return "check_out"; // Later time, update check-out
-            }
+        if (dbResult.isEmpty()) {
+            return "Database '" + database + "' does not exist";
         }
-    }
 
-    /**
-     * Convert verify type integer to string
-     */
-    private String getVerifyTypeString(Integer verifyType) {
-        if (verifyType == null)
-            return "fingerprint";
-
-        switch (verifyType) {
-            case 1:
-                return "fingerprint";
-            case 2:
-                return "face";
-            case 3:
-                return "password";
-            case 4:
-                return "card";
-            case 15:
-                return "palm";
-            default:
-                return "fingerprint";
+        // Check if table exists
+        String checkTableSql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        List<Map<String, Object>> tableResult = jdbcTemplate.queryForList(checkTableSql, database, table);
+
+        if (tableResult.isEmpty()) {
+            return "Table '" + database + "." + table + "' does not exist";
         }
+
+        System.out.println("✅ Database access verified for " + database + "." + table);
+        return null;
     }
 
     /**
-     * Broadcast real-time attendance update
+     * Forget what is known about a database.table, e.g. after it was
+     * created or dropped.
      */
-    private void broadcastAttendanceUpdate(Employee employee, LocalDateTime punchDateTime, Integer punchState) {
-        try {
-            Map<String, Object> update = new HashMap<>();
-            update.put("type", "ATTENDANCE_UPDATE");
-            update.put("empId", employee.getEmpId());
-            update.put("employeeName", employee.getFullName());
-            update.put("punchTime", punchDateTime.toString());
-            update.put("punchType", punchState == 0 ? "check_in" : "check_out");
-            update.put("source", "EasyTimePro");
-            update.put("timestamp", LocalDateTime.now());
-
-            messagingTemplate.convertAndSend("/topic/attendance/" + employee.getSubadmin().getId(), update);
-
-        } catch (Exception e) {
-            System.err.println("❌ Error broadcasting update: " + e.getMessage());
-        }
+    public void invalidateSchemaCache(String database, String table) {
+        schemaChecks.remove(database + "." + table);
     }
 
     /**
@@ -466,6 +245,13 @@ public class EasyTimeProSyncService {
             stats.put("easywdmsTransactions", easywdmsRecords);
             stats.put("processedAttendance", attendanceRecords);
             stats.put("processedTransactionIds", processedTransactions.size());
+            Map<String, Object> schemaCache = new TreeMap<>();
+            for (Map.Entry<String, SchemaCheck> entry : schemaChecks.entrySet()) {
+                schemaCache.put(entry.getKey(), entry.getValue().missing == null ? "OK" : entry.getValue().missing);
+            }
+            stats.put("schemaCache", schemaCache);
+            MergeRun run = currentRun != null ? currentRun : lastRun;
+            stats.put("mergedSync", run != null ? run.describe() : null);
             stats.put("lastSyncTime", LocalDateTime.now());
 
             return stats;
@@ -477,14 +263,261 @@ public class EasyTimeProSyncService {
         }
     }
 
-    // Helper class
-    private static class EmployeeMapping {
-        Employee employee;
-        EmployeeDeviceMapping mapping;
+    private static class SchemaCheck {
+        final String missing;
+        final long checkedAt = System.currentTimeMillis();
+
+        SchemaCheck(String missing) {
+            this.missing = missing;
+        }
+    }
+
+    /**
+     * One manual sync: a reader per database feeding a k-way merge by punch
+     * time, on threads of its own so readers never wait behind each other.
+     */
+    private class MergeRun implements Runnable {
+        final List<DatabaseStream> streams;
+        final ThreadPoolExecutor executor;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final long startedMillis = System.currentTimeMillis();
+        final AtomicLong punches = new AtomicLong();
+        final AtomicLong writeFailures = new AtomicLong();
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        MergeRun(List<DatabaseStream> streams) {
+            this.streams = streams;
+            AtomicInteger threadCount = new AtomicInteger();
+            // One reader per database plus the merge itself
+            executor = new ThreadPoolExecutor(streams.size() + 1, streams.size() + 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "iclock-merge-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        void start() {
+            for (DatabaseStream stream : streams) {
+                executor.execute(stream);
+            }
+            executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                merge();
+                // A database that failed mid-read just ends its stream early, so check each one
+                List<String> failed = new ArrayList<>();
+                for (DatabaseStream stream : streams) {
+                    if (stream.error != null) {
+                        failed.add(stream.database + ": " + stream.error);
+                    }
+                }
+                if (!failed.isEmpty()) {
+                    error = "Failed to read " + String.join("; ", failed);
+                    System.err.println("❌ Manual sync incomplete, " + punches.get() + " punches written. " + error);
+                } else {
+                    System.out.println("✅ Manual sync merged " + streams.size() + " databases, " + punches.get() +
+                            " punches written" +
+                            (writeFailures.get() > 0 ? ", " + writeFailures.get() + " failed" : ""));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "Interrupted";
+            } catch (Exception e) {
+                error = e.getMessage();
+                System.err.println("❌ Manual sync merge failed: " + e.getMessage());
+            } finally {
+                finishedAt = LocalDateTime.now();
+                executor.shutdownNow();
+                finished(this);
+            }
+        }
+
+        private void merge() throws InterruptedException {
+            PriorityQueue<DatabaseStream> heads = new PriorityQueue<>(
+                    Comparator.comparing((DatabaseStream stream) -> stream.head)
+                            .thenComparing(stream -> stream.database));
+            for (DatabaseStream stream : streams) {
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+
+            List<PunchEvent> batch = new ArrayList<>(pageSize);
+            while (!heads.isEmpty()) {
+                DatabaseStream stream = heads.poll();
+                batch.add(SimpleRealtimeBiometricService.iclockEvent(stream.dedupPrefix, stream.current())
+                        .historical(true));
+                stream.lastMerged = stream.head;
+                stream.rowsMerged.incrementAndGet();
+                if (batch.size() >= pageSize) {
+                    submit(batch);
+                }
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+            submit(batch);
+        }
+
+        private void submit(List<PunchEvent> batch) throws InterruptedException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (!punchWriter.awaitCatchUpCapacity(() -> false)) {
+                throw new InterruptedException();
+            }
+            for (PunchOutcome outcome : punchEngine.processAll(batch)) {
+                if (outcome.isQueued()) {
+                    punches.incrementAndGet();
+                } else if (outcome.getStatus() == PunchOutcome.Status.WRITE_FAILED) {
+                    writeFailures.incrementAndGet();
+                }
+            }
+            batch.clear();
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> run = new HashMap<>();
+            Map<String, Object> databases = new TreeMap<>();
+            for (DatabaseStream stream : streams) {
+                databases.put(stream.database, stream.describe(startedMillis));
+            }
+            run.put("databases", databases);
+            run.put("startedAt", startedAt.toString());
+            run.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+            run.put("running", finishedAt == null);
+            run.put("punches", punches.get());
+            run.put("writeFailures", writeFailures.get());
+            run.put("error", error);
+            return run;
+        }
+    }
+
+    /**
+     * One database's transactions since a time, read in (punch_time, id)
+     * order into a bounded page buffer. The reader side runs on its own
+     * thread; advance, current and head belong to the merge thread.
+     */
+    private class DatabaseStream implements Runnable {
+        final String database;
+        final String table;
+        final String dedupPrefix;
+        final LocalDateTime from;
+        final BlockingQueue<List<Map<String, Object>>> pages = new ArrayBlockingQueue<>(Math.max(1, bufferedPages));
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsMerged = new AtomicLong();
+        volatile LocalDateTime lastRead;
+        volatile LocalDateTime lastMerged;
+        volatile long doneMillis;
+        volatile String error;
+
+        List<Map<String, Object>> page;
+        int index;
+        LocalDateTime head;
+
+        DatabaseStream(String database, String table, LocalDateTime from) {
+            this.database = database;
+            this.table = table;
+            this.from = from;
+            this.dedupPrefix = SimpleRealtimeBiometricService.iclockDedupPrefix(database, table);
+        }
+
+        @Override
+        public void run() {
+            try {
+                read();
+            } catch (InterruptedException e) {
+                // The merge is gone; nobody is waiting for the end marker
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                error = e.getMessage();
+                invalidateSchemaCache(database, table);
+                System.err.println("❌ Error syncing from " + database + ": " + e.getMessage());
+            }
+            try {
+                pages.put(END_OF_STREAM);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void read() throws InterruptedException {
+            String sql = """
+                    SELECT id, emp_code, emp_id, punch_time, punch_state, verify_type, terminal_sn
+                    FROM %s.%s
+                    WHERE punch_time >= ? AND (punch_time > ? OR (punch_time = ? AND id > ?))
+                    ORDER BY punch_time ASC, id ASC
+                    LIMIT ?
+                    """.formatted(database, table);
+            LocalDateTime lastTime = from;
+            long lastId = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, from, lastTime, lastTime, lastId,
+                        pageSize);
+                if (rows.isEmpty()) {
+                    return;
+                }
+                Map<String, Object> last = rows.get(rows.size() - 1);
+                lastTime = PunchEngine.parsePunchTime(last.get("punch_time"));
+                lastId = ((Number) last.get("id")).longValue();
+                if (lastTime == null) {
+                    throw new IllegalStateException("Unreadable punch_time in " + database + "." + table +
+                            " row " + lastId);
+                }
+                rowsRead.addAndGet(rows.size());
+                lastRead = lastTime;
+                pages.put(rows);
+                if (rows.size() < pageSize) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Move to the next row, waiting for the reader if needed. False at
+         * the end of the stream.
+         */
+        boolean advance() throws InterruptedException {
+            index++;
+            if (page == null || index >= page.size()) {
+                page = pages.take();
+                index = 0;
+                if (page.isEmpty()) {
+                    doneMillis = System.currentTimeMillis();
+                    return false;
+                }
+            }
+            LocalDateTime punchTime = PunchEngine.parsePunchTime(current().get("punch_time"));
+            head = punchTime != null ? punchTime : LocalDateTime.MIN;
+            return true;
+        }
+
+        Map<String, Object> current() {
+            return page.get(index);
+        }
 
-        EmployeeMapping(Employee employee, EmployeeDeviceMapping mapping) {
-            this.employee = employee;
-            this.mapping = mapping;
+        Map<String, Object> describe(long runStartedMillis) {
+            long end = doneMillis > 0 ? doneMillis : System.currentTimeMillis();
+            double seconds = Math.max(end - runStartedMillis, 1) / 1000.0;
+            Map<String, Object> state = new HashMap<>();
+            state.put("rowsRead", rowsRead.get());
+            state.put("rowsMerged", rowsMerged.get());
+            state.put("rowsPerSecond", Math.round(rowsMerged.get() / seconds));
+            state.put("bufferedPages", pages.size());
+            state.put("lastPunchRead", lastRead != null ? lastRead.toString() : null);
+            state.put("lastPunchMerged", lastMerged != null ? lastMerged.toString() : null);
+            // How far the merge is behind what this database has already returned
+            state.put("lagSeconds", lastRead != null && lastMerged != null
+                    ? Math.max(Duration.between(lastMerged, lastRead).getSeconds(), 0) : null);
+            state.put("done", doneMillis > 0);
+            state.put("error", error);
+            return state;
         }
     }
 }
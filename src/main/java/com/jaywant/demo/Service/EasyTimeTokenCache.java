@@ -0,0 +1,233 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.SubadminTerminal;
+import com.jaywant.demo.Repo.SubadminTerminalRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * EasyTimePro API tokens per terminal, kept in memory with their expiry.
+ *
+ * A token is reused until refreshAheadMinutes before it expires, when the
+ * background refresh logs in again so pollers never wait on a login. A call
+ * rejected with 401 drops the token and is retried once with a fresh one.
+ * The token is written back to subadmin_terminal only when it changes.
+ * Tokens of terminals that are no longer ACTIVE are dropped instead of
+ * refreshed.
+ */
+@Service
+public class EasyTimeTokenCache {
+
+    @Autowired
+    private EasyTimeProApiService easyTimeProApiService;
+
+    @Autowired
+    private SubadminTerminalRepo terminalRepo;
+
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
+    @Value("${easytime.terminal.username:admin}")
+    private String username;
+
+    @Value("${easytime.terminal.password:123456}")
+    private String password;
+
+    @Value("${easytime.token.ttl-minutes:720}")
+    private long ttlMinutes;
+
+    @Value("${easytime.token.refresh-ahead-minutes:60}")
+    private long refreshAheadMinutes;
+
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Object> loginLocks = new ConcurrentHashMap<>();
+
+    // Last token each terminal rejected, so the stale stored copy is not reused
+    private final Map<String, String> rejectedTokens = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong loginFailures = new AtomicLong();
+    private final AtomicLong unauthorizedRetries = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Token for a terminal: the cached one, else the one stored on the
+     * terminal, else a new login.
+     */
+    public String getToken(SubadminTerminal terminal) {
+        CachedToken cached = tokens.get(terminal.getTerminalSerial());
+        if (isUsable(cached, terminal)) {
+            hits.incrementAndGet();
+            return cached.token;
+        }
+
+        synchronized (loginLocks.computeIfAbsent(terminal.getTerminalSerial(), k -> new Object())) {
+            cached = tokens.get(terminal.getTerminalSerial());
+            if (isUsable(cached, terminal)) {
+                hits.incrementAndGet();
+                return cached.token;
+            }
+            // Trust a stored token until it is rejected; its age is unknown
+            String stored = terminal.getApiToken();
+            if (cached == null && stored != null && !stored.isEmpty()
+                    && !stored.equals(rejectedTokens.get(terminal.getTerminalSerial()))) {
+                cached = new CachedToken(terminal.getId(), terminal.getEasytimeApiUrl(), stored);
+                tokens.put(terminal.getTerminalSerial(), cached);
+                return cached.token;
+            }
+            return login(terminal.getTerminalSerial(), terminal.getId(), terminal.getEasytimeApiUrl()).token;
+        }
+    }
+
+    /**
+     * Run an API call with the terminal's token, logging in again and
+     * retrying once if the token is rejected.
+     */
+    public <T> T withToken(SubadminTerminal terminal, Function<String, T> call) {
+        String token = getToken(terminal);
+        try {
+            return call.apply(token);
+        } catch (RuntimeException e) {
+            if (!EasyTimeProApiService.isUnauthorized(e)) {
+                throw e;
+            }
+            unauthorizedRetries.incrementAndGet();
+            System.out.println("🔑 Token rejected by " + terminal.getTerminalSerial() + ", logging in again");
+            invalidate(terminal.getTerminalSerial(), token);
+            return call.apply(getToken(terminal));
+        }
+    }
+
+    /**
+     * Remember a token obtained elsewhere, e.g. while registering a terminal.
+     */
+    public void put(SubadminTerminal terminal, String token) {
+        tokens.put(terminal.getTerminalSerial(),
+                new CachedToken(terminal.getId(), terminal.getEasytimeApiUrl(), token));
+    }
+
+    public void invalidate(String terminalSerial) {
+        tokens.remove(terminalSerial);
+        rejectedTokens.remove(terminalSerial);
+    }
+
+    private void invalidate(String terminalSerial, String token) {
+        CachedToken cached = tokens.get(terminalSerial);
+        if (cached != null && cached.token.equals(token)) {
+            tokens.remove(terminalSerial, cached);
+        }
+        rejectedTokens.put(terminalSerial, token);
+    }
+
+    /**
+     * Log in again for tokens that are about to expire, and drop the tokens
+     * of terminals that were removed or are no longer ACTIVE.
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refreshExpiring() {
+        long refreshAt = System.currentTimeMillis() + refreshAheadMinutes * 60000;
+        for (Map.Entry<String, CachedToken> entry : tokens.entrySet()) {
+            CachedToken cached = entry.getValue();
+            if (!terminalRegistry.isActive(entry.getKey())) {
+                if (tokens.remove(entry.getKey(), cached)) {
+                    rejectedTokens.remove(entry.getKey());
+                    evictions.incrementAndGet();
+                }
+                continue;
+            }
+            if (cached.expiresAt > refreshAt) {
+                continue;
+            }
+            synchronized (loginLocks.computeIfAbsent(entry.getKey(), k -> new Object())) {
+                if (tokens.get(entry.getKey()) != cached) {
+                    continue;
+                }
+                try {
+                    login(entry.getKey(), cached.terminalId, cached.apiUrl);
+                } catch (Exception e) {
+                    // Keep the old token until it actually fails
+                    System.err.println("❌ Token refresh failed for " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private CachedToken login(String terminalSerial, Long terminalId, String apiUrl) {
+        String token;
+        try {
+            token = easyTimeProApiService.authenticateAndGetToken(apiUrl, username, password);
+        } catch (RuntimeException e) {
+            loginFailures.incrementAndGet();
+            throw e;
+        }
+        if (token == null || token.isEmpty()) {
+            loginFailures.incrementAndGet();
+            throw new IllegalStateException("Failed to get token for terminal: " + terminalSerial);
+        }
+        logins.incrementAndGet();
+
+        CachedToken cached = new CachedToken(terminalId, apiUrl, token);
+        tokens.put(terminalSerial, cached);
+        rejectedTokens.remove(terminalSerial);
+        if (terminalId != null) {
+            terminalRepo.findById(terminalId).ifPresent(terminal -> {
+                if (!token.equals(terminal.getApiToken())) {
+                    terminal.setApiToken(token);
+                    terminalRepo.save(terminal);
+                }
+            });
+        }
+        return cached;
+    }
+
+    private boolean isUsable(CachedToken cached, SubadminTerminal terminal) {
+        return cached != null && cached.expiresAt > System.currentTimeMillis()
+                && Objects.equals(cached.apiUrl, terminal.getEasytimeApiUrl());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Object> expiries = new TreeMap<>();
+        for (Map.Entry<String, CachedToken> entry : tokens.entrySet()) {
+            expiries.put(entry.getKey(), LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(entry.getValue().expiresAt), ZoneId.systemDefault()).toString());
+        }
+        stats.put("tokens", expiries);
+        stats.put("hits", hits.get());
+        stats.put("logins", logins.get());
+        stats.put("loginFailures", loginFailures.get());
+        stats.put("unauthorizedRetries", unauthorizedRetries.get());
+        stats.put("evictions", evictions.get());
+        stats.put("ttlMinutes", ttlMinutes);
+        stats.put("refreshAheadMinutes", refreshAheadMinutes);
+        return stats;
+    }
+
+    private class CachedToken {
+        final Long terminalId;
+        final String apiUrl;
+        final String token;
+        final long expiresAt;
+
+        CachedToken(Long terminalId, String apiUrl, String token) {
+            this.terminalId = terminalId;
+            this.apiUrl = apiUrl;
+            this.token = token;
+            this.expiresAt = System.currentTimeMillis() + ttlMinutes * 60000;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.jaywant.demo.Service;
+
+/**
+ * One EasyTimePro API transaction with only the fields the punch pipeline
+ * uses, as read by {@link EasyTimeProApiService#streamAttendanceTransactions}.
+ */
+public class EasyTimeTransaction {
+
+    private long id;
+    private String empCode;
+    private Integer employeeId;
+    private String punchTime;
+    private Integer punchState;
+    private Integer verifyType;
+    private String terminalSn;
+    private String uploadTime;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getEmpCode() {
+        return empCode;
+    }
+
+    public void setEmpCode(String empCode) {
+        this.empCode = empCode;
+    }
+
+    public Integer getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(Integer employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public String getPunchTime() {
+        return punchTime;
+    }
+
+    public void setPunchTime(String punchTime) {
+        this.punchTime = punchTime;
+    }
+
+    public Integer getPunchState() {
+        return punchState;
+    }
+
+    public void setPunchState(Integer punchState) {
+        this.punchState = punchState;
+    }
+
+    public Integer getVerifyType() {
+        return verifyType;
+    }
+
+    public void setVerifyType(Integer verifyType) {
+        this.verifyType = verifyType;
+    }
+
+    public String getTerminalSn() {
+        return terminalSn;
+    }
+
+    public void setTerminalSn(String terminalSn) {
+        this.terminalSn = terminalSn;
+    }
+
+    public String getUploadTime() {
+        return uploadTime;
+    }
+
+    public void setUploadTime(String uploadTime) {
+        this.uploadTime = uploadTime;
+    }
+
+    /**
+     * Same shape as the API's map form, for Attendance.rawData and logs.
+     */
+    @Override
+    public String toString() {
+        return "{id=" + id + ", emp_code=" + empCode + ", employee_id=" + employeeId +
+                ", punch_time=" + punchTime + ", punch_state=" + punchState + ", verify_type=" + verifyType +
+                ", terminal_sn=" + terminalSn + ", upload_time=" + uploadTime + "}";
+    }
+}
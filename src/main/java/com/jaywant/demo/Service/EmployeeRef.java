@@ -0,0 +1,44 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Employee;
+
+/**
+ * The employee columns the punch path needs, copied out of the entity so the
+ * {@link DeviceUserResolutionIndex} and queued punches do not hold detached
+ * {@link Employee} graphs. The {@link PunchBatchWriter} loads the entity
+ * itself when it creates an attendance row.
+ */
+public final class EmployeeRef {
+
+    private final int empId;
+    private final Integer subadminId;
+    private final String fullName;
+
+    public EmployeeRef(int empId, Integer subadminId, String fullName) {
+        this.empId = empId;
+        this.subadminId = subadminId;
+        this.fullName = fullName;
+    }
+
+    public static EmployeeRef of(Employee employee) {
+        return new EmployeeRef(employee.getEmpId(),
+                employee.getSubadmin() != null ? employee.getSubadmin().getId() : null, employee.getFullName());
+    }
+
+    public int getEmpId() {
+        return empId;
+    }
+
+    public Integer getSubadminId() {
+        return subadminId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    @Override
+    public String toString() {
+        return fullName + " (" + empId + ")";
+    }
+}
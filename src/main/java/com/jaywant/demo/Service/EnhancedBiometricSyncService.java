@@ -1,27 +1,26 @@
 package com.jaywant.demo.Service;
 
-import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Entity.EmployeeDeviceMapping;
 import com.jaywant.demo.Entity.SubadminTerminal;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
-import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class EnhancedBiometricSyncService {
@@ -30,13 +29,7 @@ public class EnhancedBiometricSyncService {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
-
-    @Autowired
-    private AttendanceRepo attendanceRepo;
-
-    @Autowired
-    private EmployeeDeviceMappingRepo mappingRepo;
+    private PunchEngine punchEngine;
 
     @Autowired
     private SubadminTerminalRepo terminalRepo;
@@ -44,8 +37,8 @@ public class EnhancedBiometricSyncService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    // Cache for processed transactions to avoid duplicates
-    private final Set<String> processedTransactions = ConcurrentHashMap.newKeySet();
+    @Autowired
+    private ProcessedTransactionDedup processedTransactions;
 
     // Cache for device-subadmin mapping
     private final Map<String, Integer> deviceSubadminCache = new ConcurrentHashMap<>();
@@ -53,12 +46,49 @@ public class EnhancedBiometricSyncService {
     // Last sync timestamp per device
     private final Map<String, LocalDateTime> lastSyncPerDevice = new ConcurrentHashMap<>();
 
+    // Per-device timing of the pages synced so far
+    private final Map<String, TerminalTiming> terminalTimings = new ConcurrentHashMap<>();
+
+    @Value("${biometric.sync.terminal-workers:4}")
+    private int terminalWorkers;
+
+    @Value("${biometric.sync.terminal-page-size:100}")
+    private int terminalPageSize;
+
+    // Pages one terminal may take per sync run before it waits for the next run
+    @Value("${biometric.sync.max-pages-per-terminal:10}")
+    private int maxPagesPerTerminal;
+
+    private ExecutorService terminalExecutor;
+
+    @PostConstruct
+    public void startWorkers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        terminalExecutor = Executors.newFixedThreadPool(terminalWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "terminal-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        if (terminalExecutor != null) {
+            terminalExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Real-time sync every 10 seconds with comprehensive logging
      * DISABLED: Replaced by SimpleRealtimeBiometricService
+     *
+     * Terminals are synced in parallel on a bounded pool, one page per
+     * terminal at a time. A terminal whose page came back full goes to the
+     * back of the queue, so a backlogged device only gets another page after
+     * every other terminal has had its turn.
      */
     // @Scheduled(fixedRate = 10000) // 10 seconds - DISABLED
-    public void performRealTimeBiometricSync() {
+    public synchronized void performRealTimeBiometricSync() {
         try {
             System.out.println("🔄 [" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
                     + "] Starting enhanced biometric sync...");
@@ -71,31 +101,65 @@ public class EnhancedBiometricSyncService {
                 return;
             }
 
+            long tickStart = System.currentTimeMillis();
             int totalProcessed = 0;
             int totalErrors = 0;
 
-            for (SubadminTerminal terminal : activeTerminals) {
-                try {
-                    int processed = syncDeviceTransactions(terminal);
-                    totalProcessed += processed;
-
-                    if (processed > 0) {
-                        System.out.println("✅ Device [" + terminal.getTerminalSerial() + "] - Subadmin [" +
-                                terminal.getSubadminId() + "] - Processed: " + processed + " transactions");
-                    }
+            Deque<SubadminTerminal> ready = new ArrayDeque<>(activeTerminals);
+            Map<String, Integer> pagesThisTick = new HashMap<>();
+            Map<String, Integer> processedThisTick = new HashMap<>();
+            CompletionService<PageResult> completion = new ExecutorCompletionService<>(terminalExecutor);
+            int inFlight = 0;
+
+            while (!ready.isEmpty() || inFlight > 0) {
+                // Keep every worker busy, taking terminals in queue order
+                while (!ready.isEmpty() && inFlight < terminalWorkers) {
+                    SubadminTerminal terminal = ready.pollFirst();
+                    completion.submit(() -> syncDeviceTransactions(terminal));
+                    inFlight++;
+                }
 
-                } catch (Exception e) {
+                PageResult result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    // syncDeviceTransactions reports its own failures
                     totalErrors++;
-                    System.err.println(
-                            "❌ Error syncing device [" + terminal.getTerminalSerial() + "]: " + e.getMessage());
+                    inFlight--;
+                    continue;
+                }
+                inFlight--;
+
+                SubadminTerminal terminal = result.terminal;
+                String serial = terminal.getTerminalSerial();
+                int pages = pagesThisTick.merge(serial, 1, Integer::sum);
+                processedThisTick.merge(serial, result.processed, Integer::sum);
+                totalProcessed += result.processed;
+                if (result.failed) {
+                    totalErrors++;
+                } else if (result.hasMore() && pages < maxPagesPerTerminal) {
+                    ready.addLast(terminal);
+                }
+            }
+
+            for (SubadminTerminal terminal : activeTerminals) {
+                int processed = processedThisTick.getOrDefault(terminal.getTerminalSerial(), 0);
+                if (processed > 0) {
+                    System.out.println("✅ Device [" + terminal.getTerminalSerial() + "] - Subadmin [" +
+                            terminal.getSubadminId() + "] - Processed: " + processed + " transactions in " +
+                            pagesThisTick.get(terminal.getTerminalSerial()) + " page(s)");
                 }
             }
 
             if (totalProcessed > 0 || totalErrors > 0) {
                 System.out.println("📊 Sync Summary - Processed: " + totalProcessed + ", Errors: " + totalErrors +
-                        ", Active Devices: " + activeTerminals.size());
+                        ", Active Devices: " + activeTerminals.size() + ", Took: " +
+                        (System.currentTimeMillis() - tickStart) + "ms");
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("⚠️ Biometric sync interrupted");
         } catch (Exception e) {
             System.err.println("❌ Critical error in biometric sync: " + e.getMessage());
             e.printStackTrace();
@@ -107,23 +171,7 @@ public class EnhancedBiometricSyncService {
      */
     private List<SubadminTerminal> getActiveTerminals() {
         try {
-            // Use findAll and filter for active status (handle both String and Enum)
-            return terminalRepo.findAll().stream()
-                    .filter(terminal -> {
-                        try {
-                            // Check if status is String "ACTIVE" or Enum ACTIVE
-                            Object statusObj = terminal.getStatus();
-                            if (statusObj != null && statusObj.toString().equals("ACTIVE")) {
-                                return true;
-                            }
-
-                            return false;
-                        } catch (Exception e) {
-                            System.err.println("⚠️ Error checking terminal status: " + e.getMessage());
-                            return false;
-                        }
-                    })
-                    .toList();
+            return terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE);
         } catch (Exception e) {
             System.err.println("❌ Error fetching active terminals: " + e.getMessage());
             return new ArrayList<>();
@@ -133,8 +181,10 @@ public class EnhancedBiometricSyncService {
     /**
      * Sync transactions for a specific device
      */
-    @Transactional
-    private int syncDeviceTransactions(SubadminTerminal terminal) {
+    private PageResult syncDeviceTransactions(SubadminTerminal terminal) {
+        long start = System.currentTimeMillis();
+        PageResult result = new PageResult(terminal);
+        result.pageSize = terminalPageSize;
         try {
             String terminalSerial = terminal.getTerminalSerial();
             Integer subadminId = terminal.getSubadminId();
@@ -157,12 +207,14 @@ public class EnhancedBiometricSyncService {
                     AND punch_time > ?
                     AND punch_time <= NOW()
                     ORDER BY punch_time ASC
-                    LIMIT 100
+                    LIMIT ?
                     """;
 
             List<Map<String, Object>> transactions = jdbcTemplate.queryForList(sql,
                     terminalSerial,
-                    lastSync);
+                    lastSync,
+                    terminalPageSize);
+            result.fetched = transactions.size();
 
             int processedCount = 0;
             LocalDateTime latestPunchTime = lastSync;
@@ -175,7 +227,7 @@ public class EnhancedBiometricSyncService {
                         // Update latest punch time
                         Object punchTimeObj = transaction.get("punch_time");
                         if (punchTimeObj != null) {
-                            LocalDateTime punchTime = parseDateTime(punchTimeObj);
+                            LocalDateTime punchTime = PunchEngine.parsePunchTime(punchTimeObj);
                             if (punchTime != null && punchTime.isAfter(latestPunchTime)) {
                                 latestPunchTime = punchTime;
                             }
@@ -190,286 +242,38 @@ public class EnhancedBiometricSyncService {
             // Update last sync time for this device
             lastSyncPerDevice.put(terminalSerial, latestPunchTime);
 
-            return processedCount;
+            result.processed = processedCount;
+            result.advanced = latestPunchTime.isAfter(lastSync);
 
         } catch (Exception e) {
+            result.failed = true;
+            result.error = e.getMessage();
             System.err.println(
                     "❌ Error in syncDeviceTransactions for " + terminal.getTerminalSerial() + ": " + e.getMessage());
-            return 0;
         }
+        result.durationMillis = System.currentTimeMillis() - start;
+        terminalTimings.computeIfAbsent(terminal.getTerminalSerial(), k -> new TerminalTiming()).record(result);
+        return result;
     }
 
     /**
-     * Process individual transaction with comprehensive employee mapping
+     * Hand one iclock_transaction row of this terminal to the punch engine
      */
-    @Transactional
     private boolean processTransaction(Map<String, Object> transaction, SubadminTerminal terminal) {
-        try {
-            // Create unique transaction identifier
-            String transactionId = createTransactionId(transaction);
-
-            if (processedTransactions.contains(transactionId)) {
-                return false; // Already processed
-            }
-
-            // Extract transaction data with safe type conversion
-            String empCode = (String) transaction.get("emp_code");
-            Integer machineEmpId = safeParseInteger(transaction.get("emp_id"));
-            String terminalSerial = terminal.getTerminalSerial();
-            Integer subadminId = terminal.getSubadminId();
-
-            Object punchTimeObj = transaction.get("punch_time");
-            Integer punchState = safeParseInteger(transaction.get("punch_state"));
-            Integer verifyType = safeParseInteger(transaction.get("verify_type"));
-
-            // Validate required data
-            if (punchTimeObj == null) {
-                System.out.println("⚠️ Transaction " + transaction.get("id") + " - No punch time");
-                return false;
-            }
-
-            LocalDateTime punchDateTime = parseDateTime(punchTimeObj);
-            if (punchDateTime == null) {
-                System.out.println("⚠️ Transaction " + transaction.get("id") + " - Invalid punch time format");
-                return false;
-            }
-
-            // Find HRM employee using multiple strategies
-            Employee hrmEmployee = findHrmEmployee(empCode, machineEmpId, terminalSerial, subadminId);
-
-            if (hrmEmployee == null) {
-                System.out.println("⚠️ Transaction " + transaction.get("id") +
-                        " - No HRM employee found for emp_code: " + empCode +
-                        ", machine_emp_id: " + machineEmpId +
-                        ", device: " + terminalSerial +
-                        ", subadmin: " + subadminId);
-                return false;
-            }
-
-            // Verify employee belongs to correct subadmin
-            if (hrmEmployee.getSubadmin() == null ||
-                    !Objects.equals(hrmEmployee.getSubadmin().getId(), subadminId)) {
-                System.out.println("⚠️ Transaction " + transaction.get("id") +
-                        " - Employee " + hrmEmployee.getFullName() +
-                        " does not belong to subadmin " + subadminId);
-                return false;
-            }
-
-            // Process attendance record
-            boolean success = createOrUpdateAttendance(hrmEmployee, punchDateTime, punchState, verifyType, transaction);
-
-            if (success) {
-                processedTransactions.add(transactionId);
-
-                System.out.println("✅ Transaction " + transaction.get("id") +
-                        " - Employee: " + hrmEmployee.getFullName() +
-                        " (" + hrmEmployee.getEmpId() + ")" +
-                        " - Time: " + punchDateTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")) +
-                        " - Type: " + (punchState != null && punchState == 0 ? "IN" : "OUT") +
-                        " - Device: " + terminalSerial);
-
-                // Send real-time notification
-                sendRealtimeNotification(hrmEmployee, punchDateTime, punchState, terminalSerial);
-            }
-
-            return success;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing transaction: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    /**
-     * Find HRM employee using multiple mapping strategies
-     */
-    private Employee findHrmEmployee(String empCode, Integer machineEmpId, String terminalSerial, Integer subadminId) {
-        try {
-            System.out.println("🔍 Looking for employee - emp_code: " + empCode +
-                    ", machine_emp_id: " + machineEmpId +
-                    ", device: " + terminalSerial +
-                    ", subadmin: " + subadminId);
-
-            // Strategy 1: Find by device mapping (most reliable)
-            if (empCode != null) {
-                Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo
-                        .findByEmpCodeAndTerminalSerialAndSubadminId(empCode, terminalSerial, subadminId);
-
-                if (mappingOpt.isPresent()) {
-                    Employee employee = employeeRepo.findById(mappingOpt.get().getHrmEmployeeId()).orElse(null);
-                    if (employee != null) {
-                        System.out.println("✅ Found via device mapping: " + employee.getFullName());
-                        return employee;
-                    }
-                }
-            }
-
-            // Strategy 2: Find by machine emp_id within subadmin context
-            if (machineEmpId != null) {
-                Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo
-                        .findByEasytimeEmployeeIdAndTerminalSerialAndSubadminId(machineEmpId, terminalSerial,
-                                subadminId);
-
-                if (mappingOpt.isPresent()) {
-                    Employee employee = employeeRepo.findById(mappingOpt.get().getHrmEmployeeId()).orElse(null);
-                    if (employee != null) {
-                        System.out.println("✅ Found via machine emp_id mapping: " + employee.getFullName());
-                        return employee;
-                    }
-                }
-            }
-
-            // Strategy 3: Parse emp_code format (SA{subadmin}_EMP{empId}_{terminal})
-            if (empCode != null && empCode.contains("_EMP")) {
-                Integer parsedEmpId = parseEmployeeIdFromCode(empCode);
-                if (parsedEmpId != null) {
-                    Employee employee = employeeRepo.findByEmpIdAndSubadminId(parsedEmpId, subadminId);
-                    if (employee != null) {
-                        System.out.println("✅ Found via emp_code parsing: " + employee.getFullName());
-                        return employee;
-                    }
-                }
-            }
-
-            // Strategy 4: Direct machine emp_id lookup within subadmin
-            if (machineEmpId != null) {
-                Employee employee = employeeRepo.findByEmpIdAndSubadminId(machineEmpId, subadminId);
-                if (employee != null) {
-                    System.out.println("✅ Found via direct machine emp_id: " + employee.getFullName());
-                    return employee;
-                }
-            }
-
-            System.out.println("❌ No employee found with any strategy");
-            return null;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error in findHrmEmployee: " + e.getMessage());
-            return null;
-        }
-    }
-
-    /**
-     * Parse employee ID from emp_code format
-     */
-    private Integer parseEmployeeIdFromCode(String empCode) {
-        try {
-            if (empCode.contains("_EMP")) {
-                String[] parts = empCode.split("_");
-                for (String part : parts) {
-                    if (part.startsWith("EMP")) {
-                        return Integer.parseInt(part.replace("EMP", ""));
-                    }
-                }
-            }
-        } catch (NumberFormatException e) {
-            // Ignore parsing errors
-        }
-        return null;
-    }
-
-    /**
-     * Create or update attendance record
-     */
-    @Transactional
-    private boolean createOrUpdateAttendance(Employee employee, LocalDateTime punchDateTime,
-            Integer punchState, Integer verifyType,
-            Map<String, Object> transaction) {
-        try {
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
-
-            // Find or create attendance record
-            Optional<Attendance> existingOpt = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
-
-            Attendance attendance;
-            if (existingOpt.isPresent()) {
-                attendance = existingOpt.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
-            }
-
-            // Set biometric fields
-            attendance.setBiometricUserId(String.valueOf(transaction.get("emp_code")));
-            attendance.setDeviceSerial((String) transaction.get("terminal_sn"));
-            attendance.setVerifyType(getVerifyTypeString(verifyType));
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setRawData(transaction.toString());
-
-            // Determine punch type and set appropriate time
-            String punchType = determinePunchType(attendance, punchTime, punchState);
-
-            if ("punch_in".equals(punchType)) {
-                attendance.setPunchInTime(punchTime);
-                attendance.setPunchIn(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            } else if ("punch_out".equals(punchType)) {
-                attendance.setPunchOutTime(punchTime);
-                attendance.setPunchOut(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            }
-
-            // Calculate working hours and durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            attendanceRepo.save(attendance);
-
-            return true;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error creating/updating attendance: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    /**
-     * Determine punch type based on state and existing data
-     */
-    private String determinePunchType(Attendance attendance, LocalTime punchTime, Integer punchState) {
-        // Use punch_state if available (0=in, 1=out)
-        if (punchState != null) {
-            return (punchState == 0) ? "punch_in" : "punch_out";
-        }
-
-        // Smart logic based on existing punches
-        if (attendance.getPunchInTime() == null) {
-            return "punch_in";
-        } else if (attendance.getPunchOutTime() == null) {
-            return "punch_out";
-        } else {
-            // Both exist - update based on time comparison
-            return punchTime.isBefore(attendance.getPunchInTime()) ? "punch_in" : "punch_out";
-        }
-    }
-
-    /**
-     * Convert verify type to string
-     */
-    private String getVerifyTypeString(Integer verifyType) {
-        if (verifyType == null)
-            return "fingerprint";
-
-        switch (verifyType) {
-            case 1:
-                return "fingerprint";
-            case 2:
-                return "face";
-            case 3:
-                return "password";
-            case 4:
-                return "card";
-            case 15:
-                return "palm";
-            default:
-                return "fingerprint";
-        }
+        Integer punchState = PunchEngine.parseInteger(transaction.get("punch_state"));
+        PunchOutcome outcome = punchEngine.process(new PunchEvent("ICLOCK_ENHANCED")
+                .dedupKey(createTransactionId(transaction))
+                .punchTime(transaction.get("punch_time"))
+                .checkIn(PunchEngine.checkInFromState(punchState))
+                .deviceSerial(terminal.getTerminalSerial())
+                .subadminId(terminal.getSubadminId())
+                .empCode((String) transaction.get("emp_code"))
+                .machineEmpId(PunchEngine.parseInteger(transaction.get("emp_id")))
+                .verifyType(PunchEngine.iclockVerifyType(PunchEngine.parseInteger(transaction.get("verify_type"))))
+                .rawData(transaction.toString())
+                .onWritten((record, attendance) -> sendRealtimeNotification(record.getEmployee(),
+                        record.getPunchTime(), punchState, record.getDeviceSerial())));
+        return outcome.isQueued();
     }
 
     /**
@@ -482,44 +286,24 @@ public class EnhancedBiometricSyncService {
                 transaction.get("punch_time");
     }
 
-    /**
-     * Parse datetime from various formats
-     */
-    private LocalDateTime parseDateTime(Object dateTimeObj) {
-        try {
-            if (dateTimeObj instanceof java.sql.Timestamp) {
-                return ((java.sql.Timestamp) dateTimeObj).toLocalDateTime();
-            } else if (dateTimeObj instanceof java.util.Date) {
-                return LocalDateTime.ofInstant(((java.util.Date) dateTimeObj).toInstant(),
-                        java.time.ZoneId.systemDefault());
-            } else {
-                String timeStr = dateTimeObj.toString();
-                return LocalDateTime.parse(timeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Error parsing datetime: " + dateTimeObj + " - " + e.getMessage());
-            return null;
-        }
-    }
-
     /**
      * Send real-time WebSocket notification
      */
-    private void sendRealtimeNotification(Employee employee, LocalDateTime punchDateTime,
+    private void sendRealtimeNotification(EmployeeRef employee, LocalDateTime punchDateTime,
             Integer punchState, String terminalSerial) {
         try {
             Map<String, Object> notification = new HashMap<>();
             notification.put("type", "BIOMETRIC_PUNCH");
             notification.put("employeeId", employee.getEmpId());
             notification.put("employeeName", employee.getFullName());
-            notification.put("subadminId", employee.getSubadmin().getId());
+            notification.put("subadminId", employee.getSubadminId());
             notification.put("punchTime", punchDateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
             notification.put("punchType", (punchState != null && punchState == 0) ? "CHECK_IN" : "CHECK_OUT");
             notification.put("deviceSerial", terminalSerial);
             notification.put("timestamp", LocalDateTime.now());
 
             // Send to subadmin-specific topic
-            messagingTemplate.convertAndSend("/topic/attendance/" + employee.getSubadmin().getId(), notification);
+            messagingTemplate.convertAndSend("/topic/attendance/" + employee.getSubadminId(), notification);
 
             // Send to general attendance topic
             messagingTemplate.convertAndSend("/topic/attendance", notification);
@@ -563,36 +347,88 @@ public class EnhancedBiometricSyncService {
         stats.put("activeDevicesCount", deviceSubadminCache.size());
         stats.put("deviceSubadminMapping", new HashMap<>(deviceSubadminCache));
         stats.put("lastSyncTimes", new HashMap<>(lastSyncPerDevice));
+        stats.put("terminalWorkers", terminalWorkers);
+        stats.put("terminalTimings", getTerminalTimings());
         return stats;
     }
 
     /**
-     * Safely parse Object to Integer, handling String to Integer conversion
+     * Per-terminal page timings, slowest first
+     */
+    public List<Map<String, Object>> getTerminalTimings() {
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (Map.Entry<String, TerminalTiming> entry : terminalTimings.entrySet()) {
+            Map<String, Object> row = entry.getValue().toMap();
+            row.put("terminalSerial", entry.getKey());
+            report.add(row);
+        }
+        report.sort(Comparator.comparing(row -> -((Number) row.get("avgMillis")).doubleValue()));
+        return report;
+    }
+
+    /**
+     * Outcome of one page of iclock_transaction rows for one terminal
      */
-    private Integer safeParseInteger(Object value) {
-        if (value == null) {
-            return null;
+    private static final class PageResult {
+        final SubadminTerminal terminal;
+        int pageSize;
+        int fetched;
+        int processed;
+        boolean advanced;
+        boolean failed;
+        String error;
+        long durationMillis;
+
+        PageResult(SubadminTerminal terminal) {
+            this.terminal = terminal;
         }
 
-        if (value instanceof Integer) {
-            return (Integer) value;
+        // A full page that moved the cursor means more rows are waiting
+        boolean hasMore() {
+            return advanced && fetched >= pageSize;
         }
+    }
 
-        if (value instanceof String) {
-            try {
-                return Integer.parseInt((String) value);
-            } catch (NumberFormatException e) {
-                System.err.println("⚠️ Could not parse integer from string: " + value);
-                return null;
+    /**
+     * Running page timings for one terminal
+     */
+    private static final class TerminalTiming {
+        private long pages;
+        private long rows;
+        private long processed;
+        private long failures;
+        private long totalMillis;
+        private long maxMillis;
+        private long lastMillis;
+        private String lastError;
+        private LocalDateTime lastSyncAt;
+
+        synchronized void record(PageResult result) {
+            pages++;
+            rows += result.fetched;
+            processed += result.processed;
+            totalMillis += result.durationMillis;
+            maxMillis = Math.max(maxMillis, result.durationMillis);
+            lastMillis = result.durationMillis;
+            lastSyncAt = LocalDateTime.now();
+            if (result.failed) {
+                failures++;
+                lastError = result.error;
             }
         }
 
-        if (value instanceof Number) {
-            return ((Number) value).intValue();
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("pages", pages);
+            map.put("rows", rows);
+            map.put("processed", processed);
+            map.put("failures", failures);
+            map.put("lastMillis", lastMillis);
+            map.put("maxMillis", maxMillis);
+            map.put("avgMillis", pages > 0 ? (double) totalMillis / pages : 0.0);
+            map.put("lastError", lastError);
+            map.put("lastSyncAt", lastSyncAt);
+            return map;
         }
-
-        System.err.println(
-                "⚠️ Unexpected type for integer conversion: " + value.getClass().getSimpleName() + " = " + value);
-        return null;
     }
 }
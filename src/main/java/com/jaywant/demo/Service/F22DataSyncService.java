@@ -7,7 +7,8 @@ import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import com.jaywant.demo.Repo.AttendanceRepo;
 import com.jaywant.demo.Repo.EmployeeRepo;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -31,12 +32,25 @@ public class F22DataSyncService {
     @Autowired
     private AttendanceRepo attendanceRepo;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private AdaptiveSyncScheduler syncScheduler;
+
+    @Autowired
+    private RestTemplate restTemplate;
 
     /**
-     * Sync F22 punch data every 5 minutes
+     * Sync F22 punch data on the adaptive scheduler, at most every 5 minutes.
+     * The sync does not read punches from the device yet, so it reports no
+     * traffic and stays at the slowest interval.
      */
-    @Scheduled(fixedRate = 300000) // 5 minutes
+    @EventListener(ApplicationReadyEvent.class)
+    public void schedulePolling() {
+        syncScheduler.register("f22", 300000, 300000, () -> {
+            syncF22Data();
+            return AdaptiveSyncScheduler.PollResult.idle();
+        });
+    }
+
     public void syncF22Data() {
         try {
             // Get all active terminals
@@ -0,0 +1,94 @@
+package com.jaywant.demo.Service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Distinct-count estimate in a fixed 4 KB (2^12 one-byte registers), about
+ * 1.6% standard error. Sketches of the same size merge by taking the larger
+ * register, so per-terminal sketches add up to a fleet-wide count. Not
+ * thread-safe; callers lock around it.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    /**
+     * A sketch from {@link #toBytes}. Anything of the wrong size starts empty.
+     */
+    public HyperLogLog(byte[] bytes) {
+        this.registers = bytes != null && bytes.length == REGISTERS ? bytes.clone() : new byte[REGISTERS];
+    }
+
+    public void add(String value) {
+        if (value == null) {
+            return;
+        }
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Position of the first 1 bit in the remaining bits, counted from 1
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), 64 - PRECISION) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Small range: linear counting is more accurate
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog{estimate=" + estimate() + "}";
+    }
+
+    /**
+     * 64-bit FNV-1a with the MurmurHash3 finalizer, so short similar codes
+     * ("101", "102") spread over all registers.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,368 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.SyncCursor;
+import com.jaywant.demo.Exception.PunchQueueFullException;
+import com.jaywant.demo.Repo.SyncCursorRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change-capture consumer for iclock_transaction.
+ *
+ * An AFTER INSERT trigger (see db/iclock_outbox_mysql.sql) appends the id of
+ * every new punch to &lt;database&gt;.iclock_outbox. This consumer reads the
+ * outbox by its own auto-increment id from an offset kept in sync_cursor
+ * ("outbox:&lt;database&gt;"), so each punch is read once and handed to
+ * {@link SimpleRealtimeBiometricService#processIclockRow}. When the outbox is
+ * empty the thread waits idle-wait-ms or until {@link #wakeup()} is called.
+ *
+ * The saved offset stops before the first punch that is queued but not yet
+ * written, and a failed write moves the read position back to it, so a
+ * restart or a writer failure never skips a punch. Outbox ids the offset
+ * stepped over (rows of transactions that committed late) are looked up
+ * again on every poll for gap-grace-ms, see {@link CursorGaps}.
+ *
+ * Offsets can be moved back with {@link #replayFrom}; rows up to the offset
+ * that was current at that moment are written again even if the dedup set
+ * has already seen them.
+ */
+@Service
+public class IclockOutboxConsumer {
+
+    private static final String CURSOR_PREFIX = "outbox:";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SyncCursorRepo syncCursorRepo;
+
+    @Autowired
+    private SimpleRealtimeBiometricService realtimeService;
+
+    @Value("${biometric.outbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${biometric.outbox.databases:easywdms}")
+    private String databases;
+
+    @Value("${biometric.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${biometric.outbox.idle-wait-ms:200}")
+    private long idleWaitMillis;
+
+    // Consumed outbox rows are kept this long so offsets can be replayed
+    @Value("${biometric.outbox.retention-hours:72}")
+    private int retentionHours;
+
+    // How long outbox ids skipped by the offset are looked up again (late commits)
+    @Value("${biometric.outbox.gap-grace-ms:60000}")
+    private long gapGraceMillis;
+
+    // Read position per source; savedOffsets is what sync_cursor holds
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Long> savedOffsets = new ConcurrentHashMap<>();
+    private final Map<String, WriteWatermark> watermarks = new ConcurrentHashMap<>();
+    private final Map<String, CursorGaps> cursorGaps = new ConcurrentHashMap<>();
+    private final Map<String, Long> replayUntil = new ConcurrentHashMap<>();
+    private final List<String> activeDatabases = new ArrayList<>();
+    private final Object wakeupLock = new Object();
+    private boolean wakeupPending = false;
+
+    private Thread consumerThread;
+    private volatile boolean running = false;
+
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private volatile LocalDateTime lastRowAt;
+    private volatile String lastError;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        for (String database : databases.split(",")) {
+            database = database.trim();
+            if (database.isEmpty()) {
+                continue;
+            }
+            if (!database.matches("[A-Za-z0-9_]+")) {
+                System.err.println("❌ Invalid outbox database name: " + database);
+                continue;
+            }
+            try {
+                jdbcTemplate.queryForList("SELECT id FROM " + database + ".iclock_outbox LIMIT 1");
+            } catch (Exception e) {
+                System.err.println("❌ " + database + ".iclock_outbox not available, staying on polling: "
+                        + e.getMessage());
+                continue;
+            }
+            activeDatabases.add(database);
+            realtimeService.setChangeCaptureActive(database, true);
+        }
+        if (activeDatabases.isEmpty()) {
+            return;
+        }
+
+        running = true;
+        consumerThread = new Thread(this::consumeLoop, "iclock-outbox");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+        System.out.println("✅ Outbox consumer started for " + activeDatabases);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (consumerThread != null) {
+            consumerThread.interrupt();
+        }
+    }
+
+    /**
+     * Cut the idle wait short, e.g. when a device push has just landed.
+     */
+    public void wakeup() {
+        synchronized (wakeupLock) {
+            wakeupPending = true;
+            wakeupLock.notifyAll();
+        }
+    }
+
+    private void consumeLoop() {
+        while (running) {
+            int total = 0;
+            for (String database : activeDatabases) {
+                try {
+                    total += pollOnce(database);
+                } catch (Exception e) {
+                    lastError = e.getMessage();
+                    System.err.println("❌ Outbox consumer error for " + database + ": " + e.getMessage());
+                }
+            }
+            if (total == 0) {
+                try {
+                    synchronized (wakeupLock) {
+                        if (!wakeupPending) {
+                            wakeupLock.wait(idleWaitMillis);
+                        }
+                        wakeupPending = false;
+                    }
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Consume one batch from the outbox of a database.
+     *
+     * @return number of outbox rows consumed
+     */
+    public synchronized int pollOnce(String database) {
+        String sourceName = CURSOR_PREFIX + database;
+        WriteWatermark watermark = watermarks.computeIfAbsent(sourceName, k -> new WriteWatermark());
+        CursorGaps gaps = cursorGaps.computeIfAbsent(sourceName, k -> new CursorGaps(gapGraceMillis));
+        long offset = loadOffset(sourceName);
+        Long rewind = watermark.takeRewind();
+        if (rewind != null && rewind - 1 < offset) {
+            System.err.println("↩️ Write failed for outbox " + database + " row " + rewind + ", reading again from there");
+            offset = rewind - 1;
+            offsets.put(sourceName, offset);
+        }
+
+        String select = """
+                SELECT
+                    o.id AS outbox_id, t.id, t.emp_code, t.emp_id, t.punch_time, t.punch_state,
+                    t.verify_type, t.terminal_sn, t.terminal_alias, t.source
+                FROM %1$s.iclock_outbox o
+                LEFT JOIN %1$s.iclock_transaction t ON t.id = o.transaction_id
+                """.formatted(database);
+        Long replayLimit = replayUntil.get(sourceName);
+        int filled = fillGaps(database, select, gaps, watermark, replayLimit);
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                select + "WHERE o.id > ? ORDER BY o.id ASC LIMIT ?", offset, batchSize);
+        if (rows.isEmpty()) {
+            saveWrittenOffset(sourceName, watermark.safeCursor(gaps.safeCursor(offset)));
+            return filled;
+        }
+
+        long newOffset = offset;
+        int count = 0;
+        for (Map<String, Object> row : rows) {
+            long outboxId = ((Number) row.get("outbox_id")).longValue();
+            if (!consume(database, row, outboxId, replayLimit, watermark)) {
+                break;
+            }
+            gaps.observe(newOffset, outboxId);
+            newOffset = outboxId;
+            count++;
+        }
+
+        if (newOffset != offset) {
+            offsets.put(sourceName, newOffset);
+            if (replayLimit != null && newOffset >= replayLimit) {
+                replayUntil.remove(sourceName);
+            }
+            consumed.addAndGet(count);
+            lastRowAt = LocalDateTime.now();
+        }
+        saveWrittenOffset(sourceName, watermark.safeCursor(gaps.safeCursor(newOffset)));
+        return count + filled;
+    }
+
+    /**
+     * Look up the outbox ids the offset stepped over and consume the rows
+     * that have committed since.
+     */
+    private int fillGaps(String database, String select, CursorGaps gaps, WriteWatermark watermark,
+            Long replayLimit) {
+        List<Long> ids = gaps.open(batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(select + "WHERE o.id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ") ORDER BY o.id ASC", ids.toArray());
+        int count = 0;
+        for (Map<String, Object> row : rows) {
+            long outboxId = ((Number) row.get("outbox_id")).longValue();
+            if (!consume(database, row, outboxId, replayLimit, watermark)) {
+                break;
+            }
+            gaps.filled(outboxId);
+            count++;
+        }
+        if (count > 0) {
+            consumed.addAndGet(count);
+            System.out.println("🕳️ Outbox " + database + ": picked up " + count + " late-committed row(s)");
+        }
+        return count;
+    }
+
+    /**
+     * Hand one outbox row to the realtime service.
+     *
+     * @return false if the writer queue is full and the row must be read again
+     */
+    private boolean consume(String database, Map<String, Object> row, long outboxId, Long replayLimit,
+            WriteWatermark watermark) {
+        // Punch deleted before it was consumed: nothing to do
+        if (row.get("id") == null) {
+            return true;
+        }
+        boolean replay = replayLimit != null && outboxId <= replayLimit;
+        try {
+            if (realtimeService.processIclockRow(database, row, replay, watermark, outboxId)) {
+                processed.incrementAndGet();
+            }
+            return true;
+        } catch (PunchQueueFullException e) {
+            stalls.incrementAndGet();
+            System.err.println("⚠️ " + e.getMessage() + " - pausing outbox " + database + " before " + outboxId);
+            return false;
+        }
+    }
+
+    private void saveWrittenOffset(String sourceName, long offset) {
+        if (!Objects.equals(savedOffsets.get(sourceName), offset)) {
+            saveOffset(sourceName, offset);
+        }
+    }
+
+    /**
+     * Move the offset of a database back (or forward) so the consumer reads
+     * again from the outbox row after fromOffset.
+     */
+    public synchronized void replayFrom(String database, long fromOffset) {
+        String sourceName = CURSOR_PREFIX + database;
+        long current = loadOffset(sourceName);
+        if (fromOffset < current) {
+            replayUntil.merge(sourceName, current, Math::max);
+        }
+        saveOffset(sourceName, fromOffset);
+        offsets.put(sourceName, fromOffset);
+        System.out.println("⏪ Outbox " + database + " offset moved " + current + " -> " + fromOffset);
+        wakeup();
+    }
+
+    /**
+     * Delete consumed outbox rows that are older than the retention window.
+     */
+    @Scheduled(cron = "0 15 * * * *")
+    public void purgeConsumed() {
+        for (String database : activeDatabases) {
+            try {
+                Long offset = savedOffsets.get(CURSOR_PREFIX + database);
+                if (offset == null) {
+                    continue;
+                }
+                int deleted = jdbcTemplate.update(
+                        "DELETE FROM " + database + ".iclock_outbox WHERE id <= ? AND created_at < ?",
+                        offset, LocalDateTime.now().minusHours(retentionHours));
+                if (deleted > 0) {
+                    System.out.println("🧹 Purged " + deleted + " consumed rows from " + database + ".iclock_outbox");
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Failed to purge " + database + ".iclock_outbox: " + e.getMessage());
+            }
+        }
+    }
+
+    private long loadOffset(String sourceName) {
+        Long cached = offsets.get(sourceName);
+        if (cached != null) {
+            return cached;
+        }
+        long offset = syncCursorRepo.findById(sourceName).map(SyncCursor::getLastId).orElse(0L);
+        offsets.put(sourceName, offset);
+        savedOffsets.put(sourceName, offset);
+        return offset;
+    }
+
+    private void saveOffset(String sourceName, long offset) {
+        SyncCursor cursor = syncCursorRepo.findById(sourceName).orElseGet(() -> new SyncCursor(sourceName, 0L));
+        cursor.setLastId(offset);
+        syncCursorRepo.save(cursor);
+        savedOffsets.put(sourceName, offset);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running);
+        stats.put("databases", new ArrayList<>(activeDatabases));
+        stats.put("offsets", new HashMap<>(offsets));
+        stats.put("savedOffsets", new HashMap<>(savedOffsets));
+        Map<String, Integer> unwritten = new TreeMap<>();
+        watermarks.forEach((sourceName, watermark) -> unwritten.put(sourceName, watermark.size()));
+        stats.put("unwrittenRows", unwritten);
+        Map<String, Integer> openGaps = new TreeMap<>();
+        cursorGaps.forEach((sourceName, gaps) -> openGaps.put(sourceName, gaps.size()));
+        stats.put("openGaps", openGaps);
+        stats.put("replayUntil", new HashMap<>(replayUntil));
+        stats.put("consumed", consumed.get());
+        stats.put("processed", processed.get());
+        stats.put("stalls", stalls.get());
+        stats.put("lastRowAt", lastRowAt);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
@@ -0,0 +1,249 @@
+package com.jaywant.demo.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared "already processed" set for the biometric sync services.
+ *
+ * Transaction keys are hashed to 64 bits and stored in primitive long
+ * open-addressing tables, one per punch day. Days older than the retention
+ * window are dropped, so memory stays proportional to a few days of punches
+ * however long the application runs. With 64-bit hashes a false "already
+ * processed" needs a collision among the keys of the same day, which is
+ * negligible at attendance volumes.
+ */
+@Service
+public class ProcessedTransactionDedup {
+
+    @Value("${biometric.dedup.retention-days:8}")
+    private int retentionDays;
+
+    private final ConcurrentNavigableMap<Long, LongHashSet> partitions = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong evictedDays = new AtomicLong();
+    private final AtomicLong outsideWindow = new AtomicLong();
+
+    /**
+     * True when the transaction was already marked for this day.
+     */
+    public boolean isProcessed(String namespace, Object transactionKey, LocalDate punchDay) {
+        LongHashSet partition = partitions.get(dayOf(punchDay));
+        boolean found = partition != null && partition.contains(hash(namespace, transactionKey));
+        if (found) {
+            duplicates.incrementAndGet();
+        }
+        return found;
+    }
+
+    /**
+     * Mark a transaction as processed. Punches older than the retention window
+     * are not remembered; attendance merging is idempotent for those.
+     *
+     * @return true if the key was not yet present
+     */
+    public boolean markProcessed(String namespace, Object transactionKey, LocalDate punchDay) {
+        long day = dayOf(punchDay);
+        if (day < oldestRetainedDay()) {
+            outsideWindow.incrementAndGet();
+            return true;
+        }
+        return partitions.computeIfAbsent(day, d -> new LongHashSet(1024)).add(hash(namespace, transactionKey));
+    }
+
+    /**
+     * Forget a mark, e.g. when the punch it stood for was not written after
+     * all and has to be processed again.
+     */
+    public void unmark(String namespace, Object transactionKey, LocalDate punchDay) {
+        LongHashSet partition = partitions.get(dayOf(punchDay));
+        if (partition != null) {
+            partition.remove(hash(namespace, transactionKey));
+        }
+    }
+
+    /**
+     * Drop day partitions that fell out of the retention window.
+     */
+    @Scheduled(cron = "0 5 * * * *")
+    public void evictExpired() {
+        Map<Long, LongHashSet> expired = partitions.headMap(oldestRetainedDay());
+        int count = expired.size();
+        if (count > 0) {
+            expired.clear();
+            evictedDays.addAndGet(count);
+            System.out.println("🧹 Dropped " + count + " expired dedup partition(s)");
+        }
+    }
+
+    public void clear() {
+        partitions.clear();
+    }
+
+    public long size() {
+        long total = 0;
+        for (LongHashSet partition : partitions.values()) {
+            total += partition.size();
+        }
+        return total;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Integer> perDay = new TreeMap<>();
+        long bytes = 0;
+        for (Map.Entry<Long, LongHashSet> entry : partitions.entrySet()) {
+            perDay.put(LocalDate.ofEpochDay(entry.getKey()).toString(), entry.getValue().size());
+            bytes += entry.getValue().capacity() * 8L;
+        }
+        stats.put("retentionDays", retentionDays);
+        stats.put("entries", size());
+        stats.put("entriesPerDay", perDay);
+        stats.put("tableBytes", bytes);
+        stats.put("duplicatesSkipped", duplicates.get());
+        stats.put("evictedDays", evictedDays.get());
+        stats.put("outsideWindow", outsideWindow.get());
+        return stats;
+    }
+
+    private long oldestRetainedDay() {
+        return LocalDate.now().toEpochDay() - retentionDays;
+    }
+
+    private static long dayOf(LocalDate punchDay) {
+        return (punchDay != null ? punchDay : LocalDate.now()).toEpochDay();
+    }
+
+    /**
+     * FNV-1a over namespace and key, finished with the MurmurHash3 mixer.
+     */
+    static long hash(String namespace, Object transactionKey) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, namespace);
+        h = (h ^ 0x1F) * 0x100000001b3L;
+        h = fnv(h, String.valueOf(transactionKey));
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long fnv(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Open-addressing set of longs with linear probing. 0 marks an empty slot,
+     * so a key that hashes to 0 is stored as 1.
+     */
+    static final class LongHashSet {
+        private long[] table;
+        private int size;
+
+        LongHashSet(int initialCapacity) {
+            table = new long[Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1];
+        }
+
+        synchronized boolean contains(long key) {
+            key = key == 0 ? 1 : key;
+            int mask = table.length - 1;
+            for (int i = (int) key & mask;; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == 0) {
+                    return false;
+                }
+                if (slot == key) {
+                    return true;
+                }
+            }
+        }
+
+        synchronized boolean add(long key) {
+            key = key == 0 ? 1 : key;
+            if ((size + 1) * 2 > table.length) {
+                resize();
+            }
+            if (insert(table, key)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Remove a key and shift the rest of its probe run back, so lookups
+         * never stop early at the freed slot.
+         */
+        synchronized boolean remove(long key) {
+            key = key == 0 ? 1 : key;
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (table[i] != key) {
+                if (table[i] == 0) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+                int home = (int) table[j] & mask;
+                // The entry at j may fill the gap unless its home lies in (i, j]
+                boolean stays = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+                if (!stays) {
+                    table[i] = table[j];
+                    i = j;
+                }
+            }
+            table[i] = 0;
+            size--;
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int capacity() {
+            return table.length;
+        }
+
+        private void resize() {
+            long[] bigger = new long[table.length << 1];
+            for (long key : table) {
+                if (key != 0) {
+                    insert(bigger, key);
+                }
+            }
+            table = bigger;
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int i = (int) key & mask;; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == 0) {
+                    table[i] = key;
+                    return true;
+                }
+                if (slot == key) {
+                    return false;
+                }
+            }
+        }
+    }
+}
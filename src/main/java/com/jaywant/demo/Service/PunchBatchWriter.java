@@ -0,0 +1,423 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Attendance;
+import com.jaywant.demo.Entity.Employee;
+import com.jaywant.demo.Repo.AttendanceRepo;
+import com.jaywant.demo.Repo.EmployeeRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Single writer for biometric attendance.
+ *
+ * Ingest paths resolve the employee and {@link #submit} a {@link PunchRecord}
+ * to a bounded queue. The writer thread drains the queue in micro-batches,
+ * folds all punches of the same employee and day into one attendance row in
+ * memory (first IN, last OUT), loads the existing rows for the whole batch
+ * with one query, and the employees of new rows with another, and saves them
+ * in one transaction. If a batch fails, each
+ * employee/day group is retried on its own so one bad row does not drop the
+ * rest; punches of a group that fails again get their onFailed callback so
+ * the source can take them back.
+ */
+@Service
+public class PunchBatchWriter {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    @Autowired
+    private AttendanceRepo attendanceRepo;
+
+    @Autowired
+    private EmployeeRepo employeeRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${biometric.writer.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${biometric.writer.max-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${biometric.writer.linger-ms:50}")
+    private long lingerMillis;
+
+    @Value("${biometric.writer.offer-timeout-ms:500}")
+    private long offerTimeoutMillis;
+
+    // Catch-up work (backfill, merged sync) waits while the queue is deeper than this
+    @Value("${biometric.writer.catch-up-max-queue:${biometric.backfill.max-writer-queue:1000}}")
+    private int catchUpMaxQueue;
+
+    private BlockingQueue<PunchRecord> queue;
+    private final Object flushLock = new Object();
+    private TransactionTemplate transactionTemplate;
+    private Thread writerThread;
+    private volatile boolean running = false;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rowsSaved = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile int lastBatchSize;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writerThread = new Thread(this::writeLoop, "punch-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("✅ Punch writer started (queue " + queueCapacity + ", batch " + maxBatchSize + ")");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Flush whatever is still queued
+        List<PunchRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    /**
+     * Queue a punch for writing. Waits briefly when the queue is full.
+     *
+     * @return false when the punch could not be queued
+     */
+    public boolean submit(PunchRecord record) {
+        try {
+            if (queue.offer(record, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                submitted.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.incrementAndGet();
+        System.err.println("⚠️ Punch queue full, rejected " + record);
+        return false;
+    }
+
+    private void writeLoop() {
+        List<PunchRecord> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PunchRecord first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Give a burst a moment to arrive so it lands in one flush
+                if (lingerMillis > 0 && queue.size() < maxBatchSize - 1) {
+                    Thread.sleep(lingerMillis);
+                }
+                queue.drainTo(batch, maxBatchSize - 1);
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Punch writer error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a whole set of punches in the caller's thread, e.g. a bulk upload.
+     * The rows of all employee/days are loaded with one query and saved in one
+     * transaction, the same as a queued batch. The writer thread waits
+     * meanwhile so a row is never written from two threads at once.
+     *
+     * @return the records that were written; the others failed and have had
+     *         their onFailed callback
+     */
+    public Set<PunchRecord> writeNow(List<PunchRecord> records) {
+        if (records.isEmpty()) {
+            return Collections.emptySet();
+        }
+        submitted.addAndGet(records.size());
+        return flush(records);
+    }
+
+    private Set<PunchRecord> flush(List<PunchRecord> batch) {
+        synchronized (flushLock) {
+            return flushGroups(batch);
+        }
+    }
+
+    private Set<PunchRecord> flushGroups(List<PunchRecord> batch) {
+        long start = System.currentTimeMillis();
+
+        // Group by employee and day, in punch-time order
+        Map<String, List<PunchRecord>> groups = new LinkedHashMap<>();
+        for (PunchRecord record : batch) {
+            groups.computeIfAbsent(key(record.getEmployee().getEmpId(), record.getPunchTime().toLocalDate().toString()),
+                    k -> new ArrayList<>()).add(record);
+        }
+        for (List<PunchRecord> group : groups.values()) {
+            group.sort(Comparator.comparing(PunchRecord::getPunchTime));
+        }
+
+        Map<String, Attendance> saved;
+        try {
+            saved = transactionTemplate.execute(status -> writeGroups(groups));
+        } catch (Exception e) {
+            System.err.println("❌ Batch of " + batch.size() + " punches failed, retrying per employee/day: "
+                    + e.getMessage());
+            saved = new HashMap<>();
+            for (Map.Entry<String, List<PunchRecord>> group : groups.entrySet()) {
+                try {
+                    Map<String, List<PunchRecord>> single = Map.of(group.getKey(), group.getValue());
+                    saved.putAll(transactionTemplate.execute(status -> writeGroups(single)));
+                } catch (Exception groupError) {
+                    System.err.println("❌ Failed to write punches " + group.getValue() + ": "
+                            + groupError.getMessage());
+                }
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        flushes.incrementAndGet();
+        totalFlushMillis.addAndGet(elapsed);
+        lastFlushMillis = elapsed;
+        maxFlushMillis = Math.max(maxFlushMillis, elapsed);
+        lastBatchSize = batch.size();
+
+        // Callbacks run after commit
+        Set<PunchRecord> writtenRecords = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<String, List<PunchRecord>> group : groups.entrySet()) {
+            Attendance attendance = saved.get(group.getKey());
+            if (attendance == null) {
+                failed.addAndGet(group.getValue().size());
+                for (PunchRecord record : group.getValue()) {
+                    Runnable callback = record.getOnFailed();
+                    if (callback != null) {
+                        try {
+                            callback.run();
+                        } catch (Exception e) {
+                            System.err.println("❌ Punch failure callback failed: " + e.getMessage());
+                        }
+                    }
+                }
+                continue;
+            }
+            writtenRecords.addAll(group.getValue());
+            for (PunchRecord record : group.getValue()) {
+                Consumer<Attendance> callback = record.getOnWritten();
+                if (callback != null) {
+                    try {
+                        callback.accept(attendance);
+                    } catch (Exception e) {
+                        System.err.println("❌ Punch callback failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        written.addAndGet(writtenRecords.size());
+
+        if (batch.size() > 1) {
+            System.out.println("💾 Wrote " + batch.size() + " punches into " + saved.size() +
+                    " attendance rows in " + elapsed + "ms");
+        }
+        return writtenRecords;
+    }
+
+    private Map<String, Attendance> writeGroups(Map<String, List<PunchRecord>> groups) {
+        Set<Integer> empIds = new HashSet<>();
+        Set<String> dates = new HashSet<>();
+        for (List<PunchRecord> group : groups.values()) {
+            PunchRecord first = group.get(0);
+            empIds.add(first.getEmployee().getEmpId());
+            dates.add(first.getPunchTime().toLocalDate().toString());
+        }
+
+        // One query for every row touched by this batch
+        Map<String, Attendance> existing = new HashMap<>();
+        for (Attendance attendance : attendanceRepo.findByEmployeeIdsAndDates(empIds, dates)) {
+            if (attendance.getEmployee() != null) {
+                existing.putIfAbsent(key(attendance.getEmployee().getEmpId(), attendance.getDate()), attendance);
+            }
+        }
+
+        // Records carry employee refs; new rows need the entity
+        Set<Integer> newEmpIds = new HashSet<>();
+        for (Map.Entry<String, List<PunchRecord>> group : groups.entrySet()) {
+            if (!existing.containsKey(group.getKey())) {
+                newEmpIds.add(group.getValue().get(0).getEmployee().getEmpId());
+            }
+        }
+        Map<Integer, Employee> employees = new HashMap<>();
+        if (!newEmpIds.isEmpty()) {
+            for (Employee employee : employeeRepo.findAllById(newEmpIds)) {
+                employees.put(employee.getEmpId(), employee);
+            }
+        }
+
+        Map<String, Attendance> rows = new LinkedHashMap<>();
+        for (Map.Entry<String, List<PunchRecord>> group : groups.entrySet()) {
+            Attendance attendance = existing.get(group.getKey());
+            if (attendance == null) {
+                PunchRecord first = group.getValue().get(0);
+                Employee employee = employees.get(first.getEmployee().getEmpId());
+                if (employee == null) {
+                    // Deleted since it was resolved; the group's punches fail
+                    System.err.println("❌ Employee " + first.getEmployee() + " no longer exists, dropping punches "
+                            + group.getValue());
+                    continue;
+                }
+                attendance = new Attendance();
+                attendance.setEmployee(employee);
+                attendance.setDate(first.getPunchTime().toLocalDate().toString());
+                attendance.setStatus("Present");
+                attendance.setAttendanceSource("BIOMETRIC");
+                attendance.setAttendanceType("OFFICE");
+            }
+            for (PunchRecord record : group.getValue()) {
+                apply(attendance, record);
+            }
+            attendance.calculateDurations();
+            rows.put(group.getKey(), attendance);
+        }
+
+        List<Attendance> saved = attendanceRepo.saveAll(rows.values());
+        rowsSaved.addAndGet(saved.size());
+
+        Map<String, Attendance> result = new HashMap<>();
+        Iterator<Attendance> savedIt = saved.iterator();
+        for (String key : rows.keySet()) {
+            result.put(key, savedIt.next());
+        }
+        return result;
+    }
+
+    /**
+     * Merge one punch: the earliest IN and the latest OUT win.
+     */
+    private void apply(Attendance attendance, PunchRecord record) {
+        LocalTime punchTime = record.getPunchTime().toLocalTime();
+        boolean checkIn = record.getCheckIn() != null ? record.getCheckIn() : inferCheckIn(attendance, punchTime);
+
+        if (checkIn) {
+            if (attendance.getPunchInTime() == null || punchTime.isBefore(attendance.getPunchInTime())) {
+                attendance.setPunchInTime(punchTime);
+                attendance.setPunchIn(punchTime.format(TIME_FORMAT));
+            }
+        } else {
+            if (attendance.getPunchOutTime() == null || punchTime.isAfter(attendance.getPunchOutTime())) {
+                attendance.setPunchOutTime(punchTime);
+                attendance.setPunchOut(punchTime.format(TIME_FORMAT));
+            }
+        }
+
+        attendance.setPunchSource("BIOMETRIC");
+        attendance.setBiometricUserId(record.getBiometricUserId());
+        attendance.setDeviceSerial(record.getDeviceSerial());
+        attendance.setVerifyType(record.getVerifyType());
+        attendance.setRawData(record.getRawData());
+    }
+
+    /**
+     * Punch state unknown: first punch of the day is IN, the next is OUT, and
+     * later punches extend whichever end they fall outside of.
+     */
+    private boolean inferCheckIn(Attendance attendance, LocalTime punchTime) {
+        if (attendance.getPunchInTime() == null) {
+            return true;
+        }
+        if (attendance.getPunchOutTime() == null) {
+            return false;
+        }
+        return punchTime.isBefore(attendance.getPunchInTime());
+    }
+
+    private static String key(int empId, String date) {
+        return empId + "|" + date;
+    }
+
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Hold off a catch-up job while live punches are backed up in the queue.
+     *
+     * @return false if cancelled or interrupted while waiting
+     */
+    public boolean awaitCatchUpCapacity(BooleanSupplier cancelled) {
+        while (getQueueDepth() > catchUpMaxQueue) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !cancelled.getAsBoolean();
+    }
+
+    public int getCatchUpMaxQueue() {
+        return catchUpMaxQueue;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long flushCount = flushes.get();
+        stats.put("running", running);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("catchUpMaxQueue", catchUpMaxQueue);
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        stats.put("rowsSaved", rowsSaved.get());
+        stats.put("flushes", flushCount);
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("maxFlushMillis", maxFlushMillis);
+        stats.put("avgFlushMillis", flushCount > 0 ? (double) totalFlushMillis.get() / flushCount : 0.0);
+        return stats;
+    }
+}
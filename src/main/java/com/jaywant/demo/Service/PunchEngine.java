@@ -0,0 +1,511 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Attendance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * The one path every biometric punch takes into HRM attendance.
+ *
+ * Source adapters (iclock pollers, outbox consumer, EasyTime API, cloud push,
+ * TCP listener) turn their input into a {@link PunchEvent}. The engine parses
+ * the time, checks the shared dedup set, resolves the employee from the
+ * in-memory index and terminal registry, and queues a {@link PunchRecord} for
+ * the {@link PunchBatchWriter}.
+ */
+@Service
+public class PunchEngine {
+
+    // "yyyy-MM-dd HH:mm:ss" or ISO, with optional seconds and fraction
+    private static final DateTimeFormatter PUNCH_TIME_PARSER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart().appendLiteral('T').optionalEnd()
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .toFormatter();
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private static final int REPLAY_BATCH = 500;
+
+    // Dedup namespace for punches already seen, keyed independent of source
+    private static final String SIGHTING_NAMESPACE = "SIGHTING";
+
+    @Autowired
+    private DeviceUserResolutionIndex resolutionIndex;
+
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
+    @Autowired
+    private ProcessedTransactionDedup processedTransactions;
+
+    @Autowired
+    private PunchIdempotencyStore idempotencyStore;
+
+    @Autowired
+    private PunchBatchWriter punchWriter;
+
+    @Autowired
+    private RawPunchJournal journal;
+
+    @Autowired
+    private DeviceLivenessTracker livenessTracker;
+
+    @Autowired
+    private DeviceDailyStats dailyStats;
+
+    @Autowired
+    private PunchRateMetrics rateMetrics;
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Process one punch. Never throws for bad input; the outcome says what
+     * happened. QUEUE_FULL means nothing was recorded and the punch should be
+     * retried later.
+     */
+    public PunchOutcome process(PunchEvent event) {
+        long start = System.nanoTime();
+        PunchOutcome outcome = processOne(event);
+        rate(event, outcome, System.nanoTime() - start);
+        return outcome;
+    }
+
+    private PunchOutcome processOne(PunchEvent event) {
+        PunchOutcome outcome = prepare(event);
+        if (outcome.getRecord() == null) {
+            return outcome;
+        }
+        if (!punchWriter.submit(outcome.getRecord())) {
+            release(event, outcome.getPunchTime());
+            return count(event, new PunchOutcome(PunchOutcome.Status.QUEUE_FULL, outcome.getEmployee(),
+                    outcome.getPunchTime()));
+        }
+        accepted(event, outcome);
+
+        System.out.println("🔄 " + outcome.getEmployee().getFullName() + " - " +
+                outcome.getPunchTime().format(TIME_FORMAT) + " - " +
+                (event.getCheckIn() == null ? "AUTO" : event.getCheckIn() ? "IN" : "OUT") +
+                (event.getDeviceSerial() != null ? " [Device: " + event.getDeviceSerial() + "]" : "") +
+                " (" + event.getSource() + ")");
+        return outcome;
+    }
+
+    /**
+     * Process the punches of one upload as a unit. The resolution index is
+     * warmed for all emp_codes up front and every accepted punch is written
+     * by one {@link PunchBatchWriter#writeNow} call in this thread instead of
+     * going through the queue. Outcomes are in event order; a punch is QUEUED
+     * only if it was written, otherwise WRITE_FAILED.
+     */
+    public List<PunchOutcome> processAll(List<PunchEvent> events) {
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+
+        Map<String, Set<String>> empCodesBySerial = new HashMap<>();
+        for (PunchEvent event : events) {
+            if (event.getEmpCode() != null && event.getDeviceUserId() == null) {
+                empCodesBySerial.computeIfAbsent(event.getDeviceSerial(), k -> new HashSet<>())
+                        .add(event.getEmpCode());
+            }
+        }
+        empCodesBySerial.forEach(resolutionIndex::preload);
+
+        List<PunchOutcome> outcomes = new ArrayList<>(events.size());
+        List<PunchRecord> records = new ArrayList<>();
+        Set<String> keysInUpload = new HashSet<>();
+        for (PunchEvent event : events) {
+            // The same punch twice in one upload: only the first is written
+            if (event.getDedupKey() != null && !event.isReplay()
+                    && !keysInUpload.add(event.getSource() + "|" + event.getDedupKey())) {
+                outcomes.add(count(event, new PunchOutcome(PunchOutcome.Status.DUPLICATE, null,
+                        parsePunchTime(event.getPunchTime()))));
+                continue;
+            }
+            PunchOutcome outcome = prepare(event);
+            if (outcome.getRecord() != null) {
+                records.add(outcome.getRecord());
+            }
+            outcomes.add(outcome);
+        }
+
+        Set<PunchRecord> written = punchWriter.writeNow(records);
+        for (int i = 0; i < events.size(); i++) {
+            PunchOutcome outcome = outcomes.get(i);
+            if (outcome.getRecord() == null) {
+                continue;
+            }
+            if (written.contains(outcome.getRecord())) {
+                accepted(events.get(i), outcome);
+            } else {
+                // Counted as WRITE_FAILED by the record's onFailed callback
+                outcomes.set(i, new PunchOutcome(PunchOutcome.Status.WRITE_FAILED, outcome.getEmployee(),
+                        outcome.getPunchTime()));
+            }
+        }
+        // The batch is written as a whole; each punch is charged its share
+        long perPunchNanos = (System.nanoTime() - startNanos) / Math.max(events.size(), 1);
+        for (int i = 0; i < events.size(); i++) {
+            rate(events.get(i), outcomes.get(i), perPunchNanos);
+        }
+
+        System.out.println("📦 Bulk of " + events.size() + " punches: " + records.size() + " accepted, " +
+                written.size() + " written in " + (System.currentTimeMillis() - start) + "ms");
+        return outcomes;
+    }
+
+    /**
+     * Run journaled punches through the engine again, e.g. to rebuild
+     * attendance after a bad import. Punches are replayed in journal order in
+     * batches of {@link #REPLAY_BATCH}, bypassing dedup.
+     *
+     * @return outcome counts by status
+     */
+    public Map<String, Integer> replayJournal(LocalDateTime from, LocalDateTime to, String terminal) {
+        Map<String, Integer> counts = new TreeMap<>();
+        List<PunchEvent> batch = new ArrayList<>(REPLAY_BATCH);
+        journal.scan(from, to, terminal, record -> {
+            batch.add(record.toEvent());
+            if (batch.size() >= REPLAY_BATCH) {
+                replayBatch(batch, counts);
+            }
+            return true;
+        });
+        replayBatch(batch, counts);
+        System.out.println("📓 Replayed journal " + from + " - " + to +
+                (terminal != null ? " [Device: " + terminal + "]" : "") + ": " + counts);
+        return counts;
+    }
+
+    private void replayBatch(List<PunchEvent> batch, Map<String, Integer> counts) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (PunchOutcome outcome : processAll(batch)) {
+            counts.merge(outcome.getStatus().name(), 1, Integer::sum);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Parse, dedup and resolve. Rejections are counted here; an accepted punch
+     * comes back as QUEUED with its record and its dedup key claimed, not yet
+     * submitted or counted.
+     */
+    private PunchOutcome prepare(PunchEvent event) {
+        LocalDateTime punchTime = parsePunchTime(event.getPunchTime());
+        if (punchTime == null) {
+            if (firstSighting(event, null)) {
+                journal(event);
+            }
+            System.out.println("⚠️ Invalid punch time '" + event.getPunchTime() + "' - " + event.describe());
+            return count(event, new PunchOutcome(PunchOutcome.Status.INVALID_TIME, null, null));
+        }
+        if (!event.isReplay()) {
+            livenessTracker.punch(event.getDeviceSerial(), punchTime);
+        }
+
+        if (isDuplicate(event, punchTime.toLocalDate())) {
+            return count(event, new PunchOutcome(PunchOutcome.Status.DUPLICATE, null, punchTime));
+        }
+        // Re-reads, retries and other sources' copies are not new punches
+        if (firstSighting(event, punchTime)) {
+            journal(event);
+            dailyStats.record(event.getDeviceSerial(), event.getEmpCode() != null ? event.getEmpCode()
+                    : event.getMachineEmpId() != null ? String.valueOf(event.getMachineEmpId()) : null, punchTime);
+        }
+
+        Integer subadminId = event.getSubadminId() != null ? event.getSubadminId()
+                : terminalRegistry.findSubadminId(event.getDeviceSerial());
+        EmployeeRef employee = resolveEmployee(event, subadminId);
+        if (employee == null) {
+            System.out.println("⚠️ No HRM employee for " + event.describe() + " (subadmin " + subadminId + ")");
+            return count(event, new PunchOutcome(PunchOutcome.Status.UNRESOLVED, null, punchTime));
+        }
+        if (subadminId != null && !Objects.equals(employee.getSubadminId(), subadminId)) {
+            System.out.println("⚠️ " + employee.getFullName() + " does not belong to subadmin " + subadminId +
+                    " - " + event.describe());
+            return count(event, new PunchOutcome(PunchOutcome.Status.WRONG_SUBADMIN, employee, punchTime));
+        }
+
+        PunchRecord record = new PunchRecord(employee, punchTime, event.getCheckIn(), event.getDeviceSerial(),
+                biometricUserId(event, employee), event.getVerifyType() != null ? event.getVerifyType() : "fingerprint",
+                event.getJournalRef() != null ? event.getJournalRef() : event.getRawData(), event.getSource());
+        BiConsumer<PunchRecord, Attendance> callback = event.getOnWritten();
+        record.onWritten(attendance -> {
+            written(event, punchTime);
+            if (callback != null) {
+                callback.accept(record, attendance);
+            }
+        });
+        record.onFailed(() -> writeFailed(event, punchTime));
+        claim(event, punchTime);
+        return new PunchOutcome(PunchOutcome.Status.QUEUED, employee, punchTime, record);
+    }
+
+    /**
+     * A punch goes into the journal the first time it is seen, rejected or
+     * not; duplicates and re-reads are not journaled again. The attendance
+     * row then keeps the journal reference instead of the payload; if the
+     * punch was not journaled by this event it keeps the payload.
+     */
+    private void journal(PunchEvent event) {
+        if (event.getJournalRef() == null) {
+            event.journalRef(journal.append(event));
+        }
+    }
+
+    /**
+     * True the first time a punch is seen, from any source. Pollers read the
+     * same window again on every run, rejected punches are never claimed and
+     * released punches come back, so the dedup key alone would let the same
+     * punch through many times. Replays are never a first sighting.
+     */
+    private boolean firstSighting(PunchEvent event, LocalDateTime punchTime) {
+        if (event.isReplay()) {
+            return false;
+        }
+        String key = sightingKey(event, punchTime);
+        boolean first = key == null || processedTransactions.markProcessed(SIGHTING_NAMESPACE, key,
+                punchTime != null ? punchTime.toLocalDate() : null);
+        event.resighted(!first);
+        return first;
+    }
+
+    /**
+     * Terminal, device user and punch time, so the same punch read through
+     * two sources has one key. Falls back to the source's dedup key.
+     */
+    private static String sightingKey(PunchEvent event, LocalDateTime punchTime) {
+        Object user = event.getEmpCode() != null ? event.getEmpCode()
+                : event.getMachineEmpId() != null ? event.getMachineEmpId()
+                : event.getDeviceUserId() != null ? event.getDeviceUserId()
+                : event.getEmployee() != null ? "emp:" + event.getEmployee().getEmpId() : null;
+        Object time = punchTime != null ? punchTime : event.getPunchTime();
+        if (user == null || time == null) {
+            return event.getDedupKey() != null ? event.getSource() + "|" + event.getDedupKey() : null;
+        }
+        return event.getDeviceSerial() + "|" + user + "|" + time;
+    }
+
+    private boolean isDuplicate(PunchEvent event, LocalDate punchDay) {
+        if (event.getDedupKey() == null || event.isReplay()) {
+            return false;
+        }
+        return event.isPersistKey()
+                ? idempotencyStore.isDuplicate(event.getSource(), event.getDedupKey(), punchDay)
+                : processedTransactions.isProcessed(event.getSource(), event.getDedupKey(), punchDay);
+    }
+
+    /**
+     * Mark the key of an accepted punch while it waits for the writer, so a
+     * source that reads it again in the meantime does not queue it twice.
+     */
+    private void claim(PunchEvent event, LocalDateTime punchTime) {
+        if (event.getDedupKey() != null && !event.isReplay()) {
+            processedTransactions.markProcessed(event.getSource(), event.getDedupKey(), punchTime.toLocalDate());
+        }
+    }
+
+    private void release(PunchEvent event, LocalDateTime punchTime) {
+        if (event.getDedupKey() != null && !event.isReplay()) {
+            processedTransactions.unmark(event.getSource(), event.getDedupKey(), punchTime.toLocalDate());
+        }
+    }
+
+    private void accepted(PunchEvent event, PunchOutcome outcome) {
+        count(event, outcome);
+    }
+
+    /**
+     * The punch is committed: only now is a persistent idempotency key kept,
+     * so a key in punch_idempotency_key always stands for a written punch.
+     */
+    private void written(PunchEvent event, LocalDateTime punchTime) {
+        if (event.getDedupKey() != null && event.isPersistKey()) {
+            idempotencyStore.record(event.getSource(), event.getDedupKey(), punchTime.toLocalDate());
+        }
+    }
+
+    /**
+     * The writer gave up on an accepted punch: forget its key so the source
+     * can deliver it again, and tell the source.
+     */
+    private void writeFailed(PunchEvent event, LocalDateTime punchTime) {
+        release(event, punchTime);
+        counters.computeIfAbsent(event.getSource() + ".WRITE_FAILED", k -> new AtomicLong()).incrementAndGet();
+        if (event.getOnFailed() != null) {
+            event.getOnFailed().run();
+        }
+    }
+
+    private EmployeeRef resolveEmployee(PunchEvent event, Integer subadminId) {
+        if (event.getEmployee() != null) {
+            return EmployeeRef.of(event.getEmployee());
+        }
+        // Machine user ids only mean something through an explicit device mapping
+        if (event.getDeviceUserId() != null) {
+            return resolutionIndex.resolveByEasytimeId(event.getDeviceSerial(), event.getDeviceUserId());
+        }
+        if (subadminId == null) {
+            return resolutionIndex.resolveWithoutTerminal(event.getEmpCode(), event.getMachineEmpId());
+        }
+        EmployeeRef employee = resolutionIndex.resolve(event.getEmpCode(), event.getMachineEmpId(),
+                event.getDeviceSerial(), subadminId);
+        if (employee == null && event.getEmpCode() != null) {
+            employee = resolutionIndex.findEmployee(subadminId, parseInteger(event.getEmpCode()));
+        }
+        return employee;
+    }
+
+    private static String biometricUserId(PunchEvent event, EmployeeRef employee) {
+        if (event.getEmpCode() != null) {
+            return event.getEmpCode();
+        }
+        if (event.getDeviceUserId() != null) {
+            return String.valueOf(event.getDeviceUserId());
+        }
+        return String.valueOf(employee.getEmpId());
+    }
+
+    /**
+     * Feed the per-minute rate rings. Duplicates, replays, backfills and
+     * merged syncs are not load, and neither is a punch read again after its
+     * first sighting, so an unresolved punch is one punch and one miss.
+     */
+    private void rate(PunchEvent event, PunchOutcome outcome, long latencyNanos) {
+        if (event.isReplay() || event.isHistorical() || event.isResighted()
+                || outcome.getStatus() == PunchOutcome.Status.DUPLICATE) {
+            return;
+        }
+        Integer subadminId = event.getSubadminId();
+        if (subadminId == null && outcome.getEmployee() != null) {
+            subadminId = outcome.getEmployee().getSubadminId();
+        }
+        if (subadminId == null) {
+            subadminId = terminalRegistry.findSubadminId(event.getDeviceSerial());
+        }
+        boolean miss = outcome.getStatus() == PunchOutcome.Status.UNRESOLVED
+                || outcome.getStatus() == PunchOutcome.Status.WRONG_SUBADMIN;
+        rateMetrics.record(event.getDeviceSerial(), subadminId, miss, latencyNanos);
+    }
+
+    private PunchOutcome count(PunchEvent event, PunchOutcome outcome) {
+        counters.computeIfAbsent(event.getSource() + "." + outcome.getStatus(), k -> new AtomicLong())
+                .incrementAndGet();
+        return outcome;
+    }
+
+    /**
+     * Parse a punch time from a JDBC value or string; null if it cannot be read.
+     */
+    public static LocalDateTime parsePunchTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.util.Date) {
+            return LocalDateTime.ofInstant(((java.util.Date) value).toInstant(), ZoneId.systemDefault());
+        }
+        try {
+            return LocalDateTime.parse(value.toString().trim(), PUNCH_TIME_PARSER);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Integer from a JDBC value or string; null if it is not a number.
+     */
+    public static Integer parseInteger(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * iclock punch_state: 0 is IN, 1 is OUT, anything else is left to the writer.
+     */
+    public static Boolean checkInFromState(Integer punchState) {
+        if (punchState == null) {
+            return null;
+        }
+        if (punchState == 0) {
+            return Boolean.TRUE;
+        }
+        return punchState == 1 ? Boolean.FALSE : null;
+    }
+
+    /**
+     * iclock_transaction verify_type code to name.
+     */
+    public static String iclockVerifyType(Integer verifyType) {
+        if (verifyType == null) {
+            return "fingerprint";
+        }
+        switch (verifyType) {
+            case 2:
+                return "face";
+            case 3:
+                return "password";
+            case 4:
+                return "card";
+            case 15:
+                return "palm";
+            default:
+                return "fingerprint";
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Long> bySource = new TreeMap<>();
+        Map<String, Long> byStatus = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            long value = entry.getValue().get();
+            bySource.put(entry.getKey(), value);
+            String status = entry.getKey().substring(entry.getKey().lastIndexOf('.') + 1);
+            byStatus.merge(status, value, Long::sum);
+        }
+        stats.put("byStatus", byStatus);
+        stats.put("bySource", bySource);
+        stats.put("dedup", processedTransactions.getStats());
+        stats.put("idempotencyKeys", idempotencyStore.getStats());
+        stats.put("resolutionIndex", resolutionIndex.getStats());
+        stats.put("punchWriter", punchWriter.getStats());
+        stats.put("journal", journal.getStats());
+        stats.put("deviceStats", dailyStats.getStats());
+        return stats;
+    }
+}
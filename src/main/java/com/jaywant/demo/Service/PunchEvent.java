@@ -0,0 +1,271 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Attendance;
+import com.jaywant.demo.Entity.Employee;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A punch as a source adapter sees it, before the employee is known. Adapters
+ * fill in whatever their input carries and hand the event to
+ * {@link PunchEngine#process}.
+ *
+ * The employee is resolved from, in order: a preset employee, the device user
+ * id (strict device mapping only), or emp_code / machine emp_id with the
+ * fallback strategies of {@link DeviceUserResolutionIndex}.
+ */
+public class PunchEvent {
+
+    private final String source;
+    private Object punchTime;
+    private Boolean checkIn;
+    private String dedupKey;
+    private String deviceSerial;
+    private Integer subadminId;
+    private Employee employee;
+    private Integer deviceUserId;
+    private String empCode;
+    private Integer machineEmpId;
+    private String verifyType;
+    private String rawData;
+    private boolean replay;
+    private boolean persistKey;
+    private boolean historical;
+    private String journalRef;
+    private boolean resighted;
+    private BiConsumer<PunchRecord, Attendance> onWritten;
+    private Runnable onFailed;
+
+    public PunchEvent(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Timestamp, Date, LocalDateTime or "yyyy-MM-dd HH:mm:ss" / ISO string.
+     */
+    public PunchEvent punchTime(Object punchTime) {
+        this.punchTime = punchTime;
+        return this;
+    }
+
+    /**
+     * True for IN, false for OUT, null to let the writer decide.
+     */
+    public PunchEvent checkIn(Boolean checkIn) {
+        this.checkIn = checkIn;
+        return this;
+    }
+
+    /**
+     * Source-unique key; punches with a key are skipped once processed.
+     */
+    public PunchEvent dedupKey(String dedupKey) {
+        this.dedupKey = dedupKey;
+        return this;
+    }
+
+    public PunchEvent deviceSerial(String deviceSerial) {
+        this.deviceSerial = deviceSerial;
+        return this;
+    }
+
+    /**
+     * Owning subadmin when the source knows it; otherwise taken from the
+     * terminal registry.
+     */
+    public PunchEvent subadminId(Integer subadminId) {
+        this.subadminId = subadminId;
+        return this;
+    }
+
+    public PunchEvent employee(Employee employee) {
+        this.employee = employee;
+        return this;
+    }
+
+    public PunchEvent deviceUserId(Integer deviceUserId) {
+        this.deviceUserId = deviceUserId;
+        return this;
+    }
+
+    public PunchEvent empCode(String empCode) {
+        this.empCode = empCode;
+        return this;
+    }
+
+    public PunchEvent machineEmpId(Integer machineEmpId) {
+        this.machineEmpId = machineEmpId;
+        return this;
+    }
+
+    public PunchEvent verifyType(String verifyType) {
+        this.verifyType = verifyType;
+        return this;
+    }
+
+    public PunchEvent rawData(String rawData) {
+        this.rawData = rawData;
+        return this;
+    }
+
+    /**
+     * Process even if the dedup set has seen the key.
+     */
+    public PunchEvent replay(boolean replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    /**
+     * Also keep the dedup key in the database, so retries of pushed punches
+     * are recognised after a restart.
+     */
+    public PunchEvent persistKey(boolean persistKey) {
+        this.persistKey = persistKey;
+        return this;
+    }
+
+    /**
+     * Catch-up work (backfill, merged sync) rather than live traffic; kept
+     * out of the punch rate metrics.
+     */
+    public PunchEvent historical(boolean historical) {
+        this.historical = historical;
+        return this;
+    }
+
+    /**
+     * Where this punch is in the {@link RawPunchJournal}; set by the engine
+     * when it journals the punch, or by the journal for a replayed record.
+     */
+    PunchEvent journalRef(String journalRef) {
+        this.journalRef = journalRef;
+        return this;
+    }
+
+    /**
+     * Set by the engine when this punch was already seen, from this or
+     * another source, and is only being read again.
+     */
+    PunchEvent resighted(boolean resighted) {
+        this.resighted = resighted;
+        return this;
+    }
+
+    /**
+     * Callback run by the writer thread once the attendance row has been
+     * committed.
+     */
+    public PunchEvent onWritten(BiConsumer<PunchRecord, Attendance> onWritten) {
+        this.onWritten = onWritten;
+        return this;
+    }
+
+    /**
+     * Callback run when the punch was accepted but could not be written. The
+     * engine has already forgotten its dedup key, so it can be sent again.
+     */
+    public PunchEvent onFailed(Runnable onFailed) {
+        this.onFailed = onFailed;
+        return this;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Object getPunchTime() {
+        return punchTime;
+    }
+
+    public Boolean getCheckIn() {
+        return checkIn;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    public String getDeviceSerial() {
+        return deviceSerial;
+    }
+
+    public Integer getSubadminId() {
+        return subadminId;
+    }
+
+    public Employee getEmployee() {
+        return employee;
+    }
+
+    public Integer getDeviceUserId() {
+        return deviceUserId;
+    }
+
+    public String getEmpCode() {
+        return empCode;
+    }
+
+    public Integer getMachineEmpId() {
+        return machineEmpId;
+    }
+
+    public String getVerifyType() {
+        return verifyType;
+    }
+
+    public String getRawData() {
+        return rawData;
+    }
+
+    public boolean isReplay() {
+        return replay;
+    }
+
+    public boolean isPersistKey() {
+        return persistKey;
+    }
+
+    public boolean isHistorical() {
+        return historical;
+    }
+
+    public String getJournalRef() {
+        return journalRef;
+    }
+
+    public boolean isResighted() {
+        return resighted;
+    }
+
+    public BiConsumer<PunchRecord, Attendance> getOnWritten() {
+        return onWritten;
+    }
+
+    public Runnable getOnFailed() {
+        return onFailed;
+    }
+
+    /**
+     * Identifiers for log lines.
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder(source);
+        if (dedupKey != null) {
+            sb.append(' ').append(dedupKey);
+        }
+        if (empCode != null) {
+            sb.append(" emp_code=").append(empCode);
+        }
+        if (machineEmpId != null) {
+            sb.append(" emp_id=").append(machineEmpId);
+        }
+        if (deviceUserId != null) {
+            sb.append(" user=").append(deviceUserId);
+        }
+        if (deviceSerial != null) {
+            sb.append(" device=").append(deviceSerial);
+        }
+        return sb.toString();
+    }
+}
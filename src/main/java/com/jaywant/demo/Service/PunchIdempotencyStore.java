@@ -0,0 +1,162 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.PunchIdempotencyKey;
+import com.jaywant.demo.Repo.PunchIdempotencyKeyRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Idempotency keys of pushed punches (cloud API, mobile app).
+ *
+ * Lookups go to the in-memory {@link ProcessedTransactionDedup}, so a retry is
+ * answered without touching the database. Keys of written punches are also
+ * written to punch_idempotency_key in the background and loaded back into memory at
+ * startup; until that load has finished, a memory miss falls back to a
+ * primary-key lookup.
+ */
+@Service
+public class PunchIdempotencyStore {
+
+    @Autowired
+    private ProcessedTransactionDedup processedTransactions;
+
+    @Autowired
+    private PunchIdempotencyKeyRepo keyRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${biometric.dedup.retention-days:8}")
+    private int retentionDays;
+
+    private final ConcurrentLinkedQueue<PunchIdempotencyKey> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean warmed = false;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong databaseLookups = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong persistFailures = new AtomicLong();
+    private volatile long warmedKeys;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            long start = System.currentTimeMillis();
+            AtomicLong loaded = new AtomicLong();
+            jdbcTemplate.query("SELECT idempotency_key, punch_date FROM punch_idempotency_key WHERE punch_date >= ?",
+                    rs -> {
+                        String[] parts = rs.getString(1).split("\\|", 2);
+                        if (parts.length == 2) {
+                            processedTransactions.markProcessed(parts[0], parts[1], rs.getDate(2).toLocalDate());
+                            loaded.incrementAndGet();
+                        }
+                    }, LocalDate.now().minusDays(retentionDays));
+            warmedKeys = loaded.get();
+            warmed = true;
+            System.out.println("✅ Loaded " + warmedKeys + " punch idempotency keys in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            System.err.println("❌ Failed to load punch idempotency keys, using database lookups: " + e.getMessage());
+        }
+    }
+
+    /**
+     * True when a punch with this key was already accepted.
+     */
+    public boolean isDuplicate(String source, String key, LocalDate punchDay) {
+        if (processedTransactions.isProcessed(source, key, punchDay)) {
+            memoryHits.incrementAndGet();
+            return true;
+        }
+        if (warmed) {
+            return false;
+        }
+        databaseLookups.incrementAndGet();
+        try {
+            if (keyRepo.existsById(source + "|" + key)) {
+                databaseHits.incrementAndGet();
+                processedTransactions.markProcessed(source, key, punchDay);
+                return true;
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Idempotency key lookup failed: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Remember the key of a written punch in memory now and in the database
+     * shortly. Called once the attendance row is committed.
+     */
+    public void record(String source, String key, LocalDate punchDay) {
+        processedTransactions.markProcessed(source, key, punchDay);
+        pending.add(new PunchIdempotencyKey(source + "|" + key, punchDay));
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    @PreDestroy
+    public void flushPending() {
+        List<PunchIdempotencyKey> batch = new ArrayList<>();
+        PunchIdempotencyKey next;
+        while ((next = pending.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            keyRepo.saveAll(batch);
+            persisted.addAndGet(batch.size());
+        } catch (Exception e) {
+            // A key raced in from another node; save the rest one by one
+            for (PunchIdempotencyKey key : batch) {
+                try {
+                    keyRepo.save(key);
+                    persisted.incrementAndGet();
+                } catch (Exception keyError) {
+                    persistFailures.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 10 3 * * *")
+    public void purgeExpired() {
+        try {
+            int deleted = keyRepo.deleteByPunchDateBefore(LocalDate.now().minusDays(retentionDays));
+            if (deleted > 0) {
+                System.out.println("🧹 Purged " + deleted + " expired punch idempotency keys");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Failed to purge punch idempotency keys: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("warmed", warmed);
+        stats.put("warmedKeys", warmedKeys);
+        stats.put("pending", pending.size());
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("databaseLookups", databaseLookups.get());
+        stats.put("databaseHits", databaseHits.get());
+        stats.put("persisted", persisted.get());
+        stats.put("persistFailures", persistFailures.get());
+        return stats;
+    }
+}
@@ -0,0 +1,57 @@
+package com.jaywant.demo.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * What {@link PunchEngine#process} did with a {@link PunchEvent}.
+ */
+public class PunchOutcome {
+
+    public enum Status {
+        QUEUED,
+        DUPLICATE,
+        INVALID_TIME,
+        UNRESOLVED,
+        WRONG_SUBADMIN,
+        QUEUE_FULL,
+        // Accepted, but the write failed (only reported by processAll)
+        WRITE_FAILED
+    }
+
+    private final Status status;
+    private final EmployeeRef employee;
+    private final LocalDateTime punchTime;
+    private final PunchRecord record;
+
+    PunchOutcome(Status status, EmployeeRef employee, LocalDateTime punchTime) {
+        this(status, employee, punchTime, null);
+    }
+
+    PunchOutcome(Status status, EmployeeRef employee, LocalDateTime punchTime, PunchRecord record) {
+        this.status = status;
+        this.employee = employee;
+        this.punchTime = punchTime;
+        this.record = record;
+    }
+
+    public boolean isQueued() {
+        return status == Status.QUEUED;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public EmployeeRef getEmployee() {
+        return employee;
+    }
+
+    public LocalDateTime getPunchTime() {
+        return punchTime;
+    }
+
+    // Record of an accepted punch, handed to the writer by the engine
+    PunchRecord getRecord() {
+        return record;
+    }
+}
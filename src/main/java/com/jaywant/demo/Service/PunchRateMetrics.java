@@ -0,0 +1,159 @@
+package com.jaywant.demo.Service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Punch rates per terminal and per subadmin over the last 24 hours, in a ring
+ * of one-minute buckets each: punches, resolution misses (UNRESOLVED or
+ * WRONG_SUBADMIN) and engine processing time. Recording is lock-free (atomic
+ * adds into the current minute's slot), and reading sums the slots, so
+ * /api/multi-device/rates never touches the database.
+ *
+ * A slot is reused after 24 hours: the first punch of a new minute claims it
+ * and clears the old counts. A punch racing that claim may be lost or land in
+ * the new minute, which is fine for rates.
+ *
+ * Serials come from device input, so only terminals known to the
+ * {@link TerminalRegistry} get a ring of their own; punches of any other
+ * serial share the "unknown" ring.
+ */
+@Service
+public class PunchRateMetrics {
+
+    private static final int MINUTES = 24 * 60;
+    private static final String UNKNOWN_TERMINAL = "unknown";
+
+    @Autowired
+    private TerminalRegistry terminalRegistry;
+
+    private final Map<String, RateRing> terminals = new ConcurrentHashMap<>();
+    private final Map<Integer, RateRing> subadmins = new ConcurrentHashMap<>();
+
+    /**
+     * Count one punch. terminalSerial and subadminId may be null.
+     */
+    public void record(String terminalSerial, Integer subadminId, boolean miss, long latencyNanos) {
+        long minute = currentMinute();
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        String terminal = terminalRegistry.isKnown(terminalSerial) ? terminalSerial : UNKNOWN_TERMINAL;
+        terminals.computeIfAbsent(terminal, k -> new RateRing()).add(minute, miss, latencyMicros);
+        if (subadminId != null) {
+            subadmins.computeIfAbsent(subadminId, k -> new RateRing()).add(minute, miss, latencyMicros);
+        }
+    }
+
+    /**
+     * Last-hour and last-24h rates of every terminal and subadmin.
+     */
+    public Map<String, Object> getRates() {
+        long minute = currentMinute();
+        Map<String, Object> byTerminal = new TreeMap<>();
+        terminals.forEach((serial, ring) -> byTerminal.put(serial, ring.describe(minute)));
+        Map<String, Object> bySubadmin = new TreeMap<>();
+        subadmins.forEach((subadminId, ring) -> bySubadmin.put(String.valueOf(subadminId), ring.describe(minute)));
+
+        Map<String, Object> rates = new HashMap<>();
+        rates.put("terminals", byTerminal);
+        rates.put("subadmins", bySubadmin);
+        return rates;
+    }
+
+    /**
+     * Per-minute punches of one terminal, oldest first, for a chart.
+     */
+    public long[] getTerminalSeries(String terminalSerial, int minutes) {
+        RateRing ring = terminals.get(terminalSerial);
+        int length = Math.max(1, Math.min(minutes, MINUTES));
+        long[] series = new long[length];
+        if (ring != null) {
+            long minute = currentMinute();
+            for (int i = 0; i < length; i++) {
+                series[i] = ring.punchesAt(minute - length + 1 + i);
+            }
+        }
+        return series;
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60000;
+    }
+
+    private static class RateRing {
+        // Which minute each slot currently holds
+        final AtomicLongArray slotMinute = new AtomicLongArray(MINUTES);
+        final AtomicLongArray punches = new AtomicLongArray(MINUTES);
+        final AtomicLongArray misses = new AtomicLongArray(MINUTES);
+        final AtomicLongArray latencyMicros = new AtomicLongArray(MINUTES);
+        final AtomicLongArray maxLatencyMicros = new AtomicLongArray(MINUTES);
+        volatile long lastMinute;
+
+        void add(long minute, boolean miss, long latency) {
+            int slot = (int) (minute % MINUTES);
+            long held = slotMinute.get(slot);
+            if (held < minute && slotMinute.compareAndSet(slot, held, minute)) {
+                punches.set(slot, 0);
+                misses.set(slot, 0);
+                latencyMicros.set(slot, 0);
+                maxLatencyMicros.set(slot, 0);
+            }
+            punches.incrementAndGet(slot);
+            if (miss) {
+                misses.incrementAndGet(slot);
+            }
+            latencyMicros.addAndGet(slot, latency);
+            maxLatencyMicros.accumulateAndGet(slot, latency, Math::max);
+            if (minute > lastMinute) {
+                lastMinute = minute;
+            }
+        }
+
+        long punchesAt(long minute) {
+            int slot = (int) (minute % MINUTES);
+            return slotMinute.get(slot) == minute ? punches.get(slot) : 0;
+        }
+
+        Map<String, Object> describe(long now) {
+            Map<String, Object> state = new HashMap<>();
+            state.put("lastHour", window(now, 60));
+            state.put("last24h", window(now, MINUTES));
+            state.put("idleMinutes", lastMinute > 0 ? now - lastMinute : null);
+            return state;
+        }
+
+        private Map<String, Object> window(long now, int minutes) {
+            long totalPunches = 0;
+            long totalMisses = 0;
+            long totalLatency = 0;
+            long maxLatency = 0;
+            long peak = 0;
+            for (long minute = now - minutes + 1; minute <= now; minute++) {
+                int slot = (int) (minute % MINUTES);
+                if (slotMinute.get(slot) != minute) {
+                    continue;
+                }
+                long count = punches.get(slot);
+                totalPunches += count;
+                totalMisses += misses.get(slot);
+                totalLatency += latencyMicros.get(slot);
+                maxLatency = Math.max(maxLatency, maxLatencyMicros.get(slot));
+                peak = Math.max(peak, count);
+            }
+            Map<String, Object> window = new HashMap<>();
+            window.put("punches", totalPunches);
+            window.put("misses", totalMisses);
+            window.put("punchesPerMinute", Math.round(totalPunches * 100.0 / minutes) / 100.0);
+            window.put("peakPerMinute", peak);
+            window.put("avgLatencyMs", totalPunches > 0 ? Math.round(totalLatency / 10.0 / totalPunches) / 100.0 : 0);
+            window.put("maxLatencyMs", Math.round(maxLatency / 10.0) / 100.0);
+            return window;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Attendance;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * A punch that has already been resolved to an HRM employee and is waiting in
+ * the {@link PunchBatchWriter} queue.
+ *
+ * checkIn is null when the source did not report a punch state; the writer
+ * then decides from the attendance it merges into.
+ */
+public class PunchRecord {
+
+    private final EmployeeRef employee;
+    private final LocalDateTime punchTime;
+    private final Boolean checkIn;
+    private final String deviceSerial;
+    private final String biometricUserId;
+    private final String verifyType;
+    private final String rawData;
+    private final String source;
+    private Consumer<Attendance> onWritten;
+    private Runnable onFailed;
+
+    public PunchRecord(EmployeeRef employee, LocalDateTime punchTime, Boolean checkIn, String deviceSerial,
+            String biometricUserId, String verifyType, String rawData, String source) {
+        this.employee = employee;
+        this.punchTime = punchTime;
+        this.checkIn = checkIn;
+        this.deviceSerial = deviceSerial;
+        this.biometricUserId = biometricUserId;
+        this.verifyType = verifyType;
+        this.rawData = rawData;
+        this.source = source;
+    }
+
+    /**
+     * Callback run by the writer thread once the attendance row containing this
+     * punch has been committed.
+     */
+    public PunchRecord onWritten(Consumer<Attendance> onWritten) {
+        this.onWritten = onWritten;
+        return this;
+    }
+
+    /**
+     * Callback run when the writer gave up on this punch, after the batch and
+     * the per-employee/day retry both failed.
+     */
+    public PunchRecord onFailed(Runnable onFailed) {
+        this.onFailed = onFailed;
+        return this;
+    }
+
+    public EmployeeRef getEmployee() {
+        return employee;
+    }
+
+    public LocalDateTime getPunchTime() {
+        return punchTime;
+    }
+
+    public Boolean getCheckIn() {
+        return checkIn;
+    }
+
+    public String getDeviceSerial() {
+        return deviceSerial;
+    }
+
+    public String getBiometricUserId() {
+        return biometricUserId;
+    }
+
+    public String getVerifyType() {
+        return verifyType;
+    }
+
+    public String getRawData() {
+        return rawData;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Consumer<Attendance> getOnWritten() {
+        return onWritten;
+    }
+
+    public Runnable getOnFailed() {
+        return onFailed;
+    }
+
+    @Override
+    public String toString() {
+        return "PunchRecord{" +
+                "employee=" + employee.getEmpId() +
+                ", punchTime=" + punchTime +
+                ", checkIn=" + checkIn +
+                ", deviceSerial='" + deviceSerial + '\'' +
+                ", source='" + source + '\'' +
+                '}';
+    }
+}
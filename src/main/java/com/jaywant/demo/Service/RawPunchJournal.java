@@ -0,0 +1,782 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Repo.AttendanceRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of every distinct punch the {@link PunchEngine}
+ * receives, with its raw device payload, so attendance rows only need to keep a reference
+ * ("journal:segment:offset") instead of the payload itself.
+ *
+ * Records go into memory-mapped segment files of segmentBytes each; a full
+ * segment is closed and a new one started. Each record is
+ * [length][crc32][body] and the length is written last, so a record cut off
+ * by a crash reads as the end of the segment. Every indexInterval records
+ * form a block whose offsets, punch time range and terminals are appended to
+ * the segment's .idx file. Reads by time range and terminal only scan the
+ * blocks that can match; a single reference is resolved with {@link #lookup}.
+ *
+ * Segments are kept forever by default. With a retention set, the payloads
+ * of attendance rows still referencing a segment are written back into
+ * raw_data before the segment is deleted.
+ */
+@Service
+public class RawPunchJournal {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String REFERENCE_PREFIX = "journal:";
+
+    @Value("${biometric.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${biometric.journal.dir:./data/punch-journal}")
+    private String directory;
+
+    @Value("${biometric.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${biometric.journal.index-interval:128}")
+    private int indexInterval;
+
+    // Closed segments older than this are deleted; 0 keeps everything
+    @Value("${biometric.journal.retention-days:0}")
+    private int retentionDays;
+
+    @Autowired(required = false)
+    private AttendanceRepo attendanceRepo;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private Block openBlock;
+    private boolean dirty;
+
+    private long appended;
+    private long appendFailures;
+
+    public RawPunchJournal() {
+    }
+
+    public RawPunchJournal(String directory, int segmentBytes, int indexInterval) {
+        this.enabled = true;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Map the existing segments and find the end of the last one.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> listing = Files.list(dir)) {
+                listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted()
+                        .forEach(files::add);
+            }
+            for (Path file : files) {
+                Segment segment = Segment.open(file);
+                loadIndex(segment);
+                recoverTail(segment);
+                segments.add(segment);
+            }
+            if (segments.isEmpty()) {
+                active = createSegment(1);
+            } else {
+                active = segments.get(segments.size() - 1);
+                // Tail records of the last segment form the open block
+                openBlock = active.tail;
+                active.tail = null;
+            }
+            System.out.println("📓 Punch journal open at " + dir.toAbsolutePath() + ": " + segments.size() +
+                    " segment(s), writing segment " + active.sequence + " at offset " + active.position);
+        } catch (IOException e) {
+            enabled = false;
+            System.err.println("❌ Punch journal disabled, cannot open " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        flush();
+    }
+
+    /**
+     * Append one incoming punch.
+     *
+     * @return reference to the record, or null if the journal is disabled or
+     *         the write failed
+     */
+    public synchronized String append(PunchEvent event) {
+        if (!enabled || active == null) {
+            return null;
+        }
+        try {
+            LocalDateTime punchTime = PunchEngine.parsePunchTime(event.getPunchTime());
+            byte[] body = encode(event, punchTime);
+            if (HEADER_BYTES + body.length > active.capacity()) {
+                appendFailures++;
+                System.err.println("⚠️ Punch too large for the journal: " + event.describe());
+                return null;
+            }
+            if (active.position + HEADER_BYTES + body.length > active.capacity()) {
+                roll();
+            }
+
+            int offset = active.position;
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            active.buffer.put(offset + HEADER_BYTES, body);
+            active.buffer.putInt(offset + 4, (int) crc.getValue());
+            active.buffer.putInt(offset, body.length);
+            active.position = offset + HEADER_BYTES + body.length;
+
+            if (openBlock == null) {
+                openBlock = new Block(offset);
+            }
+            openBlock.add(toMillis(punchTime), event.getDeviceSerial(), active.position);
+            if (openBlock.count >= indexInterval) {
+                closeBlock();
+            }
+            dirty = true;
+            appended++;
+            return REFERENCE_PREFIX + active.sequence + ":" + offset;
+        } catch (Exception e) {
+            appendFailures++;
+            System.err.println("❌ Punch journal append failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Visit the records whose punch time is in [from, to) and, if terminal is
+     * set, that came from that terminal, oldest segment first. Null bounds
+     * are open. The visitor returns false to stop.
+     *
+     * @return number of records visited
+     */
+    public int scan(LocalDateTime from, LocalDateTime to, String terminal, Predicate<JournalRecord> visitor) {
+        long fromMillis = from != null ? toMillis(from) : Long.MIN_VALUE;
+        long toMillis = to != null ? toMillis(to) : Long.MAX_VALUE;
+
+        List<SegmentView> views = new ArrayList<>();
+        synchronized (this) {
+            if (!enabled) {
+                return 0;
+            }
+            for (Segment segment : segments) {
+                List<Block> blocks = new ArrayList<>(segment.blocks);
+                if (segment == active && openBlock != null) {
+                    blocks.add(openBlock.copy());
+                }
+                views.add(new SegmentView(segment.sequence, segment.buffer.duplicate(), blocks));
+            }
+        }
+
+        int visited = 0;
+        for (SegmentView view : views) {
+            for (Block block : view.blocks) {
+                boolean timeMatch = from == null && to == null
+                        || block.maxTime >= fromMillis && block.minTime < toMillis;
+                if (!timeMatch || terminal != null && !block.terminals.contains(terminal)) {
+                    continue;
+                }
+                int offset = block.startOffset;
+                while (offset < block.endOffset) {
+                    int length = view.buffer.getInt(offset);
+                    JournalRecord record = decode(view.buffer, offset + HEADER_BYTES, length,
+                            REFERENCE_PREFIX + view.sequence + ":" + offset);
+                    offset += HEADER_BYTES + length;
+
+                    long time = record.punchTime != null ? toMillis(record.punchTime) : NO_TIME;
+                    if (from != null || to != null) {
+                        if (time == NO_TIME || time < fromMillis || time >= toMillis) {
+                            continue;
+                        }
+                    }
+                    if (terminal != null && !terminal.equals(record.terminal)) {
+                        continue;
+                    }
+                    visited++;
+                    if (!visitor.test(record)) {
+                        return visited;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    public List<JournalRecord> read(LocalDateTime from, LocalDateTime to, String terminal, int limit) {
+        List<JournalRecord> records = new ArrayList<>();
+        scan(from, to, terminal, record -> {
+            records.add(record);
+            return records.size() < limit;
+        });
+        return records;
+    }
+
+    /**
+     * The record a reference returned by {@link #append} points at, or null if
+     * the reference is malformed or its segment is gone.
+     */
+    public JournalRecord lookup(String reference) {
+        if (reference == null || !reference.startsWith(REFERENCE_PREFIX)) {
+            return null;
+        }
+        String[] parts = reference.split(":");
+        if (parts.length != 3) {
+            return null;
+        }
+        long sequence;
+        int offset;
+        try {
+            sequence = Long.parseLong(parts[1]);
+            offset = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        ByteBuffer buffer = null;
+        int end = 0;
+        synchronized (this) {
+            if (!enabled) {
+                return null;
+            }
+            for (Segment segment : segments) {
+                if (segment.sequence == sequence) {
+                    buffer = segment.buffer.duplicate();
+                    end = segment.position;
+                    break;
+                }
+            }
+        }
+        if (buffer == null || offset < 0 || offset + HEADER_BYTES > end) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > end) {
+            return null;
+        }
+        // An offset that is not a record start fails the checksum
+        byte[] body = new byte[length];
+        buffer.get(offset + HEADER_BYTES, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return decode(buffer, offset + HEADER_BYTES, length, REFERENCE_PREFIX + sequence + ":" + offset);
+    }
+
+    /**
+     * Push written records to disk. The OS writes mapped pages back on its
+     * own; this bounds what a power loss can take.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void flush() {
+        if (enabled && dirty && active != null) {
+            active.buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Delete closed segments older than the retention. Closed segments do not
+     * change, so their payloads are written back into attendance outside the
+     * lock and appends carry on meanwhile.
+     */
+    @Scheduled(cron = "0 20 3 * * *")
+    public void purgeExpired() {
+        if (!enabled || retentionDays <= 0) {
+            return;
+        }
+        Instant cutoff = Instant.now().minusSeconds(retentionDays * 86400L);
+        while (true) {
+            Segment oldest;
+            synchronized (this) {
+                if (segments.size() <= 1) {
+                    return;
+                }
+                oldest = segments.get(0);
+            }
+            try {
+                if (Files.getLastModifiedTime(oldest.path).toInstant().isAfter(cutoff)
+                        || !inlineReferences(oldest)) {
+                    break;
+                }
+                synchronized (this) {
+                    segments.remove(oldest);
+                    oldest.channel.close();
+                }
+                Files.deleteIfExists(oldest.path);
+                Files.deleteIfExists(oldest.indexPath);
+                System.out.println("🧹 Deleted punch journal segment " + oldest.sequence);
+            } catch (IOException e) {
+                System.err.println("❌ Failed to delete punch journal segment " + oldest.sequence + ": " +
+                        e.getMessage());
+                break;
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("directory", directory);
+        stats.put("segments", segments.size());
+        stats.put("appended", appended);
+        stats.put("appendFailures", appendFailures);
+        if (active != null) {
+            int blocks = 0;
+            for (Segment segment : segments) {
+                blocks += segment.blocks.size();
+            }
+            stats.put("indexedBlocks", blocks);
+            stats.put("activeSegment", active.sequence);
+            stats.put("activeSegmentBytes", active.position);
+            stats.put("segmentCapacity", active.capacity());
+        }
+        return stats;
+    }
+
+    /**
+     * Replace the references attendance rows hold into a segment with the
+     * payloads they point at.
+     *
+     * @return false if the segment must be kept
+     */
+    private boolean inlineReferences(Segment segment) {
+        if (attendanceRepo == null) {
+            return false;
+        }
+        try {
+            int inlined = 0;
+            for (Object[] row : attendanceRepo.findRawDataReferences(REFERENCE_PREFIX + segment.sequence + ":")) {
+                String reference = (String) row[1];
+                JournalRecord record = lookup(reference);
+                if (record != null) {
+                    inlined += attendanceRepo.replaceRawData((Long) row[0], reference, record.getPayload());
+                }
+            }
+            System.out.println("📓 Wrote " + inlined + " payload(s) of punch journal segment " + segment.sequence +
+                    " back into attendance");
+            return true;
+        } catch (Exception e) {
+            System.err.println("❌ Keeping punch journal segment " + segment.sequence +
+                    ", payloads not written back: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void roll() throws IOException {
+        closeBlock();
+        active.buffer.force();
+        active = createSegment(active.sequence + 1);
+        System.out.println("📓 Punch journal rolled to segment " + active.sequence);
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        Path path = Paths.get(directory, String.format("punch-%012d%s", sequence, SEGMENT_SUFFIX));
+        Segment segment = Segment.create(path, sequence, segmentBytes);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void closeBlock() throws IOException {
+        if (openBlock == null) {
+            return;
+        }
+        writeIndexEntry(active, openBlock);
+        active.blocks.add(openBlock);
+        openBlock = null;
+    }
+
+    private static void writeIndexEntry(Segment segment, Block block) throws IOException {
+        try (OutputStream file = Files.newOutputStream(segment.indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+                DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(block.startOffset);
+            out.writeInt(block.endOffset);
+            out.writeInt(block.count);
+            out.writeLong(block.minTime);
+            out.writeLong(block.maxTime);
+            out.writeInt(block.terminals.size());
+            for (String terminal : block.terminals) {
+                out.writeUTF(terminal);
+            }
+        }
+    }
+
+    private static void loadIndex(Segment segment) throws IOException {
+        if (!Files.exists(segment.indexPath)) {
+            return;
+        }
+        try (InputStream file = Files.newInputStream(segment.indexPath);
+                DataInputStream in = new DataInputStream(file)) {
+            while (true) {
+                Block block;
+                try {
+                    block = new Block(in.readInt());
+                    block.endOffset = in.readInt();
+                    block.count = in.readInt();
+                    block.minTime = in.readLong();
+                    block.maxTime = in.readLong();
+                    int terminals = in.readInt();
+                    for (int i = 0; i < terminals; i++) {
+                        block.terminals.add(in.readUTF());
+                    }
+                } catch (EOFException e) {
+                    // Also drops an entry cut off by a crash; its records are rescanned
+                    break;
+                }
+                segment.blocks.add(block);
+            }
+        }
+    }
+
+    /**
+     * Walk the records after the last indexed block to find where the segment
+     * ends. In a closed segment they are indexed as one more block; in the
+     * last segment they become the open block.
+     */
+    private void recoverTail(Segment segment) throws IOException {
+        int offset = segment.blocks.isEmpty() ? 0 : segment.blocks.get(segment.blocks.size() - 1).endOffset;
+        Block tail = null;
+        ByteBuffer buffer = segment.buffer;
+        while (offset + HEADER_BYTES <= segment.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > segment.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(offset + HEADER_BYTES, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            JournalRecord record = decode(buffer, offset + HEADER_BYTES, length, null);
+            if (tail == null) {
+                tail = new Block(offset);
+            }
+            offset += HEADER_BYTES + length;
+            tail.add(record.punchTime != null ? toMillis(record.punchTime) : NO_TIME, record.terminal, offset);
+        }
+        segment.position = offset;
+        segment.tail = tail;
+
+        if (tail != null && !segment.path.equals(lastSegmentPath())) {
+            writeIndexEntry(segment, tail);
+            segment.blocks.add(tail);
+            segment.tail = null;
+        }
+    }
+
+    private Path lastSegmentPath() throws IOException {
+        try (Stream<Path> listing = Files.list(Paths.get(directory))) {
+            return listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .max(Path::compareTo).orElse(null);
+        }
+    }
+
+    private static byte[] encode(PunchEvent event, LocalDateTime punchTime) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(punchTime != null ? toMillis(punchTime) : NO_TIME);
+        out.writeByte(event.getCheckIn() == null ? -1 : event.getCheckIn() ? 1 : 0);
+        out.writeInt(event.getSubadminId() != null ? event.getSubadminId() : NULL_INT);
+        out.writeInt(event.getDeviceUserId() != null ? event.getDeviceUserId() : NULL_INT);
+        out.writeInt(event.getMachineEmpId() != null ? event.getMachineEmpId() : NULL_INT);
+        writeString(out, event.getSource());
+        writeString(out, event.getDeviceSerial());
+        writeString(out, event.getEmpCode());
+        writeString(out, event.getDedupKey());
+        writeString(out, event.getVerifyType());
+        writeString(out, event.getPunchTime() != null ? event.getPunchTime().toString() : null);
+        writeString(out, event.getRawData());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static JournalRecord decode(ByteBuffer buffer, int offset, int length, String reference) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset).limit(offset + length);
+        JournalRecord record = new JournalRecord();
+        record.reference = reference;
+        record.receivedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZoneId.systemDefault());
+        long punchMillis = body.getLong();
+        record.punchTime = punchMillis != NO_TIME ? fromMillis(punchMillis) : null;
+        byte checkIn = body.get();
+        record.checkIn = checkIn < 0 ? null : checkIn == 1;
+        record.subadminId = readInt(body);
+        record.deviceUserId = readInt(body);
+        record.machineEmpId = readInt(body);
+        record.source = readString(body);
+        record.terminal = readString(body);
+        record.empCode = readString(body);
+        record.dedupKey = readString(body);
+        record.verifyType = readString(body);
+        record.punchTimeText = readString(body);
+        record.payload = readString(body);
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Integer readInt(ByteBuffer body) {
+        int value = body.getInt();
+        return value == NULL_INT ? null : value;
+    }
+
+    // Punch times are wall-clock device times, stored without a zone
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    /**
+     * One journaled punch.
+     */
+    public static class JournalRecord {
+        private String reference;
+        private LocalDateTime receivedAt;
+        private LocalDateTime punchTime;
+        private String punchTimeText;
+        private Boolean checkIn;
+        private Integer subadminId;
+        private Integer deviceUserId;
+        private Integer machineEmpId;
+        private String source;
+        private String terminal;
+        private String empCode;
+        private String dedupKey;
+        private String verifyType;
+        private String payload;
+
+        /**
+         * The punch as an event for the engine, marked as a replay. It keeps
+         * its journal reference, so it is not journaled a second time.
+         */
+        public PunchEvent toEvent() {
+            return new PunchEvent(source)
+                    .dedupKey(dedupKey)
+                    .punchTime(punchTime != null ? punchTime : punchTimeText)
+                    .checkIn(checkIn)
+                    .deviceSerial(terminal)
+                    .subadminId(subadminId)
+                    .deviceUserId(deviceUserId)
+                    .empCode(empCode)
+                    .machineEmpId(machineEmpId)
+                    .verifyType(verifyType)
+                    .rawData(payload)
+                    .replay(true)
+                    .journalRef(reference);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("reference", reference);
+            map.put("receivedAt", receivedAt != null ? receivedAt.toString() : null);
+            map.put("punchTime", punchTime != null ? punchTime.toString() : punchTimeText);
+            map.put("checkIn", checkIn);
+            map.put("source", source);
+            map.put("terminal", terminal);
+            map.put("empCode", empCode);
+            map.put("machineEmpId", machineEmpId);
+            map.put("deviceUserId", deviceUserId);
+            map.put("subadminId", subadminId);
+            map.put("dedupKey", dedupKey);
+            map.put("verifyType", verifyType);
+            map.put("payload", payload);
+            return map;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public LocalDateTime getReceivedAt() {
+            return receivedAt;
+        }
+
+        public LocalDateTime getPunchTime() {
+            return punchTime;
+        }
+
+        public Boolean getCheckIn() {
+            return checkIn;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTerminal() {
+            return terminal;
+        }
+
+        public String getEmpCode() {
+            return empCode;
+        }
+
+        public String getDedupKey() {
+            return dedupKey;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        final long sequence;
+        final Path path;
+        final Path indexPath;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final List<Block> blocks = new ArrayList<>();
+        int position;
+        Block tail;
+
+        private Segment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.indexPath = Paths.get(path.toString().replace(SEGMENT_SUFFIX, INDEX_SUFFIX));
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, long sequence, int bytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(sequence, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+        }
+
+        static Segment open(Path path) throws IOException {
+            String name = path.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - SEGMENT_SUFFIX.length()));
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(sequence, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+    }
+
+    // Sparse index entry: a run of records with their punch time range and terminals
+    private static class Block {
+        final int startOffset;
+        int endOffset;
+        int count;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        final Set<String> terminals = new LinkedHashSet<>();
+
+        Block(int startOffset) {
+            this.startOffset = startOffset;
+            this.endOffset = startOffset;
+        }
+
+        void add(long time, String terminal, int endOffset) {
+            if (time != NO_TIME) {
+                minTime = Math.min(minTime, time);
+                maxTime = Math.max(maxTime, time);
+            }
+            if (terminal != null) {
+                terminals.add(terminal);
+            }
+            this.endOffset = endOffset;
+            count++;
+        }
+
+        Block copy() {
+            Block copy = new Block(startOffset);
+            copy.endOffset = endOffset;
+            copy.count = count;
+            copy.minTime = minTime;
+            copy.maxTime = maxTime;
+            copy.terminals.addAll(terminals);
+            return copy;
+        }
+    }
+
+    private static class SegmentView {
+        final long sequence;
+        final ByteBuffer buffer;
+        final List<Block> blocks;
+
+        SegmentView(long sequence, ByteBuffer buffer, List<Block> blocks) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.blocks = blocks;
+        }
+    }
+}
@@ -1,24 +1,19 @@
 package com.jaywant.demo.Service;
 
 import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Entity.EmployeeDeviceMapping;
 import com.jaywant.demo.Entity.SubadminTerminal;
-import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
 import com.jaywant.demo.Repo.SubadminTerminalRepo;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class RealTimeAttendanceSyncService {
@@ -27,170 +22,158 @@ public class RealTimeAttendanceSyncService {
     private EasyTimeProApiService easyTimeProApiService;
 
     @Autowired
-    private EmployeeDeviceMappingRepo mappingRepo;
+    private SubadminTerminalRepo terminalRepo;
 
     @Autowired
-    private SubadminTerminalRepo terminalRepo;
+    private SimpMessagingTemplate messagingTemplate;
+
+    // Starting interval of each terminal's poller
+    @Value("${easytime.sync.interval:30000}")
+    private long syncInterval;
+
+    @Value("${easytime.fetch.page-size:500}")
+    private int pageSize;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
+    private ProcessedTransactionDedup processedTransactionIds;
 
     @Autowired
-    private AttendanceRepo attendanceRepo;
+    private PunchEngine punchEngine;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private AdaptiveSyncScheduler syncScheduler;
 
-    @Value("${easytime.sync.interval:30000}")
-    private long syncInterval;
+    @Autowired
+    private EasyTimeTokenCache tokenCache;
+
+    @Autowired
+    private EasyTimeFetchService fetchService;
 
-    private Set<String> processedTransactionIds = new HashSet<>();
+    private static final String POLL_PREFIX = "easytime-api:";
 
     /**
-     * Real-time sync of attendance data from EasyTimePro
-     * Runs every 30 seconds by default
+     * Keep one adaptive poller per active terminal. Each starts at
+     * easytime.sync.interval and is tuned from there by the scheduler.
      */
-    @Scheduled(fixedRateString = "${easytime.sync.interval:30000}")
-    public void syncAttendanceData() {
+    @Scheduled(fixedDelay = 60000, initialDelay = 10000)
+    public void refreshPollers() {
         try {
-            System.out.println("Starting real-time attendance sync...");
-
-            List<SubadminTerminal> activeTerminals = terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE);
-
-            for (SubadminTerminal terminal : activeTerminals) {
-                syncTerminalAttendance(terminal);
+            Set<String> keys = new HashSet<>();
+            for (SubadminTerminal terminal : terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE)) {
+                String serial = terminal.getTerminalSerial();
+                String key = POLL_PREFIX + serial;
+                keys.add(key);
+                syncScheduler.register(key, syncInterval, () -> pollTerminal(serial));
             }
-
+            syncScheduler.retain(POLL_PREFIX, keys);
         } catch (Exception e) {
-            System.err.println("Error in real-time attendance sync: " + e.getMessage());
+            System.err.println("Error refreshing attendance pollers: " + e.getMessage());
         }
     }
 
-    /**
-     * Sync attendance data for a specific terminal
-     */
-    private void syncTerminalAttendance(SubadminTerminal terminal) {
+    private AdaptiveSyncScheduler.PollResult pollTerminal(String terminalSerial) {
+        Optional<SubadminTerminal> terminal = terminalRepo.findByTerminalSerial(terminalSerial);
+        if (terminal.isEmpty() || terminal.get().getStatus() != SubadminTerminal.TerminalStatus.ACTIVE) {
+            // Dropped on the next refresh
+            return AdaptiveSyncScheduler.PollResult.idle();
+        }
         try {
-            String apiUrl = terminal.getEasytimeApiUrl();
-            String token = terminal.getApiToken();
-
-            // Get token if not available
-            if (token == null || token.isEmpty()) {
-                token = easyTimeProApiService.authenticateAndGetToken(
-                        apiUrl, "admin", "123456");
-                if (token != null) {
-                    terminal.setApiToken(token);
-                    terminalRepo.save(terminal);
-                }
-            }
-
-            if (token == null) {
-                System.err.println("Failed to get token for terminal: " + terminal.getTerminalSerial());
-                return;
-            }
-
-            // Get recent transactions (last 1 hour)
-            String fromDate = LocalDateTime.now().minusHours(1).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            String toDate = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-
-            List<Map<String, Object>> transactions = easyTimeProApiService.getAttendanceTransactions(
-                    apiUrl, token, fromDate, toDate);
-
-            System.out.println(
-                    "Found " + transactions.size() + " transactions for terminal: " + terminal.getTerminalSerial());
-
-            for (Map<String, Object> transaction : transactions) {
-                processTransaction(transaction, terminal);
-            }
-
-        } catch (Exception e) {
-            System.err.println("Error syncing terminal " + terminal.getTerminalSerial() + ": " + e.getMessage());
+            return AdaptiveSyncScheduler.PollResult.of(syncTerminalAttendance(terminal.get()), false);
+        } catch (EasyTimeFetchService.CircuitOpenException e) {
+            // Server known to be down; skipped without a request
+            return AdaptiveSyncScheduler.PollResult.idle();
         }
     }
 
     /**
-     * Process individual attendance transaction
+     * Sync attendance data from EasyTimePro for all active terminals once.
+     * The terminals are read concurrently, so a server that is down does not
+     * delay every terminal after it.
      */
-    private void processTransaction(Map<String, Object> transaction, SubadminTerminal terminal) {
+    public void syncAttendanceData() {
         try {
-            // Extract transaction data
-            String transactionId = String.valueOf(transaction.get("id"));
-            Integer easytimeEmployeeId = (Integer) transaction.get("employee_id");
-            String punchTimeStr = (String) transaction.get("punch_time");
-            Integer punchState = (Integer) transaction.get("punch_state"); // 0=in, 1=out
-
-            // Skip if already processed
-            if (processedTransactionIds.contains(transactionId)) {
-                return;
-            }
-
-            // Find employee mapping
-            Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo
-                    .findByEasytimeEmployeeIdAndTerminalSerial(easytimeEmployeeId, terminal.getTerminalSerial());
-
-            if (mappingOpt.isEmpty()) {
-                System.out.println("No mapping found for EasyTime employee " + easytimeEmployeeId +
-                        " on terminal " + terminal.getTerminalSerial());
-                return;
-            }
-
-            EmployeeDeviceMapping mapping = mappingOpt.get();
-            Employee employee = employeeRepo.findById(mapping.getHrmEmployeeId()).orElse(null);
-
-            if (employee == null) {
-                System.err.println("Employee not found: " + mapping.getHrmEmployeeId());
-                return;
-            }
-
-            // Parse punch time
-            LocalDateTime punchDateTime = LocalDateTime.parse(punchTimeStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
+            System.out.println("Starting real-time attendance sync...");
 
-            // Find or create attendance record
-            Optional<Attendance> existingAttendance = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
+            List<SubadminTerminal> activeTerminals = terminalRepo.findByStatus(SubadminTerminal.TerminalStatus.ACTIVE);
 
-            Attendance attendance;
-            if (existingAttendance.isPresent()) {
-                attendance = existingAttendance.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
+            Map<SubadminTerminal, CompletableFuture<Integer>> syncs = new LinkedHashMap<>();
+            for (SubadminTerminal terminal : activeTerminals) {
+                syncs.put(terminal, startTerminalSync(terminal));
             }
-
-            // Set punch time based on punch state
-            String punchType;
-            if (punchState == 0) { // Check in
-                attendance.setPunchInTime(punchTime);
-                punchType = "check_in";
-            } else { // Check out
-                attendance.setPunchOutTime(punchTime);
-                punchType = "check_out";
+            for (Map.Entry<SubadminTerminal, CompletableFuture<Integer>> sync : syncs.entrySet()) {
+                try {
+                    EasyTimeFetchService.await(sync.getKey(), sync.getValue());
+                } catch (Exception e) {
+                    System.err.println("Error syncing terminal " + sync.getKey().getTerminalSerial() + ": " +
+                            e.getMessage());
+                }
             }
 
-            // Calculate durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            Attendance savedAttendance = attendanceRepo.save(attendance);
+        } catch (Exception e) {
+            System.err.println("Error in real-time attendance sync: " + e.getMessage());
+        }
+    }
 
-            // Mark transaction as processed
-            processedTransactionIds.add(transactionId);
+    /**
+     * Sync the last hour of a terminal's transactions. Returns how many were
+     * new, i.e. queued rather than dropped as already processed.
+     */
+    private int syncTerminalAttendance(SubadminTerminal terminal) {
+        return EasyTimeFetchService.await(terminal, startTerminalSync(terminal));
+    }
 
-            // Send real-time notification
-            broadcastAttendanceUpdate(employee.getSubadmin().getId(), savedAttendance, punchType);
+    /**
+     * Stream the last hour of a terminal's transactions into the punch engine
+     * a page at a time.
+     */
+    private CompletableFuture<Integer> startTerminalSync(SubadminTerminal terminal) {
+        LocalDateTime now = LocalDateTime.now();
+        AtomicInteger queued = new AtomicInteger();
+        return fetchService.streamTransactions(terminal,
+                now.minusHours(1).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), pageSize, page -> {
+                    for (EasyTimeTransaction transaction : page) {
+                        if (processTransaction(transaction, terminal)) {
+                            queued.incrementAndGet();
+                        }
+                    }
+                })
+                .thenApply(read -> {
+                    if (queued.get() > 0) {
+                        System.out.println("Queued " + queued.get() + " of " + read + " transactions for terminal: "
+                                + terminal.getTerminalSerial());
+                    }
+                    return queued.get();
+                });
+    }
 
-            System.out.println("Processed " + punchType + " for " + employee.getFullName() +
-                    " at " + punchTime + " (Transaction: " + transactionId + ")");
+    /**
+     * Punch event for one EasyTime API transaction of a terminal
+     */
+    public static PunchEvent easytimeEvent(EasyTimeTransaction transaction, SubadminTerminal terminal) {
+        // 0=in, anything else=out
+        Integer punchState = transaction.getPunchState();
+        return new PunchEvent("EASYTIME_API")
+                .dedupKey(String.valueOf(transaction.getId()))
+                .punchTime(transaction.getPunchTime())
+                .checkIn(punchState != null && punchState == 0)
+                .deviceSerial(terminal.getTerminalSerial())
+                .subadminId(terminal.getSubadminId())
+                .deviceUserId(transaction.getEmployeeId())
+                .rawData(transaction.toString());
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error processing transaction: " + e.getMessage());
-        }
+    /**
+     * Hand one EasyTime API transaction to the punch engine
+     */
+    private boolean processTransaction(EasyTimeTransaction transaction, SubadminTerminal terminal) {
+        PunchEvent event = easytimeEvent(transaction, terminal);
+        String punchType = Boolean.TRUE.equals(event.getCheckIn()) ? "check_in" : "check_out";
+        Integer subadminId = terminal.getSubadminId();
+
+        return punchEngine.process(event
+                .onWritten((record, attendance) -> broadcastAttendanceUpdate(subadminId, attendance, punchType)))
+                .isQueued();
     }
 
     /**
@@ -255,9 +238,13 @@ public class RealTimeAttendanceSyncService {
 
                 // Test connection
                 boolean connected = false;
-                if (terminal.getApiToken() != null) {
-                    connected = easyTimeProApiService.testConnection(
-                            terminal.getEasytimeApiUrl(), terminal.getApiToken());
+                if (terminal.getApiToken() != null && !fetchService.isOpen(terminal.getEasytimeApiUrl())) {
+                    try {
+                        connected = easyTimeProApiService.testConnection(
+                                terminal.getEasytimeApiUrl(), tokenCache.getToken(terminal));
+                    } catch (Exception e) {
+                        connected = false;
+                    }
                 }
                 status.put("connected", connected);
 
@@ -267,6 +254,10 @@ public class RealTimeAttendanceSyncService {
             Map<String, Object> syncStatus = new HashMap<>();
             syncStatus.put("terminals", terminalStatus);
             syncStatus.put("syncInterval", syncInterval);
+            syncStatus.put("pollIntervals", syncScheduler.getIntervals(POLL_PREFIX));
+            syncStatus.put("httpPool", easyTimeProApiService.getPoolStats());
+            syncStatus.put("tokens", tokenCache.getStats());
+            syncStatus.put("circuitBreakers", fetchService.getBreakerStates());
             syncStatus.put("processedTransactions", processedTransactionIds.size());
             syncStatus.put("lastSyncTime", LocalDateTime.now().toString());
 
@@ -1,14 +1,17 @@
 package com.jaywant.demo.Service;
 
 import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
+import com.jaywant.demo.Entity.SyncCursor;
+import com.jaywant.demo.Exception.PunchQueueFullException;
 import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
+import com.jaywant.demo.Repo.SyncCursorRepo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -24,285 +27,337 @@ public class SimpleRealtimeBiometricService {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
+    private AttendanceRepo attendanceRepo;
 
     @Autowired
-    private AttendanceRepo attendanceRepo;
+    private PunchEngine punchEngine;
 
-    // Track processed transactions to avoid duplicates
-    private final Set<Integer> processedTransactionIds = ConcurrentHashMap.newKeySet();
+    @Autowired
+    private SyncCursorRepo syncCursorRepo;
 
-    // Last sync time
-    private LocalDateTime lastSyncTime = LocalDateTime.now().minusHours(1);
+    @Autowired
+    private AdaptiveSyncScheduler syncScheduler;
 
-    // Minimum interval between punches (in minutes)
-    private static final int MINIMUM_PUNCH_INTERVAL_MINUTES = 2;
+    // Source databases holding iclock_transaction, each with its own cursor
+    @Value("${biometric.realtime.source-databases:easywdms}")
+    private String sourceDatabases;
 
-    /**
-     * Real-time sync every 15 seconds
-     */
-    @Scheduled(fixedRate = 15000) // 15 seconds
-    public void performRealtimeSync() {
-        try {
-            System.out.println("🔄 [" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"))
-                    + "] Simple real-time sync starting...");
+    @Value("${biometric.realtime.page-size:500}")
+    private int pageSize;
 
-            // Get new transactions since last sync (from ALL devices)
-            String sql = """
-                    SELECT
-                        id, emp_code, emp_id, punch_time, punch_state, verify_type,
-                        terminal_sn, terminal_alias, source
-                    FROM easywdms.iclock_transaction
-                    WHERE punch_time > ?
-                    ORDER BY punch_time ASC
-                    LIMIT 50
-                    """;
+    // Safety cap so one poll cannot run forever on a huge backlog
+    @Value("${biometric.realtime.max-pages-per-tick:200}")
+    private int maxPagesPerTick;
 
-            List<Map<String, Object>> newTransactions = jdbcTemplate.queryForList(sql, lastSyncTime);
+    // Initial position for a source without a cursor
+    @Value("${biometric.realtime.initial-lookback-hours:1}")
+    private int initialLookbackHours;
 
-            if (newTransactions.isEmpty()) {
-                System.out.println("📭 No new transactions found");
-                return;
-            }
+    // How long ids skipped by the cursor are looked up again (late commits)
+    @Value("${biometric.realtime.gap-grace-ms:60000}")
+    private long gapGraceMillis;
 
-            int processedCount = 0;
-            LocalDateTime latestPunchTime = lastSyncTime;
-
-            for (Map<String, Object> transaction : newTransactions) {
-                try {
-                    Integer transactionId = (Integer) transaction.get("id");
+    private static final String CURSOR_PREFIX = "iclock:";
 
-                    // Skip if already processed
-                    if (processedTransactionIds.contains(transactionId)) {
-                        continue;
-                    }
+    private static final String ICLOCK_COLUMNS =
+            "id, emp_code, emp_id, punch_time, punch_state, verify_type, terminal_sn, terminal_alias, source";
 
-                    if (processTransaction(transaction)) {
-                        processedCount++;
-                        processedTransactionIds.add(transactionId);
+    // Minimum interval between punches (in minutes)
+    private static final int MINIMUM_PUNCH_INTERVAL_MINUTES = 2;
 
-                        // Update latest punch time
-                        Object punchTimeObj = transaction.get("punch_time");
-                        LocalDateTime punchTime = parseDateTime(punchTimeObj);
-                        if (punchTime != null && punchTime.isAfter(latestPunchTime)) {
-                            latestPunchTime = punchTime;
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err
-                            .println("❌ Error processing transaction " + transaction.get("id") + ": " + e.getMessage());
-                }
-            }
+    // Read position per database; the persisted cursor waits for the writer
+    private final Map<String, Long> lastIds = new ConcurrentHashMap<>();
+    private final Map<String, Long> savedIds = new ConcurrentHashMap<>();
+    private final Map<String, WriteWatermark> watermarks = new ConcurrentHashMap<>();
+    private final Map<String, CursorGaps> cursorGaps = new ConcurrentHashMap<>();
+    private final Map<String, Long> pendingAfterTick = new ConcurrentHashMap<>();
 
-            // Update last sync time
-            lastSyncTime = latestPunchTime;
+    // Databases fed by IclockOutboxConsumer, and those this poller has caught up on
+    private final Set<String> changeCaptureDatabases = ConcurrentHashMap.newKeySet();
+    private final Set<String> handedOffDatabases = ConcurrentHashMap.newKeySet();
+    private volatile LocalDateTime lastSyncTime;
+    private volatile long totalProcessed = 0;
 
-            if (processedCount > 0) {
-                System.out.println("✅ Processed " + processedCount + " new transactions");
-            }
+    /**
+     * Poll each source database on the adaptive scheduler, starting at the
+     * old 15 second rate. Databases in change-capture mode are left to the
+     * outbox consumer once this poller has caught up with them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void schedulePolling() {
+        for (String database : sourceDatabases()) {
+            syncScheduler.register(CURSOR_PREFIX + database, 15000, () -> pollDatabase(database));
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error in real-time sync: " + e.getMessage());
+    private synchronized AdaptiveSyncScheduler.PollResult pollDatabase(String database) {
+        if (handedOffDatabases.contains(database)) {
+            return AdaptiveSyncScheduler.PollResult.idle();
         }
+        AdaptiveSyncScheduler.PollResult result = syncDatabase(database);
+        lastSyncTime = LocalDateTime.now();
+        return result;
     }
 
     /**
-     * Process individual transaction
+     * Sync every source database once. Reads iclock_transaction by id from a
+     * persisted cursor and keeps paging until it has caught up.
      */
-    @Transactional
-    private boolean processTransaction(Map<String, Object> transaction) {
-        try {
-            String empCode = (String) transaction.get("emp_code");
-            String machineEmpIdStr = (String) transaction.get("emp_id");
-            Object punchTimeObj = transaction.get("punch_time");
-            String punchStateStr = (String) transaction.get("punch_state");
-            String terminalSn = (String) transaction.get("terminal_sn");
-
-            // Parse data
-            LocalDateTime punchDateTime = parseDateTime(punchTimeObj);
-            if (punchDateTime == null) {
-                return false;
+    public synchronized void performRealtimeSync() {
+        for (String database : sourceDatabases()) {
+            if (handedOffDatabases.contains(database)) {
+                continue;
             }
-
-            Integer punchState = safeParseInteger(punchStateStr);
-
-            // Find employee
-            Employee employee = findEmployee(empCode, machineEmpIdStr);
-            if (employee == null) {
-                System.out.println("⚠️ Employee not found for emp_code: " + empCode);
-                return false;
+            try {
+                syncDatabase(database);
+            } catch (Exception e) {
+                System.err.println("❌ Error in real-time sync for " + database + ": " + e.getMessage());
             }
+        }
+        lastSyncTime = LocalDateTime.now();
+    }
 
-            // Create or update attendance
-            boolean success = createOrUpdateAttendance(employee, punchDateTime, punchState, transaction);
-
-            if (success) {
-                String punchType = (punchState != null && punchState == 0) ? "IN" : "OUT";
-                String deviceInfo = terminalSn != null ? " [Device: " + terminalSn + "]" : "";
-                System.out.println("🔄 " + employee.getFullName() + " - " +
-                        punchDateTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")) +
-                        " - " + punchType + deviceInfo + " (Processing...)");
+    private List<String> sourceDatabases() {
+        List<String> databases = new ArrayList<>();
+        for (String database : sourceDatabases.split(",")) {
+            database = database.trim();
+            if (database.isEmpty()) {
+                continue;
             }
-
-            return success;
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing transaction: " + e.getMessage());
-            return false;
+            if (!database.matches("[A-Za-z0-9_]+")) {
+                System.err.println("❌ Invalid source database name: " + database);
+                continue;
+            }
+            databases.add(database);
         }
+        return databases;
     }
 
     /**
-     * Find employee using simple strategies
+     * One pass over a database. The result counts the rows read, which is the
+     * arrival rate the scheduler tunes on, and has a backlog when the pass
+     * stopped before catching up.
+     *
+     * The persisted cursor stops before the first row that is queued but not
+     * yet written, and a failed write moves the read position back to it.
+     * Ids the cursor stepped over are looked up again first, for rows that
+     * committed after a higher id was read, and the persisted cursor stays
+     * before them until they show up or their grace time is over.
      */
-    private Employee findEmployee(String empCode, String machineEmpIdStr) {
-        try {
-            // Strategy 1: Direct emp_code lookup
-            if (empCode != null) {
+    private AdaptiveSyncScheduler.PollResult syncDatabase(String database) {
+        String sourceName = CURSOR_PREFIX + database;
+        WriteWatermark watermark = watermarks.computeIfAbsent(database, k -> new WriteWatermark());
+        CursorGaps gaps = cursorGaps.computeIfAbsent(database, k -> new CursorGaps(gapGraceMillis));
+        long lastId = loadCursor(sourceName, database);
+        Long rewind = watermark.takeRewind();
+        if (rewind != null && rewind - 1 < lastId) {
+            System.err.println("↩️ Write failed for " + database + " id " + rewind + ", reading again from there");
+            lastId = rewind - 1;
+        }
+        long startId = lastId;
+
+        // Keyset pagination: id > cursor, no OFFSET, no timestamp ties
+        String sql = """
+                SELECT %s
+                FROM %s.iclock_transaction
+                WHERE id > ?
+                ORDER BY id ASC
+                LIMIT ?
+                """.formatted(ICLOCK_COLUMNS, database);
+
+        int processedCount = fillGaps(database, gaps, watermark);
+        int rowsRead = processedCount;
+        int pages = 0;
+        boolean caughtUp = false;
+
+        while (pages < maxPagesPerTick) {
+            List<Map<String, Object>> page = jdbcTemplate.queryForList(sql, lastId, pageSize);
+            pages++;
+
+            boolean stalled = false;
+            for (Map<String, Object> transaction : page) {
+                long transactionId = ((Number) transaction.get("id")).longValue();
                 try {
-                    Integer empId = Integer.parseInt(empCode);
-                    Optional<Employee> empOpt = employeeRepo.findById(empId);
-                    if (empOpt.isPresent()) {
-                        return empOpt.get();
+                    if (processIclockRow(database, transaction, false, watermark, transactionId)) {
+                        processedCount++;
                     }
-                } catch (NumberFormatException e) {
-                    // Not a direct ID
+                } catch (PunchQueueFullException e) {
+                    // Writer queue is full: stop here and retry this row next poll
+                    System.err.println("⚠️ " + e.getMessage() + " - pausing " + database + " at id " + lastId);
+                    stalled = true;
+                    break;
+                } catch (Exception e) {
+                    System.err.println("❌ Error processing transaction " + transactionId + ": " + e.getMessage());
                 }
+                gaps.observe(lastId, transactionId);
+                lastId = transactionId;
+                rowsRead++;
             }
 
-            // Strategy 2: Parse machine emp_id (take last 6 digits)
-            if (machineEmpIdStr != null && machineEmpIdStr.length() > 6) {
-                try {
-                    String shortId = machineEmpIdStr.substring(machineEmpIdStr.length() - 6);
-                    Integer empId = Integer.parseInt(shortId);
-                    Optional<Employee> empOpt = employeeRepo.findById(empId);
-                    if (empOpt.isPresent()) {
-                        return empOpt.get();
-                    }
-                } catch (NumberFormatException e) {
-                    // Ignore
-                }
+            long safeId = watermark.safeCursor(gaps.safeCursor(lastId));
+            if (!Objects.equals(savedIds.get(sourceName), safeId)) {
+                saveCursor(sourceName, safeId);
             }
+            if (stalled) {
+                break;
+            }
+            if (page.size() < pageSize) {
+                caughtUp = true;
+                break;
+            }
+        }
 
-            return null;
+        lastIds.put(database, lastId);
+        totalProcessed += processedCount;
+        if (!caughtUp) {
+            pendingAfterTick.put(database, lastId);
+        } else {
+            pendingAfterTick.remove(database);
+            // Hand over only once the persisted cursor has caught up as well
+            if (changeCaptureDatabases.contains(database) && watermark.size() == 0
+                    && handedOffDatabases.add(database)) {
+                System.out.println("🔀 " + database + " caught up at id " + lastId +
+                        ", handing over to the outbox consumer");
+            }
+        }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error finding employee: " + e.getMessage());
-            return null;
+        if (processedCount > 0 || !caughtUp) {
+            System.out.println("✅ " + database + ": processed " + processedCount + " transactions in " + pages +
+                    " page(s), cursor " + startId + " -> " + lastId + (caughtUp ? "" : " (more pending)"));
         }
+        return AdaptiveSyncScheduler.PollResult.of(rowsRead, !caughtUp);
     }
 
     /**
-     * Create or update attendance record with "First Punch In Only" logic
+     * Look up the ids the cursor stepped over and process the rows that have
+     * committed since.
+     *
+     * @return rows queued
      */
-    @Transactional
-    private boolean createOrUpdateAttendance(Employee employee, LocalDateTime punchDateTime,
-            Integer punchState, Map<String, Object> transaction) {
-        try {
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
-
-            // Find or create attendance record
-            Optional<Attendance> existingOpt = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
-
-            Attendance attendance;
-
-            if (existingOpt.isPresent()) {
-                attendance = existingOpt.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
-            }
-
-            // Set biometric fields (always update these)
-            attendance.setBiometricUserId(String.valueOf(transaction.get("emp_code")));
-            attendance.setDeviceSerial((String) transaction.get("terminal_sn"));
-            attendance.setVerifyType("fingerprint");
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setRawData(transaction.toString());
-
-            // Apply "First Punch In Only" logic for BIOMETRIC source
-            if (punchState != null && punchState == 0) {
-                // Punch IN - Only set if no punch-in exists yet (BIOMETRIC only)
-                if (attendance.getPunchInTime() == null) {
-                    attendance.setPunchInTime(punchTime);
-                    attendance.setPunchIn(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                    System.out.println(
-                            "✅ First punch IN recorded (BIOMETRIC): "
-                                    + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                } else {
-                    System.out.println("⚠️ Duplicate punch IN ignored - keeping first punch: " +
-                            attendance.getPunchInTime().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                    return true; // Don't save, but return success
+    private int fillGaps(String database, CursorGaps gaps, WriteWatermark watermark) {
+        List<Long> ids = gaps.open(pageSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = "SELECT " + ICLOCK_COLUMNS + " FROM " + database + ".iclock_transaction WHERE id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ") ORDER BY id ASC";
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, ids.toArray());
+
+        int processed = 0;
+        for (Map<String, Object> transaction : rows) {
+            long transactionId = ((Number) transaction.get("id")).longValue();
+            try {
+                if (processIclockRow(database, transaction, false, watermark, transactionId)) {
+                    processed++;
                 }
-            } else {
-                // Punch OUT - Always update to latest punch out (BIOMETRIC only)
-                attendance.setPunchOutTime(punchTime);
-                attendance.setPunchOut(punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-                System.out.println("✅ Punch OUT recorded (BIOMETRIC): "
-                        + punchTime.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-            }
-
-            // Calculate working hours if both times are set
-            if (attendance.getPunchInTime() != null && attendance.getPunchOutTime() != null) {
-                attendance.calculateDurations();
-                System.out.println("📊 Working hours calculated: " + attendance.getWorkingHours());
+            } catch (PunchQueueFullException e) {
+                // Still open; looked up again next poll
+                break;
+            } catch (Exception e) {
+                System.err.println("❌ Error processing transaction " + transactionId + ": " + e.getMessage());
             }
+            gaps.filled(transactionId);
+        }
+        if (!rows.isEmpty()) {
+            System.out.println("🕳️ " + database + ": picked up " + rows.size() + " late-committed row(s)");
+        }
+        return processed;
+    }
 
-            // Save attendance
-            attendanceRepo.save(attendance);
+    /**
+     * Load the persisted cursor. A new source starts just before the punches of
+     * the last initialLookbackHours.
+     */
+    private long loadCursor(String sourceName, String database) {
+        Long cached = lastIds.get(database);
+        if (cached != null) {
+            return cached;
+        }
+        Optional<SyncCursor> cursor = syncCursorRepo.findById(sourceName);
+        if (cursor.isPresent()) {
+            savedIds.put(sourceName, cursor.get().getLastId());
+            return cursor.get().getLastId();
+        }
 
-            return true;
+        Long startId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(id), 0) FROM " + database + ".iclock_transaction WHERE punch_time <= ?",
+                Long.class, LocalDateTime.now().minusHours(initialLookbackHours));
+        long initial = startId != null ? startId : 0L;
+        saveCursor(sourceName, initial);
+        System.out.println("📌 Created sync cursor " + sourceName + " at id " + initial);
+        return initial;
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error creating attendance: " + e.getMessage());
-            return false;
-        }
+    private void saveCursor(String sourceName, long lastId) {
+        SyncCursor cursor = syncCursorRepo.findById(sourceName).orElseGet(() -> new SyncCursor(sourceName, 0L));
+        cursor.setLastId(lastId);
+        syncCursorRepo.save(cursor);
+        savedIds.put(sourceName, lastId);
     }
 
     /**
-     * Parse datetime from various formats
+     * Switch a database between polling and change capture. While active the
+     * poller keeps going until it has caught up, so rows inserted before the
+     * outbox trigger existed are not skipped; turning it off resumes polling
+     * from the persisted cursor.
      */
-    private LocalDateTime parseDateTime(Object dateTimeObj) {
-        try {
-            if (dateTimeObj instanceof java.sql.Timestamp) {
-                return ((java.sql.Timestamp) dateTimeObj).toLocalDateTime();
-            } else if (dateTimeObj instanceof java.util.Date) {
-                return LocalDateTime.ofInstant(((java.util.Date) dateTimeObj).toInstant(),
-                        java.time.ZoneId.systemDefault());
-            } else {
-                String timeStr = dateTimeObj.toString();
-
-                // Handle ISO format: 2025-07-11T12:36:22
-                if (timeStr.contains("T")) {
-                    timeStr = timeStr.replace("T", " ");
-                }
-
-                return LocalDateTime.parse(timeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    public void setChangeCaptureActive(String database, boolean active) {
+        if (active) {
+            changeCaptureDatabases.add(database);
+        } else {
+            changeCaptureDatabases.remove(database);
+            if (handedOffDatabases.remove(database)) {
+                syncScheduler.wakeup(CURSOR_PREFIX + database);
             }
-        } catch (Exception e) {
-            return null;
         }
     }
 
     /**
-     * Safely parse String to Integer
+     * Resolve one iclock_transaction row and queue it for the punch writer.
+     * Replayed rows skip the dedup check so they are written again. The row
+     * stays in the watermark at position until it is written.
+     *
+     * @throws PunchQueueFullException when the writer queue is full; the row
+     *                                 was not queued and must be retried
      */
-    private Integer safeParseInteger(String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return null;
+    public boolean processIclockRow(String database, Map<String, Object> transaction, boolean replay,
+            WriteWatermark watermark, long position) {
+        PunchEvent event = iclockEvent(database, transaction).replay(replay);
+        watermark.track(event, position);
+        PunchOutcome outcome = punchEngine.process(event);
+        if (!outcome.isQueued()) {
+            watermark.untrack(position);
         }
-
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return null;
+        if (outcome.getStatus() == PunchOutcome.Status.QUEUE_FULL) {
+            throw new PunchQueueFullException("Punch queue full");
         }
+        return outcome.isQueued();
+    }
+
+    /**
+     * Dedup prefix for {@link #iclockEvent} rows of database.table. The
+     * default table uses the bare database name, as the poller does, so
+     * backfills and merged syncs recognise the rows it already took.
+     */
+    public static String iclockDedupPrefix(String database, String table) {
+        return "iclock_transaction".equals(table) ? database : database + "." + table;
+    }
+
+    /**
+     * Punch event for an iclock_transaction row. The dedup key is the
+     * database and row id, so the poller, the outbox consumer and backfills
+     * recognise each other's rows.
+     */
+    public static PunchEvent iclockEvent(String database, Map<String, Object> transaction) {
+        return new PunchEvent("ICLOCK_SIMPLE")
+                .dedupKey(database + ":" + transaction.get("id"))
+                .punchTime(transaction.get("punch_time"))
+                .checkIn(PunchEngine.checkInFromState(PunchEngine.parseInteger(transaction.get("punch_state"))))
+                .deviceSerial((String) transaction.get("terminal_sn"))
+                .empCode((String) transaction.get("emp_code"))
+                .machineEmpId(PunchEngine.parseInteger(transaction.get("emp_id")))
+                .verifyType(PunchEngine.iclockVerifyType(PunchEngine.parseInteger(transaction.get("verify_type"))))
+                .rawData(transaction.toString());
     }
 
     /**
@@ -310,8 +365,21 @@ public class SimpleRealtimeBiometricService {
      */
     public Map<String, Object> getSyncStats() {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("processedTransactionIds", processedTransactionIds.size());
+        stats.put("cursors", new HashMap<>(lastIds));
+        stats.put("savedCursors", new HashMap<>(savedIds));
+        Map<String, Integer> unwritten = new TreeMap<>();
+        watermarks.forEach((database, watermark) -> unwritten.put(database, watermark.size()));
+        stats.put("unwrittenRows", unwritten);
+        Map<String, Integer> openGaps = new TreeMap<>();
+        cursorGaps.forEach((database, gaps) -> openGaps.put(database, gaps.size()));
+        stats.put("openGaps", openGaps);
+        stats.put("pendingAfterLastTick", new HashMap<>(pendingAfterTick));
+        stats.put("totalProcessed", totalProcessed);
+        stats.put("punchEngine", punchEngine.getStats());
+        stats.put("changeCaptureDatabases", new TreeSet<>(changeCaptureDatabases));
+        stats.put("handedOffDatabases", new TreeSet<>(handedOffDatabases));
         stats.put("lastSyncTime", lastSyncTime);
+        stats.put("pollIntervals", syncScheduler.getIntervals(CURSOR_PREFIX));
         stats.put("serviceName", "SimpleRealtimeBiometricService");
         return stats;
     }
@@ -321,11 +389,12 @@ public class SimpleRealtimeBiometricService {
      */
     public Map<String, Object> triggerManualSync() {
         try {
+            long before = totalProcessed;
             performRealtimeSync();
             return Map.of(
                     "success", true,
                     "message", "Manual sync completed",
-                    "processedCount", processedTransactionIds.size());
+                    "processedCount", totalProcessed - before);
         } catch (Exception e) {
             return Map.of(
                     "success", false,
@@ -382,7 +451,7 @@ public class SimpleRealtimeBiometricService {
                             todayStr);
 
                     if (!lastPunchResult.isEmpty() && lastPunchResult.get(0).get("last_punch") != null) {
-                        LocalDateTime lastPunchTime = parseDateTime(lastPunchResult.get(0).get("last_punch"));
+                        LocalDateTime lastPunchTime = PunchEngine.parsePunchTime(lastPunchResult.get(0).get("last_punch"));
 
                         if (lastPunchTime != null) {
                             // Update attendance with auto punch-out
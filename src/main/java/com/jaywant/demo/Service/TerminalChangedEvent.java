@@ -0,0 +1,70 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.SubadminTerminal;
+
+/**
+ * Published when a subadmin terminal is created, updated or removed so the
+ * {@link TerminalRegistry} can refresh its in-memory maps. Events built from
+ * an entity carry a snapshot; events for JDBC writes carry only the serial and
+ * make the registry reload that terminal.
+ */
+public class TerminalChangedEvent {
+
+    private final String terminalSerial;
+    private final Integer subadminId;
+    private final SubadminTerminal.TerminalStatus status;
+    private final String deviceIp;
+    private final boolean deleted;
+    private final boolean snapshot;
+
+    private TerminalChangedEvent(String terminalSerial, Integer subadminId, SubadminTerminal.TerminalStatus status,
+            String deviceIp, boolean deleted, boolean snapshot) {
+        this.terminalSerial = terminalSerial;
+        this.subadminId = subadminId;
+        this.status = status;
+        this.deviceIp = deviceIp;
+        this.deleted = deleted;
+        this.snapshot = snapshot;
+    }
+
+    public static TerminalChangedEvent saved(SubadminTerminal terminal) {
+        return new TerminalChangedEvent(terminal.getTerminalSerial(), terminal.getSubadminId(),
+                terminal.getStatus(), terminal.getDeviceIp(), false, true);
+    }
+
+    public static TerminalChangedEvent deleted(SubadminTerminal terminal) {
+        return new TerminalChangedEvent(terminal.getTerminalSerial(), terminal.getSubadminId(),
+                terminal.getStatus(), terminal.getDeviceIp(), true, true);
+    }
+
+    /**
+     * The terminal row was written outside JPA, reload it from the database.
+     */
+    public static TerminalChangedEvent reload(String terminalSerial) {
+        return new TerminalChangedEvent(terminalSerial, null, null, null, false, false);
+    }
+
+    public String getTerminalSerial() {
+        return terminalSerial;
+    }
+
+    public Integer getSubadminId() {
+        return subadminId;
+    }
+
+    public SubadminTerminal.TerminalStatus getStatus() {
+        return status;
+    }
+
+    public String getDeviceIp() {
+        return deviceIp;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,264 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.SubadminTerminal;
+import com.jaywant.demo.Repo.SubadminTerminalRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory view of {@link SubadminTerminal}: device IP -> terminal serial and
+ * terminal serial -> subadmin. Used on the punch path instead of querying
+ * subadmin_terminals for every record.
+ *
+ * IPs come from the device_ip column, from the source address of heartbeats
+ * of registered terminals and from the optional
+ * biometric.terminals.static-ips list (ip=serial pairs) for devices that
+ * never send a heartbeat. Terminal writes are picked up through
+ * {@link TerminalChangedEvent}.
+ *
+ * An IP that two terminals report from (NAT, a proxy) cannot tell their
+ * punches apart. It is marked shared and no longer routes to either terminal
+ * until one of them moves to another IP; static entries always win.
+ */
+@Service
+public class TerminalRegistry {
+
+    @Autowired
+    private SubadminTerminalRepo terminalRepo;
+
+    @Value("${biometric.terminals.static-ips:}")
+    private String staticIps;
+
+    private final Map<String, String> serialsByIp = new ConcurrentHashMap<>();
+    private final Map<String, TerminalEntry> terminalsBySerial = new ConcurrentHashMap<>();
+    private final Map<String, String> staticSerialsByIp = new ConcurrentHashMap<>();
+    private final Set<String> sharedIps = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong unknownIpLookups = new AtomicLong();
+    private final AtomicLong learnedIps = new AtomicLong();
+    private final AtomicLong sharedIpLookups = new AtomicLong();
+    private volatile boolean loaded = false;
+
+    @PostConstruct
+    public void init() {
+        if (staticIps == null || staticIps.isBlank()) {
+            return;
+        }
+        for (String pair : staticIps.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if (parts.length == 2 && !parts[0].isBlank() && !parts[1].isBlank()) {
+                staticSerialsByIp.put(parts[0].trim(), parts[1].trim());
+                serialsByIp.put(parts[0].trim(), parts[1].trim());
+            } else if (!pair.isBlank()) {
+                System.err.println("⚠️ Ignoring invalid static terminal IP entry: " + pair);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        try {
+            for (SubadminTerminal terminal : terminalRepo.findAll()) {
+                put(new TerminalEntry(terminal.getTerminalSerial(), terminal.getSubadminId(),
+                        terminal.getStatus(), terminal.getDeviceIp()));
+            }
+            loaded = true;
+            System.out.println("✅ Terminal registry loaded: " + terminalsBySerial.size() + " terminals, " +
+                    serialsByIp.size() + " known IPs");
+        } catch (Exception e) {
+            System.err.println("❌ Failed to load terminal registry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Terminal serial for a device IP, or null when the IP has not been seen.
+     */
+    public String findSerialByIp(String deviceIp) {
+        if (deviceIp == null) {
+            return null;
+        }
+        String serial = serialsByIp.get(deviceIp);
+        if (serial == null) {
+            if (sharedIps.contains(deviceIp)) {
+                sharedIpLookups.incrementAndGet();
+            } else {
+                unknownIpLookups.incrementAndGet();
+            }
+        }
+        return serial;
+    }
+
+    /**
+     * Owning subadmin of a terminal, or null for unknown terminals.
+     */
+    public Integer findSubadminId(String terminalSerial) {
+        TerminalEntry entry = terminalSerial != null ? terminalsBySerial.get(terminalSerial) : null;
+        return entry != null ? entry.subadminId : null;
+    }
+
+    public boolean isActive(String terminalSerial) {
+        TerminalEntry entry = terminalSerial != null ? terminalsBySerial.get(terminalSerial) : null;
+        return entry != null && entry.status == SubadminTerminal.TerminalStatus.ACTIVE;
+    }
+
+    public boolean isKnown(String terminalSerial) {
+        return terminalSerial != null && terminalsBySerial.containsKey(terminalSerial);
+    }
+
+    /**
+     * Record the IP a registered terminal reports from. deviceIp must be the
+     * address the report came from, not one the device claims. Only writes to
+     * the database when the IP actually changed. An IP another terminal is
+     * already at is not taken over but marked shared.
+     *
+     * @return false when the serial is not a registered terminal
+     */
+    public boolean learnDeviceIp(String terminalSerial, String deviceIp) {
+        if (terminalSerial == null || deviceIp == null || deviceIp.isBlank()) {
+            return false;
+        }
+        TerminalEntry entry = terminalsBySerial.get(terminalSerial);
+        if (entry == null) {
+            return false;
+        }
+        if (deviceIp.equals(entry.deviceIp) && terminalSerial.equals(serialsByIp.get(deviceIp))) {
+            return true;
+        }
+        if (sharedIps.contains(deviceIp) || staticSerialsByIp.containsKey(deviceIp)) {
+            return true;
+        }
+        String other = serialsByIp.get(deviceIp);
+        if (other != null && !other.equals(terminalSerial) && claims(other, deviceIp)) {
+            share(deviceIp, other, terminalSerial);
+            return true;
+        }
+
+        put(new TerminalEntry(terminalSerial, entry.subadminId, entry.status, deviceIp));
+        learnedIps.incrementAndGet();
+        try {
+            terminalRepo.updateDeviceIp(terminalSerial, deviceIp);
+        } catch (Exception e) {
+            System.err.println("❌ Failed to store IP " + deviceIp + " for terminal " + terminalSerial + ": "
+                    + e.getMessage());
+        }
+        System.out.println("📍 Terminal " + terminalSerial + " is now at " + deviceIp);
+        return true;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTerminalChanged(TerminalChangedEvent event) {
+        String serial = event.getTerminalSerial();
+        if (serial == null) {
+            return;
+        }
+        if (!event.isSnapshot()) {
+            Optional<SubadminTerminal> terminal = terminalRepo.findByTerminalSerial(serial);
+            if (terminal.isPresent()) {
+                SubadminTerminal t = terminal.get();
+                put(new TerminalEntry(serial, t.getSubadminId(), t.getStatus(), t.getDeviceIp()));
+            } else {
+                remove(serial);
+            }
+        } else if (event.isDeleted()) {
+            remove(serial);
+        } else {
+            // The entity copy may predate the last heartbeat; keep the learned IP
+            TerminalEntry existing = terminalsBySerial.get(serial);
+            String deviceIp = existing != null && existing.deviceIp != null ? existing.deviceIp
+                    : event.getDeviceIp();
+            put(new TerminalEntry(serial, event.getSubadminId(), event.getStatus(), deviceIp));
+        }
+    }
+
+    private void put(TerminalEntry entry) {
+        TerminalEntry old = terminalsBySerial.put(entry.terminalSerial, entry);
+        if (old != null && old.deviceIp != null && !old.deviceIp.equals(entry.deviceIp)) {
+            release(old.deviceIp, entry.terminalSerial);
+        }
+        if (entry.deviceIp != null) {
+            bind(entry.deviceIp, entry.terminalSerial);
+        }
+    }
+
+    private void bind(String deviceIp, String terminalSerial) {
+        if (sharedIps.contains(deviceIp) || staticSerialsByIp.containsKey(deviceIp)) {
+            return;
+        }
+        String other = serialsByIp.put(deviceIp, terminalSerial);
+        if (other != null && !other.equals(terminalSerial) && claims(other, deviceIp)) {
+            share(deviceIp, other, terminalSerial);
+        }
+    }
+
+    /**
+     * A terminal left deviceIp. If the IP was shared, the remaining terminal
+     * gets it back with its next heartbeat.
+     */
+    private void release(String deviceIp, String terminalSerial) {
+        serialsByIp.remove(deviceIp, terminalSerial);
+        sharedIps.remove(deviceIp);
+    }
+
+    private boolean claims(String terminalSerial, String deviceIp) {
+        TerminalEntry entry = terminalsBySerial.get(terminalSerial);
+        return entry != null && deviceIp.equals(entry.deviceIp);
+    }
+
+    private void share(String deviceIp, String terminalSerial, String otherSerial) {
+        if (sharedIps.add(deviceIp)) {
+            System.err.println("⚠️ Terminals " + terminalSerial + " and " + otherSerial + " both report from " +
+                    deviceIp + "; TCP punches from this IP are not routed until one moves or a static IP is set");
+        }
+        serialsByIp.remove(deviceIp);
+    }
+
+    private void remove(String terminalSerial) {
+        TerminalEntry old = terminalsBySerial.remove(terminalSerial);
+        if (old != null && old.deviceIp != null) {
+            release(old.deviceIp, terminalSerial);
+        }
+        // Static entries stay routable even if the row is gone
+        serialsByIp.putAll(staticSerialsByIp);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loaded", loaded);
+        stats.put("terminals", terminalsBySerial.size());
+        stats.put("knownIps", new HashMap<>(serialsByIp));
+        stats.put("unknownIpLookups", unknownIpLookups.get());
+        stats.put("learnedIps", learnedIps.get());
+        stats.put("sharedIps", new TreeSet<>(sharedIps));
+        stats.put("sharedIpLookups", sharedIpLookups.get());
+        return stats;
+    }
+
+    private static final class TerminalEntry {
+        final String terminalSerial;
+        final Integer subadminId;
+        final SubadminTerminal.TerminalStatus status;
+        final String deviceIp;
+
+        TerminalEntry(String terminalSerial, Integer subadminId, SubadminTerminal.TerminalStatus status,
+                String deviceIp) {
+            this.terminalSerial = terminalSerial;
+            this.subadminId = subadminId;
+            this.status = status;
+            this.deviceIp = deviceIp;
+        }
+    }
+}
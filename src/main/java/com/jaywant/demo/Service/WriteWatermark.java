@@ -0,0 +1,87 @@
+package com.jaywant.demo.Service;
+
+import com.jaywant.demo.Entity.Attendance;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Positions in a source (row ids, outbox offsets) whose punches were queued
+ * for the {@link PunchBatchWriter} but are not written yet.
+ *
+ * A source reads ahead as fast as it likes but persists its cursor at
+ * {@link #safeCursor}, which never passes a punch that could still be lost.
+ * When the writer gives up on a punch, {@link #takeRewind} tells the source
+ * where to read again; the engine has already forgotten the dedup key of the
+ * failed punch, while punches written meanwhile come back as duplicates.
+ */
+public class WriteWatermark {
+
+    private final ConcurrentSkipListMap<Long, Integer> pending = new ConcurrentSkipListMap<>();
+    private final AtomicLong rewindTo = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Hold the cursor before this position until the event is written.
+     * Call before handing the event to the engine.
+     */
+    public void track(PunchEvent event, long position) {
+        pending.merge(position, 1, Integer::sum);
+        BiConsumer<PunchRecord, Attendance> onWritten = event.getOnWritten();
+        Runnable onFailed = event.getOnFailed();
+        event.onWritten((record, attendance) -> {
+            done(position);
+            if (onWritten != null) {
+                onWritten.accept(record, attendance);
+            }
+        });
+        event.onFailed(() -> {
+            rewindTo.accumulateAndGet(position, Math::min);
+            done(position);
+            if (onFailed != null) {
+                onFailed.run();
+            }
+        });
+    }
+
+    /**
+     * The tracked event was not queued (duplicate, rejected, queue full).
+     */
+    public void untrack(long position) {
+        done(position);
+    }
+
+    /**
+     * Highest cursor with nothing unwritten at or below it, given that the
+     * source has read up to readUpTo.
+     */
+    public long safeCursor(long readUpTo) {
+        long cursor = readUpTo;
+        Map.Entry<Long, Integer> first = pending.firstEntry();
+        if (first != null) {
+            cursor = Math.min(cursor, first.getKey() - 1);
+        }
+        long rewind = rewindTo.get();
+        if (rewind != Long.MAX_VALUE) {
+            cursor = Math.min(cursor, rewind - 1);
+        }
+        return cursor;
+    }
+
+    /**
+     * Earliest position whose write failed since the last call, or null.
+     */
+    public Long takeRewind() {
+        long rewind = rewindTo.getAndSet(Long.MAX_VALUE);
+        return rewind != Long.MAX_VALUE ? rewind : null;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private void done(long position) {
+        pending.computeIfPresent(position, (k, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -0,0 +1,310 @@
+package com.jaywant.demo.Service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for the binary ZKTeco TCP protocol spoken by F22 terminals on port
+ * 4370.
+ *
+ * Frame layout (all integers little-endian):
+ *
+ * <pre>
+ *  0      4           8         10         12           14         16
+ *  | 5050 827D | payload len | command | checksum | session id | reply id | data ... |
+ * </pre>
+ *
+ * The decoder works directly on the connection's read buffer: frames are
+ * parsed with absolute reads, user ids are decoded straight from the ASCII
+ * bytes and the same {@link ZKTecoPunchEvent} instance is refilled for every
+ * punch, so decoding allocates nothing per record. One decoder belongs to one
+ * connection and is not thread-safe.
+ */
+public class ZKTecoFrameDecoder {
+
+    // TCP wrapper
+    public static final int MAGIC_1 = 0x5050;
+    public static final int MAGIC_2 = 0x7D82;
+    public static final int TCP_HEADER_SIZE = 8;
+    public static final int COMMAND_HEADER_SIZE = 8;
+    public static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+    // Commands
+    public static final int CMD_CONNECT = 1000;
+    public static final int CMD_EXIT = 1001;
+    public static final int CMD_REG_EVENT = 500;
+    public static final int CMD_ACK_OK = 2000;
+
+    private static final int USHRT_MAX = 65535;
+
+    /**
+     * Callback for decoded frames. The event passed to {@link #onPunch} is reused
+     * by the decoder once the callback returns.
+     */
+    public interface FrameListener {
+        void onPunch(ZKTecoPunchEvent event);
+
+        default void onCommand(int command, int sessionId, int replyId) {
+        }
+    }
+
+    private final ZKTecoPunchEvent event = new ZKTecoPunchEvent();
+
+    private long framesDecoded;
+    private long punchesDecoded;
+    private long checksumErrors;
+    private long malformedFrames;
+    private long skippedBytes;
+
+    /**
+     * True when the buffer (in read mode) starts with the binary frame magic.
+     */
+    public static boolean startsWithMagic(ByteBuffer buffer) {
+        return buffer.remaining() >= 4 && hasMagic(buffer, buffer.position());
+    }
+
+    /**
+     * Decode every complete frame in the buffer. The buffer must be in read mode;
+     * on return its position is at the first byte of any incomplete frame, ready
+     * for {@link ByteBuffer#compact()}.
+     *
+     * @return number of valid frames decoded
+     */
+    public int decode(ByteBuffer buffer, FrameListener listener) {
+        int frames = 0;
+        while (buffer.remaining() >= TCP_HEADER_SIZE) {
+            int start = buffer.position();
+
+            if (!hasMagic(buffer, start)) {
+                int next = findMagic(buffer, start + 1);
+                if (next < 0) {
+                    // Keep the tail in case the magic is split across reads
+                    int keep = Math.min(3, buffer.remaining());
+                    skippedBytes += buffer.remaining() - keep;
+                    buffer.position(buffer.limit() - keep);
+                    break;
+                }
+                skippedBytes += next - start;
+                buffer.position(next);
+                continue;
+            }
+
+            long payloadLength = u32(buffer, start + 4);
+            if (payloadLength < COMMAND_HEADER_SIZE || payloadLength > MAX_PAYLOAD_SIZE) {
+                malformedFrames++;
+                buffer.position(start + 1);
+                continue;
+            }
+            if (buffer.remaining() < TCP_HEADER_SIZE + payloadLength) {
+                break;
+            }
+
+            int payload = start + TCP_HEADER_SIZE;
+            int length = (int) payloadLength;
+            int command = u16(buffer, payload);
+            int checksum = u16(buffer, payload + 2);
+            int sessionId = u16(buffer, payload + 4);
+            int replyId = u16(buffer, payload + 6);
+
+            if (checksum(buffer, payload, length) != checksum) {
+                checksumErrors++;
+            } else {
+                frames++;
+                framesDecoded++;
+                if (command == CMD_REG_EVENT) {
+                    decodeAttendanceRecords(buffer, payload + COMMAND_HEADER_SIZE,
+                            length - COMMAND_HEADER_SIZE, sessionId, replyId, listener);
+                } else {
+                    listener.onCommand(command, sessionId, replyId);
+                }
+            }
+            buffer.position(payload + length);
+        }
+        return frames;
+    }
+
+    /**
+     * Real-time attendance records. The record size depends on the firmware; a
+     * single event frame may carry several 52-byte records.
+     */
+    private void decodeAttendanceRecords(ByteBuffer buffer, int offset, int length, int sessionId, int replyId,
+            FrameListener listener) {
+        while (length >= 10) {
+            int consumed;
+            long userId;
+            int idLength;
+            if (length == 10 || length == 14) {
+                userId = u16(buffer, offset);
+                idLength = 2;
+                consumed = length;
+            } else if (length == 12) {
+                userId = u32(buffer, offset);
+                idLength = 4;
+                consumed = 12;
+            } else if (length == 32 || length == 36 || length == 37) {
+                userId = asciiUserId(buffer, offset, 24);
+                idLength = 24;
+                consumed = length;
+            } else if (length >= 52) {
+                userId = asciiUserId(buffer, offset, 24);
+                idLength = 24;
+                consumed = 52;
+            } else {
+                malformedFrames++;
+                return;
+            }
+
+            if (userId < 0) {
+                malformedFrames++;
+            } else {
+                int p = offset + idLength;
+                event.set(userId,
+                        buffer.get(p) & 0xFF,
+                        buffer.get(p + 1) & 0xFF,
+                        2000 + (buffer.get(p + 2) & 0xFF),
+                        buffer.get(p + 3) & 0xFF,
+                        buffer.get(p + 4) & 0xFF,
+                        buffer.get(p + 5) & 0xFF,
+                        buffer.get(p + 6) & 0xFF,
+                        buffer.get(p + 7) & 0xFF,
+                        sessionId,
+                        replyId);
+                punchesDecoded++;
+                listener.onPunch(event);
+            }
+
+            offset += consumed;
+            length -= consumed;
+        }
+    }
+
+    /**
+     * Parse a NUL-padded ASCII user id in place. Returns -1 for non-numeric ids.
+     */
+    private static long asciiUserId(ByteBuffer buffer, int offset, int maxLength) {
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < maxLength; i++) {
+            int b = buffer.get(offset + i) & 0xFF;
+            if (b == 0) {
+                break;
+            }
+            if (b < '0' || b > '9' || digits >= 18) {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : value;
+    }
+
+    /**
+     * ZKTeco checksum over the command header and data, with the checksum field
+     * itself counted as zero.
+     */
+    public static int checksum(ByteBuffer buffer, int offset, int length) {
+        int sum = 0;
+        int i = 0;
+        while (i + 1 < length) {
+            int word = (i == 2) ? 0 : u16(buffer, offset + i);
+            sum += word;
+            if (sum > USHRT_MAX) {
+                sum -= USHRT_MAX;
+            }
+            i += 2;
+        }
+        if (i < length) {
+            sum += buffer.get(offset + i) & 0xFF;
+        }
+        while (sum > USHRT_MAX) {
+            sum -= USHRT_MAX;
+        }
+        int result = ~sum;
+        while (result < 0) {
+            result += USHRT_MAX;
+        }
+        return result;
+    }
+
+    /**
+     * Write an acknowledgement frame for the given session/reply into the buffer
+     * (write mode). Used to confirm real-time events so the terminal does not
+     * resend them.
+     */
+    public static void writeAck(ByteBuffer out, int sessionId, int replyId) {
+        writeFrame(out, CMD_ACK_OK, sessionId, replyId);
+    }
+
+    /**
+     * Write a frame with an empty data section.
+     */
+    public static void writeFrame(ByteBuffer out, int command, int sessionId, int replyId) {
+        int start = out.position();
+        putU16(out, MAGIC_1);
+        putU16(out, MAGIC_2);
+        putU32(out, COMMAND_HEADER_SIZE);
+        int payload = out.position();
+        putU16(out, command);
+        putU16(out, 0);
+        putU16(out, sessionId);
+        putU16(out, replyId);
+        int checksum = checksum(out, payload, COMMAND_HEADER_SIZE);
+        out.put(payload + 2, (byte) checksum);
+        out.put(payload + 3, (byte) (checksum >>> 8));
+        if (out.position() - start != TCP_HEADER_SIZE + COMMAND_HEADER_SIZE) {
+            throw new IllegalStateException("Unexpected ZKTeco frame size");
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer, int index) {
+        return index + 4 <= buffer.limit()
+                && u16(buffer, index) == MAGIC_1
+                && u16(buffer, index + 2) == MAGIC_2;
+    }
+
+    private static int findMagic(ByteBuffer buffer, int from) {
+        for (int i = from; i + 4 <= buffer.limit(); i++) {
+            if (hasMagic(buffer, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xFF) | ((buffer.get(index + 1) & 0xFF) << 8);
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return (u16(buffer, index) | ((long) u16(buffer, index + 2) << 16)) & 0xFFFFFFFFL;
+    }
+
+    private static void putU16(ByteBuffer out, int value) {
+        out.put((byte) value);
+        out.put((byte) (value >>> 8));
+    }
+
+    private static void putU32(ByteBuffer out, int value) {
+        putU16(out, value & 0xFFFF);
+        putU16(out, value >>> 16);
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getPunchesDecoded() {
+        return punchesDecoded;
+    }
+
+    public long getChecksumErrors() {
+        return checksumErrors;
+    }
+
+    public long getMalformedFrames() {
+        return malformedFrames;
+    }
+
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+}
@@ -0,0 +1,124 @@
+package com.jaywant.demo.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Real-time attendance event decoded from a binary ZKTeco frame.
+ *
+ * The decoder reuses a single instance per connection and fills it in place,
+ * so listeners that need to keep an event beyond the callback must call
+ * {@link #copy()}.
+ */
+public class ZKTecoPunchEvent {
+
+    // Punch states reported by ZKTeco terminals
+    public static final int PUNCH_CHECK_IN = 0;
+    public static final int PUNCH_CHECK_OUT = 1;
+    public static final int PUNCH_BREAK_OUT = 2;
+    public static final int PUNCH_BREAK_IN = 3;
+    public static final int PUNCH_OVERTIME_IN = 4;
+    public static final int PUNCH_OVERTIME_OUT = 5;
+
+    private long userId;
+    private int verifyType;
+    private int punchState;
+    private int year;
+    private int month;
+    private int day;
+    private int hour;
+    private int minute;
+    private int second;
+    private int sessionId;
+    private int replyId;
+
+    void set(long userId, int verifyType, int punchState, int year, int month, int day,
+            int hour, int minute, int second, int sessionId, int replyId) {
+        this.userId = userId;
+        this.verifyType = verifyType;
+        this.punchState = punchState;
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        this.sessionId = sessionId;
+        this.replyId = replyId;
+    }
+
+    public ZKTecoPunchEvent copy() {
+        ZKTecoPunchEvent copy = new ZKTecoPunchEvent();
+        copy.set(userId, verifyType, punchState, year, month, day, hour, minute, second, sessionId, replyId);
+        return copy;
+    }
+
+    /**
+     * Punch time as reported by the terminal clock, or null when the device sent
+     * an impossible date.
+     */
+    public LocalDateTime toLocalDateTime() {
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public boolean isCheckIn() {
+        return punchState == PUNCH_CHECK_IN || punchState == PUNCH_BREAK_IN || punchState == PUNCH_OVERTIME_IN;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public int getVerifyType() {
+        return verifyType;
+    }
+
+    public int getPunchState() {
+        return punchState;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public int getHour() {
+        return hour;
+    }
+
+    public int getMinute() {
+        return minute;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getReplyId() {
+        return replyId;
+    }
+
+    @Override
+    public String toString() {
+        return "ZKTecoPunchEvent{" +
+                "userId=" + userId +
+                ", verifyType=" + verifyType +
+                ", punchState=" + punchState +
+                ", time=" + String.format("%04d-%02d-%02d %02d:%02d:%02d", year, month, day, hour, minute, second) +
+                '}';
+    }
+}
@@ -1,55 +1,116 @@
 package com.jaywant.demo.Service;
 
 import com.jaywant.demo.Entity.Attendance;
-import com.jaywant.demo.Entity.Employee;
-import com.jaywant.demo.Entity.EmployeeDeviceMapping;
-import com.jaywant.demo.Repo.EmployeeDeviceMappingRepo;
-import com.jaywant.demo.Repo.AttendanceRepo;
-import com.jaywant.demo.Repo.EmployeeRepo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.io.*;
-import java.net.*;
-import java.time.LocalDate;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ZKTecoTcpListenerService {
 
     @Autowired
-    private EmployeeDeviceMappingRepo mappingRepo;
+    private TerminalRegistry terminalRegistry;
 
     @Autowired
-    private EmployeeRepo employeeRepo;
-
-    @Autowired
-    private AttendanceRepo attendanceRepo;
+    private PunchEngine punchEngine;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    private ServerSocket serverSocket;
-    private ExecutorService executorService;
-    private boolean isRunning = false;
-    private static final int LISTEN_PORT = 8000; // ZKTeco alternative port
+    @Value("${zkteco.listener.enabled:true}")
+    private boolean listenerEnabled;
+
+    @Value("${zkteco.listener.ports:8000}")
+    private String listenerPorts;
+
+    @Value("${zkteco.listener.bind-address:0.0.0.0}")
+    private String bindAddress;
+
+    @Value("${zkteco.listener.max-connections:256}")
+    private int maxConnections;
+
+    @Value("${zkteco.listener.idle-timeout-seconds:300}")
+    private int idleTimeoutSeconds;
+
+    @Value("${zkteco.listener.worker-threads:4}")
+    private int workerThreads;
+
+    @Value("${zkteco.listener.worker-queue-size:10000}")
+    private int workerQueueSize;
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final DateTimeFormatter PUNCH_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long SELECT_TIMEOUT_MS = 1000;
+    private static final int ACK_FRAME_SIZE = ZKTecoFrameDecoder.TCP_HEADER_SIZE
+            + ZKTecoFrameDecoder.COMMAND_HEADER_SIZE;
+    private static final int MAX_PENDING_ACK_BYTES = 64 * ACK_FRAME_SIZE;
+
+    private Selector selector;
+    private Thread selectorThread;
+    private ThreadPoolExecutor workerPool;
+    private volatile boolean isRunning = false;
+
+    // Bound server channels and per-port connection counters
+    private final Map<Integer, ServerSocketChannel> serverChannels = new ConcurrentHashMap<>();
+    private final Map<Integer, String> failedPorts = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> activeConnectionsPerPort = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> acceptedConnectionsPerPort = new ConcurrentHashMap<>();
+    // Punch acks from the workers, written by the selector thread
+    private final Queue<PendingAck> pendingAcks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong idleTimeouts = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong binaryFrames = new AtomicLong();
+    private final AtomicLong binaryPunches = new AtomicLong();
+    private final AtomicLong checksumErrors = new AtomicLong();
+    private final AtomicLong invalidUserIds = new AtomicLong();
+    private final AtomicLong droppedAcks = new AtomicLong();
 
     @PostConstruct
     public void startTcpListener() {
+        if (!listenerEnabled) {
+            System.out.println("ZKTeco TCP Listener disabled (zkteco.listener.enabled=false)");
+            return;
+        }
         try {
-            executorService = Executors.newCachedThreadPool();
-            startServer();
-            System.out.println("ZKTeco TCP Listener started on port " + LISTEN_PORT);
+            workerPool = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(workerQueueSize), namedThreadFactory("zkteco-worker"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            selector = Selector.open();
+
+            for (Integer port : parsePorts(listenerPorts)) {
+                bindPort(port);
+            }
+
+            if (serverChannels.isEmpty()) {
+                System.err.println("ZKTeco TCP Listener could not bind any of the configured ports: " + listenerPorts);
+                selector.close();
+                return;
+            }
+
+            isRunning = true;
+            selectorThread = new Thread(this::selectLoop, "zkteco-selector");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+
+            System.out.println("ZKTeco TCP Listener started on " + bindAddress + " ports " + serverChannels.keySet()
+                    + " (max connections " + maxConnections + ", idle timeout " + idleTimeoutSeconds + "s)");
         } catch (Exception e) {
             System.err.println("Failed to start ZKTeco TCP Listener: " + e.getMessage());
         }
@@ -59,11 +120,24 @@ public class ZKTecoTcpListenerService {
     public void stopTcpListener() {
         isRunning = false;
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (selector != null) {
+                selector.wakeup();
+            }
+            if (selectorThread != null) {
+                selectorThread.join(2000);
             }
-            if (executorService != null) {
-                executorService.shutdown();
+            for (ServerSocketChannel channel : serverChannels.values()) {
+                channel.close();
+            }
+            serverChannels.clear();
+            if (selector != null && selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (workerPool != null) {
+                workerPool.shutdown();
             }
             System.out.println("ZKTeco TCP Listener stopped");
         } catch (Exception e) {
@@ -71,56 +145,375 @@ public class ZKTecoTcpListenerService {
         }
     }
 
-    private void startServer() {
-        executorService.submit(() -> {
+    private void bindPort(int port) {
+        try {
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(bindAddress, port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT, port);
+            serverChannels.put(port, serverChannel);
+            activeConnectionsPerPort.put(port, new AtomicInteger());
+            acceptedConnectionsPerPort.put(port, new AtomicLong());
+            System.out.println("Listening for ZKTeco device connections on port " + port);
+        } catch (IOException e) {
+            failedPorts.put(port, e.getMessage());
+            System.err.println("Could not bind ZKTeco listener port " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Single selector thread serving every configured port. Parsing and database
+     * work is handed to the bounded worker pool so a slow punch never stalls I/O.
+     */
+    private void selectLoop() {
+        long lastIdleCheck = System.currentTimeMillis();
+        while (isRunning) {
             try {
-                serverSocket = new ServerSocket(LISTEN_PORT);
-                isRunning = true;
+                selector.select(SELECT_TIMEOUT_MS);
+                flushPendingAcks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptConnection(key);
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        writeOutbound(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        readConnection(key);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                    closeIdleConnections(now);
+                    lastIdleCheck = now;
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Exception e) {
+                if (isRunning) {
+                    System.err.println("Error in ZKTeco selector loop: " + e.getMessage());
+                }
+            }
+        }
+    }
 
-                System.out.println("Listening for ZKTeco device connections on port " + LISTEN_PORT);
+    private void acceptConnection(SelectionKey key) throws IOException {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        int port = (Integer) key.attachment();
+        SocketChannel clientChannel = serverChannel.accept();
+        if (clientChannel == null) {
+            return;
+        }
 
-                while (isRunning) {
-                    try {
-                        Socket clientSocket = serverSocket.accept();
-                        System.out.println("ZKTeco device connected: " + clientSocket.getInetAddress());
+        if (activeConnections.get() >= maxConnections) {
+            rejectedConnections.incrementAndGet();
+            System.err.println("ZKTeco connection limit (" + maxConnections + ") reached, rejecting "
+                    + clientChannel.getRemoteAddress());
+            clientChannel.close();
+            return;
+        }
 
-                        // Handle each device connection in separate thread
-                        executorService.submit(() -> handleDeviceConnection(clientSocket));
+        clientChannel.configureBlocking(false);
+        String deviceIp = ((InetSocketAddress) clientChannel.getRemoteAddress()).getAddress().getHostAddress();
+        DeviceConnection connection = new DeviceConnection(port, deviceIp);
+        clientChannel.register(selector, SelectionKey.OP_READ, connection);
 
-                    } catch (IOException e) {
-                        if (isRunning) {
-                            System.err.println("Error accepting connection: " + e.getMessage());
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println("Error starting TCP server: " + e.getMessage());
+        activeConnections.incrementAndGet();
+        activeConnectionsPerPort.get(port).incrementAndGet();
+        acceptedConnectionsPerPort.get(port).incrementAndGet();
+        System.out.println("ZKTeco device connected: " + deviceIp + " on port " + port);
+    }
+
+    private void readConnection(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        DeviceConnection connection = (DeviceConnection) key.attachment();
+        try {
+            int read = channel.read(connection.buffer);
+            if (read < 0) {
+                closeConnection(key);
+                return;
+            }
+            connection.lastActivity = System.currentTimeMillis();
+
+            if (connection.binary == null) {
+                detectProtocol(connection);
+            }
+            if (Boolean.TRUE.equals(connection.binary)) {
+                drainFrames(connection, key);
+            } else if (Boolean.FALSE.equals(connection.binary)) {
+                drainLines(connection);
+            }
+
+            if (!connection.buffer.hasRemaining()) {
+                // A single record larger than the buffer is not a ZKTeco record
+                System.err.println("Discarding oversized record from device " + connection.deviceIp);
+                connection.buffer.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Error handling device connection: " + e.getMessage());
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * Terminals on 4370 speak the binary ZK protocol; push/test clients send
+     * tab-separated text lines. The first four bytes decide which one.
+     */
+    private void detectProtocol(DeviceConnection connection) {
+        if (connection.buffer.position() < 4) {
+            return;
+        }
+        ByteBuffer view = connection.buffer.duplicate();
+        view.flip();
+        connection.binary = ZKTecoFrameDecoder.startsWithMagic(view);
+        if (connection.binary) {
+            connection.decoder = new ZKTecoFrameDecoder();
+            connection.outbound = ByteBuffer.allocateDirect(MAX_PENDING_ACK_BYTES);
+            System.out.println("Binary ZK protocol detected for device " + connection.deviceIp);
+        }
+    }
+
+    /**
+     * Decode complete binary frames in place and keep any partial frame for the
+     * next read.
+     */
+    private void drainFrames(DeviceConnection connection, SelectionKey key) {
+        ZKTecoFrameDecoder decoder = connection.decoder;
+        long checksumErrorsBefore = decoder.getChecksumErrors();
+
+        connection.buffer.flip();
+        int frames = decoder.decode(connection.buffer, new ZKTecoFrameDecoder.FrameListener() {
+            @Override
+            public void onPunch(ZKTecoPunchEvent event) {
+                binaryPunches.incrementAndGet();
+                dispatchBinaryPunch(event.copy(), key, connection.deviceIp);
+            }
+
+            @Override
+            public void onCommand(int command, int sessionId, int replyId) {
+                sendAck(key, sessionId, replyId);
             }
         });
+        connection.buffer.compact();
+
+        binaryFrames.addAndGet(frames);
+        checksumErrors.addAndGet(decoder.getChecksumErrors() - checksumErrorsBefore);
+    }
+
+    /**
+     * Queue an ack on the connection and write as much as the socket takes.
+     * Must run on the selector thread.
+     */
+    private void sendAck(SelectionKey key, int sessionId, int replyId) {
+        if (!key.isValid()) {
+            return;
+        }
+        DeviceConnection connection = (DeviceConnection) key.attachment();
+        ByteBuffer out = connection.outbound;
+        if (out.remaining() < ACK_FRAME_SIZE) {
+            writeOutbound(key);
+        }
+        if (!key.isValid() || out.remaining() < ACK_FRAME_SIZE) {
+            // The terminal resends the record and the duplicate check absorbs it
+            droppedAcks.incrementAndGet();
+            System.err.println("Ack backlog full for device " + connection.deviceIp + ", dropping ack");
+            return;
+        }
+        ZKTecoFrameDecoder.writeAck(out, sessionId, replyId);
+        writeOutbound(key);
     }
 
-    private void handleDeviceConnection(Socket clientSocket) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)) {
+    /**
+     * Write pending acks; whatever the socket does not take stays queued and
+     * OP_WRITE stays set until it drains.
+     */
+    private void writeOutbound(SelectionKey key) {
+        DeviceConnection connection = (DeviceConnection) key.attachment();
+        ByteBuffer out = connection.outbound;
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flip();
+            ((SocketChannel) key.channel()).write(out);
+            out.compact();
+            if (out.position() > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            System.err.println("Error acknowledging frame from " + connection.deviceIp + ": " + e.getMessage());
+            closeConnection(key);
+        }
+    }
 
-            String deviceIp = clientSocket.getInetAddress().getHostAddress();
-            System.out.println("Handling connection from device: " + deviceIp);
+    private void flushPendingAcks() {
+        PendingAck ack;
+        while ((ack = pendingAcks.poll()) != null) {
+            sendAck(ack.key, ack.sessionId, ack.replyId);
+        }
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
+    /**
+     * Hand a binary punch to the worker pool. The ack is only sent once the
+     * punch engine has accepted the punch; until then the terminal keeps the
+     * record and sends it again.
+     */
+    private void dispatchBinaryPunch(ZKTecoPunchEvent event, SelectionKey key, String deviceIp) {
+        if (event.getUserId() > Integer.MAX_VALUE) {
+            invalidUserIds.incrementAndGet();
+            System.err.println("User id out of range from " + deviceIp + ", rejecting punch: " + event);
+            // Can never be processed, resending would not help
+            sendAck(key, event.getSessionId(), event.getReplyId());
+            return;
+        }
+        try {
+            workerPool.execute(() -> {
+                if (processBinaryPunch(event, deviceIp)) {
+                    pendingAcks.add(new PendingAck(key, event.getSessionId(), event.getReplyId()));
+                    selector.wakeup();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            droppedRecords.incrementAndGet();
+            System.err.println("ZKTeco worker queue full, not acknowledging punch from " + deviceIp + ": " + event);
+        }
+    }
+
+    /**
+     * Split newline-terminated records out of the connection buffer, leaving any
+     * partial record in place for the next read.
+     */
+    private void drainLines(DeviceConnection connection) {
+        ByteBuffer buffer = connection.buffer;
+        buffer.flip();
+        int lineStart = buffer.position();
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                int end = i;
+                if (end > lineStart && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+                if (end > lineStart) {
+                    byte[] line = new byte[end - lineStart];
+                    buffer.get(lineStart, line);
+                    dispatchLine(new String(line, StandardCharsets.US_ASCII), connection.deviceIp);
+                }
+                lineStart = i + 1;
+            }
+        }
+        buffer.position(lineStart);
+        buffer.compact();
+    }
+
+    private void dispatchLine(String line, String deviceIp) {
+        try {
+            workerPool.execute(() -> {
                 System.out.println("Received data from " + deviceIp + ": " + line);
                 processDeviceData(line, deviceIp);
+            });
+        } catch (RejectedExecutionException e) {
+            droppedRecords.incrementAndGet();
+            System.err.println("ZKTeco worker queue full, dropping record from " + deviceIp + ": " + line);
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        long idleTimeoutMs = idleTimeoutSeconds * 1000L;
+        if (idleTimeoutMs <= 0) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof DeviceConnection) {
+                DeviceConnection connection = (DeviceConnection) key.attachment();
+                if (now - connection.lastActivity > idleTimeoutMs) {
+                    idleTimeouts.incrementAndGet();
+                    System.out.println("Closing idle ZKTeco connection from " + connection.deviceIp);
+                    closeConnection(key);
+                }
             }
+        }
+    }
 
+    private void closeConnection(SelectionKey key) {
+        DeviceConnection connection = (DeviceConnection) key.attachment();
+        key.cancel();
+        try {
+            key.channel().close();
         } catch (IOException e) {
-            System.err.println("Error handling device connection: " + e.getMessage());
-        } finally {
+            System.err.println("Error closing client socket: " + e.getMessage());
+        }
+        if (connection != null && !connection.closed) {
+            connection.closed = true;
+            activeConnections.decrementAndGet();
+            activeConnectionsPerPort.get(connection.port).decrementAndGet();
+        }
+    }
+
+    private List<Integer> parsePorts(String ports) {
+        Set<Integer> parsed = new LinkedHashSet<>();
+        for (String port : ports.split(",")) {
             try {
-                clientSocket.close();
-            } catch (IOException e) {
-                System.err.println("Error closing client socket: " + e.getMessage());
+                if (!port.trim().isEmpty()) {
+                    parsed.add(Integer.parseInt(port.trim()));
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid zkteco.listener.ports entry: " + port);
             }
         }
+        return new ArrayList<>(parsed);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Per-connection state kept as the selection key attachment
+     */
+    private static class DeviceConnection {
+        final int port;
+        final String deviceIp;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        long lastActivity = System.currentTimeMillis();
+        boolean closed = false;
+
+        // null until the first bytes arrive
+        Boolean binary;
+        ZKTecoFrameDecoder decoder;
+        // Acks not yet taken by the socket, in write mode
+        ByteBuffer outbound;
+
+        DeviceConnection(int port, String deviceIp) {
+            this.port = port;
+            this.deviceIp = deviceIp;
+        }
+    }
+
+    private static class PendingAck {
+        final SelectionKey key;
+        final int sessionId;
+        final int replyId;
+
+        PendingAck(SelectionKey key, int sessionId, int replyId) {
+            this.key = key;
+            this.sessionId = sessionId;
+            this.replyId = replyId;
+        }
     }
 
     private void processDeviceData(String data, String deviceIp) {
@@ -147,104 +540,98 @@ public class ZKTecoTcpListenerService {
 
     private void processAttendanceData(String machineUserId, String timeStr, String status, String deviceIp) {
         try {
-            // Find employee mapping by machine user ID and device IP
             Integer easytimeEmployeeId = Integer.parseInt(machineUserId);
 
-            // Find terminal by IP
-            String terminalSerial = findTerminalByIp(deviceIp);
-            if (terminalSerial == null) {
-                System.err.println("No terminal found for IP: " + deviceIp);
-                return;
-            }
-
-            // Find employee mapping
-            Optional<EmployeeDeviceMapping> mappingOpt = mappingRepo
-                    .findByEasytimeEmployeeIdAndTerminalSerial(easytimeEmployeeId, terminalSerial);
-
-            if (mappingOpt.isEmpty()) {
-                System.err.println("No employee mapping found for machine user " + machineUserId +
-                        " on terminal " + terminalSerial);
-                return;
-            }
-
-            EmployeeDeviceMapping mapping = mappingOpt.get();
-            Employee employee = employeeRepo.findById(mapping.getHrmEmployeeId()).orElse(null);
-
-            if (employee == null) {
-                System.err.println("Employee not found: " + mapping.getHrmEmployeeId());
-                return;
-            }
-
             // Parse time
             LocalDateTime punchDateTime;
             try {
-                punchDateTime = LocalDateTime.parse(timeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                punchDateTime = LocalDateTime.parse(timeStr, PUNCH_TIME_FORMAT);
             } catch (Exception e) {
                 // Try alternative format
                 punchDateTime = LocalDateTime.now();
             }
 
-            LocalDate punchDate = punchDateTime.toLocalDate();
-            LocalTime punchTime = punchDateTime.toLocalTime();
-            String dateStr = punchDate.toString();
+            recordPunch(easytimeEmployeeId, punchDateTime, "1".equals(status), "fingerprint", deviceIp,
+                    machineUserId + "\t" + timeStr + "\t" + status + "\t" + deviceIp);
 
-            // Find or create attendance record
-            Optional<Attendance> existingAttendance = attendanceRepo.findByEmployeeAndDate(employee, dateStr);
+        } catch (Exception e) {
+            System.err.println("Error processing attendance data: " + e.getMessage());
+        }
+    }
 
-            Attendance attendance;
-            if (existingAttendance.isPresent()) {
-                attendance = existingAttendance.get();
-            } else {
-                attendance = new Attendance();
-                attendance.setEmployee(employee);
-                attendance.setDate(dateStr);
-                attendance.setStatus("Present");
-                attendance.setAttendanceSource("BIOMETRIC");
-                attendance.setAttendanceType("OFFICE");
+    /**
+     * Handle a punch decoded from a binary ZK frame
+     *
+     * @return true when the punch may be acknowledged: the engine took it, or
+     *         it can never be processed and resending would not help
+     */
+    private boolean processBinaryPunch(ZKTecoPunchEvent event, String deviceIp) {
+        try {
+            LocalDateTime punchDateTime = event.toLocalDateTime();
+            if (punchDateTime == null) {
+                System.err.println("Invalid punch time from device " + deviceIp + ": " + event);
+                return true;
             }
+            return recordPunch(Math.toIntExact(event.getUserId()), punchDateTime, event.isCheckIn(),
+                    verifyTypeName(event.getVerifyType()), deviceIp, event + " from " + deviceIp);
+        } catch (Exception e) {
+            System.err.println("Error processing binary punch: " + e.getMessage());
+            return false;
+        }
+    }
 
-            // Set enhanced biometric fields
-            attendance.setPunchSource("BIOMETRIC");
-            attendance.setBiometricUserId(machineUserId);
-            attendance.setDeviceSerial(terminalSerial);
-            attendance.setVerifyType("fingerprint");
-            attendance.setRawData(machineUserId + "\t" + timeStr + "\t" + status + "\t" + deviceIp);
-
-            // Set punch time based on status
-            String punchType;
-            if ("1".equals(status)) { // Check in
-                attendance.setPunchInTime(punchTime);
-                punchType = "check_in";
-            } else { // Check out
-                attendance.setPunchOutTime(punchTime);
-                punchType = "check_out";
+    /**
+     * @return true when the punch engine accepted the punch
+     */
+    private boolean recordPunch(Integer easytimeEmployeeId, LocalDateTime punchDateTime, boolean checkIn,
+            String verifyType, String deviceIp, String rawData) {
+        try {
+            // Find terminal by IP
+            String terminalSerial = terminalRegistry.findSerialByIp(deviceIp);
+            if (terminalSerial == null) {
+                System.err.println("No terminal found for IP: " + deviceIp);
+                return false;
             }
 
-            // Calculate durations
-            attendance.calculateDurations();
-
-            // Save attendance
-            Attendance savedAttendance = attendanceRepo.save(attendance);
-
-            // Send real-time notification
-            broadcastAttendanceUpdate(employee.getSubadmin().getId(), savedAttendance, punchType);
-
-            System.out.println("✅ Real-time attendance processed: " + employee.getFullName() +
-                    " " + punchType + " at " + punchTime);
+            String punchType = checkIn ? "check_in" : "check_out";
+            PunchOutcome outcome = punchEngine.process(new PunchEvent("ZKTECO_TCP")
+                    .punchTime(punchDateTime)
+                    .checkIn(checkIn)
+                    .deviceSerial(terminalSerial)
+                    .deviceUserId(easytimeEmployeeId)
+                    .verifyType(verifyType)
+                    .rawData(rawData)
+                    .onWritten((record, saved) -> broadcastAttendanceUpdate(
+                            record.getEmployee().getSubadminId(), saved, punchType)));
+
+            if (outcome.getStatus() == PunchOutcome.Status.QUEUE_FULL) {
+                droppedRecords.incrementAndGet();
+                return false;
+            }
+            return true;
 
         } catch (Exception e) {
             System.err.println("Error processing attendance data: " + e.getMessage());
+            return false;
         }
     }
 
-    private String findTerminalByIp(String deviceIp) {
-        // For now, return the known terminal serial for your F22
-        if ("192.168.1.201".equals(deviceIp)) {
-            return "BOCK194960340";
+    private String verifyTypeName(int verifyType) {
+        switch (verifyType) {
+            case 0:
+                return "password";
+            case 2:
+                return "card";
+            case 15:
+                return "face";
+            case 25:
+                return "palm";
+            default:
+                return "fingerprint";
         }
-        return null;
     }
 
+
     private void broadcastAttendanceUpdate(Integer subadminId, Attendance attendance, String punchType) {
         try {
             Map<String, Object> update = new HashMap<>();
@@ -270,14 +657,41 @@ public class ZKTecoTcpListenerService {
     }
 
     public boolean isListening() {
-        return isRunning && serverSocket != null && !serverSocket.isClosed();
+        return isRunning && selector != null && selector.isOpen() && !serverChannels.isEmpty();
     }
 
     public Map<String, Object> getListenerStatus() {
         Map<String, Object> status = new HashMap<>();
         status.put("listening", isListening());
-        status.put("port", LISTEN_PORT);
+        status.put("enabled", listenerEnabled);
+        status.put("bindAddress", bindAddress);
+        status.put("ports", new TreeSet<>(serverChannels.keySet()));
+        status.put("failedPorts", new TreeMap<>(failedPorts));
         status.put("serverRunning", isRunning);
+        status.put("terminalRegistry", terminalRegistry.getStats());
+        status.put("punchEngine", punchEngine.getStats());
+
+        Map<Integer, Map<String, Object>> perPort = new TreeMap<>();
+        for (Integer port : serverChannels.keySet()) {
+            Map<String, Object> portStatus = new HashMap<>();
+            portStatus.put("activeConnections", activeConnectionsPerPort.get(port).get());
+            portStatus.put("acceptedConnections", acceptedConnectionsPerPort.get(port).get());
+            perPort.put(port, portStatus);
+        }
+        status.put("connectionsPerPort", perPort);
+        status.put("activeConnections", activeConnections.get());
+        status.put("maxConnections", maxConnections);
+        status.put("rejectedConnections", rejectedConnections.get());
+        status.put("idleTimeoutSeconds", idleTimeoutSeconds);
+        status.put("idleTimeouts", idleTimeouts.get());
+        status.put("workerQueueDepth", workerPool != null ? workerPool.getQueue().size() : 0);
+        status.put("droppedRecords", droppedRecords.get());
+        status.put("binaryFrames", binaryFrames.get());
+        status.put("binaryPunches", binaryPunches.get());
+        status.put("checksumErrors", checksumErrors.get());
+        status.put("invalidUserIds", invalidUserIds.get());
+        status.put("pendingAcks", pendingAcks.size());
+        status.put("droppedAcks", droppedAcks.get());
         return status;
     }
 
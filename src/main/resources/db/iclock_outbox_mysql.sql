@@ -0,0 +1,17 @@
+-- Change capture for iclock_transaction (used by IclockOutboxConsumer).
+-- Run once per source database, then set biometric.outbox.enabled=true.
+-- Replace easywdms with the database named in biometric.outbox.databases.
+
+CREATE TABLE IF NOT EXISTS easywdms.iclock_outbox (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    transaction_id INT NOT NULL,
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    KEY idx_iclock_outbox_created_at (created_at)
+) ENGINE = InnoDB;
+
+DROP TRIGGER IF EXISTS easywdms.trg_iclock_transaction_outbox;
+
+CREATE TRIGGER easywdms.trg_iclock_transaction_outbox
+    AFTER INSERT ON easywdms.iclock_transaction
+    FOR EACH ROW
+    INSERT INTO easywdms.iclock_outbox (transaction_id) VALUES (NEW.id);
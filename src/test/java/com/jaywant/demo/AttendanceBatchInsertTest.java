@@ -0,0 +1,139 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import com.jaywant.demo.Config.IdSequenceInitializer;
+import com.jaywant.demo.Entity.Attendance;
+import com.jaywant.demo.Entity.Reminder;
+import com.jaywant.demo.Repo.AttendanceRepo;
+import com.jaywant.demo.Repo.ReminderRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Compares the statements Hibernate prepares on H2 when saveAll writes the
+ * same number of rows with IDENTITY ids (Reminder, the shape Attendance had
+ * before) and with pooled table ids (Attendance). IDENTITY needs one INSERT
+ * per row; pooled ids with jdbc.batch_size=50 go out in batches of 50 plus
+ * one id block per 50 rows.
+ */
+@DataJpaTest
+@Import(IdSequenceInitializer.class)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false"
+})
+public class AttendanceBatchInsertTest {
+
+    private static final int EMPLOYEES = 40;
+    private static final int DAYS = 30;
+
+    @Autowired
+    private AttendanceRepo attendanceRepo;
+
+    @Autowired
+    private ReminderRepository reminderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdSequenceInitializer idSequenceInitializer;
+
+    @Test
+    public void pooledIdsBatchWhereIdentityIdsCannot() {
+        // Before: an IDENTITY-id entity has to read back every generated key
+        List<Reminder> reminders = reminders(EMPLOYEES * DAYS);
+        long identityStatements = preparedStatements(() -> reminderRepository.saveAllAndFlush(reminders));
+        assertTrue(identityStatements >= reminders.size(),
+                "IDENTITY ids sent " + identityStatements + " statements for " + reminders.size() + " rows");
+
+        // After: Attendance takes its ids from id_sequences in blocks of 50
+        List<Attendance> rows = monthOfAttendance();
+        Statistics statistics = statistics();
+        long pooledStatements = preparedStatements(() -> attendanceRepo.saveAllAndFlush(rows));
+        assertEquals(rows.size(), statistics.getEntityInsertCount());
+        assertEquals(rows.size(), queryLong("SELECT COUNT(DISTINCT id) FROM attendance"));
+        assertTrue(pooledStatements * 10 < identityStatements,
+                "expected batched inserts, got " + pooledStatements + " statements for " + rows.size() +
+                        " rows against " + identityStatements + " with IDENTITY ids");
+    }
+
+    @Test
+    public void seedMovesNextValPastExistingIds() {
+        jdbcTemplate.update("INSERT INTO attendance (id, date, status) VALUES (?, ?, ?)", 5000L, "2025-07-01",
+                "Present");
+        jdbcTemplate.update("UPDATE id_sequences SET next_val = ? WHERE sequence_name = 'attendance'", 10L);
+
+        idSequenceInitializer.seed();
+
+        // The first block handed out is the one just below next_val
+        long nextVal = queryLong("SELECT next_val FROM id_sequences WHERE sequence_name = 'attendance'");
+        assertTrue(nextVal - IdSequenceInitializer.ALLOCATION_SIZE >= 5000L,
+                "next_val " + nextVal + " would hand out ids at or below MAX(id) 5000");
+    }
+
+    private long preparedStatements(Runnable save) {
+        Statistics statistics = statistics();
+        statistics.clear();
+        save.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private long queryLong(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    private static List<Reminder> reminders(int count) {
+        List<Reminder> reminders = new ArrayList<>(count);
+        LocalDate first = LocalDate.of(2025, 7, 1);
+        for (int i = 0; i < count; i++) {
+            Reminder reminder = new Reminder();
+            reminder.setFunctionName("Review");
+            reminder.setReminderDate(first.plusDays(i % DAYS));
+            reminder.setSubadminId((long) (i % EMPLOYEES));
+            reminders.add(reminder);
+        }
+        return reminders;
+    }
+
+    private static List<Attendance> monthOfAttendance() {
+        List<Attendance> rows = new ArrayList<>(EMPLOYEES * DAYS);
+        LocalDate first = LocalDate.of(2025, 7, 1);
+        for (int employee = 0; employee < EMPLOYEES; employee++) {
+            for (int day = 0; day < DAYS; day++) {
+                Attendance attendance = new Attendance();
+                attendance.setDate(first.plusDays(day).toString());
+                attendance.setStatus("Present");
+                attendance.setPunchInTime(LocalTime.of(9, employee % 30));
+                attendance.setPunchOutTime(LocalTime.of(18, day % 30));
+                attendance.setBiometricUserId(String.valueOf(employee));
+                rows.add(attendance);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,753 @@
+package com.jaywant.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jaywant.demo.Service.ZKTecoFrameDecoder;
+import com.jaywant.demo.Service.ZKTecoPunchEvent;
+
+/**
+ * Load generator that plays N ZKTeco terminals against the ingest paths:
+ *
+ * <ul>
+ * <li>TCP: binary CMD_REG_EVENT frames to ZKTecoTcpListenerService; latency is
+ * until the listener's ACK for that frame.</li>
+ * <li>HTTP: one POST /api/punch per punch; latency is until the response.</li>
+ * <li>HTTP_BULK: POST /api/punch/bulk every bulkSize punches per terminal;
+ * latency is from the punch until its upload is answered.</li>
+ * <li>ICLOCK: rows inserted into an iclock_transaction stand-in; latency is
+ * until the poller's sync_cursor row passes the row id, or the insert itself
+ * when no cursor source is given.</li>
+ * </ul>
+ *
+ * Each terminal punches punchesPerMinute, times burstMultiplier for the first
+ * burstSeconds (a shift change), for employees picked at random from a pool of
+ * employees codes starting at empCodeStart. Run {@link #main} against a
+ * running server, e.g.
+ *
+ * <pre>
+ * paths=tcp,http,bulk,iclock terminals=50 employees=2000 ppm=4 burstMultiplier=15 burstSeconds=120
+ * duration=600 host=localhost tcpPort=8000 baseUrl=http://localhost:8080
+ * jdbcUrl=jdbc:mysql://localhost:3306/easywdms?user=...&amp;password=... cursorSource=iclock:easywdms
+ * </pre>
+ *
+ * The listener maps a TCP connection to a terminal by source IP, so with
+ * tcpBindPrefix=127.0.0. each simulated terminal connects from its own
+ * loopback address (Linux) and can be listed in biometric.terminals.static-ips.
+ */
+public class DeviceFleetSimulator {
+
+    private static final DateTimeFormatter PUNCH_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public enum IngestPath {
+        TCP, HTTP, HTTP_BULK, ICLOCK
+    }
+
+    /**
+     * Shape of the simulated load.
+     */
+    public static class Profile {
+        int terminals = 10;
+        int employees = 200;
+        int empCodeStart = 1000;
+        double punchesPerMinute = 6;
+        double burstMultiplier = 1;
+        int burstSeconds = 0;
+        int durationSeconds = 60;
+        int punchesPerTerminal;
+        int bulkSize = 50;
+        String serialPrefix = "SIM";
+        String tcpBindPrefix;
+
+        public Profile terminals(int terminals) {
+            this.terminals = terminals;
+            return this;
+        }
+
+        public Profile employees(int employees) {
+            this.employees = employees;
+            return this;
+        }
+
+        public Profile empCodeStart(int empCodeStart) {
+            this.empCodeStart = empCodeStart;
+            return this;
+        }
+
+        public Profile punchesPerMinute(double punchesPerMinute) {
+            this.punchesPerMinute = punchesPerMinute;
+            return this;
+        }
+
+        public Profile burst(double multiplier, int seconds) {
+            this.burstMultiplier = multiplier;
+            this.burstSeconds = seconds;
+            return this;
+        }
+
+        public Profile durationSeconds(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        /**
+         * Stop each terminal after this many punches instead of after
+         * durationSeconds, so a run sends an exact total.
+         */
+        public Profile punchesPerTerminal(int punchesPerTerminal) {
+            this.punchesPerTerminal = punchesPerTerminal;
+            return this;
+        }
+
+        public Profile bulkSize(int bulkSize) {
+            this.bulkSize = bulkSize;
+            return this;
+        }
+
+        public Profile serialPrefix(String serialPrefix) {
+            this.serialPrefix = serialPrefix;
+            return this;
+        }
+
+        public Profile tcpBindPrefix(String tcpBindPrefix) {
+            this.tcpBindPrefix = tcpBindPrefix;
+            return this;
+        }
+
+        String serial(int terminal) {
+            return serialPrefix + String.format("%03d", terminal + 1);
+        }
+    }
+
+    /**
+     * Delivery counts, throughput and latency percentiles of one path.
+     */
+    public static class Report {
+        private final IngestPath path;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private long[] latencies = new long[1024];
+        private int count;
+        private long startNanos;
+        private long endNanos;
+
+        Report(IngestPath path) {
+            this.path = path;
+        }
+
+        synchronized void record(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            delivered.incrementAndGet();
+        }
+
+        public IngestPath getPath() {
+            return path;
+        }
+
+        public long getSent() {
+            return sent.get();
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Latency at percentile p (0-100) in milliseconds.
+         */
+        public synchronized double percentileMs(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+        }
+
+        /**
+         * Delivered punches per second over the run.
+         */
+        public double getThroughput() {
+            double seconds = Math.max(endNanos - startNanos, 1) / 1e9;
+            return delivered.get() / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s sent=%d delivered=%d failed=%d  %.1f/s  p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    path, sent.get(), delivered.get(), failed.get(), getThroughput(),
+                    percentileMs(50), percentileMs(95), percentileMs(99), percentileMs(100));
+        }
+    }
+
+    /**
+     * One generated punch.
+     */
+    static class Punch {
+        final String terminalSerial;
+        final int empCode;
+        final int punchState;
+        final LocalDateTime punchTime;
+        final long sequence;
+        final long createdNanos = System.nanoTime();
+
+        Punch(String terminalSerial, int empCode, int punchState, LocalDateTime punchTime, long sequence) {
+            this.terminalSerial = terminalSerial;
+            this.empCode = empCode;
+            this.punchState = punchState;
+            this.punchTime = punchTime;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * What a terminal does with each punch on one path.
+     */
+    interface TerminalSession extends AutoCloseable {
+        void send(Punch punch) throws Exception;
+
+        /**
+         * Deliver anything buffered and wait for outstanding acknowledgements.
+         */
+        default void drain() throws Exception {
+        }
+
+        @Override
+        default void close() throws Exception {
+        }
+    }
+
+    interface SessionFactory {
+        TerminalSession open(int terminal, Report report) throws Exception;
+    }
+
+    private final Profile profile;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicIntegerArray punchCounts;
+
+    public DeviceFleetSimulator(Profile profile) {
+        this.profile = profile;
+        this.punchCounts = new AtomicIntegerArray(profile.employees);
+    }
+
+    // ---- Paths ----
+
+    public Report runTcp(String host, int port) throws Exception {
+        return run(IngestPath.TCP, (terminal, report) -> new TcpSession(terminal, host, port, report));
+    }
+
+    public Report runHttp(String baseUrl) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        return run(IngestPath.HTTP, (terminal, report) -> punch -> {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/punch"))
+                    .header("Content-Type", "application/json")
+                    .header("Idempotency-Key", idempotencyKey(punch))
+                    .POST(HttpRequest.BodyPublishers.ofString(json(punch)))
+                    .build();
+            report.sent.incrementAndGet();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 == 2) {
+                report.record(System.nanoTime() - punch.createdNanos);
+            } else {
+                report.failed.incrementAndGet();
+            }
+        });
+    }
+
+    public Report runHttpBulk(String baseUrl) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        return run(IngestPath.HTTP_BULK, (terminal, report) -> new BulkSession(client, baseUrl, terminal, report));
+    }
+
+    /**
+     * Insert into table (see {@link #createIclockStandIn}). With cursorSource
+     * set, a punch counts as delivered once sync_cursor.last_id for that
+     * source reaches its row id.
+     */
+    public Report runIclock(String jdbcUrl, String table, String cursorSource) throws Exception {
+        ConcurrentNavigableMap<Long, Long> pending = new ConcurrentSkipListMap<>();
+        Report[] holder = new Report[1];
+        CursorWatcher watcher = cursorSource != null ? new CursorWatcher(jdbcUrl, cursorSource, pending, holder) : null;
+        if (watcher != null) {
+            watcher.start();
+        }
+        try {
+            Report report = run(IngestPath.ICLOCK, (terminal, r) -> {
+                holder[0] = r;
+                return new IclockSession(jdbcUrl, table, r, watcher != null ? pending : null);
+            });
+            if (watcher != null) {
+                watcher.awaitEmpty(30000);
+                report.failed.addAndGet(pending.size());
+                report.endNanos = System.nanoTime();
+            }
+            return report;
+        } finally {
+            if (watcher != null) {
+                watcher.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Columns of iclock_transaction the pollers read.
+     */
+    public static void createIclockStandIn(Connection connection, String table) throws Exception {
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("CREATE TABLE IF NOT EXISTS " + table + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "emp_code VARCHAR(20), emp_id INT, punch_time DATETIME, punch_state VARCHAR(5), "
+                    + "verify_type INT, terminal_sn VARCHAR(50), upload_time DATETIME)");
+        }
+    }
+
+    // ---- Load loop ----
+
+    private Report run(IngestPath path, SessionFactory factory) throws Exception {
+        Report report = new Report(path);
+        ExecutorService terminals = Executors.newFixedThreadPool(profile.terminals, runnable -> {
+            Thread thread = new Thread(runnable, "sim-" + path.name().toLowerCase());
+            thread.setDaemon(true);
+            return thread;
+        });
+        report.startNanos = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < profile.terminals; i++) {
+                int terminal = i;
+                running.add(terminals.submit(() -> {
+                    runTerminal(terminal, factory, report);
+                    return null;
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            terminals.shutdownNow();
+        }
+        report.endNanos = System.nanoTime();
+        return report;
+    }
+
+    private void runTerminal(int terminal, SessionFactory factory, Report report) throws Exception {
+        Random random = new Random(terminal * 31L + runId.hashCode());
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(profile.durationSeconds);
+        long burstEnd = start + TimeUnit.SECONDS.toNanos(profile.burstSeconds);
+        long sequence = 0;
+        // Spread terminals over the first interval so they do not fire in step
+        long next = start + (long) (random.nextDouble() * intervalNanos(false));
+
+        try (TerminalSession session = factory.open(terminal, report)) {
+            while (true) {
+                long now = System.nanoTime();
+                if (profile.punchesPerTerminal > 0 ? sequence >= profile.punchesPerTerminal : next >= end) {
+                    break;
+                }
+                if (next > now) {
+                    TimeUnit.NANOSECONDS.sleep(next - now);
+                }
+                int employee = random.nextInt(profile.employees);
+                // Alternate each employee between in and out
+                int state = punchCounts.getAndIncrement(employee) % 2;
+                Punch punch = new Punch(profile.serial(terminal), profile.empCodeStart + employee, state,
+                        LocalDateTime.now().withNano(0), ++sequence);
+                try {
+                    session.send(punch);
+                } catch (Exception e) {
+                    report.failed.incrementAndGet();
+                }
+                next += intervalNanos(next < burstEnd);
+            }
+            session.drain();
+        }
+    }
+
+    private long intervalNanos(boolean burst) {
+        double perMinute = profile.punchesPerMinute * (burst ? profile.burstMultiplier : 1);
+        return (long) (60e9 / Math.max(perMinute, 0.001));
+    }
+
+    private String idempotencyKey(Punch punch) {
+        return "sim-" + runId + ":" + punch.terminalSerial + ":" + punch.sequence;
+    }
+
+    private String json(Punch punch) {
+        return "{\"emp_code\":\"" + punch.empCode + "\",\"device_serial\":\"" + punch.terminalSerial
+                + "\",\"punch_time\":\"" + punch.punchTime.format(PUNCH_TIME) + "\",\"punch_state\":\""
+                + punch.punchState + "\",\"verify_type\":\"fingerprint\",\"device_sequence\":\"" + punch.sequence
+                + "\",\"idempotency_key\":\"" + idempotencyKey(punch) + "\"}";
+    }
+
+    // ---- Sessions ----
+
+    /**
+     * A terminal's ZKTeco connection: CMD_CONNECT, then one CMD_REG_EVENT frame
+     * per punch, matched to the listener's ACK by reply id.
+     */
+    private class TcpSession implements TerminalSession {
+        final Socket socket = new Socket();
+        final OutputStream out;
+        final int sessionId;
+        final Report report;
+        final Map<Integer, Long> awaitingAck = new ConcurrentHashMap<>();
+        final Thread reader;
+        int replyId;
+
+        TcpSession(int terminal, String host, int port, Report report) throws IOException {
+            this.sessionId = terminal + 1;
+            this.report = report;
+            if (profile.tcpBindPrefix != null) {
+                socket.bind(new InetSocketAddress(profile.tcpBindPrefix + (terminal + 10), 0));
+            }
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            out = socket.getOutputStream();
+            reader = new Thread(this::readAcks, "sim-tcp-ack-" + sessionId);
+            reader.setDaemon(true);
+            reader.start();
+
+            ByteBuffer connect = ByteBuffer.allocate(16);
+            ZKTecoFrameDecoder.writeFrame(connect, ZKTecoFrameDecoder.CMD_CONNECT, sessionId, nextReplyId());
+            out.write(connect.array());
+            out.flush();
+        }
+
+        private int nextReplyId() {
+            replyId = replyId % 65534 + 1;
+            return replyId;
+        }
+
+        @Override
+        public void send(Punch punch) throws IOException {
+            int reply = nextReplyId();
+            ByteBuffer frame = ByteBuffer.allocate(28);
+            putU16(frame, ZKTecoFrameDecoder.MAGIC_1);
+            putU16(frame, ZKTecoFrameDecoder.MAGIC_2);
+            putU16(frame, 20);
+            putU16(frame, 0);
+            putU16(frame, ZKTecoFrameDecoder.CMD_REG_EVENT);
+            putU16(frame, 0);
+            putU16(frame, sessionId);
+            putU16(frame, reply);
+            // 12-byte record: u32 user id, verify type, state, yy mm dd hh mi ss
+            putU16(frame, punch.empCode & 0xFFFF);
+            putU16(frame, punch.empCode >>> 16);
+            frame.put((byte) 1);
+            frame.put((byte) punch.punchState);
+            frame.put((byte) (punch.punchTime.getYear() - 2000));
+            frame.put((byte) punch.punchTime.getMonthValue());
+            frame.put((byte) punch.punchTime.getDayOfMonth());
+            frame.put((byte) punch.punchTime.getHour());
+            frame.put((byte) punch.punchTime.getMinute());
+            frame.put((byte) punch.punchTime.getSecond());
+            int checksum = ZKTecoFrameDecoder.checksum(frame, 8, 20);
+            frame.put(10, (byte) checksum);
+            frame.put(11, (byte) (checksum >>> 8));
+
+            awaitingAck.put(reply, punch.createdNanos);
+            report.sent.incrementAndGet();
+            try {
+                out.write(frame.array());
+                out.flush();
+            } catch (IOException e) {
+                awaitingAck.remove(reply);
+                throw e;
+            }
+        }
+
+        private void readAcks() {
+            ZKTecoFrameDecoder decoder = new ZKTecoFrameDecoder();
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            byte[] chunk = new byte[1024];
+            try {
+                InputStream in = socket.getInputStream();
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    buffer.put(chunk, 0, read);
+                    buffer.flip();
+                    decoder.decode(buffer, new ZKTecoFrameDecoder.FrameListener() {
+                        @Override
+                        public void onPunch(ZKTecoPunchEvent event) {
+                        }
+
+                        @Override
+                        public void onCommand(int command, int session, int reply) {
+                            Long sentNanos = awaitingAck.remove(reply);
+                            if (command == ZKTecoFrameDecoder.CMD_ACK_OK && sentNanos != null) {
+                                report.record(System.nanoTime() - sentNanos);
+                            }
+                        }
+                    });
+                    buffer.compact();
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        @Override
+        public void drain() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!awaitingAck.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            report.failed.addAndGet(awaitingAck.size());
+            socket.close();
+        }
+    }
+
+    private class BulkSession implements TerminalSession {
+        final HttpClient client;
+        final String baseUrl;
+        final String terminalSerial;
+        final Report report;
+        final List<Punch> buffered = new ArrayList<>();
+
+        BulkSession(HttpClient client, String baseUrl, int terminal, Report report) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.terminalSerial = profile.serial(terminal);
+            this.report = report;
+        }
+
+        @Override
+        public void send(Punch punch) throws Exception {
+            buffered.add(punch);
+            report.sent.incrementAndGet();
+            if (buffered.size() >= profile.bulkSize) {
+                drain();
+            }
+        }
+
+        @Override
+        public void drain() throws Exception {
+            if (buffered.isEmpty()) {
+                return;
+            }
+            StringBuilder body = new StringBuilder("{\"device_serial\":\"").append(terminalSerial)
+                    .append("\",\"punches\":[");
+            for (int i = 0; i < buffered.size(); i++) {
+                body.append(i > 0 ? "," : "").append(json(buffered.get(i)));
+            }
+            body.append("]}");
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/punch/bulk"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                long now = System.nanoTime();
+                for (Punch punch : buffered) {
+                    if (response.statusCode() / 100 == 2) {
+                        report.record(now - punch.createdNanos);
+                    } else {
+                        report.failed.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                report.failed.addAndGet(buffered.size());
+            } finally {
+                buffered.clear();
+            }
+        }
+    }
+
+    private class IclockSession implements TerminalSession {
+        final Connection connection;
+        final PreparedStatement insert;
+        final Report report;
+        final Map<Long, Long> pending;
+
+        IclockSession(String jdbcUrl, String table, Report report, Map<Long, Long> pending) throws Exception {
+            this.connection = DriverManager.getConnection(jdbcUrl);
+            this.insert = connection.prepareStatement("INSERT INTO " + table
+                    + " (emp_code, emp_id, punch_time, punch_state, verify_type, terminal_sn, upload_time)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+            this.report = report;
+            this.pending = pending;
+        }
+
+        @Override
+        public void send(Punch punch) throws Exception {
+            insert.setString(1, String.valueOf(punch.empCode));
+            insert.setInt(2, punch.empCode);
+            insert.setTimestamp(3, Timestamp.valueOf(punch.punchTime));
+            insert.setString(4, String.valueOf(punch.punchState));
+            insert.setInt(5, 1);
+            insert.setString(6, punch.terminalSerial);
+            insert.setTimestamp(7, Timestamp.valueOf(LocalDateTime.now()));
+            report.sent.incrementAndGet();
+            insert.executeUpdate();
+            if (pending == null) {
+                report.record(System.nanoTime() - punch.createdNanos);
+                return;
+            }
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                keys.next();
+                pending.put(keys.getLong(1), punch.createdNanos);
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            insert.close();
+            connection.close();
+        }
+    }
+
+    /**
+     * Polls sync_cursor and completes every pending row at or below last_id.
+     */
+    private static class CursorWatcher extends Thread {
+        final String jdbcUrl;
+        final String cursorSource;
+        final ConcurrentNavigableMap<Long, Long> pending;
+        final Report[] report;
+
+        CursorWatcher(String jdbcUrl, String cursorSource, ConcurrentNavigableMap<Long, Long> pending,
+                Report[] report) {
+            super("sim-iclock-cursor");
+            setDaemon(true);
+            this.jdbcUrl = jdbcUrl;
+            this.cursorSource = cursorSource;
+            this.pending = pending;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            try (Connection connection = DriverManager.getConnection(jdbcUrl);
+                    PreparedStatement query = connection.prepareStatement(
+                            "SELECT last_id FROM sync_cursor WHERE source_name = ?")) {
+                query.setString(1, cursorSource);
+                while (!isInterrupted()) {
+                    try (ResultSet row = query.executeQuery()) {
+                        if (row.next()) {
+                            long lastId = row.getLong(1);
+                            long now = System.nanoTime();
+                            Map.Entry<Long, Long> seen;
+                            while ((seen = pending.firstEntry()) != null && seen.getKey() <= lastId) {
+                                if (pending.remove(seen.getKey()) != null) {
+                                    report[0].record(now - seen.getValue());
+                                }
+                            }
+                        }
+                    }
+                    Thread.sleep(20);
+                }
+            } catch (InterruptedException e) {
+                // Done
+            } catch (Exception e) {
+                System.err.println("Cursor watcher stopped: " + e.getMessage());
+            }
+        }
+
+        void awaitEmpty(long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!pending.isEmpty() && System.currentTimeMillis() < deadline && isAlive()) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static void putU16(ByteBuffer out, int value) {
+        out.put((byte) value);
+        out.put((byte) (value >>> 8));
+    }
+
+    // ---- Command line ----
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        Profile profile = new Profile()
+                .terminals(Integer.parseInt(options.getOrDefault("terminals", "10")))
+                .employees(Integer.parseInt(options.getOrDefault("employees", "200")))
+                .empCodeStart(Integer.parseInt(options.getOrDefault("empCodeStart", "1000")))
+                .punchesPerMinute(Double.parseDouble(options.getOrDefault("ppm", "6")))
+                .burst(Double.parseDouble(options.getOrDefault("burstMultiplier", "1")),
+                        Integer.parseInt(options.getOrDefault("burstSeconds", "0")))
+                .durationSeconds(Integer.parseInt(options.getOrDefault("duration", "60")))
+                .punchesPerTerminal(Integer.parseInt(options.getOrDefault("punches", "0")))
+                .bulkSize(Integer.parseInt(options.getOrDefault("bulkSize", "50")))
+                .serialPrefix(options.getOrDefault("serialPrefix", "SIM"))
+                .tcpBindPrefix(options.get("tcpBindPrefix"));
+        DeviceFleetSimulator simulator = new DeviceFleetSimulator(profile);
+
+        List<Report> reports = new ArrayList<>();
+        for (String path : options.getOrDefault("paths", "http").split(",")) {
+            switch (path.trim()) {
+                case "tcp":
+                    reports.add(simulator.runTcp(options.getOrDefault("host", "localhost"),
+                            Integer.parseInt(options.getOrDefault("tcpPort", "8000"))));
+                    break;
+                case "http":
+                    reports.add(simulator.runHttp(options.getOrDefault("baseUrl", "http://localhost:8080")));
+                    break;
+                case "bulk":
+                    reports.add(simulator.runHttpBulk(options.getOrDefault("baseUrl", "http://localhost:8080")));
+                    break;
+                case "iclock":
+                    reports.add(simulator.runIclock(options.get("jdbcUrl"),
+                            options.getOrDefault("table", "iclock_transaction"), options.get("cursorSource")));
+                    break;
+                default:
+                    System.err.println("Unknown path: " + path);
+            }
+        }
+        for (Report report : reports) {
+            System.out.println(report);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.jaywant.demo.Service.ZKTecoFrameDecoder;
+import com.jaywant.demo.Service.ZKTecoPunchEvent;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs a small shift-change profile through every simulator path against
+ * in-process stand-ins: a ZKTeco TCP endpoint that acks with the production
+ * decoder, an HTTP server for /api/punch and /api/punch/bulk, and an H2
+ * iclock_transaction with a poller advancing sync_cursor. Every punch must
+ * arrive exactly once and be acknowledged.
+ */
+public class DeviceFleetSimulatorTest {
+
+    private static final int PUNCHES_PER_TERMINAL = 25;
+
+    private static final DeviceFleetSimulator.Profile PROFILE = new DeviceFleetSimulator.Profile()
+            .terminals(4)
+            .employees(50)
+            .punchesPerMinute(600)
+            .burst(3, 1)
+            .punchesPerTerminal(PUNCHES_PER_TERMINAL)
+            .bulkSize(10);
+
+    @Test
+    public void testTcpPunchesAreAcked() throws Exception {
+        AtomicLong received = new AtomicLong();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> acceptZkteco(server, received));
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            DeviceFleetSimulator.Report report = new DeviceFleetSimulator(PROFILE)
+                    .runTcp("localhost", server.getLocalPort());
+            assertDelivered(report);
+            assertEquals(report.getSent(), received.get());
+        }
+    }
+
+    @Test
+    public void testHttpPathsDeliverEveryPunch() throws Exception {
+        AtomicLong single = new AtomicLong();
+        AtomicLong bulk = new AtomicLong();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/punch", exchange -> respond(exchange, single));
+        server.createContext("/api/punch/bulk", exchange -> respond(exchange, bulk));
+        server.start();
+        try {
+            String baseUrl = "http://localhost:" + server.getAddress().getPort();
+            DeviceFleetSimulator simulator = new DeviceFleetSimulator(PROFILE);
+
+            DeviceFleetSimulator.Report http = simulator.runHttp(baseUrl);
+            assertDelivered(http);
+            assertEquals(http.getSent(), single.get());
+
+            DeviceFleetSimulator.Report bulkReport = simulator.runHttpBulk(baseUrl);
+            assertDelivered(bulkReport);
+            assertEquals(bulkReport.getSent(), bulk.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testIclockRowsAreSeenByPoller() throws Exception {
+        String jdbcUrl = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(jdbcUrl)) {
+            DeviceFleetSimulator.createIclockStandIn(connection, "iclock_transaction");
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("CREATE TABLE sync_cursor (source_name VARCHAR(100) PRIMARY KEY, last_id BIGINT)");
+                ddl.execute("INSERT INTO sync_cursor VALUES ('iclock:sim', 0)");
+            }
+
+            Thread poller = new Thread(() -> poll(jdbcUrl));
+            poller.setDaemon(true);
+            poller.start();
+            try {
+                DeviceFleetSimulator.Report report = new DeviceFleetSimulator(PROFILE)
+                        .runIclock(jdbcUrl, "iclock_transaction", "iclock:sim");
+                assertDelivered(report);
+
+                try (Statement query = connection.createStatement();
+                        ResultSet rows = query.executeQuery("SELECT COUNT(*) FROM iclock_transaction")) {
+                    rows.next();
+                    assertEquals(report.getSent(), rows.getLong(1));
+                }
+            } finally {
+                poller.interrupt();
+            }
+        }
+    }
+
+    private static void assertDelivered(DeviceFleetSimulator.Report report) {
+        assertEquals(4 * PUNCHES_PER_TERMINAL, report.getSent(), report.toString());
+        assertEquals(report.getSent(), report.getDelivered(), report.toString());
+        assertEquals(0, report.getFailed(), report.toString());
+        assertTrue(report.percentileMs(50) <= report.percentileMs(99));
+        assertTrue(report.getThroughput() > 0);
+    }
+
+    private static void acceptZkteco(ServerSocket server, AtomicLong received) {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> ackFrames(socket, received));
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } catch (Exception e) {
+            // Server closed
+        }
+    }
+
+    private static void ackFrames(Socket socket, AtomicLong received) {
+        ZKTecoFrameDecoder decoder = new ZKTecoFrameDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        byte[] chunk = new byte[1024];
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                buffer.put(chunk, 0, read);
+                buffer.flip();
+                decoder.decode(buffer, new ZKTecoFrameDecoder.FrameListener() {
+                    @Override
+                    public void onPunch(ZKTecoPunchEvent event) {
+                        received.incrementAndGet();
+                        ack(out, event.getSessionId(), event.getReplyId());
+                    }
+
+                    @Override
+                    public void onCommand(int command, int sessionId, int replyId) {
+                        ack(out, sessionId, replyId);
+                    }
+                });
+                buffer.compact();
+            }
+        } catch (Exception e) {
+            // Client closed
+        }
+    }
+
+    private static void ack(OutputStream out, int sessionId, int replyId) {
+        ByteBuffer ack = ByteBuffer.allocate(16);
+        ZKTecoFrameDecoder.writeAck(ack, sessionId, replyId);
+        try {
+            out.write(ack.array());
+            out.flush();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, AtomicLong punches)
+            throws java.io.IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        punches.addAndGet(body.split("\"emp_code\"", -1).length - 1);
+        byte[] response = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    /**
+     * Stand-in for the iclock poller: reads rows past the cursor and moves it.
+     */
+    private static void poll(String jdbcUrl) {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl);
+                PreparedStatement next = connection.prepareStatement(
+                        "SELECT MAX(id) FROM iclock_transaction WHERE id > ?");
+                PreparedStatement advance = connection.prepareStatement(
+                        "UPDATE sync_cursor SET last_id = ? WHERE source_name = 'iclock:sim'")) {
+            long lastId = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                next.setLong(1, lastId);
+                try (ResultSet row = next.executeQuery()) {
+                    if (row.next() && row.getObject(1) != null) {
+                        lastId = row.getLong(1);
+                        advance.setLong(1, lastId);
+                        advance.executeUpdate();
+                    }
+                }
+                Thread.sleep(50);
+            }
+        } catch (Exception e) {
+            // Test finished
+        }
+    }
+}
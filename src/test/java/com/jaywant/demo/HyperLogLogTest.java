@@ -0,0 +1,44 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.jaywant.demo.Service.HyperLogLog;
+
+/**
+ * Distinct employee estimates at dashboard sizes, merged across terminals and
+ * round-tripped through the snapshot bytes.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCountsAreExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 3; i++) {
+            for (int code = 100; code < 150; code++) {
+                sketch.add(String.valueOf(code));
+            }
+        }
+        assertEquals(50, sketch.estimate());
+    }
+
+    @Test
+    public void testMergedEstimateWithinFivePercent() {
+        // Two terminals, 20,000 employees, half of them punching on both
+        HyperLogLog gate = new HyperLogLog();
+        HyperLogLog canteen = new HyperLogLog();
+        for (int code = 0; code < 20000; code++) {
+            gate.add("EMP" + code);
+            if (code >= 10000 || code % 2 == 0) {
+                canteen.add("EMP" + code);
+            }
+        }
+
+        HyperLogLog restored = new HyperLogLog(gate.toBytes());
+        restored.merge(canteen);
+        long estimate = restored.estimate();
+        assertTrue(Math.abs(estimate - 20000) < 1000, "estimate " + estimate);
+    }
+}
@@ -0,0 +1,253 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.jaywant.demo.Entity.SyncCursor;
+import com.jaywant.demo.Exception.PunchQueueFullException;
+import com.jaywant.demo.Repo.SyncCursorRepo;
+import com.jaywant.demo.Service.IclockOutboxConsumer;
+import com.jaywant.demo.Service.PunchEvent;
+import com.jaywant.demo.Service.SimpleRealtimeBiometricService;
+import com.jaywant.demo.Service.WriteWatermark;
+
+/**
+ * Runs the outbox consumer against an H2 stand-in for easywdms. An H2 trigger
+ * plays the part of the MySQL trigger in db/iclock_outbox_mysql.sql, so rows
+ * reach the outbox only by inserting punches.
+ */
+public class IclockOutboxConsumerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private Map<String, SyncCursor> cursors;
+    private RecordingService realtimeService;
+    private IclockOutboxConsumer consumer;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE SCHEMA easywdms");
+        jdbcTemplate.execute("""
+                CREATE TABLE easywdms.iclock_transaction (
+                    id INT PRIMARY KEY, emp_code VARCHAR(20), emp_id VARCHAR(20), punch_time TIMESTAMP,
+                    punch_state VARCHAR(5), verify_type INT, terminal_sn VARCHAR(50),
+                    terminal_alias VARCHAR(50), source INT)
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE easywdms.iclock_outbox (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY, transaction_id INT NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)
+                """);
+        jdbcTemplate.execute("CREATE TRIGGER easywdms.trg_iclock_transaction_outbox "
+                + "AFTER INSERT ON easywdms.iclock_transaction FOR EACH ROW CALL '"
+                + OutboxTrigger.class.getName() + "'");
+
+        cursors = new HashMap<>();
+        SyncCursorRepo cursorRepo = mock(SyncCursorRepo.class);
+        when(cursorRepo.findById(anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(cursors.get(inv.<String>getArgument(0))));
+        when(cursorRepo.save(any(SyncCursor.class))).thenAnswer(inv -> {
+            SyncCursor cursor = inv.getArgument(0);
+            cursors.put(cursor.getSourceName(), cursor);
+            return cursor;
+        });
+
+        realtimeService = new RecordingService();
+        consumer = new IclockOutboxConsumer();
+        ReflectionTestUtils.setField(consumer, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(consumer, "syncCursorRepo", cursorRepo);
+        ReflectionTestUtils.setField(consumer, "realtimeService", realtimeService);
+        ReflectionTestUtils.setField(consumer, "batchSize", 100);
+    }
+
+    @Test
+    public void consumesEachPunchOnceInInsertOrder() {
+        insertPunch(11);
+        insertPunch(12);
+        insertPunch(10);
+
+        assertEquals(3, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(11, 12, 10), realtimeService.processedIds);
+        assertEquals(3L, offset());
+
+        // Nothing new: no rows are read again
+        assertEquals(0, consumer.pollOnce("easywdms"));
+
+        insertPunch(13);
+        assertEquals(1, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(11, 12, 10, 13), realtimeService.processedIds);
+    }
+
+    @Test
+    public void replayRewritesConsumedPunches() {
+        insertPunch(1);
+        insertPunch(2);
+        insertPunch(3);
+        consumer.pollOnce("easywdms");
+
+        consumer.replayFrom("easywdms", 1);
+        insertPunch(4);
+
+        assertEquals(3, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(1, 2, 3, 2, 3, 4), realtimeService.processedIds);
+        assertEquals(List.of(false, false, false, true, true, false), realtimeService.replayFlags);
+        assertEquals(4L, offset());
+    }
+
+    @Test
+    public void fullWriterQueueStopsWithoutAdvancingPastThePunch() {
+        insertPunch(1);
+        insertPunch(2);
+        insertPunch(3);
+        realtimeService.rejectOnce.add(2);
+
+        assertEquals(1, consumer.pollOnce("easywdms"));
+        assertEquals(1L, offset());
+
+        assertEquals(2, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(1, 2, 3), realtimeService.processedIds);
+        assertEquals(3L, offset());
+    }
+
+    @Test
+    public void savedOffsetWaitsForTheWriter() {
+        insertPunch(1);
+        insertPunch(2);
+        insertPunch(3);
+        realtimeService.holdWrites = true;
+
+        assertEquals(3, consumer.pollOnce("easywdms"));
+        assertEquals(0L, offset());
+
+        realtimeService.written(1);
+        assertEquals(0, consumer.pollOnce("easywdms"));
+        assertEquals(1L, offset());
+
+        // The write of 2 fails: it is read again, 3 along with it
+        realtimeService.failed(2);
+        realtimeService.written(3);
+        realtimeService.holdWrites = false;
+        assertEquals(2, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(1, 2, 3, 2, 3), realtimeService.processedIds);
+        assertEquals(3L, offset());
+    }
+
+    @Test
+    public void lateCommittedOutboxRowsArePickedUp() {
+        ReflectionTestUtils.setField(consumer, "gapGraceMillis", 60000L);
+        insertPunch(1);
+        insertPunch(2);
+        insertPunch(3);
+        // Outbox row 2 not committed yet when the consumer reads
+        jdbcTemplate.update("DELETE FROM easywdms.iclock_outbox WHERE id = 2");
+
+        assertEquals(2, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(1, 3), realtimeService.processedIds);
+        assertEquals(1L, offset());
+
+        jdbcTemplate.update("INSERT INTO easywdms.iclock_outbox (id, transaction_id) VALUES (2, 2)");
+        assertEquals(1, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(1, 3, 2), realtimeService.processedIds);
+        assertEquals(3L, offset());
+    }
+
+    @Test
+    public void punchesDeletedBeforeConsumptionAreSkipped() {
+        insertPunch(1);
+        insertPunch(2);
+        jdbcTemplate.update("DELETE FROM easywdms.iclock_transaction WHERE id = 1");
+
+        assertEquals(2, consumer.pollOnce("easywdms"));
+        assertEquals(List.of(2), realtimeService.processedIds);
+        assertEquals(2L, offset());
+    }
+
+    private long offset() {
+        SyncCursor cursor = cursors.get("outbox:easywdms");
+        return cursor != null ? cursor.getLastId() : 0L;
+    }
+
+    private void insertPunch(int id) {
+        jdbcTemplate.update("INSERT INTO easywdms.iclock_transaction "
+                + "(id, emp_code, emp_id, punch_time, punch_state, verify_type, terminal_sn) "
+                + "VALUES (?, ?, ?, ?, '0', 1, 'TEST001')",
+                id, "E" + id, String.valueOf(id), Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Stand-in for the MySQL outbox trigger.
+     */
+    public static class OutboxTrigger implements Trigger {
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO easywdms.iclock_outbox (transaction_id) VALUES (?)")) {
+                insert.setObject(1, newRow[0]);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Records the rows handed over by the consumer instead of writing attendance.
+     * Rows count as written at once unless holdWrites is set.
+     */
+    private static class RecordingService extends SimpleRealtimeBiometricService {
+        final List<Integer> processedIds = new ArrayList<>();
+        final List<Boolean> replayFlags = new ArrayList<>();
+        final Set<Integer> rejectOnce = new HashSet<>();
+        final Map<Integer, PunchEvent> heldWrites = new HashMap<>();
+        boolean holdWrites;
+
+        @Override
+        public boolean processIclockRow(String database, Map<String, Object> transaction, boolean replay,
+                WriteWatermark watermark, long position) {
+            int id = ((Number) transaction.get("id")).intValue();
+            if (rejectOnce.remove(id)) {
+                throw new PunchQueueFullException("Punch queue full");
+            }
+            processedIds.add(id);
+            replayFlags.add(replay);
+            if (holdWrites) {
+                PunchEvent event = new PunchEvent("TEST");
+                watermark.track(event, position);
+                heldWrites.put(id, event);
+            }
+            return true;
+        }
+
+        void written(int id) {
+            heldWrites.remove(id).getOnWritten().accept(null, null);
+        }
+
+        void failed(int id) {
+            heldWrites.remove(id).getOnFailed().run();
+        }
+    }
+}
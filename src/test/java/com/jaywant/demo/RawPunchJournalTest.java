@@ -0,0 +1,94 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.jaywant.demo.Service.PunchEvent;
+import com.jaywant.demo.Service.RawPunchJournal;
+
+/**
+ * Appends enough punches to roll several small segments, then reads them
+ * back by time range, terminal and reference, before and after reopening the
+ * directory.
+ */
+public class RawPunchJournalTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 8, 1, 9, 0);
+    private static final int PUNCHES = 400;
+
+    @Test
+    public void testPunchesSurviveRollAndReopen() throws Exception {
+        Path dir = Files.createTempDirectory("punch-journal");
+
+        RawPunchJournal journal = new RawPunchJournal(dir.toString(), 8192, 16);
+        journal.open();
+        String[] references = new String[PUNCHES];
+        for (int i = 0; i < PUNCHES; i++) {
+            references[i] = journal.append(punch(i));
+            assertNotNull(references[i], "append " + i + " failed");
+        }
+        journal.close();
+        assertTrue(((Number) journal.getStats().get("segments")).intValue() > 1, "journal did not roll");
+        assertQueries(journal);
+        assertLookups(journal, references);
+
+        RawPunchJournal reopened = new RawPunchJournal(dir.toString(), 8192, 16);
+        reopened.open();
+        assertQueries(reopened);
+        assertLookups(reopened, references);
+
+        // Appends continue after the recovered tail
+        reopened.append(punch(PUNCHES));
+        assertEquals(PUNCHES + 1, reopened.read(null, null, null, Integer.MAX_VALUE).size());
+    }
+
+    private static void assertQueries(RawPunchJournal journal) {
+        List<RawPunchJournal.JournalRecord> all = journal.read(null, null, null, Integer.MAX_VALUE);
+        assertEquals(PUNCHES, all.size());
+        assertEquals("raw-0", all.get(0).getPayload());
+        assertEquals("raw-" + (PUNCHES - 1), all.get(PUNCHES - 1).getPayload());
+
+        // Punch i is at START + i minutes, from terminal T(i % 2)
+        List<RawPunchJournal.JournalRecord> hour = journal.read(START.plusMinutes(60), START.plusMinutes(120),
+                "T1", Integer.MAX_VALUE);
+        assertEquals(30, hour.size());
+        for (RawPunchJournal.JournalRecord record : hour) {
+            assertEquals("T1", record.getTerminal());
+            assertEquals("iclock", record.getSource());
+        }
+        assertEquals(START.plusMinutes(61), hour.get(0).getPunchTime());
+    }
+
+    private static void assertLookups(RawPunchJournal journal, String[] references) {
+        for (int i = 0; i < references.length; i++) {
+            RawPunchJournal.JournalRecord record = journal.lookup(references[i]);
+            assertNotNull(record, references[i]);
+            assertEquals(references[i], record.getReference());
+            assertEquals("raw-" + i, record.getPayload());
+        }
+        // Not a record start, unknown segment, not a reference
+        String first = references[0];
+        assertNull(journal.lookup(first.substring(0, first.lastIndexOf(':') + 1) + "3"));
+        assertNull(journal.lookup("journal:999:0"));
+        assertNull(journal.lookup("raw-0"));
+    }
+
+    private static PunchEvent punch(int i) {
+        return new PunchEvent("iclock")
+                .dedupKey("easywdms:" + i)
+                .punchTime(START.plusMinutes(i))
+                .checkIn(i % 4 == 0)
+                .deviceSerial("T" + (i % 2))
+                .empCode(String.valueOf(100 + i % 10))
+                .rawData("raw-" + i);
+    }
+}
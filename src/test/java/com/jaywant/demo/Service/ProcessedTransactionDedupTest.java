@@ -0,0 +1,142 @@
+package com.jaywant.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.jaywant.demo.Service.ProcessedTransactionDedup.LongHashSet;
+
+/**
+ * The open-addressing set behind each dedup partition. The keys below are
+ * picked by their home slot in a 16-slot table (key & 15) so the probe runs
+ * and the backward shift on remove are known exactly.
+ */
+public class ProcessedTransactionDedupTest {
+
+    @Test
+    public void testAddIsIdempotent() {
+        LongHashSet set = new LongHashSet(16);
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.contains(42));
+        assertFalse(set.contains(43));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testZeroIsStoredAsOne() {
+        LongHashSet set = new LongHashSet(16);
+        assertTrue(set.add(0));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(1));
+        assertFalse(set.add(1));
+        assertTrue(set.remove(1));
+        assertFalse(set.contains(0));
+    }
+
+    @Test
+    public void testRemoveShiftsTheRestOfTheRunBack() {
+        // 3, 19 and 35 all start at slot 3 and sit in slots 3, 4, 5
+        LongHashSet set = new LongHashSet(16);
+        set.add(3);
+        set.add(19);
+        set.add(35);
+
+        assertTrue(set.remove(19));
+        assertTrue(set.contains(3));
+        assertTrue(set.contains(35));
+        assertFalse(set.contains(19));
+
+        assertTrue(set.remove(3));
+        assertTrue(set.contains(35));
+        assertEquals(1, set.size());
+        assertFalse(set.remove(3));
+    }
+
+    @Test
+    public void testRemoveKeepsEntriesAtOrPastTheirHome() {
+        // Slots 3..6 hold 3 (home 3), 19 (home 3), 5 (home 5), 20 (home 4)
+        LongHashSet set = new LongHashSet(16);
+        set.add(3);
+        set.add(19);
+        set.add(5);
+        set.add(20);
+
+        assertTrue(set.remove(3));
+        assertTrue(set.contains(19));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(20));
+        assertEquals(3, set.size());
+
+        assertTrue(set.remove(19));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(20));
+    }
+
+    @Test
+    public void testRemoveAcrossTheEndOfTheTable() {
+        // 14, 30, 46, 62 start at slot 14 and wrap into 0 and 1; 16 (home 0) lands in 2
+        LongHashSet set = new LongHashSet(16);
+        long[] keys = { 14, 30, 46, 62, 16 };
+        for (long key : keys) {
+            set.add(key);
+        }
+        assertEquals(16, set.capacity());
+
+        assertTrue(set.remove(14));
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue(set.contains(keys[i]), "lost " + keys[i]);
+        }
+
+        assertTrue(set.remove(46));
+        assertTrue(set.contains(30));
+        assertTrue(set.contains(62));
+        assertTrue(set.contains(16));
+        assertEquals(3, set.size());
+        assertFalse(set.remove(78));
+    }
+
+    @Test
+    public void testResizeKeepsEveryKey() {
+        LongHashSet set = new LongHashSet(16);
+        for (long key = 1; key <= 1000; key++) {
+            set.add(key * 16);
+        }
+        assertEquals(1000, set.size());
+        assertTrue(set.capacity() >= 2000);
+
+        for (long key = 1; key <= 1000; key += 2) {
+            assertTrue(set.remove(key * 16));
+        }
+        for (long key = 1; key <= 1000; key++) {
+            assertEquals(key % 2 == 0, set.contains(key * 16), "key " + key * 16);
+        }
+        assertEquals(500, set.size());
+    }
+
+    @Test
+    public void testMatchesHashSetUnderMixedAddsAndRemoves() {
+        // A narrow key range keeps the table crowded with long, wrapping runs
+        Random random = new Random(7);
+        LongHashSet set = new LongHashSet(16);
+        Set<Long> expected = new HashSet<>();
+        for (int op = 0; op < 20000; op++) {
+            long key = 1 + random.nextInt(64) * 32L + random.nextInt(4);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = 1; key < 64 * 32 + 8; key++) {
+            assertEquals(expected.contains(key), set.contains(key), "key " + key);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.jaywant.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.jaywant.demo.Service.ZKTecoFrameDecoder;
+import com.jaywant.demo.Service.ZKTecoPunchEvent;
+
+/**
+ * Conformance suite for the binary ZKTeco decoder, driven by the recorded
+ * device captures in src/test/resources/zkteco/captures. Each capture lists the
+ * punches it must produce in "# expect:" lines.
+ */
+public class ZKTecoFrameDecoderTest {
+
+    private static final int[] CHUNK_SIZES = { 1, 3, 7, 16, 4096 };
+    private static final DateTimeFormatter PUNCH_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Test
+    public void testRecordedCapturesDecodeIdenticallyForAnyChunking() throws Exception {
+        List<Path> captures = listCaptures();
+        assertFalse(captures.isEmpty(), "No ZKTeco captures found");
+
+        for (Path capture : captures) {
+            Capture expected = readCapture(capture);
+            for (int chunkSize : CHUNK_SIZES) {
+                ZKTecoFrameDecoder decoder = new ZKTecoFrameDecoder();
+                List<String> punches = feed(decoder, expected.bytes, chunkSize);
+
+                assertEquals(expected.punches, punches,
+                        capture.getFileName() + " decoded differently with chunk size " + chunkSize);
+                assertEquals(expected.checksumErrors, decoder.getChecksumErrors(),
+                        capture.getFileName() + " checksum errors with chunk size " + chunkSize);
+            }
+        }
+    }
+
+    @Test
+    public void testAckFrameRoundTrips() {
+        ByteBuffer ack = ByteBuffer.allocateDirect(16);
+        ZKTecoFrameDecoder.writeAck(ack, 7, 65534);
+        ack.flip();
+
+        List<Integer> commands = new ArrayList<>();
+        ZKTecoFrameDecoder decoder = new ZKTecoFrameDecoder();
+        decoder.decode(ack, new ZKTecoFrameDecoder.FrameListener() {
+            @Override
+            public void onPunch(ZKTecoPunchEvent event) {
+            }
+
+            @Override
+            public void onCommand(int command, int sessionId, int replyId) {
+                commands.add(command);
+                assertEquals(7, sessionId);
+                assertEquals(65534, replyId);
+            }
+        });
+
+        assertEquals(List.of(ZKTecoFrameDecoder.CMD_ACK_OK), commands);
+        assertEquals(0, decoder.getChecksumErrors());
+    }
+
+    /**
+     * Offline throughput benchmark: decodes the recorded captures back to back
+     * from a direct buffer, the same way the listener does. Excluded from the
+     * default build, see test.excludedGroups in the pom.
+     */
+    @Test
+    @Tag("benchmark")
+    public void testDecodeThroughput() throws Exception {
+        ByteArrayBuilder stream = new ByteArrayBuilder();
+        for (Path capture : listCaptures()) {
+            Capture c = readCapture(capture);
+            if (c.checksumErrors == 0) {
+                stream.append(c.bytes);
+            }
+        }
+        byte[] bytes = stream.toByteArray();
+        ZKTecoFrameDecoder counter = new ZKTecoFrameDecoder();
+        feed(counter, bytes, bytes.length);
+        long expectedPerPass = counter.getPunchesDecoded();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        ZKTecoFrameDecoder decoder = new ZKTecoFrameDecoder();
+        long[] punches = new long[1];
+        ZKTecoFrameDecoder.FrameListener listener = event -> punches[0] += event.getUserId() >= 0 ? 1 : 0;
+
+        int passes = 50_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            buffer.clear();
+            buffer.put(bytes);
+            buffer.flip();
+            decoder.decode(buffer, listener);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertEquals(expectedPerPass * passes, punches[0]);
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("ZKTeco decoder: %d punches, %d bytes in %.3fs (%.0f punches/s, %.1f MB/s)%n",
+                punches[0], (long) bytes.length * passes, seconds, punches[0] / seconds,
+                bytes.length * (double) passes / seconds / (1024 * 1024));
+    }
+
+    /**
+     * Feed bytes through a reusable direct buffer in fixed-size reads, compacting
+     * between reads like the selector loop.
+     */
+    private List<String> feed(ZKTecoFrameDecoder decoder, byte[] bytes, int chunkSize) {
+        List<String> punches = new ArrayList<>();
+        ZKTecoFrameDecoder.FrameListener listener = event -> punches.add(event.getUserId() + "," +
+                event.getVerifyType() + "," + event.getPunchState() + "," +
+                event.toLocalDateTime().format(PUNCH_TIME_FORMAT));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            buffer.put(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+            buffer.flip();
+            decoder.decode(buffer, listener);
+            buffer.compact();
+        }
+        return punches;
+    }
+
+    private List<Path> listCaptures() throws IOException, URISyntaxException {
+        Path dir = Paths.get(getClass().getResource("/zkteco/captures").toURI());
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".hex")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Capture readCapture(Path path) throws IOException {
+        Capture capture = new Capture();
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        for (String line : Files.readAllLines(path, StandardCharsets.US_ASCII)) {
+            line = line.trim();
+            if (line.startsWith("# expect:")) {
+                capture.punches.add(line.substring("# expect:".length()).trim());
+            } else if (line.startsWith("# checksum-errors:")) {
+                capture.checksumErrors = Long.parseLong(line.substring("# checksum-errors:".length()).trim());
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                for (String hex : line.split("\\s+")) {
+                    bytes.append((byte) Integer.parseInt(hex, 16));
+                }
+            }
+        }
+        capture.bytes = bytes.toByteArray();
+        return capture;
+    }
+
+    private static class Capture {
+        byte[] bytes;
+        List<String> punches = new ArrayList<>();
+        long checksumErrors;
+    }
+
+    private static class ByteArrayBuilder {
+        private final java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+
+        void append(byte b) {
+            out.write(b);
+        }
+
+        void append(byte[] b) {
+            out.write(b, 0, b.length);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}